@@ -0,0 +1,91 @@
+package ether;
+
+import io.left.rightmesh.util.EtherUtility;
+import org.apache.commons.codec.binary.Hex;
+import org.ethereum.core.CallTransaction;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.math.BigInteger;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * ABI encoding of the contract calls made per request, including the hex conversion of the call data.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class AbiEncodingBenchmark {
+
+    private static final String SENDER = "0x1e4a6e2bcd6ae6e4d0a25d95a2f7a1b8c0e3b7a1";
+    private static final String RECEIVER = "0x5c7d0e3f4a8b9c1d2e3f4a5b6c7d8e9f0a1b2c3d";
+
+    private CallTransaction.Function balanceOf;
+    private CallTransaction.Function approve;
+    private CallTransaction.Function channels;
+    private CallTransaction.Function createChannel;
+    private CallTransaction.Function cooperativeClose;
+    private byte[] channelKey;
+    private byte[] r;
+    private byte[] s;
+    private BigInteger deposit;
+
+    @Setup
+    public void setup() {
+        balanceOf = Settings.TOKEN_CONTRACT.getByName("balanceOf");
+        approve = Settings.TOKEN_CONTRACT.getByName("approve");
+        channels = Settings.CHANNEL_CONTRACT.getByName("channels");
+        createChannel = Settings.CHANNEL_CONTRACT.getByName("createChannelERC20");
+        cooperativeClose = Settings.CHANNEL_CONTRACT.getByName("cooperativeCloseReceiver");
+        channelKey = EtherUtility.getChannelHash(SENDER, RECEIVER);
+        r = new byte[32];
+        s = new byte[32];
+        for (int i = 0; i < 32; i++) {
+            r[i] = (byte) (i * 7 + 1);
+            s[i] = (byte) (i * 13 + 5);
+        }
+        deposit = Settings.INIT_DEPOSIT;
+    }
+
+    @Benchmark
+    public String balanceOf() {
+        return "0x" + new String(Hex.encodeHex(balanceOf.encode(SENDER)));
+    }
+
+    @Benchmark
+    public String approve() {
+        return "0x" + new String(Hex.encodeHex(approve.encode(Settings.CHANNEL_CONTRACT_ADDRESS, deposit)));
+    }
+
+    @Benchmark
+    public String channels() {
+        return "0x" + new String(Hex.encodeHex(channels.encode(channelKey)));
+    }
+
+    @Benchmark
+    public String createChannelERC20() {
+        return "0x" + new String(Hex.encodeHex(createChannel.encode(RECEIVER, deposit)));
+    }
+
+    @Benchmark
+    public byte[] cooperativeCloseReceiver() {
+        return cooperativeClose.encode(SENDER, deposit, r, s, BigInteger.valueOf(27), r, s, BigInteger.valueOf(28));
+    }
+
+    @Benchmark
+    public CallTransaction.Function functionLookup() {
+        return Settings.CHANNEL_CONTRACT.getByName("cooperativeCloseReceiver");
+    }
+}
@@ -0,0 +1,51 @@
+package ether;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Building the JSON-RPC request strings sent to the Ether node.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class EtherRequestBenchmark {
+
+    private static final String ADDRESS = "0x1e4a6e2bcd6ae6e4d0a25d95a2f7a1b8c0e3b7a1";
+    private static final String CALL_DATA = "0x70a082310000000000000000000000001e4a6e2bcd6ae6e4d0a25d95a2f7a1b8c0e3b7a1";
+    private static final String TRANSACTION_ID = "0x9fc76417374aa880d4449a1f7f31ec597f00b1f6f3dd2d66f4c9c6c445836d8b";
+
+    @Benchmark
+    public String ethCall() {
+        return EtherClient.getEtherRequest("eth_call", null, Settings.TOKEN_CONTRACT_ADDRESS, null, CALL_DATA);
+    }
+
+    @Benchmark
+    public String estimateGas() {
+        return EtherClient.getEtherRequest("eth_estimateGas", ADDRESS, Settings.CHANNEL_CONTRACT_ADDRESS,
+                null, CALL_DATA);
+    }
+
+    @Benchmark
+    public String getTransactionReceipt() {
+        return EtherClient.getEtherRequest("eth_getTransactionReceipt", TRANSACTION_ID);
+    }
+
+    @Benchmark
+    public String gasPrice() {
+        return EtherClient.getEtherRequest("eth_gasPrice");
+    }
+}
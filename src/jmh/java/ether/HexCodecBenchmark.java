@@ -0,0 +1,83 @@
+package ether;
+
+import org.apache.commons.codec.binary.Hex;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.math.BigInteger;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Hex conversions of {@link HexCodec} and {@link UInt256} against the substring and BigInteger ones they replaced.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class HexCodecBenchmark {
+
+    private static final String BALANCE = "0x00000000000000000000000000000000000000000000003635c9adc5dea00000";
+
+    private static final String NONCE = "0x1b4";
+
+    private static final String CHANNEL = "0x0000000000000000000000000000000000000000000000008ac7230489e80000"
+            + "000000000000000000000000000000000000000000000000000000000000089a1f";
+
+    //A call with a selector and two arguments.
+    private static final byte[] CALL = new byte[68];
+
+    private final UInt256 word = new UInt256();
+
+    @Benchmark
+    public BigInteger balanceBigInteger() {
+        return new BigInteger(BALANCE.substring(2), 16);
+    }
+
+    @Benchmark
+    public BigInteger balanceHexCodec() {
+        return HexCodec.quantity(BALANCE);
+    }
+
+    @Benchmark
+    public BigInteger nonceBigInteger() {
+        return new BigInteger(NONCE.substring(2), 16);
+    }
+
+    @Benchmark
+    public BigInteger nonceHexCodec() {
+        return HexCodec.quantity(NONCE);
+    }
+
+    @Benchmark
+    public int channelSubstring() {
+        String response = CHANNEL.substring(2);
+        BigInteger deposit = new BigInteger(response.substring(0, response.length() / 2), 16);
+        return deposit.signum() + Integer.parseInt(response.substring(response.length() / 2), 16);
+    }
+
+    @Benchmark
+    public long channelUInt256() {
+        long openBlock = word.setWord(CHANNEL, 2 + UInt256.HEX_DIGITS).bits(0, 32);
+        return word.setWord(CHANNEL, 2).isZero() ? openBlock : openBlock + 1;
+    }
+
+    @Benchmark
+    public String encodeCommonsCodec() {
+        return "0x" + new String(Hex.encodeHex(CALL));
+    }
+
+    @Benchmark
+    public String encodeHexCodec() {
+        return HexCodec.prefixed(CALL);
+    }
+}
@@ -0,0 +1,70 @@
+package ether;
+
+import org.json.simple.parser.ParseException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Parsing of typical JSON-RPC responses of the Ether node, as done by {@link Http} for every call.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class HttpParsingBenchmark {
+
+    private static final String BALANCE_RESPONSE =
+            "{\"jsonrpc\":\"2.0\",\"result\":\"0x00000000000000000000000000000000000000000000003635c9adc5dea00000\","
+                    + "\"id\":42}";
+
+    private static final String CHANNEL_RESPONSE =
+            "{\"jsonrpc\":\"2.0\",\"result\":\"0x0000000000000000000000000000000000000000000000008ac7230489e80000"
+                    + "000000000000000000000000000000000000000000000000000000000000089a1f\",\"id\":42}";
+
+    private static final String RECEIPT_RESPONSE =
+            "{\"jsonrpc\":\"2.0\",\"result\":{"
+                    + "\"blockHash\":\"0x1d59ff54b1eb26b013ce3cb5fc9dab3705b415a67127a003c3e61eb445bb8df2\","
+                    + "\"blockNumber\":\"0x89a1f\",\"contractAddress\":null,\"cumulativeGasUsed\":\"0x33bc\","
+                    + "\"gasUsed\":\"0x1c8c9\",\"logs\":[{\"address\":\"0x5c7d0e3f4a8b9c1d2e3f4a5b6c7d8e9f0a1b2c3d\","
+                    + "\"topics\":[\"0x10dc1bd4e1a6b8d1c1c4c3a7a5b3e6e2f1d0c9b8a7f6e5d4c3b2a1f0e9d8c7b6\","
+                    + "\"0x0000000000000000000000001e4a6e2bcd6ae6e4d0a25d95a2f7a1b8c0e3b7a1\","
+                    + "\"0x0000000000000000000000005c7d0e3f4a8b9c1d2e3f4a5b6c7d8e9f0a1b2c3d\"],"
+                    + "\"data\":\"0x0000000000000000000000000000000000000000000000008ac7230489e80000\","
+                    + "\"logIndex\":\"0x0\"}],\"status\":\"0x1\","
+                    + "\"transactionHash\":\"0x9fc76417374aa880d4449a1f7f31ec597f00b1f6f3dd2d66f4c9c6c445836d8b\","
+                    + "\"transactionIndex\":\"0x0\"},\"id\":42}";
+
+    private static final String PENDING_RESPONSE = "{\"jsonrpc\":\"2.0\",\"result\":null,\"id\":42}";
+
+    @Benchmark
+    public Object balance() throws ParseException {
+        return Http.parseResult(BALANCE_RESPONSE);
+    }
+
+    @Benchmark
+    public Object channel() throws ParseException {
+        return Http.parseResult(CHANNEL_RESPONSE);
+    }
+
+    @Benchmark
+    public Object receipt() throws ParseException {
+        return Http.parseResult(RECEIPT_RESPONSE);
+    }
+
+    @Benchmark
+    public Object pendingReceipt() throws ParseException {
+        return Http.parseResult(PENDING_RESPONSE);
+    }
+}
@@ -0,0 +1,105 @@
+package ether;
+
+import io.left.rightmesh.util.EtherUtility;
+import org.apache.commons.codec.binary.Hex;
+import org.apache.commons.lang3.tuple.ImmutablePair;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.math.BigInteger;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * The response builders of {@link JSON}, one per message sent back to Clients.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class JsonResponseBenchmark {
+
+    private static final String SUPER_PEER = "0x1e4a6e2bcd6ae6e4d0a25d95a2f7a1b8c0e3b7a1";
+    private static final String CLIENT = "0x5c7d0e3f4a8b9c1d2e3f4a5b6c7d8e9f0a1b2c3d";
+    private static final String ETHER_BALANCE = "1000000000000000000";
+    private static final String TOKEN_BALANCE = "250000000000000000000";
+
+    private EtherUtility.PaymentChannel outChannel;
+    private EtherUtility.PaymentChannel inChannel;
+    private ImmutablePair<byte[], BigInteger> closingHashPair;
+    private String signature;
+    private BigInteger nonce;
+    private BigInteger balance;
+
+    @Setup
+    public void setup() {
+        byte[] signatureBytes = new byte[65];
+        for (int i = 0; i < signatureBytes.length; i++) {
+            signatureBytes[i] = (byte) (i * 31 + 7);
+        }
+        signature = Hex.encodeHexString(signatureBytes);
+        balance = new BigInteger("1500000000000000000");
+        nonce = BigInteger.valueOf(117);
+
+        outChannel = new EtherUtility.PaymentChannel(SUPER_PEER, CLIENT, Settings.INIT_DEPOSIT, 564767,
+                balance, signature);
+        inChannel = new EtherUtility.PaymentChannel(CLIENT, SUPER_PEER, Settings.INIT_DEPOSIT, 564771,
+                BigInteger.ZERO, signature);
+        closingHashPair = new ImmutablePair<>(signatureBytes, balance);
+    }
+
+    @Benchmark
+    public byte[] okResponse() {
+        return JSON.getOkResponse(EtherUtility.RES_GET_ALL);
+    }
+
+    @Benchmark
+    public byte[] errorResponse() {
+        return JSON.getErrorResponse(EtherUtility.RES_GET_ALL, "Failed to get Token balance.");
+    }
+
+    @Benchmark
+    public byte[] messageToClient() {
+        return JSON.getMessageToClient("11", ETHER_BALANCE, TOKEN_BALANCE, nonce);
+    }
+
+    @Benchmark
+    public byte[] getAllResponse() {
+        return JSON.sendGetAllResponse(outChannel, inChannel, ETHER_BALANCE, TOKEN_BALANCE, nonce);
+    }
+
+    @Benchmark
+    public byte[] openClientToSpResponse() {
+        return JSON.sendOpenClientToSpResponse(inChannel, ETHER_BALANCE, TOKEN_BALANCE, nonce);
+    }
+
+    @Benchmark
+    public byte[] balanceMsgSig() {
+        return JSON.sendBalanceMsgSig(balance, signature);
+    }
+
+    @Benchmark
+    public byte[] activeUpdateResponse() {
+        return JSON.sendActiveUpdateResponse(closingHashPair, ETHER_BALANCE, TOKEN_BALANCE, nonce);
+    }
+
+    @Benchmark
+    public byte[] closeClientToSuperResponse() {
+        return JSON.sendCloseClientToSuperResponse(ETHER_BALANCE, TOKEN_BALANCE, nonce);
+    }
+
+    @Benchmark
+    public byte[] closeSuperToClientResponse() {
+        return JSON.sendCloseSuperToClientResponse(ETHER_BALANCE, TOKEN_BALANCE, nonce);
+    }
+}
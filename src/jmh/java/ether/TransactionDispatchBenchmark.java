@@ -0,0 +1,229 @@
+package ether;
+
+import io.left.rightmesh.id.MeshId;
+import io.left.rightmesh.mesh.MeshManager;
+import io.left.rightmesh.proto.MeshTransaction;
+import io.left.rightmesh.util.EtherUtility;
+import org.apache.commons.lang3.tuple.ImmutablePair;
+import org.json.simple.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+
+/**
+ * The CPU side of a Mesh transaction, dispatched by the Transactions Manager to its real handler: parsing the
+ * payload, the handler itself and encoding the response. The Mesh is a no-op bridge holding a zero bill for
+ * both channels of the peer and the Ether node is a stub answering every request at once, so the Ether node
+ * round trips measured by the load test are left out.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class TransactionDispatchBenchmark {
+
+    private static final String SIGNATURE = "6f3b1c0e9a8d7e6f5a4b3c2d1e0f9a8b7c6d5e4f3a2b1c0d9e8f7a6b5c4d3e2f"
+            + "1a0b9c8d7e6f5a4b3c2d1e0f9a8b7c6d5e4f3a2b1c0d9e8f7a6b5c4d3e2f1a0b1c";
+    private static final String SIGNED_TRANSACTION = "0xf8aa80850ba43b7400830f4240945c7d0e3f4a8b9c1d2e3f4a5b6c7d8e9f0a"
+            + "1b2c3d80b844095ea7b3000000000000000000000000a1b2c3d4e5f60718293a4b5c6d7e8f90a1b2c3d4000000000000000000"
+            + "0000000000000000000000000000008ac7230489e800001ca0d7c1a2b3c4d5e6f708192a3b4c5d6e7f8091a2b3c4d5e6f70819"
+            + "2a3b4c5d6e7f80a03a4b5c6d7e8f90a1b2c3d4e5f60718293a4b5c6d7e8f90a1b2c3d4e5f60718293a4b5c6d7e";
+
+    @Param({"getAll", "activeUpdate", "openClientToSuperPeer"})
+    public String request;
+
+    private NoOpMesh mesh;
+    private TransactionsManager transactionsManager;
+    private MeshManager.MeshTransactionEvent event;
+    private PrintStream console;
+
+    @Setup
+    public void setup() throws Exception {
+        JSONObject transaction = new JSONObject();
+        switch (request) {
+            case "getAll":
+                transaction.put("method", EtherUtility.METHOD_GET_ALL);
+                break;
+            case "activeUpdate":
+                transaction.put("method", EtherUtility.METHOD_ACTIVE_UPDATE);
+                transaction.put("closingHashBalance", "1500000000000000000");
+                transaction.put("closingHashSignature", SIGNATURE);
+                break;
+            default:
+                transaction.put("method", EtherUtility.METHOD_OPEN_CLIENT_TO_SUPER_PEER);
+                transaction.put("signedApproveTrans", SIGNED_TRANSACTION);
+                transaction.put("signedOpenChannelTrans", SIGNED_TRANSACTION);
+                transaction.put("zeroBalanceProofSignature", SIGNATURE);
+                break;
+        }
+
+        byte[] superPeer = new byte[20];
+        byte[] peer = new byte[20];
+        for (int i = 0; i < 20; i++) {
+            superPeer[i] = (byte) (i * 11 + 3);
+            peer[i] = (byte) (i * 17 + 9);
+        }
+        mesh = new NoOpMesh(MeshId.fromBytes(superPeer));
+        transactionsManager = new TransactionsManager(mesh, new StubHttp());
+        event = new MeshManager.MeshTransactionEvent(
+                new MeshTransaction(transaction.toJSONString().getBytes()), MeshId.fromBytes(peer));
+
+        //The handlers report every request on stdout.
+        console = System.out;
+        System.setOut(new PrintStream(new OutputStream() {
+            @Override
+            public void write(int b) {
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) {
+            }
+        }));
+    }
+
+    @TearDown
+    public void tearDown() {
+        System.setOut(console);
+    }
+
+    @Benchmark
+    public byte[] dispatch() {
+        transactionsManager.processTransaction(event);
+        return mesh.response;
+    }
+
+
+    /**
+     * A Mesh that holds a zero bill for every channel and keeps the last response instead of sending it.
+     */
+    private static final class NoOpMesh implements MeshBridge {
+
+        private static final ImmutablePair<byte[], BigInteger> ZERO_PROOF =
+                new ImmutablePair<>(new byte[65], BigInteger.ZERO);
+        private static final ImmutablePair<ImmutablePair<byte[], BigInteger>, ImmutablePair<byte[], BigInteger>>
+                ZERO_BILL = new ImmutablePair<>(ZERO_PROOF, ZERO_PROOF);
+
+        private final MeshId uuid;
+        private byte[] response;
+
+        NoOpMesh(MeshId uuid) {
+            this.uuid = uuid;
+        }
+
+        @Override
+        public MeshId getUuid() {
+            return uuid;
+        }
+
+        @Override
+        public void onTransaction(Consumer<MeshManager.RightMeshEvent> handler) {
+        }
+
+        @Override
+        public void sendDataReliable(MeshId destination, int port, byte[] data) {
+            response = data;
+        }
+
+        @Override
+        public ImmutablePair<byte[], BigInteger> calculateNewBalanceProofToReceiver(BigInteger balance,
+                                                                                    byte[] receiverId) {
+            return ZERO_PROOF;
+        }
+
+        @Override
+        public ImmutablePair<byte[], BigInteger> calculateNewClosingHashFromSender(BigInteger balance,
+                                                                                   byte[] senderId) {
+            return ZERO_PROOF;
+        }
+
+        @Override
+        public ImmutablePair<ImmutablePair<byte[], BigInteger>, ImmutablePair<byte[], BigInteger>>
+                getMostRecentBillToReceiver(byte[] receiverId) {
+            return ZERO_BILL;
+        }
+
+        @Override
+        public ImmutablePair<ImmutablePair<byte[], BigInteger>, ImmutablePair<byte[], BigInteger>>
+                getMostRecentBillFromSender(byte[] senderId) {
+            return ZERO_BILL;
+        }
+
+        @Override
+        public void putNewBalanceProofToReceiver(byte[] receiverId, ImmutablePair<byte[], BigInteger> pair) {
+        }
+
+        @Override
+        public void putNewClosingHashToReceiver(byte[] receiverId, ImmutablePair<byte[], BigInteger> pair) {
+        }
+
+        @Override
+        public void putNewBalanceProofFromSender(byte[] senderId, ImmutablePair<byte[], BigInteger> pair) {
+        }
+
+        @Override
+        public void putNewClosingHashFromSender(byte[] senderId, ImmutablePair<byte[], BigInteger> pair) {
+        }
+
+        @Override
+        public void removeMostRecentBillToReceiver(MeshId receiverId) {
+        }
+
+        @Override
+        public void removeMostRecentBillFromSender(MeshId senderId) {
+        }
+    }
+
+    /**
+     * An Ether node where every channel is open, answering each request without going to the network.
+     */
+    private static final class StubHttp extends Http {
+
+        private static final String OPEN_CHANNEL = "0x" + String.format("%064x",
+                BigInteger.ONE.shiftLeft(192).or(Settings.INIT_DEPOSIT));
+        private static final String TOKEN_BALANCE = "0x" + String.format("%064x",
+                new BigInteger("100000000000000000000"));
+
+        StubHttp() {
+            super("http://127.0.0.1:0", false);
+        }
+
+        @Override
+        public Object getHttpResponse(String requestString) {
+            if (requestString.startsWith("{\"method\":\"eth_call\"")) {
+                return TOKEN_BALANCE;
+            } else if (requestString.startsWith("{\"method\":\"eth_getBalance\"")) {
+                return "0xde0b6b3a7640000";
+            }
+            return "0x1";
+        }
+
+        @Override
+        public List<Object> getBatchHttpResponse(List<String> requestStrings) {
+            List<Object> words = new ArrayList<>(requestStrings.size());
+            for (int i = 0; i < requestStrings.size(); i++) {
+                words.add(OPEN_CHANNEL);
+            }
+            return words;
+        }
+    }
+}
@@ -0,0 +1,163 @@
+package ether;
+
+import io.left.rightmesh.id.MeshId;
+import io.left.rightmesh.mesh.MeshManager;
+import io.left.rightmesh.proto.MeshTransaction;
+import io.left.rightmesh.util.RightMeshException;
+import org.apache.commons.codec.binary.Hex;
+import org.apache.commons.lang3.tuple.ImmutablePair;
+import org.ethereum.crypto.HashUtil;
+
+import java.math.BigInteger;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+
+/**
+ * In-memory {@link MeshBridge} for the load test. Bills are kept in maps, the signatures the SuperPeer would
+ * produce with its key are replaced by hashes, and the data sent to peers is handed to a sink.
+ */
+final class FakeMesh implements MeshBridge {
+
+    private final MeshId uuid;
+    private final BiConsumer<MeshId, byte[]> sink;
+    private final Map<String, Bill> billsToReceiver = new ConcurrentHashMap<>();
+    private final Map<String, Bill> billsFromSender = new ConcurrentHashMap<>();
+    private volatile Consumer<MeshManager.RightMeshEvent> handler = null;
+
+    /**
+     * @param uuid  The MeshId of the SuperPeer.
+     * @param sink  Receives the data sent to peers.
+     */
+    FakeMesh(MeshId uuid, BiConsumer<MeshId, byte[]> sink) {
+        this.uuid = uuid;
+        this.sink = sink;
+    }
+
+    /**
+     * Delivers a transaction from a peer, the way the library does.
+     *
+     * @param peer  The sending peer.
+     * @param data  The transaction payload.
+     */
+    void deliver(MeshId peer, byte[] data) {
+        handler.accept(new MeshManager.MeshTransactionEvent(new MeshTransaction(data), peer));
+    }
+
+    /**
+     * Seeds the bills of a channel opened before the test.
+     *
+     * @param peer      The peer.
+     * @param outgoing  True for the SuperPeer-->peer channel, False for peer-->SuperPeer.
+     */
+    void seedChannel(MeshId peer, boolean outgoing) {
+        if (outgoing) {
+            putNewBalanceProofToReceiver(peer.getRawMeshId(),
+                    calculateNewBalanceProofToReceiver(BigInteger.ZERO, peer.getRawMeshId()));
+        } else {
+            putNewClosingHashFromSender(peer.getRawMeshId(),
+                    calculateNewClosingHashFromSender(BigInteger.ZERO, peer.getRawMeshId()));
+        }
+    }
+
+    @Override
+    public MeshId getUuid() {
+        return uuid;
+    }
+
+    @Override
+    public void onTransaction(Consumer<MeshManager.RightMeshEvent> handler) {
+        this.handler = handler;
+    }
+
+    @Override
+    public void sendDataReliable(MeshId destination, int port, byte[] data) {
+        sink.accept(destination, data);
+    }
+
+    @Override
+    public ImmutablePair<byte[], BigInteger> calculateNewBalanceProofToReceiver(BigInteger balance,
+                                                                                byte[] receiverId) {
+        return new ImmutablePair<>(signature("balance", receiverId, balance), balance);
+    }
+
+    @Override
+    public ImmutablePair<byte[], BigInteger> calculateNewClosingHashFromSender(BigInteger balance, byte[] senderId) {
+        return new ImmutablePair<>(signature("closing", senderId, balance), balance);
+    }
+
+    @Override
+    public ImmutablePair<ImmutablePair<byte[], BigInteger>, ImmutablePair<byte[], BigInteger>>
+            getMostRecentBillToReceiver(byte[] receiverId) throws RightMeshException {
+        return bill(billsToReceiver, receiverId);
+    }
+
+    @Override
+    public ImmutablePair<ImmutablePair<byte[], BigInteger>, ImmutablePair<byte[], BigInteger>>
+            getMostRecentBillFromSender(byte[] senderId) throws RightMeshException {
+        return bill(billsFromSender, senderId);
+    }
+
+    @Override
+    public void putNewBalanceProofToReceiver(byte[] receiverId, ImmutablePair<byte[], BigInteger> pair) {
+        billsToReceiver.computeIfAbsent(key(receiverId), key -> new Bill()).balanceProof = pair;
+    }
+
+    @Override
+    public void putNewClosingHashToReceiver(byte[] receiverId, ImmutablePair<byte[], BigInteger> pair) {
+        billsToReceiver.computeIfAbsent(key(receiverId), key -> new Bill()).closingHash = pair;
+    }
+
+    @Override
+    public void putNewBalanceProofFromSender(byte[] senderId, ImmutablePair<byte[], BigInteger> pair) {
+        billsFromSender.computeIfAbsent(key(senderId), key -> new Bill()).balanceProof = pair;
+    }
+
+    @Override
+    public void putNewClosingHashFromSender(byte[] senderId, ImmutablePair<byte[], BigInteger> pair) {
+        billsFromSender.computeIfAbsent(key(senderId), key -> new Bill()).closingHash = pair;
+    }
+
+    @Override
+    public void removeMostRecentBillToReceiver(MeshId receiverId) {
+        billsToReceiver.remove(key(receiverId.getRawMeshId()));
+    }
+
+    @Override
+    public void removeMostRecentBillFromSender(MeshId senderId) {
+        billsFromSender.remove(key(senderId.getRawMeshId()));
+    }
+
+
+    private static ImmutablePair<ImmutablePair<byte[], BigInteger>, ImmutablePair<byte[], BigInteger>>
+            bill(Map<String, Bill> bills, byte[] peerId) throws RightMeshException {
+        Bill bill = bills.get(key(peerId));
+        if (bill == null) {
+            throw new RightMeshException("No bill for " + key(peerId));
+        }
+        return new ImmutablePair<>(bill.balanceProof, bill.closingHash);
+    }
+
+    /**
+     * A 65 bytes stand-in for a signature of the SuperPeer, never verified in the load test.
+     */
+    private static byte[] signature(String type, byte[] peerId, BigInteger balance) {
+        byte[] hash = HashUtil.sha3((type + key(peerId) + balance).getBytes());
+        byte[] signature = new byte[65];
+        System.arraycopy(hash, 0, signature, 0, 32);
+        System.arraycopy(hash, 0, signature, 32, 32);
+        signature[64] = 27;
+        return signature;
+    }
+
+    private static String key(byte[] peerId) {
+        return new String(Hex.encodeHex(peerId));
+    }
+
+    private static final class Bill {
+        volatile ImmutablePair<byte[], BigInteger> balanceProof = null;
+        volatile ImmutablePair<byte[], BigInteger> closingHash = null;
+    }
+}
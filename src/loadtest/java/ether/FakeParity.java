@@ -0,0 +1,400 @@
+package ether;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import io.left.rightmesh.util.EtherUtility;
+import org.apache.commons.codec.binary.Hex;
+import org.ethereum.core.CallTransaction;
+import org.ethereum.core.Transaction;
+import org.ethereum.crypto.HashUtil;
+import org.ethereum.util.ByteUtil;
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+import org.json.simple.parser.JSONParser;
+import org.json.simple.parser.ParseException;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.math.BigInteger;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+
+/**
+ * In-process stand-in for the Parity JSON-RPC interface, with just enough chain state for the SuperPeer flows:
+ * channels, token and Ether balances, nonces and transactions mined one block after they are submitted.
+ * Every request is delayed by a fixed latency, and blocks are produced at a fixed interval.
+ * <p>
+ * The message hashes of the channel contract are sha3(other party, uint192 balance, contract address), the
+ * layout the SuperPeer computes locally, see {@link #messageHash(byte[])}, so simulated Clients can sign them
+ * without the contract.
+ */
+final class FakeParity {
+
+    private static final String ZERO_WORD = String.format("%064x", 0);
+    private static final BigInteger ETHER_BALANCE = new BigInteger("5000000000000000000");
+    private static final BigInteger TOKEN_BALANCE = new BigInteger("100000000000000000000");
+    private static final BigInteger GAS_PRICE = new BigInteger("2000000000");
+    private static final BigInteger GAS_ESTIMATE = BigInteger.valueOf(60000);
+
+    private final long latencyMillis;
+    private final long blockTimeMillis;
+    private final int threads;
+    private final String balanceOfSelector;
+    private final String channelsSelector;
+    private final String balanceHashSelector;
+    private final String closingHashSelector;
+    private final String createChannelSelector;
+    private final String channelCreatedTopic;
+
+    private final Map<String, Long> channels = new ConcurrentHashMap<>();
+    //The storage slot of each channel, to its key.
+    private final Map<String, String> slots = new ConcurrentHashMap<>();
+    private final Map<String, Long> transactions = new ConcurrentHashMap<>();
+    private final Map<String, JSONObject> logs = new ConcurrentHashMap<>();
+    private final Map<String, AtomicLong> nonces = new ConcurrentHashMap<>();
+    private final Map<String, LongAdder> requests = new ConcurrentHashMap<>();
+
+    private HttpServer server = null;
+    private ExecutorService executor = null;
+    private long startedAt;
+
+    /**
+     * @param latencyMillis     The delay added to every request.
+     * @param blockTimeMillis   The interval between blocks.
+     * @param threads           The number of requests served concurrently.
+     */
+    FakeParity(long latencyMillis, long blockTimeMillis, int threads) {
+        this.latencyMillis = latencyMillis;
+        this.blockTimeMillis = blockTimeMillis;
+        this.threads = threads;
+        balanceOfSelector = selector(Settings.TOKEN_CONTRACT.getByName("balanceOf"));
+        channelsSelector = selector(Settings.CHANNEL_CONTRACT.getByName("channels"));
+        balanceHashSelector = selector(Settings.CHANNEL_CONTRACT.getByName("getBalanceHash"));
+        closingHashSelector = selector(Settings.CHANNEL_CONTRACT.getByName("getClosingHash"));
+        createChannelSelector = selector(Settings.CHANNEL_CONTRACT.getByName("createChannelERC20"));
+        channelCreatedTopic = TransactionReceipt.topic(
+                Settings.CHANNEL_CONTRACT.getByName(TransactionReceipt.CHANNEL_CREATED));
+    }
+
+    /**
+     * Starts listening on a free local port.
+     *
+     * @throws IOException  Thrown if the server can't bind.
+     */
+    synchronized void start() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", this::handle);
+        AtomicInteger threadCount = new AtomicInteger();
+        executor = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "fake-parity-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        server.setExecutor(executor);
+        startedAt = System.currentTimeMillis();
+        server.start();
+    }
+
+    synchronized void stop() {
+        if (server != null) {
+            server.stop(0);
+            executor.shutdownNow();
+            server = null;
+        }
+    }
+
+    /**
+     * @return  The URL to use as rpcAddress.
+     */
+    String getRpcAddress() {
+        return "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    /**
+     * Opens a channel in the genesis block.
+     *
+     * @param senderAddress     The sender address.
+     * @param receiverAddress   The receiver address.
+     */
+    void openChannel(String senderAddress, String receiverAddress) {
+        putChannel(senderAddress, receiverAddress, 0L);
+    }
+
+    /**
+     * @return  The number of requests served by method.
+     */
+    Map<String, Long> getRequestCounts() {
+        Map<String, Long> counts = new TreeMap<>();
+        requests.forEach((method, count) -> counts.put(method, count.sum()));
+        return counts;
+    }
+
+    /**
+     * The hash the stand-in returns for getBalanceHash and getClosingHash.
+     *
+     * @param callData  The encoded function call.
+     * @return          The 32 bytes hash.
+     */
+    static byte[] messageHash(byte[] callData) {
+        //The selector, then the address and the balance, each right-aligned in a 32 bytes word.
+        byte[] contract = ByteUtil.hexStringToBytes(strip(Settings.CHANNEL_CONTRACT_ADDRESS));
+        byte[] message = new byte[20 + 24 + 20];
+        System.arraycopy(callData, 4 + 12, message, 0, 20);
+        System.arraycopy(callData, 4 + 32 + 8, message, 20, 24);
+        System.arraycopy(contract, 0, message, 44, 20);
+        return HashUtil.sha3(message);
+    }
+
+
+    private void handle(HttpExchange exchange) throws IOException {
+        String response;
+        try {
+            Object request = new JSONParser().parse(readBody(exchange));
+            if (latencyMillis > 0) {
+                //Once per round trip, a batch is answered as fast as a single request.
+                Thread.sleep(latencyMillis);
+            }
+            if (request instanceof JSONArray) {
+                JSONArray responses = new JSONArray();
+                for (Object entry : (JSONArray) request) {
+                    responses.add(respond((JSONObject) entry));
+                }
+                response = responses.toJSONString();
+            } else {
+                response = respond((JSONObject) request).toJSONString();
+            }
+        } catch (ParseException | ClassCastException e) {
+            response = error(null, -32700, "Parse error").toJSONString();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+
+        byte[] bytes = response.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(200, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    private JSONObject respond(JSONObject request) {
+        String method = (String) request.get("method");
+        requests.computeIfAbsent(method, key -> new LongAdder()).increment();
+
+        Object result = dispatch(method, (JSONArray) request.get("params"));
+        if (result == Unsupported.INSTANCE) {
+            return error(request.get("id"), -32601, "Method not found: " + method);
+        }
+        JSONObject response = new JSONObject();
+        response.put("jsonrpc", "2.0");
+        response.put("id", request.get("id"));
+        response.put("result", result);
+        return response;
+    }
+
+    private static JSONObject error(Object id, int code, String message) {
+        JSONObject error = new JSONObject();
+        error.put("code", code);
+        error.put("message", message);
+        JSONObject response = new JSONObject();
+        response.put("jsonrpc", "2.0");
+        response.put("id", id);
+        response.put("error", error);
+        return response;
+    }
+
+    private Object dispatch(String method, JSONArray params) {
+        switch (method) {
+            case "eth_call":
+                return call((JSONObject) params.get(0));
+            case "eth_getStorageAt":
+                return storage((String) params.get(1));
+            case "eth_getBalance":
+                return hex(ETHER_BALANCE);
+            case "parity_nextNonce":
+                return hex(BigInteger.valueOf(nonce((String) params.get(0)).get()));
+            case "eth_estimateGas":
+                return hex(GAS_ESTIMATE);
+            case "eth_gasPrice":
+                return hex(GAS_PRICE);
+            case "eth_blockNumber":
+                return hex(BigInteger.valueOf(currentBlock()));
+            case "eth_getBlockByNumber":
+                String tag = (String) params.get(0);
+                long number = tag.startsWith("0x") ? Long.parseLong(strip(tag), 16) : currentBlock();
+                JSONObject block = new JSONObject();
+                block.put("number", hex(BigInteger.valueOf(number)));
+                block.put("hash", "0x" + new String(Hex.encodeHex(HashUtil.sha3(BigInteger.valueOf(number)
+                        .toByteArray()))));
+                block.put("transactions", new JSONArray());
+                return block;
+            case "eth_getLogs":
+                //Token balances never change here.
+                return new JSONArray();
+            case "eth_sendRawTransaction":
+                return sendRawTransaction((String) params.get(0));
+            case "eth_getTransactionReceipt":
+                return receipt((String) params.get(0));
+            default:
+                return Unsupported.INSTANCE;
+        }
+    }
+
+    private Object call(JSONObject call) {
+        String data = (String) call.get("data");
+        if (data == null || data.length() < 10) {
+            return "0x";
+        }
+
+        String selector = data.substring(2, 10);
+        if (selector.equals(balanceOfSelector)) {
+            return hex(TOKEN_BALANCE);
+        } else if (selector.equals(channelsSelector)) {
+            Long openBlock = channels.get(data.substring(10, 74).toLowerCase());
+            if (openBlock == null || openBlock > currentBlock()) {
+                return "0x" + ZERO_WORD + ZERO_WORD;
+            }
+            return "0x" + String.format("%064x", Settings.INIT_DEPOSIT) + String.format("%064x", openBlock);
+        } else if (selector.equals(balanceHashSelector) || selector.equals(closingHashSelector)) {
+            String from = (String) call.get("from");
+            if (from == null) {
+                return "0x";
+            }
+            return "0x" + new String(Hex.encodeHex(messageHash(ByteUtil.hexStringToBytes(strip(data)))));
+        }
+        return "0x";
+    }
+
+    /**
+     * @return  The packed Channel struct if the slot is the one of a channel, as the contract stores it.
+     */
+    private Object storage(String slot) {
+        String key = slots.get(slot.toLowerCase());
+        Long openBlock = key == null ? null : channels.get(key);
+        if (openBlock == null || openBlock > currentBlock()) {
+            return "0x" + ZERO_WORD;
+        }
+        return "0x" + String.format("%064x", BigInteger.valueOf(openBlock).shiftLeft(192).or(Settings.INIT_DEPOSIT));
+    }
+
+    private Object sendRawTransaction(String signedTransaction) {
+        byte[] raw = ByteUtil.hexStringToBytes(strip(signedTransaction));
+        String hash = "0x" + new String(Hex.encodeHex(HashUtil.sha3(raw)));
+        long minedIn = currentBlock() + 1;
+
+        try {
+            Transaction transaction = new Transaction(raw);
+            String sender = "0x" + new String(Hex.encodeHex(transaction.getSender()));
+            nonce(sender).incrementAndGet();
+
+            //A channel is opened by the block its transaction is mined in.
+            byte[] data = transaction.getData();
+            byte[] to = transaction.getReceiveAddress();
+            if (data != null && to != null && data.length >= 68
+                    && strip(Settings.CHANNEL_CONTRACT_ADDRESS).equalsIgnoreCase(new String(Hex.encodeHex(to)))
+                    && new String(Hex.encodeHex(data)).startsWith(createChannelSelector)) {
+                String receiver = "0x" + new String(Hex.encodeHex(data)).substring(32, 72);
+                putChannel(sender, receiver, minedIn);
+                logs.put(hash, channelCreated(sender, receiver, new String(Hex.encodeHex(data)).substring(72, 136)));
+            }
+        } catch (RuntimeException e) {
+            //Not a decodable transaction, mined anyway.
+        }
+
+        transactions.put(hash, minedIn);
+        return hash;
+    }
+
+    private Object receipt(String transactionHash) {
+        Long minedIn = transactions.get(transactionHash);
+        if (minedIn == null || minedIn > currentBlock()) {
+            return null;
+        }
+
+        JSONObject receipt = new JSONObject();
+        receipt.put("transactionHash", transactionHash);
+        receipt.put("blockNumber", hex(BigInteger.valueOf(minedIn)));
+        receipt.put("status", "0x1");
+        receipt.put("gasUsed", hex(GAS_ESTIMATE));
+        JSONArray receiptLogs = new JSONArray();
+        JSONObject log = logs.get(transactionHash);
+        if (log != null) {
+            receiptLogs.add(log);
+        }
+        receipt.put("logs", receiptLogs);
+        return receipt;
+    }
+
+    private JSONObject channelCreated(String sender, String receiver, String depositWord) {
+        JSONArray topics = new JSONArray();
+        topics.add(channelCreatedTopic);
+        topics.add("0x000000000000000000000000" + strip(sender));
+        topics.add("0x000000000000000000000000" + strip(receiver));
+        JSONObject log = new JSONObject();
+        log.put("address", Settings.CHANNEL_CONTRACT_ADDRESS);
+        log.put("topics", topics);
+        log.put("data", "0x" + depositWord);
+        return log;
+    }
+
+    private void putChannel(String senderAddress, String receiverAddress, long openBlock) {
+        String key = channelKey(senderAddress, receiverAddress);
+        slots.put(ChannelStorageReader.slot(ByteUtil.hexStringToBytes(key)), key);
+        channels.put(key, openBlock);
+    }
+
+    private long currentBlock() {
+        return (System.currentTimeMillis() - startedAt) / blockTimeMillis + 1;
+    }
+
+    private AtomicLong nonce(String address) {
+        return nonces.computeIfAbsent(strip(address).toLowerCase(), key -> new AtomicLong());
+    }
+
+    private static String channelKey(String senderAddress, String receiverAddress) {
+        return new String(Hex.encodeHex(EtherUtility.getChannelHash(senderAddress, receiverAddress)));
+    }
+
+    private static String selector(CallTransaction.Function function) {
+        return new String(Hex.encodeHex(function.encodeSignature()));
+    }
+
+    private static String hex(BigInteger value) {
+        return "0x" + value.toString(16);
+    }
+
+    private static String strip(String hex) {
+        return hex.startsWith("0x") ? hex.substring(2) : hex;
+    }
+
+    private static String readBody(HttpExchange exchange) throws IOException {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        try (InputStream in = exchange.getRequestBody()) {
+            byte[] buffer = new byte[4096];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                body.write(buffer, 0, read);
+            }
+        }
+        return new String(body.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Marks a method the stand-in doesn't implement.
+     */
+    private enum Unsupported {
+        INSTANCE
+    }
+}
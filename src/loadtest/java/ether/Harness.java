@@ -0,0 +1,105 @@
+package ether;
+
+import io.left.rightmesh.id.MeshId;
+import org.apache.commons.codec.binary.Hex;
+import org.json.simple.JSONObject;
+import org.json.simple.parser.JSONParser;
+import org.json.simple.parser.ParseException;
+
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Map;
+import java.util.TreeMap;
+
+
+/**
+ * Setup shared by the load test and the trace replay.
+ */
+final class Harness {
+
+    private Harness() {
+    }
+
+    /**
+     * Points Settings at a copy of rm-ethereum.conf from the working directory, with the debug output, the
+     * admin server and the trace recording turned off, and receipts polled a few times per block. Must run
+     * before anything touches Settings.
+     *
+     * @param blockTime         The block time of the fake Parity.
+     * @param executionMode     The executionMode of the SuperPeer, "queue" or "perPeer".
+     * @throws IOException      Thrown if the configuration can't be read or written.
+     * @throws ParseException   Thrown if rm-ethereum.conf isn't a JSON object.
+     */
+    static void configure(long blockTime, String executionMode) throws IOException, ParseException {
+        JSONObject config;
+        try (FileReader reader = new FileReader("rm-ethereum.conf")) {
+            config = (JSONObject) new JSONParser().parse(reader);
+        }
+        config.put("debugInfo", "false");
+        config.put("adminPort", "0");
+        config.put("traceFile", "");
+        config.put("executionMode", executionMode);
+        config.put("transCheckInterval", Math.max(10L, blockTime / 4));
+
+        File file = File.createTempFile("loadtest-", ".conf");
+        file.deleteOnExit();
+        Files.write(file.toPath(), config.toJSONString().getBytes(StandardCharsets.UTF_8));
+        System.setProperty("superpeer.config", file.getPath());
+    }
+
+    /**
+     * Discards stdout, the SuperPeer logs every transaction there, which would dominate the measurement.
+     *
+     * @return  The original stdout.
+     */
+    static PrintStream silenceStdout() {
+        PrintStream console = System.out;
+        System.setOut(new PrintStream(new OutputStream() {
+            @Override
+            public void write(int b) {
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) {
+            }
+        }));
+        return console;
+    }
+
+    /**
+     * Parses --name value options, --verbose takes no value and a bare argument is stored under the empty name.
+     *
+     * @param args  The command line.
+     * @return      The options by name.
+     */
+    static Map<String, String> parseOptions(String[] args) {
+        Map<String, String> options = new TreeMap<>();
+        for (int i = 0; i < args.length; i++) {
+            if (!args[i].startsWith("--")) {
+                options.put("", args[i]);
+                continue;
+            }
+            String name = args[i].substring(2);
+            if (name.equals("verbose")) {
+                options.put(name, "true");
+            } else if (i + 1 < args.length) {
+                options.put(name, args[++i]);
+            } else {
+                throw new IllegalArgumentException("Missing value for " + args[i]);
+            }
+        }
+        return options;
+    }
+
+    /**
+     * @return  The key of a peer in the harness maps.
+     */
+    static String key(MeshId meshId) {
+        return new String(Hex.encodeHex(meshId.getRawMeshId()));
+    }
+}
@@ -0,0 +1,81 @@
+package ether;
+
+import org.json.simple.JSONObject;
+import org.json.simple.parser.JSONParser;
+import org.json.simple.parser.ParseException;
+
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+
+/**
+ * The response latencies and error responses of a load run, by Mesh method.
+ */
+final class LatencyReport {
+
+    private static final double[] QUANTILES = {0.5, 0.99, 0.999};
+
+    private final Map<String, LatencyHistogram> latencies = new ConcurrentHashMap<>();
+    private final Map<String, LongAdder> errors = new ConcurrentHashMap<>();
+
+    /**
+     * Records the response to a transaction.
+     *
+     * @param method    The method of the transaction.
+     * @param nanos     The time from the delivery of the transaction to the response.
+     * @param response  The response sent by the SuperPeer.
+     */
+    void record(String method, long nanos, byte[] response) {
+        latencies.computeIfAbsent(method, key -> new LatencyHistogram()).record(nanos);
+        if (isError(response)) {
+            errors.computeIfAbsent(method, key -> new LongAdder()).increment();
+        }
+    }
+
+    /**
+     * Prints the throughput, the latency quantiles by method and the RPC requests served.
+     *
+     * @param out           The output.
+     * @param elapsedNanos  The duration of the run.
+     * @param rpcCounts     The RPC requests served by method.
+     */
+    void print(PrintStream out, long elapsedNanos, Map<String, Long> rpcCounts) {
+        long total = 0;
+        Map<String, LatencyHistogram> sorted = new TreeMap<>(latencies);
+        for (LatencyHistogram histogram : sorted.values()) {
+            total += histogram.getCount();
+        }
+        double seconds = elapsedNanos / 1e9;
+        out.printf("%nCompleted %d transactions in %.2f s, %.1f transactions/s%n%n", total, seconds, total / seconds);
+
+        out.printf("%-28s %8s %8s %10s %10s %10s %10s%n", "method", "count", "errors", "p50 ms", "p99 ms",
+                "p999 ms", "max ms");
+        for (Map.Entry<String, LatencyHistogram> entry : sorted.entrySet()) {
+            LatencyHistogram histogram = entry.getValue();
+            LongAdder errorCount = errors.get(entry.getKey());
+            out.printf("%-28s %8d %8d", entry.getKey(), histogram.getCount(),
+                    errorCount == null ? 0 : errorCount.sum());
+            for (double quantile : QUANTILES) {
+                out.printf(" %10.2f", histogram.getValueAtQuantile(quantile) / 1e6);
+            }
+            out.printf(" %10.2f%n", histogram.getMax() / 1e6);
+        }
+
+        out.printf("%nRPC requests served by the fake Parity:%n");
+        rpcCounts.forEach((method, count) -> out.printf("%-28s %8d%n", method, count));
+    }
+
+
+    private static boolean isError(byte[] response) {
+        try {
+            JSONObject json = (JSONObject) new JSONParser().parse(new String(response, StandardCharsets.UTF_8));
+            return "error".equals(json.get("status"));
+        } catch (ParseException | ClassCastException e) {
+            return true;
+        }
+    }
+}
@@ -0,0 +1,213 @@
+package ether;
+
+import io.left.rightmesh.id.MeshId;
+import io.left.rightmesh.util.ConversionUtility;
+import io.left.rightmesh.util.EtherUtility;
+import io.left.rightmesh.util.RightMeshException;
+import org.apache.commons.codec.binary.Hex;
+import org.ethereum.core.Transaction;
+import org.ethereum.crypto.ECKey;
+import org.ethereum.util.ByteUtil;
+import org.json.simple.JSONObject;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * End-to-end load test of the Transactions Manager. The SuperPeer runs against {@link FakeParity} and
+ * {@link FakeMesh}, and a population of simulated Clients drives it in a closed loop: each Client sends its
+ * next transaction as soon as the response to the previous one arrives. A Client opens its In-Channel if it
+ * has none, sends a GetAll, then ActiveUpdates with increasing balances and properly signed closing hashes.
+ * <p>
+ * Reports the throughput and the p50/p99/p999 latency by method, measured from the delivery of a
+ * transaction to the response sent by the SuperPeer.
+ * <p>
+ * Options: --clients N, --requests N (per Client), --fresh PERCENT (Clients without an In-Channel),
+ * --latency MS (per RPC request), --block-time MS, --rpc-threads N, --mode queue|perPeer, --timeout SECONDS,
+ * --verbose.
+ */
+public final class LoadTest {
+
+    private final LatencyReport report = new LatencyReport();
+    private final Map<String, Client> clients = new ConcurrentHashMap<>();
+
+    private LoadTest() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = Harness.parseOptions(args);
+        int clientCount = Integer.parseInt(options.getOrDefault("clients", "200"));
+        int requests = Integer.parseInt(options.getOrDefault("requests", "20"));
+        int freshPercent = Integer.parseInt(options.getOrDefault("fresh", "10"));
+        long latency = Long.parseLong(options.getOrDefault("latency", "5"));
+        long blockTime = Long.parseLong(options.getOrDefault("block-time", "1000"));
+        int rpcThreads = Integer.parseInt(options.getOrDefault("rpc-threads", "64"));
+        long timeout = Long.parseLong(options.getOrDefault("timeout", "600"));
+        boolean verbose = options.containsKey("verbose");
+
+        Harness.configure(blockTime, options.getOrDefault("mode", "queue"));
+
+        new LoadTest().run(clientCount, requests, freshPercent, latency, blockTime, rpcThreads, timeout, verbose);
+        System.exit(0);
+    }
+
+    private void run(int clientCount, int requests, int freshPercent, long latency, long blockTime,
+                     int rpcThreads, long timeout, boolean verbose) throws IOException, RightMeshException,
+            InterruptedException {
+        FakeParity parity = new FakeParity(latency, blockTime, rpcThreads);
+        parity.start();
+
+        ECKey superPeerKey = new ECKey();
+        MeshId superPeerId = MeshId.fromBytes(superPeerKey.getAddress());
+        FakeMesh mesh = new FakeMesh(superPeerId,
+                (destination, data) -> clients.get(Harness.key(destination)).onResponse(data));
+        TransactionsManager tm = new TransactionsManager(mesh, new Http(parity.getRpcAddress(), false));
+
+        System.out.println("Preparing " + clientCount + " Clients, " + requests + " transactions each ...");
+        CountDownLatch done = new CountDownLatch(clientCount);
+        for (int i = 0; i < clientCount; i++) {
+            boolean fresh = i * 100L < (long) clientCount * freshPercent;
+            Client client = new Client(new ECKey(), superPeerId, fresh, requests, mesh, done);
+            clients.put(Harness.key(client.meshId), client);
+
+            //The SuperPeer-->Client channel is signed by the SuperPeer key in the library, always seed it.
+            parity.openChannel(superPeerId.toString(), client.meshId.toString());
+            mesh.seedChannel(client.meshId, true);
+            if (!fresh) {
+                parity.openChannel(client.meshId.toString(), superPeerId.toString());
+                mesh.seedChannel(client.meshId, false);
+            }
+        }
+
+        System.out.println("Fake Parity on " + parity.getRpcAddress() + ", RPC latency " + latency
+                + " ms, block time " + blockTime + " ms.");
+        PrintStream console = verbose ? System.out : Harness.silenceStdout();
+
+        tm.start();
+        long start = System.nanoTime();
+        for (Client client : clients.values()) {
+            client.sendNext();
+        }
+        boolean completed = done.await(timeout, TimeUnit.SECONDS);
+        long elapsed = System.nanoTime() - start;
+
+        tm.stop();
+        parity.stop();
+        System.setOut(console);
+
+        if (!completed) {
+            console.println("Timed out, the results cover the completed transactions only.");
+        }
+        report.print(console, elapsed, parity.getRequestCounts());
+    }
+
+
+    /**
+     * A simulated Client with its script of pre-signed transactions, one in flight at a time.
+     */
+    private final class Client {
+        final ECKey key;
+        final MeshId meshId;
+        final List<byte[]> script = new ArrayList<>();
+        final List<String> methods = new ArrayList<>();
+        final FakeMesh mesh;
+        final CountDownLatch done;
+        int next = 0;
+        volatile long sentAt;
+
+        Client(ECKey key, MeshId superPeerId, boolean fresh, int requests, FakeMesh mesh, CountDownLatch done)
+                throws RightMeshException {
+            this.key = key;
+            this.meshId = MeshId.fromBytes(key.getAddress());
+            this.mesh = mesh;
+            this.done = done;
+
+            String address = meshId.toString();
+            String superPeerAddress = superPeerId.toString();
+            if (fresh) {
+                JSONObject open = new JSONObject();
+                open.put("method", EtherUtility.METHOD_OPEN_CLIENT_TO_SUPER_PEER);
+                open.put("signedApproveTrans", signTransaction(BigInteger.ZERO, Settings.TOKEN_CONTRACT_ADDRESS,
+                        Settings.TOKEN_CONTRACT.getByName("approve")
+                                .encode(Settings.CHANNEL_CONTRACT_ADDRESS, Settings.INIT_DEPOSIT)));
+                open.put("signedOpenChannelTrans", signTransaction(BigInteger.ONE, Settings.CHANNEL_CONTRACT_ADDRESS,
+                        Settings.CHANNEL_CONTRACT.getByName("createChannelERC20")
+                                .encode(superPeerAddress, Settings.INIT_DEPOSIT)));
+                open.put("zeroBalanceProofSignature", sign(Settings.CHANNEL_CONTRACT
+                        .getByName("getBalanceHash").encode(superPeerAddress, BigInteger.ZERO)));
+                add(EtherUtility.METHOD_OPEN_CLIENT_TO_SUPER_PEER, open);
+            }
+
+            JSONObject getAll = new JSONObject();
+            getAll.put("method", EtherUtility.METHOD_GET_ALL);
+            add(EtherUtility.METHOD_GET_ALL, getAll);
+
+            for (int i = 1; script.size() < requests; i++) {
+                BigInteger balance = BigInteger.valueOf(i);
+                JSONObject update = new JSONObject();
+                update.put("method", EtherUtility.METHOD_ACTIVE_UPDATE);
+                update.put("closingHashBalance", balance.toString());
+                update.put("closingHashSignature", sign(Settings.CHANNEL_CONTRACT
+                        .getByName("getClosingHash").encode(superPeerAddress, balance)));
+                add(EtherUtility.METHOD_ACTIVE_UPDATE, update);
+            }
+        }
+
+        void sendNext() {
+            sentAt = System.nanoTime();
+            mesh.deliver(meshId, script.get(next));
+        }
+
+        void onResponse(byte[] data) {
+            long latency = System.nanoTime() - sentAt;
+            if (next >= script.size()) {
+                return;
+            }
+            report.record(methods.get(next), latency, data);
+
+            if (++next < script.size()) {
+                sendNext();
+            } else {
+                done.countDown();
+            }
+        }
+
+        private void add(String method, JSONObject transaction) {
+            methods.add(method);
+            script.add(transaction.toJSONString().getBytes(StandardCharsets.UTF_8));
+        }
+
+        /**
+         * Signs a message hash the way the fake channel contract computes it.
+         */
+        private String sign(byte[] callData) {
+            ECKey.ECDSASignature signature = key.sign(FakeParity.messageHash(callData));
+            byte[] bytes = new byte[65];
+            System.arraycopy(ByteUtil.bigIntegerToBytes(signature.r, 32), 0, bytes, 0, 32);
+            System.arraycopy(ByteUtil.bigIntegerToBytes(signature.s, 32), 0, bytes, 32, 32);
+            bytes[64] = signature.v;
+            return new String(Hex.encodeHex(bytes));
+        }
+
+        private String signTransaction(BigInteger nonce, String to, byte[] data) {
+            Transaction transaction = new Transaction(ConversionUtility.bigIntegerToBytes(nonce),
+                    ConversionUtility.bigIntegerToBytes(Settings.GAS_PRICE),
+                    ConversionUtility.bigIntegerToBytes(Settings.GAS_LIMIT),
+                    ByteUtil.hexStringToBytes(to),
+                    ConversionUtility.bigIntegerToBytes(BigInteger.ZERO),
+                    data,
+                    Settings.CHAIN_ID);
+            transaction.sign(key);
+            return "0x" + new String(Hex.encodeHex(transaction.getEncoded()));
+        }
+    }
+}
@@ -0,0 +1,166 @@
+package ether;
+
+import io.left.rightmesh.id.MeshId;
+import io.left.rightmesh.util.RightMeshException;
+import org.ethereum.crypto.ECKey;
+import org.json.simple.parser.ParseException;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+
+/**
+ * Replays a trace recorded by {@link TraceRecorder} against the Transactions Manager, with {@link FakeParity}
+ * and {@link FakeMesh} in place of the Ether node and the Mesh. Transactions are delivered at their recorded
+ * times, scaled by the speed, regardless of the responses, so the production arrival pattern is kept.
+ * Responses are matched to the transactions of each peer in order.
+ * <p>
+ * Every peer of the trace gets both channels seeded. Signatures recorded against the real channel contract
+ * don't verify against the message hashes of the fake, so replayed In-Channel opens are rejected before any
+ * chain work and replayed ActiveUpdates don't update the closing hash. The RPC traffic of every other step
+ * is reproduced.
+ * <p>
+ * Usage: TraceReplay &lt;trace file&gt; [--speed X (1 is real time, 0 as fast as possible)] [--latency MS]
+ * [--block-time MS] [--rpc-threads N] [--mode queue|perPeer] [--timeout SECONDS] [--verbose]
+ */
+public final class TraceReplay {
+
+    private final LatencyReport report = new LatencyReport();
+    private final Map<String, Queue<InFlight>> inFlight = new ConcurrentHashMap<>();
+    private final AtomicLong outstanding = new AtomicLong();
+
+    private TraceReplay() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = Harness.parseOptions(args);
+        String path = options.get("");
+        if (path == null) {
+            System.out.println("Usage: TraceReplay <trace file> [--speed X] [--latency MS] [--block-time MS] "
+                    + "[--rpc-threads N] [--mode queue|perPeer] [--timeout SECONDS] [--verbose]");
+            System.exit(1);
+        }
+        double speed = Double.parseDouble(options.getOrDefault("speed", "1"));
+        long latency = Long.parseLong(options.getOrDefault("latency", "5"));
+        long blockTime = Long.parseLong(options.getOrDefault("block-time", "1000"));
+        int rpcThreads = Integer.parseInt(options.getOrDefault("rpc-threads", "64"));
+        long timeout = Long.parseLong(options.getOrDefault("timeout", "600"));
+        boolean verbose = options.containsKey("verbose");
+
+        List<TraceRecorder.Record> records = new ArrayList<>();
+        try (TraceRecorder.Reader reader = new TraceRecorder.Reader(path)) {
+            TraceRecorder.Record record;
+            while ((record = reader.next()) != null) {
+                records.add(record);
+            }
+        }
+
+        Harness.configure(blockTime, options.getOrDefault("mode", "queue"));
+
+        new TraceReplay().run(records, speed, latency, blockTime, rpcThreads, timeout, verbose);
+        System.exit(0);
+    }
+
+    private void run(List<TraceRecorder.Record> records, double speed, long latency, long blockTime,
+                     int rpcThreads, long timeout, boolean verbose) throws IOException, RightMeshException,
+            InterruptedException {
+        FakeParity parity = new FakeParity(latency, blockTime, rpcThreads);
+        parity.start();
+
+        MeshId superPeerId = MeshId.fromBytes(new ECKey().getAddress());
+        FakeMesh mesh = new FakeMesh(superPeerId, this::onResponse);
+        TransactionsManager tm = new TransactionsManager(mesh, new Http(parity.getRpcAddress(), false));
+
+        Map<String, MeshId> peers = new ConcurrentHashMap<>();
+        for (TraceRecorder.Record record : records) {
+            MeshId peer = MeshId.fromBytes(record.peerId);
+            if (peers.putIfAbsent(Harness.key(peer), peer) == null) {
+                parity.openChannel(superPeerId.toString(), peer.toString());
+                parity.openChannel(peer.toString(), superPeerId.toString());
+                mesh.seedChannel(peer, true);
+                mesh.seedChannel(peer, false);
+                inFlight.put(Harness.key(peer), new ConcurrentLinkedQueue<>());
+            }
+        }
+
+        long recordedMicros = records.isEmpty() ? 0 : records.get(records.size() - 1).offsetMicros;
+        System.out.printf("Replaying %d transactions from %d peers, recorded over %.2f s, at %s speed ...%n",
+                records.size(), peers.size(), recordedMicros / 1e6, speed == 0 ? "maximum" : speed + "x");
+        PrintStream console = verbose ? System.out : Harness.silenceStdout();
+
+        tm.start();
+        long start = System.nanoTime();
+        for (TraceRecorder.Record record : records) {
+            if (speed > 0) {
+                long due = start + (long) (record.offsetMicros * 1000 / speed);
+                long wait;
+                while ((wait = due - System.nanoTime()) > 0) {
+                    LockSupport.parkNanos(wait);
+                }
+            }
+
+            MeshId peer = peers.get(Harness.key(MeshId.fromBytes(record.peerId)));
+            String method = method(record.data);
+            if (method != null) {
+                outstanding.incrementAndGet();
+                inFlight.get(Harness.key(peer)).add(new InFlight(method, System.nanoTime()));
+            }
+            mesh.deliver(peer, record.data);
+        }
+
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(timeout);
+        while (outstanding.get() > 0 && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        long elapsed = System.nanoTime() - start;
+
+        tm.stop();
+        parity.stop();
+        System.setOut(console);
+
+        if (outstanding.get() > 0) {
+            console.println(outstanding.get() + " transactions got no response within the timeout.");
+        }
+        report.print(console, elapsed, parity.getRequestCounts());
+    }
+
+    private void onResponse(MeshId destination, byte[] data) {
+        Queue<InFlight> queue = inFlight.get(Harness.key(destination));
+        InFlight transaction = queue == null ? null : queue.poll();
+        if (transaction != null) {
+            report.record(transaction.method, System.nanoTime() - transaction.sentAt, data);
+            outstanding.decrementAndGet();
+        }
+    }
+
+    /**
+     * @return  The method of a transaction the SuperPeer answers, or null if it won't be answered.
+     */
+    private static String method(byte[] data) {
+        try {
+            Object method = TransactionsManager.parseTransaction(data).get("method");
+            return method instanceof String && !method.equals("stop") ? (String) method : null;
+        } catch (ParseException | ClassCastException e) {
+            return null;
+        }
+    }
+
+    private static final class InFlight {
+        final String method;
+        final long sentAt;
+
+        InFlight(String method, long sentAt) {
+            this.method = method;
+            this.sentAt = sentAt;
+        }
+    }
+}
@@ -1,9 +1,20 @@
+import ether.AdminServer;
+import ether.Settings;
 import ether.TransactionsManager;
 
 import io.left.rightmesh.mesh.JavaMeshManager;
 import java.io.BufferedReader;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 public class SuperPeer {
     //TODO: Add logger instead of system.out
@@ -11,10 +22,15 @@ public class SuperPeer {
 
     private static final String EXIT_CMD = "exit";
     private static final String CLOSE_CHANNEL_CMD = "close";
+    private static final String CLOSE_ALL_CHANNELS_CMD = "close-all";
+    private static final long LIBRARY_POLL_INTERVAL = 5;
 
     JavaMeshManager mm;
     private boolean isRunning = true;
     private TransactionsManager tm;
+    private AdminServer adminServer;
+    private final AtomicBoolean finished = new AtomicBoolean(false);
+    private final CountDownLatch stopped = new CountDownLatch(1);
 
     public static void main(String[] args) {
         if (args.length > 0 && (args[0].equals("-h") || args[0].equals("--headless"))) {
@@ -27,30 +43,57 @@ public class SuperPeer {
         }
     }
 
+    /**
+     * Waits until the library has created its transaction manager, for at most
+     * {@link Settings#LIBRARY_READY_TIMEOUT} milliseconds.
+     *
+     * @return  True if the library is ready.
+     */
+    private boolean waitForLibrary() {
+        long start = System.nanoTime();
+        long deadline = start + TimeUnit.MILLISECONDS.toNanos(Settings.LIBRARY_READY_TIMEOUT);
+        while (mm.getTransactionManager() == null) {
+            if (System.nanoTime() > deadline) {
+                return false;
+            }
+            try {
+                Thread.sleep(LIBRARY_POLL_INTERVAL);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+        System.out.println("Library ready in " + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + " ms.");
+        return true;
+    }
+
     public SuperPeer(boolean interactive) {
         mm = new JavaMeshManager(true);
 
         System.out.println("Superpeer MeshID: " + mm.getUuid());
         System.out.println("Superpeer is waiting for library ... ");
-        try {
-            Thread.sleep(200);
-
-        } catch (InterruptedException ignored) { }
-
-
-        tm = TransactionsManager.getInstance(mm);
-        if (tm == null){
+        if (!waitForLibrary()) {
             System.out.println("Failed to get TransactionManager from library. Superpeer is shutting down ...");
             mm.stop();
             System.exit(0);
         }
+
+        tm = TransactionsManager.getInstance(mm);
+        tm.warmUp();
         tm.start();
-        System.out.println("Superpeer is ready!");
+        adminServer = new AdminServer(tm);
+        try {
+            adminServer.start();
+        } catch (IOException e) {
+            System.out.println("Failed to start the admin server: " + e.getMessage());
+        }
+        System.out.println("Superpeer is ready! Booted in "
+                + ManagementFactory.getRuntimeMXBean().getUptime() + " ms.");
 
-        // Stop everything when runtime is killed.
+        // Stop everything when runtime is killed, e.g. SIGTERM from systemd.
         Runtime.getRuntime().addShutdownHook(new Thread(() -> {
             SuperPeer.this.finish();
-        }));
+        }, "superpeer-shutdown"));
 
         if (interactive) {
             // Block for user input if running in interactive mode.
@@ -70,8 +113,10 @@ public class SuperPeer {
             finish();
             System.exit(0);
         } else {
-            // Infinitely loop if run in quiet mode.
-            while (true) { /* Loop until killed. */ }
+            // Park the main thread until the shutdown hook has stopped everything.
+            try {
+                stopped.await();
+            } catch (InterruptedException ignored) { }
         }
     }
 
@@ -84,10 +129,20 @@ public class SuperPeer {
 
     /**
      * Shut down mesh functionality cleanly. Must be run on exit or port will remain bound.
+     * Stops taking new transactions, drains the queued ones within the configured deadline and only then stops
+     * the mesh, so responses to drained transactions can still be delivered. Runs only once.
      */
     private void finish() {
+        if (!finished.compareAndSet(false, true)) {
+            return;
+        }
+
+        System.out.println("Superpeer is shutting down ...");
+        adminServer.stop();
         tm.stop();
         mm.stop();
+        stopped.countDown();
+        System.out.println("Superpeer stopped.");
     }
 
     private void processInput(String msg) {
@@ -106,18 +161,45 @@ public class SuperPeer {
                 processCloseCmd(args);
                 break;
 
+            case CLOSE_ALL_CHANNELS_CMD:
+                tm.closeAllChannels();
+                break;
+
             default:
                 System.out.println("Invalid command.");
                 break;
         }
     }
 
+    /**
+     * Closes the channels of a single peer (`close <address>`), or of every peer listed in a file,
+     * one address per line (`close <file>`).
+     */
     private void processCloseCmd(String[] args) {
         if(args.length != 2) {
             System.out.println("Invalid args.");
             return;
         }
 
-        tm.closeChannels(args[1]);
+        File addressFile = new File(args[1]);
+        if (!addressFile.isFile()) {
+            tm.closeChannels(args[1]);
+            return;
+        }
+
+        List<String> addresses = new ArrayList<>();
+        try {
+            for (String line : Files.readAllLines(addressFile.toPath(), StandardCharsets.UTF_8)) {
+                line = line.trim();
+                if (!line.isEmpty() && !line.startsWith("#")) {
+                    addresses.add(line);
+                }
+            }
+        } catch (IOException e) {
+            System.out.println("Failed to read addresses from " + args[1] + ": " + e.getMessage());
+            return;
+        }
+
+        tm.closeChannels(addresses);
     }
 }
\ No newline at end of file
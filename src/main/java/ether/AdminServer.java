@@ -0,0 +1,251 @@
+package ether;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.json.simple.JSONObject;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+
+/**
+ * Embedded HTTP server for local administration and monitoring. Runs on its own small thread pool, so requests
+ * never compete with the transactions processing. Endpoints:
+ * <ul>
+ *     <li>GET /health - 200 if the Transactions Manager is running, otherwise 503.</li>
+ *     <li>GET /metrics - the metrics in the Prometheus text format.</li>
+ *     <li>GET /queue - the depth of the transactions queue.</li>
+ *     <li>GET /channels - the channels the SuperPeer holds bills for.</li>
+ *     <li>GET /pending - the SuperPeer transactions waiting to be mined.</li>
+ *     <li>GET /config - the current version of the runtime configuration.</li>
+ *     <li>POST /close?peer=address[,address...] or /close?peer=all - closes channels in the background.</li>
+ * </ul>
+ */
+public final class AdminServer {
+
+    private static final String JSON_CONTENT_TYPE = "application/json; charset=utf-8";
+    private static final String PROMETHEUS_CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+    private final TransactionsManager tm;
+    private HttpServer server = null;
+    private ExecutorService executor = null;
+    private ExecutorService closer = null;
+
+    /**
+     * @param tm    The Transactions Manager to report on.
+     */
+    public AdminServer(TransactionsManager tm) {
+        this.tm = tm;
+    }
+
+    /**
+     * Starts listening on {@link Settings#ADMIN_ADDRESS}:{@link Settings#ADMIN_PORT}, a port of 0 disables
+     * the server.
+     *
+     * @throws IOException  Thrown if the server can't bind the port.
+     */
+    public synchronized void start() throws IOException {
+        if (server != null || Settings.ADMIN_PORT == 0) {
+            return;
+        }
+
+        server = HttpServer.create(new InetSocketAddress(Settings.ADMIN_ADDRESS, Settings.ADMIN_PORT), 0);
+        server.createContext("/health", this::handleHealth);
+        server.createContext("/metrics", this::handleMetrics);
+        server.createContext("/queue", this::handleQueue);
+        server.createContext("/channels", this::handleChannels);
+        server.createContext("/pending", this::handlePending);
+        server.createContext("/close", this::handleClose);
+        server.createContext("/config", this::handleConfig);
+
+        AtomicInteger threadCount = new AtomicInteger();
+        executor = Executors.newFixedThreadPool(Settings.ADMIN_THREADS, runnable -> {
+            Thread thread = new Thread(runnable, "admin-server-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        //Closes take minutes, they run one request at a time outside the request pool.
+        closer = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "admin-close");
+            thread.setDaemon(true);
+            return thread;
+        });
+        server.setExecutor(executor);
+        server.start();
+
+        System.out.println("Admin server is listening on " + Settings.ADMIN_ADDRESS + ":" + Settings.ADMIN_PORT);
+    }
+
+    /**
+     * Stops the server, a close in progress is interrupted.
+     */
+    public synchronized void stop() {
+        if (server != null) {
+            server.stop(0);
+            executor.shutdownNow();
+            closer.shutdownNow();
+            server = null;
+            executor = null;
+            closer = null;
+        }
+    }
+
+
+    private void handleHealth(HttpExchange exchange) throws IOException {
+        if (!allow(exchange, "GET")) {
+            return;
+        }
+
+        boolean running = tm.isRunning();
+        JSONObject health = new JSONObject();
+        health.put("status", running ? "UP" : "DOWN");
+        health.put("queueDepth", tm.getQueueDepth());
+        health.put("pendingTransactions", PendingTransactions.getInstance().size());
+        send(exchange, running ? 200 : 503, JSON_CONTENT_TYPE, health.toJSONString());
+    }
+
+    private void handleMetrics(HttpExchange exchange) throws IOException {
+        if (!allow(exchange, "GET")) {
+            return;
+        }
+
+        send(exchange, 200, PROMETHEUS_CONTENT_TYPE, Metrics.getInstance().scrape());
+    }
+
+    private void handleQueue(HttpExchange exchange) throws IOException {
+        if (!allow(exchange, "GET")) {
+            return;
+        }
+
+        JSONObject queue = new JSONObject();
+        queue.put("depth", tm.getQueueDepth());
+        send(exchange, 200, JSON_CONTENT_TYPE, queue.toJSONString());
+    }
+
+    private void handleChannels(HttpExchange exchange) throws IOException {
+        if (!allow(exchange, "GET")) {
+            return;
+        }
+
+        send(exchange, 200, JSON_CONTENT_TYPE, tm.getChannels().toJSONString());
+    }
+
+    private void handlePending(HttpExchange exchange) throws IOException {
+        if (!allow(exchange, "GET")) {
+            return;
+        }
+
+        send(exchange, 200, JSON_CONTENT_TYPE, PendingTransactions.getInstance().toJSON().toJSONString());
+    }
+
+    private void handleConfig(HttpExchange exchange) throws IOException {
+        if (!allow(exchange, "GET")) {
+            return;
+        }
+
+        send(exchange, 200, JSON_CONTENT_TYPE, Settings.current().toJSON().toJSONString());
+    }
+
+    private void handleClose(HttpExchange exchange) throws IOException {
+        if (!allow(exchange, "POST")) {
+            return;
+        }
+
+        String peer = parameter(exchange.getRequestURI().getRawQuery(), "peer");
+        if (peer == null) {
+            peer = parameter(readBody(exchange), "peer");
+        }
+        if (peer == null || peer.isEmpty()) {
+            send(exchange, 400, "text/plain", "Missing peer parameter.\n");
+            return;
+        }
+
+        Runnable close;
+        if (peer.equals("all")) {
+            close = tm::closeAllChannels;
+        } else {
+            List<String> peers = new ArrayList<>(Arrays.asList(peer.split(",")));
+            close = () -> tm.closeChannels(peers);
+        }
+
+        try {
+            closer.execute(close);
+        } catch (RejectedExecutionException e) {
+            send(exchange, 503, "text/plain", "Admin server is stopping.\n");
+            return;
+        }
+
+        JSONObject accepted = new JSONObject();
+        accepted.put("status", "accepted");
+        accepted.put("peer", peer);
+        send(exchange, 202, JSON_CONTENT_TYPE, accepted.toJSONString());
+    }
+
+    /**
+     * Rejects the request with 405 if it doesn't use the expected method.
+     *
+     * @return  True if the request can be handled.
+     */
+    private static boolean allow(HttpExchange exchange, String method) throws IOException {
+        if (method.equals(exchange.getRequestMethod())) {
+            return true;
+        }
+
+        exchange.getResponseHeaders().set("Allow", method);
+        send(exchange, 405, "text/plain", "Method not allowed.\n");
+        return false;
+    }
+
+    /**
+     * Finds a parameter in a URL-encoded query string or form body.
+     *
+     * @return  The decoded value, or null if the parameter is missing.
+     */
+    private static String parameter(String query, String name) throws IOException {
+        if (query == null) {
+            return null;
+        }
+
+        for (String pair : query.split("&")) {
+            int separator = pair.indexOf('=');
+            String key = separator < 0 ? pair : pair.substring(0, separator);
+            if (URLDecoder.decode(key, "UTF-8").equals(name)) {
+                return separator < 0 ? "" : URLDecoder.decode(pair.substring(separator + 1), "UTF-8").trim();
+            }
+        }
+        return null;
+    }
+
+    private static String readBody(HttpExchange exchange) throws IOException {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        try (InputStream in = exchange.getRequestBody()) {
+            byte[] buffer = new byte[1024];
+            int read;
+            while ((read = in.read(buffer)) != -1 && body.size() < 64 * 1024) {
+                body.write(buffer, 0, read);
+            }
+        }
+        return new String(body.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    private static void send(HttpExchange exchange, int status, String contentType, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", contentType);
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+}
@@ -0,0 +1,296 @@
+package ether;
+
+import io.left.rightmesh.id.MeshId;
+import io.left.rightmesh.util.EtherUtility;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+
+/**
+ * Keeps a standing allowance of the SuperPeer to the channel contract, so opening an out-channel takes a single
+ * createChannelERC20 instead of an approve followed by the open. The allowance is set to
+ * {@link Settings#STANDING_ALLOWANCE} initial deposits, every open reserves its deposit locally, and an approve
+ * for the full amount again is submitted in the background once less than
+ * {@link Settings#ALLOWANCE_TOP_UP_PERCENT} percent is left.
+ * <p>
+ * approve sets the allowance rather than adding to it, and the transactions of the SuperPeer are mined in nonce
+ * order. The opens signed before the top-up approve spend what is left of the old allowance, the ones signed
+ * after it spend the new one, so the local count restarts at the full amount once the Ether node accepted the
+ * approve. For that to hold, an open takes its nonce together with its deposit, under the same lock the approve
+ * is signed and submitted under.
+ * Whenever the count may be off, it is dropped and read again from the pending state of the Ether node.
+ */
+public final class AllowanceManager {
+
+    //How long an open waits for a top-up when the allowance has run out.
+    private static final long TOP_UP_WAIT_MILLIS = 30000;
+
+    private final MeshId owner;
+    private final Http httpAgent;
+    private final NonceManager ownNonces;
+    //A lock rather than a monitor, the seeding RPC would pin a virtual thread.
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition toppedUp = lock.newCondition();
+    //Written under the lock, read without it by the gauge.
+    private volatile BigInteger remaining = null;
+    private boolean toppingUp = false;
+    private ExecutorService topUpExecutor = null;
+
+    /**
+     * @param owner     The SuperPeer, which funds the out-channels.
+     * @param httpAgent The Http wrapper.
+     * @param ownNonces The nonces of the SuperPeer.
+     */
+    public AllowanceManager(MeshId owner, Http httpAgent, NonceManager ownNonces) {
+        this.owner = owner;
+        this.httpAgent = httpAgent;
+        this.ownNonces = ownNonces;
+        Metrics.getInstance().gauge("superpeer_allowance_deposits",
+                "Initial deposits left in the standing allowance to the channel contract.", this::getDepositsLeft);
+    }
+
+    /**
+     * Starts the top-ups, the allowance is checked right away so the first open doesn't wait for an approve.
+     */
+    public synchronized void start() {
+        if (topUpExecutor != null) {
+            return;
+        }
+
+        topUpExecutor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "allowance-top-up");
+            thread.setDaemon(true);
+            return thread;
+        });
+        lock.lock();
+        try {
+            scheduleTopUpIfLow();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Stops the top-ups, an approve already submitted is left to be mined.
+     */
+    public synchronized void stop() {
+        if (topUpExecutor != null) {
+            topUpExecutor.shutdownNow();
+            topUpExecutor = null;
+        }
+        lock.lock();
+        try {
+            remaining = null;
+            toppingUp = false;
+            toppedUp.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Reserves a deposit out of the standing allowance, waiting for a top-up if it has run out, and the nonce of
+     * the open that spends it.
+     *
+     * @param deposit   The deposit of the channel about to be opened.
+     * @return          The nonce to sign the open with, without an approve, or null if there is no allowance
+     *                  or no nonce. The nonce must be released or reset with the nonce manager.
+     */
+    public BigInteger reserve(BigInteger deposit) {
+        return reserve(deposit, 1);
+    }
+
+    /**
+     * Reserves the deposits of a run of transactions out of the standing allowance, waiting for a top-up if it
+     * has run out, and their consecutive nonces.
+     *
+     * @param deposit   The sum of the deposits.
+     * @param count     The number of transactions spending them.
+     * @return          The first of the nonces, or null if there is no allowance or no nonce. The nonces must be
+     *                  released or reset with the nonce manager.
+     */
+    public BigInteger reserve(BigInteger deposit, int count) {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(TOP_UP_WAIT_MILLIS);
+        lock.lock();
+        try {
+            while (true) {
+                if (remaining == null && !toppingUp) {
+                    remaining = queryAllowance();
+                }
+                if (remaining != null && remaining.compareTo(deposit) >= 0) {
+                    //Ordered against the nonce of a top-up approve, which is taken under this lock too.
+                    BigInteger nonce = ownNonces.acquire(count);
+                    if (nonce == null) {
+                        return null;
+                    }
+                    remaining = remaining.subtract(deposit);
+                    scheduleTopUpIfLow();
+                    return nonce;
+                }
+
+                if (!scheduleTopUpIfLow()) {
+                    return null;
+                }
+                long left = deadline - System.nanoTime();
+                if (left <= 0) {
+                    return null;
+                }
+                toppedUp.awaitNanos(left);
+                if (!toppingUp && remaining == null) {
+                    //The top-up failed, or the manager was stopped.
+                    return null;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Drops the local count, must be called when an open that reserved a deposit may not have been mined.
+     * The next reservation reads the allowance again from the Ether node.
+     */
+    public void resync() {
+        lock.lock();
+        try {
+            if (!toppingUp) {
+                remaining = null;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+
+    /**
+     * Submits a top-up if the allowance is below the threshold and none is in progress. Called with the lock held.
+     *
+     * @return  True if a top-up is in progress.
+     */
+    private boolean scheduleTopUpIfLow() {
+        if (toppingUp) {
+            return true;
+        }
+        ExecutorService executor = topUpExecutor;
+        if (executor == null) {
+            return false;
+        }
+
+        if (remaining == null) {
+            remaining = queryAllowance();
+        }
+        BigInteger target = getTarget(Settings.current());
+        BigInteger threshold = target.multiply(BigInteger.valueOf(Settings.ALLOWANCE_TOP_UP_PERCENT))
+                .divide(BigInteger.valueOf(100));
+        if (remaining != null && remaining.compareTo(threshold) >= 0) {
+            return false;
+        }
+
+        toppingUp = true;
+        executor.execute(() -> topUp(target));
+        return true;
+    }
+
+    private void topUp(BigInteger target) {
+        boolean done = false;
+        try {
+            done = submitApprove(target);
+        } finally {
+            lock.lock();
+            try {
+                toppingUp = false;
+                if (!done) {
+                    Metrics.getInstance().error("allowance_top_up");
+                    remaining = null;
+                }
+                toppedUp.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Signs and submits the approve, then waits for it to be mined.
+     *
+     * @return  True if the approve was mined.
+     */
+    private boolean submitApprove(BigInteger target) {
+        Config config = Settings.current();
+        BigInteger gasPrice = GasPriceOracle.getInstance().getGasPrice(GasPriceOracle.Tier.STANDARD);
+
+        BigInteger nonce;
+        EtherClient.Resigner resigner;
+        String transactionId;
+        lock.lock();
+        try {
+            nonce = ownNonces.acquire();
+            if (nonce == null) {
+                return false;
+            }
+            resigner = newGasPrice -> EtherUtility.getSignedApproveTrans(owner, target, nonce,
+                    Settings.TOKEN_ABI, newGasPrice, config.gasLimit, Settings.CHANNEL_CONTRACT_ADDRESS,
+                    Settings.TOKEN_CONTRACT_ADDRESS, Settings.CHAIN_ID);
+            String signed = resigner.resign(gasPrice);
+
+            System.out.println("Topping up the channel contract allowance to " + target + " Tokens.");
+            try {
+                transactionId = signed == null ? null
+                        : EtherClient.submitApprove(owner.toString(), target, signed, httpAgent);
+            } catch (IOException | IllegalArgumentException e) {
+                if (Settings.DEBUG_INFO) {
+                    System.out.println("Failed to top up the allowance, " + e.getClass().getCanonicalName()
+                            + ": " + e.getMessage());
+                }
+                transactionId = null;
+            }
+            if (transactionId == null) {
+                //The allowance stays as it was, and the transactions signed after the nonce don't wait behind it.
+                ownNonces.reset(nonce);
+                return false;
+            }
+            ownNonces.release(nonce);
+
+            //The opens reserved from now on get later nonces, they spend the new allowance.
+            remaining = target;
+            toppedUp.signalAll();
+        } finally {
+            lock.unlock();
+        }
+
+        return EtherClient.awaitApprove(transactionId, gasPrice, resigner, httpAgent);
+    }
+
+    private BigInteger queryAllowance() {
+        try {
+            //The pending state includes the opens submitted but not mined yet.
+            return EtherClient.getAllowance(owner.toString(), Settings.CHANNEL_CONTRACT_ADDRESS, "pending",
+                    httpAgent);
+        } catch (IOException | NumberFormatException e) {
+            if (Settings.DEBUG_INFO) {
+                System.out.println("Failed to query the allowance, " + e.getClass().getCanonicalName()
+                        + ": " + e.getMessage());
+            }
+            return null;
+        }
+    }
+
+    private static BigInteger getTarget(Config config) {
+        return config.initDeposit.multiply(BigInteger.valueOf(Settings.STANDING_ALLOWANCE));
+    }
+
+    private long getDepositsLeft() {
+        BigInteger left = remaining;
+        BigInteger deposit = Settings.current().initDeposit;
+        return left == null ? -1 : left.divide(deposit).longValue();
+    }
+}
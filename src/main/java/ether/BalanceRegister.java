@@ -0,0 +1,60 @@
+package ether;
+
+import org.apache.commons.lang3.tuple.ImmutablePair;
+
+import java.math.BigInteger;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+
+/**
+ * Moves the most recent signed balance of each channel forward only. An update is accepted if its balance is
+ * higher than the one stored for the channel, so updates of the same channel can be processed concurrently and
+ * a stale signature never overwrites a newer one.
+ * <p>
+ * The register holds nothing between updates, the pairs live where the caller stores them. The compare and the
+ * store of an update run under the lock of the channel's entry in a map, which only exists while they run.
+ */
+public final class BalanceRegister {
+
+    //Empty between updates, an entry is only locked while its channel is compared and stored.
+    private final ConcurrentHashMap<String, Object> updating = new ConcurrentHashMap<>();
+
+    /**
+     * Accepts the pair if its balance is higher than the current balance of the channel, and hands it to the
+     * sink. The current pair is read and the sink runs one update at a time per channel, so the sink always sees
+     * the most recent pair last, and once {@link #remove(String)} returned no earlier update reaches the sink.
+     *
+     * @param channel   The channel key.
+     * @param candidate The signature and the balance.
+     * @param current   Reads the stored pair of the channel, returns null if there is none.
+     * @param sink      Stores the accepted pair, e.g. in the bill stores.
+     * @return          True if the pair was accepted, otherwise returns False.
+     * @throws RuntimeException Rethrown from the current pair reader or the sink.
+     */
+    public boolean offer(String channel, ImmutablePair<byte[], BigInteger> candidate,
+                         Supplier<ImmutablePair<byte[], BigInteger>> current,
+                         Consumer<ImmutablePair<byte[], BigInteger>> sink) {
+        boolean[] accepted = new boolean[1];
+        updating.compute(channel, (key, unused) -> {
+            ImmutablePair<byte[], BigInteger> latest = current.get();
+            if (latest == null || candidate.right.compareTo(latest.right) > 0) {
+                sink.accept(candidate);
+                accepted[0] = true;
+            }
+            return null;
+        });
+        return accepted[0];
+    }
+
+    /**
+     * Waits for an update of the channel in progress, must be called when the channel is closed or reopened,
+     * before its stored pairs are dropped.
+     *
+     * @param channel   The channel key.
+     */
+    public void remove(String channel) {
+        updating.compute(channel, (key, unused) -> null);
+    }
+}
@@ -0,0 +1,468 @@
+package ether;
+
+import org.apache.commons.lang3.tuple.ImmutablePair;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.StampedLock;
+
+
+/**
+ * Compact in-memory store of channel bills, keyed by the 20 bytes Ether address of the remote peer. The
+ * Transactions Manager reads its bills from here. The store doesn't outlive the process, every bill is also
+ * written through to the library's transaction manager, which keeps them across restarts.
+ *
+ * A bill holds two proofs, the balance proof and the closing hash, each made of a 65 bytes signature and a
+ * balance. Instead of a graph of pairs, byte arrays and BigIntegers per bill, the store keeps all bills in a
+ * few flat arrays: the address packed into three longs, the balances as fixed-width 192 bits values (the
+ * contract's uint192) in three longs each, and the signatures back to back in a single byte array.
+ * The lookups into buffers supplied by the caller don't allocate, {@link #getProof(byte[], Proof)} builds the
+ * pair the handlers pass around.
+ * <p>
+ * The arrays are published together as one table and replaced as a whole on resize, an optimistic lookup reads
+ * the table once so its indexes always match the arrays it reads from.
+ */
+public final class BillStore {
+
+    /**
+     * The proofs held in a bill.
+     */
+    public enum Proof {
+        BALANCE_PROOF, CLOSING_HASH
+    }
+
+    public static final int ADDRESS_LENGTH = 20;
+    public static final int SIGNATURE_LENGTH = 65;
+    public static final int BALANCE_WORDS = 3;
+
+    private static final int KEY_WORDS = 3;
+    private static final int PROOFS = Proof.values().length;
+    private static final long USED = 1L << 32;
+    private static final BigInteger WORD_MASK = BigInteger.ONE.shiftLeft(64).subtract(BigInteger.ONE);
+
+    private final StampedLock lock = new StampedLock();
+
+    private Table table;
+    private int size = 0;
+
+    /**
+     * @param initialCapacity   The number of bills to allocate room for, rounded up to a power of two.
+     */
+    public BillStore(int initialCapacity) {
+        table = new Table(Integer.highestOneBit(Math.max(16, initialCapacity) * 2 - 1));
+    }
+
+    /**
+     * @param balance   The balance.
+     * @return          True if the balance is a uint192, the range the channel contract and the store accept.
+     */
+    public static boolean fitsBalance(BigInteger balance) {
+        return balance.signum() >= 0 && balance.bitLength() <= 64 * BALANCE_WORDS;
+    }
+
+    /**
+     * Stores a proof of the bill, replacing the previous one.
+     *
+     * @param address       The 20 bytes address of the remote peer.
+     * @param proof         The proof to store.
+     * @param signature     The 65 bytes signature.
+     * @param balance       The balance, must fit in 192 bits.
+     * @throws IllegalArgumentException Thrown if the signature or the balance doesn't fit the store.
+     */
+    public void put(byte[] address, Proof proof, byte[] signature, BigInteger balance)
+            throws IllegalArgumentException {
+        checkAddress(address);
+        if (signature == null || signature.length != SIGNATURE_LENGTH) {
+            throw new IllegalArgumentException("Signature must be " + SIGNATURE_LENGTH + " bytes.");
+        }
+        if (!fitsBalance(balance)) {
+            throw new IllegalArgumentException("Balance doesn't fit in uint192: " + balance);
+        }
+
+        long stamp = lock.writeLock();
+        try {
+            if ((size + 1) * 4L > table.capacity * 3L) {
+                table = table.resize(table.capacity * 2);
+            }
+
+            Table t = table;
+            int slot = t.find(address);
+            if (slot < 0) {
+                slot = -slot - 1;
+                t.keys[slot * KEY_WORDS] = word(address, 0);
+                t.keys[slot * KEY_WORDS + 1] = word(address, 8);
+                t.keys[slot * KEY_WORDS + 2] = tail(address) | USED;
+                size++;
+            }
+
+            int index = slot * PROOFS + proof.ordinal();
+            for (int i = 0; i < BALANCE_WORDS; i++) {
+                t.balances[index * BALANCE_WORDS + i] =
+                        balance.shiftRight(64 * (BALANCE_WORDS - 1 - i)).and(WORD_MASK).longValue();
+            }
+            System.arraycopy(signature, 0, t.signatures, index * SIGNATURE_LENGTH, SIGNATURE_LENGTH);
+            t.present[slot] |= 1 << proof.ordinal();
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Copies the balance of a proof, most significant word first.
+     *
+     * @param address   The 20 bytes address of the remote peer.
+     * @param proof     The proof.
+     * @param out       Receives the balance, must hold {@link #BALANCE_WORDS} words.
+     * @return          True if the proof was found, otherwise returns False.
+     */
+    public boolean getBalance(byte[] address, Proof proof, long[] out) {
+        long stamp = lock.tryOptimisticRead();
+        boolean found = table.readBalance(address, proof, out);
+        if (!lock.validate(stamp)) {
+            stamp = lock.readLock();
+            try {
+                found = table.readBalance(address, proof, out);
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Gets the balance of a proof.
+     *
+     * @param address   The 20 bytes address of the remote peer.
+     * @param proof     The proof.
+     * @return          The balance, or null if the proof wasn't found.
+     */
+    public BigInteger getBalance(byte[] address, Proof proof) {
+        long[] words = new long[BALANCE_WORDS];
+        if (!getBalance(address, proof, words)) {
+            return null;
+        }
+        return toBigInteger(words);
+    }
+
+    /**
+     * Gets a proof in the shape the RightMesh library hands bills around, the signature and the balance read
+     * together.
+     *
+     * @param address   The 20 bytes address of the remote peer.
+     * @param proof     The proof.
+     * @return          The signature and the balance, or null if the proof wasn't found.
+     */
+    public ImmutablePair<byte[], BigInteger> getProof(byte[] address, Proof proof) {
+        byte[] signature = new byte[SIGNATURE_LENGTH];
+        long[] words = new long[BALANCE_WORDS];
+        long stamp = lock.tryOptimisticRead();
+        boolean found = table.readProof(address, proof, signature, words);
+        if (!lock.validate(stamp)) {
+            stamp = lock.readLock();
+            try {
+                found = table.readProof(address, proof, signature, words);
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+        return found ? new ImmutablePair<>(signature, toBigInteger(words)) : null;
+    }
+
+    /**
+     * Copies the signature of a proof.
+     *
+     * @param address   The 20 bytes address of the remote peer.
+     * @param proof     The proof.
+     * @param out       Receives the signature.
+     * @param offset    The offset in the buffer to copy the {@link #SIGNATURE_LENGTH} bytes to.
+     * @return          True if the proof was found, otherwise returns False.
+     */
+    public boolean getSignature(byte[] address, Proof proof, byte[] out, int offset) {
+        long stamp = lock.tryOptimisticRead();
+        boolean found = table.readSignature(address, proof, out, offset);
+        if (!lock.validate(stamp)) {
+            stamp = lock.readLock();
+            try {
+                found = table.readSignature(address, proof, out, offset);
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Checks if a proof is stored.
+     *
+     * @param address   The 20 bytes address of the remote peer.
+     * @param proof     The proof.
+     * @return          True if the proof was found, otherwise returns False.
+     */
+    public boolean contains(byte[] address, Proof proof) {
+        long stamp = lock.tryOptimisticRead();
+        boolean found = table.hasProof(address, proof);
+        if (!lock.validate(stamp)) {
+            stamp = lock.readLock();
+            try {
+                found = table.hasProof(address, proof);
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Removes the bill of the remote peer.
+     *
+     * @param address   The 20 bytes address of the remote peer.
+     * @return          True if a bill was removed, otherwise returns False.
+     */
+    public boolean remove(byte[] address) {
+        checkAddress(address);
+
+        long stamp = lock.writeLock();
+        try {
+            Table t = table;
+            int slot = t.find(address);
+            if (slot < 0) {
+                return false;
+            }
+
+            //Backward shift deletion keeps the probe sequences intact without tombstones.
+            int mask = t.capacity - 1;
+            int hole = slot;
+            int next = (hole + 1) & mask;
+            while (t.isUsed(next)) {
+                int home = hash(t.keys[next * KEY_WORDS], t.keys[next * KEY_WORDS + 1], t.keys[next * KEY_WORDS + 2])
+                        & mask;
+                if (((next - home) & mask) >= ((next - hole) & mask)) {
+                    t.moveSlot(next, hole);
+                    hole = next;
+                }
+                next = (next + 1) & mask;
+            }
+            t.clearSlot(hole);
+            size--;
+            return true;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * @return  The number of bills in the store.
+     */
+    public int size() {
+        long stamp = lock.readLock();
+        try {
+            return size;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Takes a snapshot of the addresses of all bills in the store.
+     *
+     * @return  The 20 bytes addresses.
+     */
+    public List<byte[]> addresses() {
+        long stamp = lock.readLock();
+        try {
+            Table t = table;
+            List<byte[]> addresses = new ArrayList<>(size);
+            for (int slot = 0; slot < t.capacity; slot++) {
+                if (t.isUsed(slot)) {
+                    addresses.add(t.address(slot));
+                }
+            }
+            return addresses;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+
+    /**
+     * The arrays of the store at one capacity. A resize builds a new table, so the arrays of a table always
+     * have matching lengths.
+     */
+    private static final class Table {
+        final int capacity;
+        final long[] keys;
+        final long[] balances;
+        final byte[] signatures;
+        final byte[] present;
+
+        Table(int capacity) {
+            this.capacity = capacity;
+            keys = new long[capacity * KEY_WORDS];
+            balances = new long[capacity * PROOFS * BALANCE_WORDS];
+            signatures = new byte[capacity * PROOFS * SIGNATURE_LENGTH];
+            present = new byte[capacity];
+        }
+
+        boolean readBalance(byte[] address, Proof proof, long[] out) {
+            int slot = find(address);
+            if (slot < 0 || (present[slot] & (1 << proof.ordinal())) == 0) {
+                return false;
+            }
+
+            int index = slot * PROOFS + proof.ordinal();
+            System.arraycopy(balances, index * BALANCE_WORDS, out, 0, BALANCE_WORDS);
+            return true;
+        }
+
+        boolean readSignature(byte[] address, Proof proof, byte[] out, int offset) {
+            int slot = find(address);
+            if (slot < 0 || (present[slot] & (1 << proof.ordinal())) == 0) {
+                return false;
+            }
+
+            int index = slot * PROOFS + proof.ordinal();
+            System.arraycopy(signatures, index * SIGNATURE_LENGTH, out, offset, SIGNATURE_LENGTH);
+            return true;
+        }
+
+        boolean readProof(byte[] address, Proof proof, byte[] signature, long[] words) {
+            int slot = find(address);
+            if (slot < 0 || (present[slot] & (1 << proof.ordinal())) == 0) {
+                return false;
+            }
+
+            int index = slot * PROOFS + proof.ordinal();
+            System.arraycopy(signatures, index * SIGNATURE_LENGTH, signature, 0, SIGNATURE_LENGTH);
+            System.arraycopy(balances, index * BALANCE_WORDS, words, 0, BALANCE_WORDS);
+            return true;
+        }
+
+        boolean hasProof(byte[] address, Proof proof) {
+            int slot = find(address);
+            return slot >= 0 && (present[slot] & (1 << proof.ordinal())) != 0;
+        }
+
+        /**
+         * Probes for the address. Reads may run against a concurrent write when called optimistically,
+         * so the probe is bounded by the capacity.
+         *
+         * @return  The slot of the address, or (-insertionSlot - 1) if it's not in the table.
+         */
+        int find(byte[] address) {
+            long k0 = word(address, 0);
+            long k1 = word(address, 8);
+            long k2 = tail(address) | USED;
+
+            int mask = capacity - 1;
+            int slot = hash(k0, k1, k2) & mask;
+            for (int probes = 0; probes <= mask; probes++) {
+                long used = keys[slot * KEY_WORDS + 2];
+                if (used == 0) {
+                    return -slot - 1;
+                }
+                if (used == k2 && keys[slot * KEY_WORDS] == k0 && keys[slot * KEY_WORDS + 1] == k1) {
+                    return slot;
+                }
+                slot = (slot + 1) & mask;
+            }
+            return -1 - capacity;
+        }
+
+        boolean isUsed(int slot) {
+            return keys[slot * KEY_WORDS + 2] != 0;
+        }
+
+        byte[] address(int slot) {
+            byte[] address = new byte[ADDRESS_LENGTH];
+            long k0 = keys[slot * KEY_WORDS];
+            long k1 = keys[slot * KEY_WORDS + 1];
+            long k2 = keys[slot * KEY_WORDS + 2];
+            for (int i = 0; i < 8; i++) {
+                address[i] = (byte) (k0 >>> (56 - 8 * i));
+                address[8 + i] = (byte) (k1 >>> (56 - 8 * i));
+            }
+            for (int i = 0; i < 4; i++) {
+                address[16 + i] = (byte) (k2 >>> (24 - 8 * i));
+            }
+            return address;
+        }
+
+        void moveSlot(int from, int to) {
+            System.arraycopy(keys, from * KEY_WORDS, keys, to * KEY_WORDS, KEY_WORDS);
+            System.arraycopy(balances, from * PROOFS * BALANCE_WORDS, balances, to * PROOFS * BALANCE_WORDS,
+                    PROOFS * BALANCE_WORDS);
+            System.arraycopy(signatures, from * PROOFS * SIGNATURE_LENGTH, signatures,
+                    to * PROOFS * SIGNATURE_LENGTH, PROOFS * SIGNATURE_LENGTH);
+            present[to] = present[from];
+        }
+
+        void clearSlot(int slot) {
+            keys[slot * KEY_WORDS] = 0;
+            keys[slot * KEY_WORDS + 1] = 0;
+            keys[slot * KEY_WORDS + 2] = 0;
+            present[slot] = 0;
+        }
+
+        /**
+         * @param newCapacity   The capacity of the new table, a power of two.
+         * @return              A new table holding the bills of this one, which is left untouched for the
+         *                      optimistic reads still running against it.
+         */
+        Table resize(int newCapacity) {
+            Table resized = new Table(newCapacity);
+            int mask = newCapacity - 1;
+            for (int from = 0; from < capacity; from++) {
+                long k2 = keys[from * KEY_WORDS + 2];
+                if (k2 == 0) {
+                    continue;
+                }
+
+                int to = hash(keys[from * KEY_WORDS], keys[from * KEY_WORDS + 1], k2) & mask;
+                while (resized.isUsed(to)) {
+                    to = (to + 1) & mask;
+                }
+
+                System.arraycopy(keys, from * KEY_WORDS, resized.keys, to * KEY_WORDS, KEY_WORDS);
+                System.arraycopy(balances, from * PROOFS * BALANCE_WORDS,
+                        resized.balances, to * PROOFS * BALANCE_WORDS, PROOFS * BALANCE_WORDS);
+                System.arraycopy(signatures, from * PROOFS * SIGNATURE_LENGTH,
+                        resized.signatures, to * PROOFS * SIGNATURE_LENGTH, PROOFS * SIGNATURE_LENGTH);
+                resized.present[to] = present[from];
+            }
+            return resized;
+        }
+    }
+
+    private static void checkAddress(byte[] address) {
+        if (address == null || address.length != ADDRESS_LENGTH) {
+            throw new IllegalArgumentException("Address must be " + ADDRESS_LENGTH + " bytes.");
+        }
+    }
+
+    private static BigInteger toBigInteger(long[] words) {
+        BigInteger balance = BigInteger.ZERO;
+        for (long word : words) {
+            balance = balance.shiftLeft(64).or(new BigInteger(Long.toUnsignedString(word)));
+        }
+        return balance;
+    }
+
+    private static long word(byte[] bytes, int offset) {
+        long word = 0;
+        for (int i = 0; i < 8; i++) {
+            word = (word << 8) | (bytes[offset + i] & 0xFF);
+        }
+        return word;
+    }
+
+    private static long tail(byte[] address) {
+        return ((address[16] & 0xFFL) << 24) | ((address[17] & 0xFFL) << 16)
+                | ((address[18] & 0xFFL) << 8) | (address[19] & 0xFFL);
+    }
+
+    private static int hash(long k0, long k1, long k2) {
+        long h = (k0 * 0x9E3779B97F4A7C15L) ^ (k1 * 0xC2B2AE3D27D4EB4FL) ^ (k2 * 0x165667B19E3779F9L);
+        return (int) (h ^ (h >>> 29) ^ (h >>> 41));
+    }
+}
@@ -0,0 +1,149 @@
+package ether;
+
+import io.left.rightmesh.util.EtherUtility;
+import org.apache.commons.lang3.tuple.ImmutablePair;
+import org.ethereum.crypto.HashUtil;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+
+
+/**
+ * Reads channels straight from the storage of the Channel contract instead of calling channels(bytes32). The
+ * Channel struct of a channel key sits in the storage slot keccak(key, {@link Settings#CHANNELS_SLOT}), packed
+ * in one word: the uint192 deposit in the low bits and the uint32 open block number above it. The slots of many
+ * channels are read with eth_getStorageAt in one batched request, {@link Settings#STORAGE_BATCH_SIZE} at a time,
+ * and no EVM code runs on the node.
+ * <p>
+ * A wrong slot number would make every channel look closed, so until a channel has been found in the storage,
+ * each batch without one double checks a channel with eth_call. If the contract knows a channel the storage
+ * doesn't, the channels are read with eth_call from then on.
+ */
+public final class ChannelStorageReader {
+
+    private static final int DEPOSIT_BITS = 192;
+    private static final int OPEN_BLOCK_BITS = 32;
+
+    //Set once a channel was found at the configured slot.
+    private static volatile boolean layoutConfirmed = false;
+    //Set if the storage disagreed with the contract.
+    private static volatile boolean layoutBroken = false;
+
+    //private C'tor to prevent initialization
+    private ChannelStorageReader() {
+    }
+
+    /**
+     * Reads many channels.
+     *
+     * @param channels          The sender and receiver addresses of the channels.
+     * @param httpAgent         The Http wrapper.
+     * @return                  The channels in the same order, null for the ones that don't exist.
+     * @throws IOException      Thrown if fails to get http response from a remote mode.
+     */
+    public static List<EtherUtility.PaymentChannel> read(List<ImmutablePair<String, String>> channels,
+                                                         Http httpAgent) throws IOException {
+        List<EtherUtility.PaymentChannel> result = new ArrayList<>(channels.size());
+        for (int from = 0; from < channels.size(); from += Settings.STORAGE_BATCH_SIZE) {
+            List<ImmutablePair<String, String>> batch =
+                    channels.subList(from, Math.min(channels.size(), from + Settings.STORAGE_BATCH_SIZE));
+            result.addAll(Settings.CHANNEL_STORAGE_READS && !layoutBroken
+                    ? readBatch(batch, httpAgent) : readByCall(batch, httpAgent));
+        }
+        return result;
+    }
+
+    /**
+     * @param channelKey    The channel key, see {@link EtherUtility#getChannelHash(String, String)}.
+     * @return              The storage slot of the channel, in hex.
+     */
+    static String slot(byte[] channelKey) {
+        byte[] position = new byte[channelKey.length + 32];
+        System.arraycopy(channelKey, 0, position, 0, channelKey.length);
+        byte[] slot = BigInteger.valueOf(Settings.CHANNELS_SLOT).toByteArray();
+        System.arraycopy(slot, 0, position, position.length - slot.length, slot.length);
+        return HexCodec.prefixed(HashUtil.sha3(position));
+    }
+
+
+    private static List<EtherUtility.PaymentChannel> readBatch(List<ImmutablePair<String, String>> channels,
+                                                               Http httpAgent) throws IOException {
+        List<String> requests = new ArrayList<>(channels.size());
+        List<Integer> requested = new ArrayList<>(channels.size());
+        for (int i = 0; i < channels.size(); i++) {
+            byte[] key = EtherUtility.getChannelHash(channels.get(i).left, channels.get(i).right);
+            if (key == null) {
+                if (Settings.DEBUG_INFO) {
+                    System.out.println("Failed to construct the channel Hash: " + channels.get(i).left + "-->"
+                            + channels.get(i).right);
+                }
+                continue;
+            }
+            requests.add(EtherClient.getStorageRequest(Settings.CHANNEL_CONTRACT_ADDRESS, slot(key),
+                    requests.size()));
+            requested.add(i);
+        }
+
+        List<EtherUtility.PaymentChannel> result = new ArrayList<>(channels.size());
+        for (int i = 0; i < channels.size(); i++) {
+            result.add(null);
+        }
+        List<Object> words = httpAgent.getBatchHttpResponse(requests);
+        boolean found = false;
+        for (int i = 0; i < requests.size(); i++) {
+            ImmutablePair<String, String> channel = channels.get(requested.get(i));
+            EtherUtility.PaymentChannel decoded = decode((String) words.get(i), channel.left, channel.right);
+            result.set(requested.get(i), decoded);
+            found |= decoded != null;
+        }
+
+        if (found) {
+            layoutConfirmed = true;
+        } else if (!layoutConfirmed && !requested.isEmpty()) {
+            ImmutablePair<String, String> channel = channels.get(requested.get(0));
+            if (EtherClient.getChannelInfoByCall(channel.left, channel.right, httpAgent) != null) {
+                System.out.println("The channels aren't at storage slot " + Settings.CHANNELS_SLOT
+                        + " of the Channel contract, reading them with eth_call instead.");
+                Metrics.getInstance().error("channel_storage_layout");
+                layoutBroken = true;
+                return readByCall(channels, httpAgent);
+            }
+        }
+        return result;
+    }
+
+    private static List<EtherUtility.PaymentChannel> readByCall(List<ImmutablePair<String, String>> channels,
+                                                                Http httpAgent) throws IOException {
+        List<EtherUtility.PaymentChannel> result = new ArrayList<>(channels.size());
+        for (ImmutablePair<String, String> channel : channels) {
+            result.add(EtherClient.getChannelInfoByCall(channel.left, channel.right, httpAgent));
+        }
+        return result;
+    }
+
+    /**
+     * @param word  The storage word of the channel, in hex.
+     * @return      The channel, or null if the word is empty.
+     */
+    private static EtherUtility.PaymentChannel decode(String word, String senderAddress, String receiverAddress) {
+        if (word == null) {
+            return null;
+        }
+        int start = HexCodec.digitsStart(word);
+        if (start == word.length()) {
+            return null;
+        }
+        //Most of the slots of closed channels are empty, they are checked without allocating a BigInteger.
+        UInt256 value = new UInt256().setHex(word, start, word.length() - start);
+        if (value.isZero()) {
+            return null;
+        }
+
+        int openBlock = (int) value.bits(DEPOSIT_BITS, OPEN_BLOCK_BITS);
+        BigInteger deposit = value.truncate(DEPOSIT_BITS).toBigInteger();
+        return new EtherUtility.PaymentChannel(senderAddress, receiverAddress, deposit, openBlock,
+                BigInteger.ZERO, "");
+    }
+}
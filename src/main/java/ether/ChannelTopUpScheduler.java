@@ -0,0 +1,210 @@
+package ether;
+
+import io.left.rightmesh.id.MeshId;
+
+import java.math.BigInteger;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+
+/**
+ * Tops up the SuperPeer-->Client channels before their deposit runs out, so busy Clients are never stalled by
+ * an exhausted channel and the SuperPeer doesn't have to close and open it again. Every
+ * {@link Settings#TOP_UP_INTERVAL} milliseconds the balance paid on each tracked channel is compared to its
+ * deposit, and the channels with less than {@link Settings#TOP_UP_THRESHOLD_PERCENT} percent left get another
+ * initial deposit with topUpERC20, up to {@link Settings#TOP_UP_BATCH_SIZE} of them submitted back to back.
+ * <p>
+ * The added deposits are taken from the standing allowance. An approve of their own would set the allowance
+ * the opens in flight were signed against, and make either the opens or the top-ups revert.
+ */
+public final class ChannelTopUpScheduler {
+
+    private final MeshId owner;
+    private final Http httpAgent;
+    private final NonceManager ownNonces;
+    private final AllowanceManager allowances;
+    private final Function<MeshId, BigInteger> balanceReader;
+    private final Consumer<MeshId> onToppedUp;
+    private final ConcurrentHashMap<String, Channel> channels = new ConcurrentHashMap<>();
+    private ScheduledExecutorService poller = null;
+
+    /**
+     * @param owner         The SuperPeer, sender of the channels.
+     * @param httpAgent     The Http wrapper.
+     * @param ownNonces     The nonces of the SuperPeer.
+     * @param allowances    The standing allowance the deposits are taken from.
+     * @param balanceReader Reads the balance paid to a receiver so far, returns null if unknown.
+     * @param onToppedUp    Called with the receiver once its channel is topped up.
+     */
+    public ChannelTopUpScheduler(MeshId owner, Http httpAgent, NonceManager ownNonces, AllowanceManager allowances,
+                                 Function<MeshId, BigInteger> balanceReader, Consumer<MeshId> onToppedUp) {
+        this.owner = owner;
+        this.httpAgent = httpAgent;
+        this.ownNonces = ownNonces;
+        this.allowances = allowances;
+        this.balanceReader = balanceReader;
+        this.onToppedUp = onToppedUp;
+        Metrics.getInstance().gauge("superpeer_tracked_out_channels", "Out-Channels watched for top-ups.",
+                channels::size);
+    }
+
+    /**
+     * Starts checking the tracked channels every {@link Settings#TOP_UP_INTERVAL} milliseconds.
+     */
+    public synchronized void start() {
+        if (poller != null) {
+            return;
+        }
+
+        poller = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "channel-top-up");
+            thread.setDaemon(true);
+            return thread;
+        });
+        poller.scheduleWithFixedDelay(this::poll, Settings.TOP_UP_INTERVAL, Settings.TOP_UP_INTERVAL,
+                TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops the top-ups, the ones already submitted are left to be mined.
+     */
+    public synchronized void stop() {
+        if (poller != null) {
+            poller.shutdownNow();
+            poller = null;
+        }
+        channels.clear();
+    }
+
+    /**
+     * Tracks an Out-Channel, called when it is opened or found on the Ether network.
+     *
+     * @param receiver  The receiver of the channel.
+     * @param deposit   The current deposit of the channel.
+     */
+    public void track(MeshId receiver, BigInteger deposit) {
+        channels.put(key(receiver), new Channel(receiver, deposit));
+    }
+
+    /**
+     * @param receiver  The receiver of a closed Out-Channel.
+     */
+    public void untrack(MeshId receiver) {
+        channels.remove(key(receiver));
+    }
+
+
+    private void poll() {
+        try {
+            Config config = Settings.current();
+            Map<String, BigInteger> batch = new LinkedHashMap<>();
+            for (Map.Entry<String, Channel> entry : channels.entrySet()) {
+                if (batch.size() >= Settings.TOP_UP_BATCH_SIZE) {
+                    break;
+                }
+                BigInteger added = getTopUp(entry.getValue(), config);
+                if (added != null) {
+                    batch.put(entry.getKey(), added);
+                }
+            }
+            if (batch.isEmpty()) {
+                return;
+            }
+            BigInteger firstNonce = fund(batch);
+            if (firstNonce == null) {
+                return;
+            }
+
+            Map<String, BigInteger> toppedUp = EtherClient.topUpChannels(owner, batch, firstNonce, ownNonces,
+                    httpAgent);
+            for (Map.Entry<String, BigInteger> entry : toppedUp.entrySet()) {
+                Channel channel = channels.get(entry.getKey());
+                if (channel != null) {
+                    channels.replace(entry.getKey(), channel,
+                            new Channel(channel.receiver, channel.deposit.add(entry.getValue())));
+                    onToppedUp.accept(channel.receiver);
+                }
+            }
+            int failed = batch.size() - toppedUp.size();
+            Metrics.getInstance().counter("superpeer_channel_top_ups_total", "result", "ok")
+                    .add(toppedUp.size());
+            if (failed > 0) {
+                Metrics.getInstance().counter("superpeer_channel_top_ups_total", "result", "failed").add(failed);
+                allowances.resync();
+            }
+            System.out.println("Topped up " + toppedUp.size() + " of " + batch.size() + " Out-Channels.");
+        } catch (RuntimeException e) {
+            //Keep going, the scheduler would stop on an uncaught exception.
+            if (Settings.DEBUG_INFO) {
+                System.out.println("Failed to top up channels, " + e.getClass().getCanonicalName()
+                        + ": " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * @return  The deposit to add to the channel, or null if it doesn't need a top-up or can't take one.
+     */
+    private BigInteger getTopUp(Channel channel, Config config) {
+        BigInteger balance = balanceReader.apply(channel.receiver);
+        if (balance == null) {
+            return null;
+        }
+        BigInteger left = channel.deposit.subtract(balance);
+        BigInteger threshold = channel.deposit.multiply(BigInteger.valueOf(Settings.TOP_UP_THRESHOLD_PERCENT))
+                .divide(BigInteger.valueOf(100));
+        if (left.compareTo(threshold) >= 0) {
+            return null;
+        }
+
+        BigInteger added = config.initDeposit.min(config.maxDeposit.subtract(channel.deposit));
+        if (added.signum() <= 0) {
+            if (!channel.atMaximum) {
+                System.out.println("Out-Channel " + owner + "-->" + channel.receiver
+                        + " reached the max deposit, it can't be topped up.");
+                channel.atMaximum = true;
+            }
+            return null;
+        }
+        return added;
+    }
+
+    /**
+     * Reserves the added deposits out of the standing allowance, and the nonces of the top-ups.
+     *
+     * @return  The first nonce of the batch, or null if it can't be submitted.
+     */
+    private BigInteger fund(Map<String, BigInteger> batch) {
+        BigInteger total = BigInteger.ZERO;
+        for (BigInteger added : batch.values()) {
+            total = total.add(added);
+        }
+        return allowances.reserve(total, batch.size());
+    }
+
+    private static String key(MeshId receiver) {
+        return receiver.toString().toLowerCase();
+    }
+
+
+    /**
+     * A tracked Out-Channel and its deposit.
+     */
+    private static final class Channel {
+        final MeshId receiver;
+        final BigInteger deposit;
+        //Only touched by the poller thread.
+        boolean atMaximum = false;
+
+        Channel(MeshId receiver, BigInteger deposit) {
+            this.receiver = receiver;
+            this.deposit = deposit;
+        }
+    }
+}
@@ -0,0 +1,225 @@
+package ether;
+
+import io.left.rightmesh.util.ConversionUtility;
+import org.json.simple.JSONObject;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+
+/**
+ * An immutable snapshot of the settings which can be retuned while the SuperPeer runs. The current snapshot is
+ * {@link Settings#current()}, a new version replaces it as a whole when rm-ethereum.conf changes, so a reader
+ * never sees half of an update. Read it once per operation and use that snapshot throughout.
+ */
+public final class Config {
+
+    /** Incremented on every successful reload, 1 at startup. */
+    public final long version;
+
+    public final String rpcAddress;
+    public final int rpcMaxConnections;
+    public final BigInteger gasPrice;
+    public final BigInteger gasLimit;
+    public final BigInteger maxGasPrice;
+    public final int gasPriceBumpPercent;
+    public final int gasEstimateMarginPercent;
+    public final long gasEstimateTtl;
+    public final long gasOracleInterval;
+    public final int gasOracleBlocks;
+    public final long stuckTransactionTimeout;
+    public final long receiptTimeout;
+    public final long transCheckInterval;
+    public final BigInteger initDeposit;
+    public final BigInteger maxDeposit;
+    public final int closeWindow;
+
+    private Config(long version, String rpcAddress, int rpcMaxConnections, BigInteger gasPrice,
+                   BigInteger gasLimit, BigInteger maxGasPrice, int gasPriceBumpPercent,
+                   int gasEstimateMarginPercent, long gasEstimateTtl, long gasOracleInterval, int gasOracleBlocks,
+                   long stuckTransactionTimeout, long receiptTimeout, long transCheckInterval,
+                   BigInteger initDeposit, BigInteger maxDeposit, int closeWindow) {
+        this.version = version;
+        this.rpcAddress = rpcAddress;
+        this.rpcMaxConnections = rpcMaxConnections;
+        this.gasPrice = gasPrice;
+        this.gasLimit = gasLimit;
+        this.maxGasPrice = maxGasPrice;
+        this.gasPriceBumpPercent = gasPriceBumpPercent;
+        this.gasEstimateMarginPercent = gasEstimateMarginPercent;
+        this.gasEstimateTtl = gasEstimateTtl;
+        this.gasOracleInterval = gasOracleInterval;
+        this.gasOracleBlocks = gasOracleBlocks;
+        this.stuckTransactionTimeout = stuckTransactionTimeout;
+        this.receiptTimeout = receiptTimeout;
+        this.transCheckInterval = transCheckInterval;
+        this.initDeposit = initDeposit;
+        this.maxDeposit = maxDeposit;
+        this.closeWindow = closeWindow;
+    }
+
+    /**
+     * @return  The snapshot of the values loaded at startup, version 1.
+     */
+    static Config boot() {
+        return new Config(1, Settings.RPC_ADDRESS, Settings.RPC_MAX_CONNECTIONS, Settings.GAS_PRICE,
+                Settings.GAS_LIMIT, Settings.MAX_GAS_PRICE, Settings.GAS_PRICE_BUMP_PERCENT,
+                Settings.GAS_ESTIMATE_MARGIN_PERCENT, Settings.GAS_ESTIMATE_TTL, Settings.GAS_ORACLE_INTERVAL,
+                Settings.GAS_ORACLE_BLOCKS, Settings.STUCK_TRANSACTION_TIMEOUT, Settings.RECEIPT_TIMEOUT,
+                Settings.TRANS_CHECK_INTERAVAL, Settings.INIT_DEPOSIT, Settings.MAX_DEPOSIT, Settings.CLOSE_WINDOW);
+    }
+
+    /**
+     * Builds the next version from the configuration file. Keys missing from the file keep their value from
+     * the previous version, the keys which can't change at runtime are ignored.
+     *
+     * @param json                      The parsed configuration file.
+     * @param previous                  The current snapshot.
+     * @return                          The validated snapshot.
+     * @throws IllegalArgumentException Thrown if a value is malformed or out of range.
+     */
+    static Config parse(JSONObject json, Config previous) {
+        String zerosForToken = json.containsKey("appendingZerosForTKN")
+                ? (String) json.get("appendingZerosForTKN") : Settings.APPENDING_ZEROS_FOR_TOKEN;
+        try {
+            Config config = new Config(previous.version + 1,
+                    string(json, "rpcAddress", previous.rpcAddress),
+                    integer(json, "rpcMaxConnections", previous.rpcMaxConnections),
+                    bigInteger(json, "gasPrice", previous.gasPrice),
+                    bigInteger(json, "gasLimit", previous.gasLimit),
+                    bigInteger(json, "maxGasPrice", previous.maxGasPrice),
+                    integer(json, "gasPriceBumpPercent", previous.gasPriceBumpPercent),
+                    integer(json, "gasEstimateMarginPercent", previous.gasEstimateMarginPercent),
+                    number(json, "gasEstimateTtl", previous.gasEstimateTtl),
+                    number(json, "gasOracleInterval", previous.gasOracleInterval),
+                    integer(json, "gasOracleBlocks", previous.gasOracleBlocks),
+                    number(json, "stuckTransactionTimeout", previous.stuckTransactionTimeout),
+                    number(json, "receiptTimeout", previous.receiptTimeout),
+                    number(json, "transCheckInterval", previous.transCheckInterval),
+                    json.containsKey("initDeposit") ? ConversionUtility.decimalToBigInteger(
+                            json.get("initDeposit").toString(), zerosForToken) : previous.initDeposit,
+                    json.containsKey("maxDepositBits") ? ConversionUtility.decimalToBigInteger(
+                            json.get("maxDepositBits").toString(), zerosForToken) : previous.maxDeposit,
+                    integer(json, "closeWindow", previous.closeWindow));
+            config.validate();
+            return config;
+        } catch (NumberFormatException | ClassCastException e) {
+            throw new IllegalArgumentException("Malformed value, " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * @throws IllegalArgumentException Thrown if a value is out of range.
+     */
+    void validate() {
+        List<String> errors = new ArrayList<>();
+        if (rpcAddress == null || !rpcAddress.startsWith("http")) {
+            errors.add("rpcAddress must be an http(s) URL");
+        }
+        if (rpcMaxConnections < 1) {
+            errors.add("rpcMaxConnections must be at least 1");
+        }
+        if (gasPrice == null || gasPrice.signum() <= 0) {
+            errors.add("gasPrice must be positive");
+        } else if (maxGasPrice != null && gasPrice.compareTo(maxGasPrice) > 0) {
+            errors.add("gasPrice must not exceed maxGasPrice");
+        }
+        if (gasLimit == null || gasLimit.signum() <= 0) {
+            errors.add("gasLimit must be positive");
+        }
+        if (maxGasPrice == null || maxGasPrice.signum() <= 0) {
+            errors.add("maxGasPrice must be positive");
+        }
+        if (gasPriceBumpPercent < 10 || gasPriceBumpPercent > 1000) {
+            //Parity rejects a replacement paying less than 10% more.
+            errors.add("gasPriceBumpPercent must be between 10 and 1000");
+        }
+        if (gasEstimateMarginPercent < 0 || gasEstimateMarginPercent > 1000) {
+            errors.add("gasEstimateMarginPercent must be between 0 and 1000");
+        }
+        if (gasEstimateTtl < 0) {
+            errors.add("gasEstimateTtl must not be negative");
+        }
+        if (gasOracleInterval <= 0 || gasOracleBlocks < 1) {
+            errors.add("gasOracleInterval and gasOracleBlocks must be positive");
+        }
+        if (stuckTransactionTimeout <= 0 || transCheckInterval <= 0) {
+            errors.add("stuckTransactionTimeout and transCheckInterval must be positive");
+        }
+        if (receiptTimeout < stuckTransactionTimeout) {
+            errors.add("receiptTimeout must not be below stuckTransactionTimeout");
+        }
+        if (initDeposit == null || initDeposit.signum() <= 0) {
+            errors.add("initDeposit must be positive");
+        } else if (maxDeposit != null && initDeposit.compareTo(maxDeposit) > 0) {
+            errors.add("initDeposit must not exceed the max deposit");
+        }
+        if (closeWindow < 1) {
+            errors.add("closeWindow must be at least 1");
+        }
+
+        if (!errors.isEmpty()) {
+            throw new IllegalArgumentException(String.join(", ", errors));
+        }
+    }
+
+    /**
+     * @return  The snapshot as a JSON object, keyed as in rm-ethereum.conf.
+     */
+    public JSONObject toJSON() {
+        JSONObject json = new JSONObject();
+        json.put("version", version);
+        json.put("rpcAddress", rpcAddress);
+        json.put("rpcMaxConnections", rpcMaxConnections);
+        json.put("gasPrice", String.valueOf(gasPrice));
+        json.put("gasLimit", String.valueOf(gasLimit));
+        json.put("maxGasPrice", String.valueOf(maxGasPrice));
+        json.put("gasPriceBumpPercent", gasPriceBumpPercent);
+        json.put("gasEstimateMarginPercent", gasEstimateMarginPercent);
+        json.put("gasEstimateTtl", gasEstimateTtl);
+        json.put("gasOracleInterval", gasOracleInterval);
+        json.put("gasOracleBlocks", gasOracleBlocks);
+        json.put("stuckTransactionTimeout", stuckTransactionTimeout);
+        json.put("receiptTimeout", receiptTimeout);
+        json.put("transCheckInterval", transCheckInterval);
+        json.put("initDeposit", String.valueOf(initDeposit));
+        json.put("maxDeposit", String.valueOf(maxDeposit));
+        json.put("closeWindow", closeWindow);
+        return json;
+    }
+
+    /**
+     * @param previous  The snapshot this one replaces.
+     * @return          The changed values as "key: old -> new", empty if nothing changed.
+     */
+    List<String> changesSince(Config previous) {
+        JSONObject before = previous.toJSON();
+        JSONObject after = toJSON();
+        List<String> changes = new ArrayList<>();
+        for (Object key : after.keySet()) {
+            if (!key.equals("version") && !Objects.equals(before.get(key), after.get(key))) {
+                changes.add(key + ": " + before.get(key) + " -> " + after.get(key));
+            }
+        }
+        return changes;
+    }
+
+
+    private static String string(JSONObject json, String key, String fallback) {
+        return json.containsKey(key) ? (String) json.get(key) : fallback;
+    }
+
+    private static BigInteger bigInteger(JSONObject json, String key, BigInteger fallback) {
+        return json.containsKey(key) ? new BigInteger(json.get(key).toString(), 10) : fallback;
+    }
+
+    private static int integer(JSONObject json, String key, int fallback) {
+        return json.containsKey(key) ? Integer.parseInt(json.get(key).toString()) : fallback;
+    }
+
+    private static long number(JSONObject json, String key, long fallback) {
+        return json.containsKey(key) ? Long.parseLong(json.get(key).toString()) : fallback;
+    }
+}
@@ -0,0 +1,101 @@
+package ether;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Watches the configuration file and reloads {@link Settings#current()} when it changes. Editors often write
+ * a file in several steps, so a change is applied once the file has been quiet for {@link #SETTLE_MILLIS}.
+ */
+public final class ConfigWatcher {
+
+    private static final long SETTLE_MILLIS = 200;
+
+    private final Path file;
+    private WatchService watchService = null;
+    private Thread thread = null;
+
+    /**
+     * @param path  The configuration file.
+     */
+    public ConfigWatcher(String path) {
+        file = Paths.get(path).toAbsolutePath();
+    }
+
+    /**
+     * Starts watching the directory of the configuration file.
+     *
+     * @throws IOException  Thrown if the directory can't be watched.
+     */
+    public synchronized void start() throws IOException {
+        if (thread != null) {
+            return;
+        }
+
+        watchService = FileSystems.getDefault().newWatchService();
+        file.getParent().register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                StandardWatchEventKinds.ENTRY_MODIFY);
+        WatchService service = watchService;
+        thread = new Thread(() -> watch(service), "config-watcher");
+        thread.setDaemon(true);
+        thread.start();
+        System.out.println("Watching " + file + " for configuration changes.");
+    }
+
+    /**
+     * Stops watching.
+     */
+    public synchronized void stop() {
+        if (thread != null) {
+            try {
+                watchService.close();
+            } catch (IOException ignored) { }
+            thread.interrupt();
+            thread = null;
+            watchService = null;
+        }
+    }
+
+
+    private void watch(WatchService service) {
+        try {
+            while (true) {
+                WatchKey key = service.take();
+                boolean changed = false;
+                do {
+                    changed |= concernsFile(key);
+                    key.reset();
+                    //Collects the rest of the burst of events of a single save.
+                    key = service.poll(SETTLE_MILLIS, TimeUnit.MILLISECONDS);
+                } while (key != null);
+
+                if (changed) {
+                    Settings.reload();
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            //Stopped.
+        }
+    }
+
+    private boolean concernsFile(WatchKey key) {
+        boolean concerns = false;
+        for (WatchEvent<?> event : key.pollEvents()) {
+            Object context = event.context();
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW
+                    || (context instanceof Path && file.getFileName().equals(context))) {
+                concerns = true;
+            }
+        }
+        return concerns;
+    }
+}
@@ -0,0 +1,32 @@
+package ether;
+
+import org.ethereum.core.CallTransaction;
+
+
+/**
+ * The contract functions the SuperPeer calls, resolved once from the ABIs in {@link Settings}.
+ * Contract.getByName scans every function of the ABI, which is wasted work on the per-request paths.
+ */
+public final class ContractFunctions {
+
+    public static final CallTransaction.Function BALANCE_OF = Settings.TOKEN_CONTRACT.getByName("balanceOf");
+    public static final CallTransaction.Function APPROVE = Settings.TOKEN_CONTRACT.getByName("approve");
+    public static final CallTransaction.Function ALLOWANCE = Settings.TOKEN_CONTRACT.getByName("allowance");
+
+    public static final CallTransaction.Function CHANNELS = Settings.CHANNEL_CONTRACT.getByName("channels");
+    public static final CallTransaction.Function GET_BALANCE_HASH =
+            Settings.CHANNEL_CONTRACT.getByName("getBalanceHash");
+    public static final CallTransaction.Function GET_CLOSING_HASH =
+            Settings.CHANNEL_CONTRACT.getByName("getClosingHash");
+    public static final CallTransaction.Function CREATE_CHANNEL_ERC20 =
+            Settings.CHANNEL_CONTRACT.getByName("createChannelERC20");
+    public static final CallTransaction.Function TOP_UP_ERC20 =
+            Settings.CHANNEL_CONTRACT.getByName("topUpERC20");
+    public static final CallTransaction.Function COOPERATIVE_CLOSE_RECEIVER =
+            Settings.CHANNEL_CONTRACT.getByName("cooperativeCloseReceiver");
+    public static final CallTransaction.Function COOPERATIVE_CLOSE_SENDER =
+            Settings.CHANNEL_CONTRACT.getByName("cooperativeCloseSender");
+
+    private ContractFunctions() {
+    }
+}
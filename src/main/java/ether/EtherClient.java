@@ -4,14 +4,20 @@ import io.left.rightmesh.id.MeshId;
 import io.left.rightmesh.util.EtherUtility;
 import io.left.rightmesh.util.MeshUtility;
 import io.left.rightmesh.util.ConversionUtility;
-import org.apache.commons.codec.binary.Hex;
+import org.apache.commons.lang3.tuple.ImmutablePair;
 import org.ethereum.core.CallTransaction;
 import org.ethereum.core.Transaction;
 import org.ethereum.util.ByteUtil;
+import org.json.simple.JSONArray;
 import org.json.simple.JSONObject;
 import java.io.IOException;
 import java.math.BigInteger;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 
 /**
@@ -19,6 +25,23 @@ import java.util.Arrays;
  */
 public final class EtherClient {
 
+    //The gas of a plain transfer, without any code to run.
+    private static final BigInteger TRANSFER_GAS = BigInteger.valueOf(21000);
+
+    private static final GasEstimateCache gasEstimates = new GasEstimateCache();
+    private static final SubmissionRegistry submissions = new SubmissionRegistry();
+
+    /**
+     * Signs a transaction again with the same nonce and a new gas price, used to replace stuck transactions.
+     */
+    public interface Resigner {
+        /**
+         * @param gasPrice  The new gas price.
+         * @return          The signed raw transaction, or null if it couldn't be signed.
+         */
+        String resign(BigInteger gasPrice);
+    }
+
     //private C'tor to prevent initialization
     private EtherClient() {
     }
@@ -50,8 +73,7 @@ public final class EtherClient {
             return null;
         }
 
-        nonce = nonce.substring(2);
-        return new BigInteger(nonce, 16);
+        return HexCodec.quantity(nonce);
     }
 
     /**
@@ -83,7 +105,7 @@ public final class EtherClient {
             return null;
         }
 
-        BigInteger weiBalanceInt = new BigInteger(weiBalanceStr.substring(2), 16);
+        BigInteger weiBalanceInt = HexCodec.quantity(weiBalanceStr);
         return weiBalanceInt;
     }
 
@@ -97,12 +119,27 @@ public final class EtherClient {
      * @throws NumberFormatException    Thrown if fails to parse the balance.
      */
     public static BigInteger getTokenBalance(String address, Http httpAgent) throws IOException, NumberFormatException {
+        return getTokenBalance(address, "latest", httpAgent);
+    }
+
+    /**
+     * Get the balance of Tokens on the Ethereum network at a given block.
+     *
+     * @param address                   The address in the Ethereum Network.
+     * @param block                     The block number in hex, or a block tag like "latest".
+     * @param httpAgent                 The Http wrapper.
+     * @return                          The Ethereum balance.
+     * @throws IOException              Thrown if fails to get http response from a remote mode.
+     * @throws NumberFormatException    Thrown if fails to parse the balance.
+     */
+    public static BigInteger getTokenBalance(String address, String block, Http httpAgent)
+            throws IOException, NumberFormatException {
 
-        CallTransaction.Function func = Settings.TOKEN_CONTRACT.getByName("balanceOf");
+        CallTransaction.Function func = ContractFunctions.BALANCE_OF;
         byte[] funcBytes = func.encode(address);
-        String funcBytesStr = "0x" + new String(Hex.encodeHex(funcBytes));
+        String funcBytesStr = HexCodec.prefixed(funcBytes);
         String request = getEtherRequest("eth_call", null, Settings.TOKEN_CONTRACT_ADDRESS,
-                null, funcBytesStr);
+                null, funcBytesStr, block);
 
         if (Settings.DEBUG_INFO) {
             System.out.println("Request in getTokenBalance = " + request);
@@ -122,10 +159,151 @@ public final class EtherClient {
             return null;
         }
 
-        BigInteger weiBalanceInt = new BigInteger(weiBalanceStr.substring(2), 16);
+        BigInteger weiBalanceInt = HexCodec.quantity(weiBalanceStr);
         return weiBalanceInt;
     }
 
+    /**
+     * Gets the amount of Tokens a spender may still transfer on behalf of an owner.
+     *
+     * @param ownerAddress              The owner address in the Ethereum Network.
+     * @param spenderAddress            The spender address in the Ethereum Network.
+     * @param block                     The block number in hex, or a block tag like "pending".
+     * @param httpAgent                 The Http wrapper.
+     * @return                          The allowance, or null if the Ether node didn't return it.
+     * @throws IOException              Thrown if fails to get http response from a remote mode.
+     * @throws NumberFormatException    Thrown if fails to parse the allowance.
+     */
+    public static BigInteger getAllowance(String ownerAddress, String spenderAddress, String block,
+                                          Http httpAgent) throws IOException, NumberFormatException {
+
+        byte[] funcBytes = ContractFunctions.ALLOWANCE.encode(ownerAddress, spenderAddress);
+        String request = getEtherRequest("eth_call", null, Settings.TOKEN_CONTRACT_ADDRESS,
+                null, HexCodec.prefixed(funcBytes), block);
+
+        if (Settings.DEBUG_INFO) {
+            System.out.println("Request in getAllowance = " + request);
+        }
+
+        String allowance = (String) httpAgent.getHttpResponse(request);
+        if (allowance == null) {
+            if (Settings.DEBUG_INFO) {
+                System.out.println("Failed to get the allowance of " + spenderAddress + " for " + ownerAddress);
+            }
+            return null;
+        }
+
+        return HexCodec.quantity(allowance);
+    }
+
+    /**
+     * Gets the gas price suggested by the Ether node.
+     *
+     * @param httpAgent     The Http wrapper.
+     * @return              The gas price, or null on failure.
+     */
+    public static BigInteger getGasPrice(Http httpAgent) {
+
+        String request = getEtherRequest("eth_gasPrice");
+        String gasPrice;
+        try {
+            gasPrice = (String) httpAgent.getHttpResponse(request);
+        } catch (IOException e) {
+            if (Settings.DEBUG_INFO) {
+                System.out.println("Failed to query the gas price.");
+            }
+            return null;
+        }
+
+        if (gasPrice == null) {
+            if (Settings.DEBUG_INFO) {
+                System.out.println("Failed to get response from the Ether node.");
+            }
+            return null;
+        }
+
+        return HexCodec.quantity(gasPrice);
+    }
+
+    /**
+     * Gets the number of the most recent block.
+     *
+     * @param httpAgent     The Http wrapper.
+     * @return              The block number, or -1 on failure.
+     */
+    public static long getBlockNumber(Http httpAgent) {
+
+        String request = getEtherRequest("eth_blockNumber");
+        String blockNumber;
+        try {
+            blockNumber = (String) httpAgent.getHttpResponse(request);
+        } catch (IOException e) {
+            if (Settings.DEBUG_INFO) {
+                System.out.println("Failed to query the block number.");
+            }
+            return -1;
+        }
+
+        return blockNumber == null ? -1 : HexCodec.longQuantity(blockNumber);
+    }
+
+    /**
+     * Gets the logs of a contract in a range of blocks.
+     *
+     * @param fromBlock             The first block, inclusive.
+     * @param toBlock               The last block, inclusive.
+     * @param address               The contract address.
+     * @param topics                The event signature hashes to match, any of them.
+     * @param httpAgent             The Http wrapper.
+     * @return                      The logs, or null on failure.
+     */
+    public static JSONArray getLogs(long fromBlock, long toBlock, String address, List<String> topics,
+                                    Http httpAgent) {
+
+        String request = "{\"method\":\"eth_getLogs\",\"params\":[{"
+                + "\"fromBlock\":\"0x" + Long.toHexString(fromBlock) + "\","
+                + "\"toBlock\":\"0x" + Long.toHexString(toBlock) + "\","
+                + "\"address\":\"" + address + "\","
+                + "\"topics\":[[\"" + String.join("\",\"", topics) + "\"]]"
+                + "}],\"id\":"
+                + Settings.CHAIN_ID
+                + ",\"jsonrpc\":\"2.0\"}";
+
+        try {
+            return (JSONArray) httpAgent.getHttpResponse(request);
+        } catch (IOException e) {
+            if (Settings.DEBUG_INFO) {
+                System.out.println("Failed to query logs of blocks " + fromBlock + "-" + toBlock);
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Gets a block by its number.
+     *
+     * @param blockNumber           The block number in hex, or a block tag like "latest".
+     * @param fullTransactions      True to get the full transaction objects, False to get the hashes only.
+     * @param httpAgent             The Http wrapper.
+     * @return                      The block, or null on failure.
+     */
+    public static JSONObject getBlockByNumber(String blockNumber, boolean fullTransactions, Http httpAgent) {
+
+        String request = "{\"method\":\"eth_getBlockByNumber\",\"params\":[\""
+                + blockNumber + "\"," + fullTransactions + "],\"id\":"
+                + Settings.CHAIN_ID
+                + ",\"jsonrpc\":\"2.0\"}";
+
+        try {
+            return (JSONObject) httpAgent.getHttpResponse(request);
+        } catch (IOException e) {
+            if (Settings.DEBUG_INFO) {
+                System.out.println("Failed to query block: " + blockNumber);
+            }
+            return null;
+        }
+    }
+
     /**
      * Gets the payment channel info by Sender and Receiver addresses.
      *
@@ -137,6 +315,21 @@ public final class EtherClient {
      */
     public static EtherUtility.PaymentChannel getChannelInfo(String senderAddress, String receiverAddress
             , Http httpAgent) throws IOException {
+        return ChannelStorageReader.read(Collections.singletonList(
+                new ImmutablePair<>(senderAddress, receiverAddress)), httpAgent).get(0);
+    }
+
+    /**
+     * Gets the payment channel info by calling channels(bytes32) of the Channel contract.
+     *
+     * @param senderAddress         The sender address in the Ethereum Network
+     * @param receiverAddress       The receiver address in the Ethereum Network
+     * @param httpAgent             Http wrapper
+     * @return                      PaymentChannel object that holds all channel info.
+     * @throws IOException          Thrown if fails to get http response from a remote mode.
+     */
+    static EtherUtility.PaymentChannel getChannelInfoByCall(String senderAddress, String receiverAddress,
+                                                            Http httpAgent) throws IOException {
 
         byte[] keyInBytes = EtherUtility.getChannelHash(senderAddress, receiverAddress);
         if (keyInBytes == null) {
@@ -146,9 +339,9 @@ public final class EtherClient {
             return null;
         }
 
-        CallTransaction.Function func = Settings.CHANNEL_CONTRACT.getByName("channels");
+        CallTransaction.Function func = ContractFunctions.CHANNELS;
         byte[] funcBytes = func.encode(keyInBytes);
-        String functionBytesStr = "0x" + new String(Hex.encodeHex(funcBytes));
+        String functionBytesStr = HexCodec.prefixed(funcBytes);
         String request = getEtherRequest("eth_call", null,
                 Settings.CHANNEL_CONTRACT_ADDRESS, null, functionBytesStr);
 
@@ -174,22 +367,76 @@ public final class EtherClient {
             System.out.println("checkChannelAvailable response: " + response);
         }
 
-        response = response.substring(2);
-        BigInteger res = new BigInteger(response, 16);
-        if (res.equals(BigInteger.ZERO)) {
+        //The response contains the Channel struct, struct is returned as an array of bytes
+        //Channel struct contains 2 members, the deposit and the open block number words.
+        int start = HexCodec.digitsStart(response);
+        UInt256 deposit = new UInt256().setWord(response, start);
+        UInt256 openBlock = new UInt256().setWord(response, start + UInt256.HEX_DIGITS);
+        if (deposit.isZero() && openBlock.isZero()) {
             return null;
         }
 
-        //The response contains the Channel struct, struct is returned as an array of bytes
-        //Channel struct contains 2 members.
-        String depositStr = response.substring(0, response.length() / 2);
-        String openBlockStr = response.substring(response.length() / 2);
+        return new EtherUtility.PaymentChannel(senderAddress,
+                receiverAddress, deposit.toBigInteger(), (int) openBlock.bits(0, 32), BigInteger.ZERO, "");
+    }
 
-        BigInteger depositInt = new BigInteger(depositStr, 16);
-        Integer openBlockInt = Integer.parseInt(openBlockStr, 16);
 
-        return new EtherUtility.PaymentChannel(senderAddress,
-                receiverAddress, depositInt, openBlockInt, new BigInteger("0"), "");
+    /**
+     * Gets the balance message hash the sender of a channel signs, as computed by the channel contract.
+     *
+     * @param senderAddress     The sender address in the Ethereum Network.
+     * @param receiverAddress   The receiver address in the Ethereum Network.
+     * @param balance           The balance.
+     * @param httpAgent         Http wrapper.
+     * @return                  The 32 bytes hash, or null if the Ether node returned no hash.
+     * @throws IOException      Thrown if fails to get http response from a remote mode.
+     */
+    public static byte[] getBalanceHash(String senderAddress, String receiverAddress, BigInteger balance,
+                                        Http httpAgent) throws IOException {
+        CallTransaction.Function func = ContractFunctions.GET_BALANCE_HASH;
+        return getMessageHash(senderAddress, func.encode(receiverAddress, balance), httpAgent);
+    }
+
+
+    /**
+     * Gets the closing message hash the receiver of a channel signs, as computed by the channel contract.
+     *
+     * @param receiverAddress   The receiver address in the Ethereum Network.
+     * @param senderAddress     The sender address in the Ethereum Network.
+     * @param balance           The balance.
+     * @param httpAgent         Http wrapper.
+     * @return                  The 32 bytes hash, or null if the Ether node returned no hash.
+     * @throws IOException      Thrown if fails to get http response from a remote mode.
+     */
+    public static byte[] getClosingHash(String receiverAddress, String senderAddress, BigInteger balance,
+                                        Http httpAgent) throws IOException {
+        CallTransaction.Function func = ContractFunctions.GET_CLOSING_HASH;
+        return getMessageHash(receiverAddress, func.encode(senderAddress, balance), httpAgent);
+    }
+
+
+    /**
+     * Calls a message hash function of the channel contract.
+     *
+     * @param signerAddress     The address of the signer, used as the caller.
+     * @param funcBytes         The encoded function call.
+     * @param httpAgent         Http wrapper.
+     * @return                  The 32 bytes hash, or null if the Ether node returned no hash.
+     * @throws IOException      Thrown if fails to get http response from a remote mode.
+     */
+    private static byte[] getMessageHash(String signerAddress, byte[] funcBytes, Http httpAgent)
+            throws IOException {
+        String request = getEtherRequest("eth_call", signerAddress, Settings.CHANNEL_CONTRACT_ADDRESS,
+                null, HexCodec.prefixed(funcBytes));
+        String response = (String) httpAgent.getHttpResponse(request);
+        if (response == null || response.length() != 66) {
+            if (Settings.DEBUG_INFO) {
+                System.out.println("Unexpected message hash response: " + response);
+            }
+            return null;
+        }
+
+        return HexCodec.decode(response);
     }
 
 
@@ -204,65 +451,109 @@ public final class EtherClient {
      */
     public boolean checkChannelAvailable(String senderAddress, String receiverAddress, Http httpAgent)
             throws IOException {
+        boolean available = getChannelInfo(senderAddress, receiverAddress, httpAgent) != null;
 
-        byte[] keyInBytes = EtherUtility.getChannelHash(senderAddress, receiverAddress);
-        if (keyInBytes == null) {
-            if (Settings.DEBUG_INFO) {
-                System.out.println("Failed to construct the channel Hash: " + senderAddress + "-->" + receiverAddress);
-            }
-            return false;
+        if (Settings.DEBUG_INFO) {
+            System.out.println("There " + (available ? "is" : "isn't") + " a channel from " + senderAddress
+                    + " to " + receiverAddress);
         }
 
+        return available;
+    }
 
-        CallTransaction.Function func = Settings.CHANNEL_CONTRACT.getByName("channels");
-        byte[] funcBytes = func.encode(keyInBytes);
-        String funcBytesStr = "0x" + new String(Hex.encodeHex(funcBytes));
-        String request = getEtherRequest("eth_call", null,
-                Settings.CHANNEL_CONTRACT_ADDRESS, null, funcBytesStr);
 
-        if (Settings.DEBUG_INFO) {
-            System.out.println("Request in getTokenBalance = " + request);
-        }
+    /**
+     * Approves Payment Channels Contract to spend Tokens on behalf of the Sender.
+     *
+     * @param senderAddress                 The sender address in the Ethereum Network
+     * @param deposit                       The approved deposit.
+     * @param signedApproveTrans            The approve transaction, signed by Sender
+     * @param httpAgent                     The Http wrapper
+     * @return                              True on success, otherwise return False.
+     * @throws IOException                  Thrown if fails to get http response from a remote mode, or if the
+     *                                      Ether node didn't accept the transaction.
+     * @throws IllegalArgumentException     Thrown if supplied invalid parameter.
+     */
+    public static boolean approve(String senderAddress, BigInteger deposit, String signedApproveTrans, Http httpAgent)
+            throws IOException, IllegalArgumentException {
+        return approve(senderAddress, deposit, signedApproveTrans, null, null, httpAgent);
+    }
+
+    /**
+     * Approves Payment Channels Contract to spend Tokens on behalf of the Sender. If the Sender is able to sign
+     * the transaction again, a transaction stuck in the pending queue is replaced with a higher gas price.
+     *
+     * @param senderAddress                 The sender address in the Ethereum Network
+     * @param deposit                       The approved deposit.
+     * @param signedApproveTrans            The approve transaction, signed by Sender
+     * @param gasPrice                      The gas price the transaction was signed with, or null.
+     * @param resigner                      Signs the transaction again with a higher gas price, or null.
+     * @param httpAgent                     The Http wrapper
+     * @return                              True on success, otherwise return False.
+     * @throws IOException                  Thrown if fails to get http response from a remote mode, or if the
+     *                                      Ether node didn't accept the transaction.
+     * @throws IllegalArgumentException     Thrown if supplied invalid parameter.
+     */
+    public static boolean approve(String senderAddress, BigInteger deposit, String signedApproveTrans,
+                                  BigInteger gasPrice, Resigner resigner, Http httpAgent)
+            throws IOException, IllegalArgumentException {
+        TransactionReceipt receipt = submissions.submitOnce(signedApproveTrans, () -> {
+            String transactionId = submitApprove(senderAddress, deposit, signedApproveTrans, httpAgent);
+            if (transactionId == null) {
+                //Thrown rather than returning null, which is a receipt that couldn't be queried.
+                throw new IOException("The approve transaction wasn't accepted by the Ether node.");
+            }
 
-        String response;
-        try {
-            response = (String) httpAgent.getHttpResponse(request);
-        } catch (IOException e) {
             if (Settings.DEBUG_INFO) {
-                System.out.println("Cannot checkChannelAvailable from " + senderAddress + " to " + receiverAddress);
+                System.out.println("Waiting for network to mine transactions ... ");
             }
-            throw e;
-        }
+            return waitingForReceipt(transactionId, gasPrice, resigner, httpAgent);
+        });
+        return isApproved(receipt);
+    }
+
+    /**
+     * Waits for an approve submitted with {@link #submitApprove(String, BigInteger, String, Http)} to be mined.
+     *
+     * @param transactionId                 The transaction id of the approve.
+     * @param gasPrice                      The gas price the transaction was signed with.
+     * @param resigner                      Signs the transaction again with a higher gas price.
+     * @param httpAgent                     The Http wrapper
+     * @return                              True on success, otherwise return False.
+     */
+    static boolean awaitApprove(String transactionId, BigInteger gasPrice, Resigner resigner, Http httpAgent) {
+        return isApproved(waitingForReceipt(transactionId, gasPrice, resigner, httpAgent));
+    }
 
-        if(response == null) {
+    private static boolean isApproved(TransactionReceipt receipt) {
+        if (receipt != null && receipt.isFailed()) {
             if (Settings.DEBUG_INFO) {
-                System.out.println("Failed to get response from the Ether node.");
+                System.out.println("The approve transaction failed, dropping the cached gas estimate.");
             }
+            gasEstimates.invalidate(GasEstimateCache.key(ContractFunctions.APPROVE));
             return false;
         }
 
         if (Settings.DEBUG_INFO) {
-            System.out.println("There "
-                    + (new BigInteger(response.substring(64), 16).compareTo(BigInteger.ZERO) > 0
-                    ? "is" : "isn't") + " a channel from " + senderAddress + " to " + receiverAddress);
+            System.out.println("\bApproving funding transfer is done.");
         }
 
-        return (new BigInteger(response.substring(64), 16).compareTo(BigInteger.ZERO) > 0);
+        return true;
     }
 
-
     /**
-     * Approves Payment Channels Contract to spend Tokens on behalf of the Sender.
+     * Validates the approve transaction with eth_estimateGas, unless a recent estimate is cached, and submits it.
      *
      * @param senderAddress                 The sender address in the Ethereum Network
      * @param deposit                       The approved deposit.
      * @param signedApproveTrans            The approve transaction, signed by Sender
      * @param httpAgent                     The Http wrapper
-     * @return                              True on success, otherwise return False.
+     * @return                              The transaction id, or null if it wasn't accepted.
      * @throws IOException                  Thrown if fails to get http response from a remote mode.
      * @throws IllegalArgumentException     Thrown if supplied invalid parameter.
      */
-    public static boolean approve(String senderAddress, BigInteger deposit, String signedApproveTrans, Http httpAgent)
+    static String submitApprove(String senderAddress, BigInteger deposit, String signedApproveTrans,
+                                Http httpAgent)
             throws IOException, IllegalArgumentException {
 
         if (Settings.DEBUG_INFO) {
@@ -270,9 +561,9 @@ public final class EtherClient {
                     + Settings.CHANNEL_CONTRACT_ADDRESS + " up to " + deposit + " Tokens at maximum.");
         }
 
-        CallTransaction.Function func = Settings.TOKEN_CONTRACT.getByName("approve");
+        CallTransaction.Function func = ContractFunctions.APPROVE;
         byte[] funcEncodedData = func.encode(Settings.CHANNEL_CONTRACT_ADDRESS, deposit);
-        String funcEncodedDataStr = "0x" + new String(Hex.encodeHex(funcEncodedData));
+        String funcEncodedDataStr = HexCodec.prefixed(funcEncodedData);
         String request = getEtherRequest("eth_estimateGas", senderAddress,
                 Settings.TOKEN_CONTRACT_ADDRESS, "0x0", funcEncodedDataStr);
 
@@ -280,39 +571,44 @@ public final class EtherClient {
             System.out.println("The request string of queryApproveGasString is " + request);
         }
 
-        String gasEstimateRes;
-        try {
-            gasEstimateRes = (String) httpAgent.getHttpResponse(request);
-        } catch (IOException e) {
-            if (Settings.DEBUG_INFO) {
-                System.out.println("Invoking function with given arguments is not allowed.");
+        //The estimate only validates the call, skip it while a recent estimate for approve is cached.
+        String estimateKey = GasEstimateCache.key(func);
+        if (gasEstimates.get(estimateKey) == null) {
+            String gasEstimateRes;
+            try {
+                gasEstimateRes = (String) httpAgent.getHttpResponse(request);
+            } catch (IOException e) {
+                if (Settings.DEBUG_INFO) {
+                    System.out.println("Invoking function with given arguments is not allowed.");
+                }
+                throw e;
             }
-            throw e;
-        }
 
-        if (gasEstimateRes == null || gasEstimateRes == "") {
-            if (Settings.DEBUG_INFO) {
-                System.out.println("Failed to estimate GAS for the approve transaction. "
-                        + "Probably the spender already approved by the owner.");
+            if (gasEstimateRes == null || gasEstimateRes == "") {
+                if (Settings.DEBUG_INFO) {
+                    System.out.println("Failed to estimate GAS for the approve transaction. "
+                            + "Probably the spender already approved by the owner.");
+                }
+                return null;
             }
-            return false;
-        }
 
-        if (Settings.DEBUG_INFO) {
-            System.out.println("The estimatedGas of approve is " + gasEstimateRes + ".");
-        }
+            if (Settings.DEBUG_INFO) {
+                System.out.println("The estimatedGas of approve is " + gasEstimateRes + ".");
+            }
 
-        gasEstimateRes = gasEstimateRes.substring(2);
-        BigInteger estimatedGas = new BigInteger(gasEstimateRes, 16);
+            BigInteger estimatedGas = HexCodec.quantity(gasEstimateRes);
 
-        //TODO: need to adjust the Maximum GAS limit.
-        if (estimatedGas.compareTo(Settings.GAS_LIMIT) > 0) {
-            if (Settings.DEBUG_INFO) {
-                System.out.println("Estimeted GAS for approve transaction is too high. "
+            //TODO: need to adjust the Maximum GAS limit.
+            if (estimatedGas.compareTo(Settings.current().gasLimit) > 0) {
+                if (Settings.DEBUG_INFO) {
+                    System.out.println("Estimeted GAS for approve transaction is too high. "
+                            + "Probably some arguments are Invalid.");
+                }
+                throw new IllegalArgumentException("Estimeted GAS for approve transaction is too high. "
                         + "Probably some arguments are Invalid.");
             }
-            throw new IllegalArgumentException("Estimeted GAS for approve transaction is too high. "
-                    + "Probably some arguments are Invalid.");
+
+            gasEstimates.put(estimateKey, estimatedGas);
         }
 
         request = getEtherRequest("eth_sendRawTransaction", signedApproveTrans);
@@ -333,20 +629,10 @@ public final class EtherClient {
             if (Settings.DEBUG_INFO) {
                 System.out.println("Fail to submit the approve transaction.");
             }
-            return false;
-        }
-
-        if (Settings.DEBUG_INFO) {
-            System.out.println("Waiting for network to mine transactions ... ");
-        }
-
-        waitingForTransaction(transactionId, httpAgent);
-
-        if (Settings.DEBUG_INFO) {
-            System.out.println("\bApproving funding transfer is done.");
+            return null;
         }
 
-        return true;
+        return transactionId;
     }
 
 
@@ -366,6 +652,29 @@ public final class EtherClient {
                                                           BigInteger deposit, String signedOpenChannelTrans,
                                                           Http httpAgent)
             throws IOException, IllegalArgumentException {
+        return openChannel(senderAddress, receiverAddress, deposit, signedOpenChannelTrans, null, null, httpAgent);
+    }
+
+    /**
+     * Opens Payment Channel in Ether network. If the Sender is able to sign the transaction again,
+     * a transaction stuck in the pending queue is replaced with a higher gas price.
+     *
+     * @param senderAddress                 The sender address in the Ethereum Network.
+     * @param receiverAddress               The receiver address in the Ethereum Network.
+     * @param deposit                       The initial deposit in the channel.
+     * @param signedOpenChannelTrans        The Open Channel transaction, signed by Sender.
+     * @param gasPrice                      The gas price the transaction was signed with, or null.
+     * @param resigner                      Signs the transaction again with a higher gas price, or null.
+     * @param httpAgent                     The Http wrapper.
+     * @return                              The PaymentChannel object.
+     * @throws IOException                  Thrown if fails to get http response from a remote mode.
+     * @throws IllegalArgumentException     Thrown if supplied invalid parameter.
+     */
+    public static EtherUtility.PaymentChannel openChannel(String senderAddress, String receiverAddress,
+                                                          BigInteger deposit, String signedOpenChannelTrans,
+                                                          BigInteger gasPrice, Resigner resigner,
+                                                          Http httpAgent)
+            throws IOException, IllegalArgumentException {
 
         if (Settings.DEBUG_INFO) {
             System.out.println(senderAddress + " tries to open a channel to pay " + receiverAddress + " up to "
@@ -380,9 +689,9 @@ public final class EtherClient {
             throw new IllegalArgumentException("Invalid balance provided.");
         }
 
-        CallTransaction.Function func = Settings.CHANNEL_CONTRACT.getByName("createChannelERC20");
+        CallTransaction.Function func = ContractFunctions.CREATE_CHANNEL_ERC20;
         byte[] funcBytes = func.encode(receiverAddress, deposit);
-        String funcEncodedDataStr = "0x" + new String(Hex.encodeHex(funcBytes));
+        String funcEncodedDataStr = HexCodec.prefixed(funcBytes);
         String request = getEtherRequest("eth_estimateGas", senderAddress,
                 Settings.CHANNEL_CONTRACT_ADDRESS, "0x0", funcEncodedDataStr);
 
@@ -419,35 +728,177 @@ public final class EtherClient {
 //            throw new IllegalArgumentException("Exceeded GAS estimation. "
 //                    + "Probably invalid signed transaction provided.");
 
-        request = getEtherRequest("eth_sendRawTransaction", signedOpenChannelTrans);
-
-        System.out.println("Submitting Open-Channel Transaction...");
+        TransactionReceipt receipt = submissions.submitOnce(signedOpenChannelTrans, () -> {
+            System.out.println("Submitting Open-Channel Transaction...");
 
-        String transactionId;
-        try {
-            transactionId = (String) httpAgent.getHttpResponse(request);
-        } catch (IOException e) {
-            if (Settings.DEBUG_INFO) {
-                System.out.println("Fail to execute HTTP request.");
+            String transactionId;
+            try {
+                transactionId = (String) httpAgent.getHttpResponse(
+                        getEtherRequest("eth_sendRawTransaction", signedOpenChannelTrans));
+            } catch (IOException e) {
+                if (Settings.DEBUG_INFO) {
+                    System.out.println("Fail to execute HTTP request.");
+                }
+                throw e;
             }
-            throw e;
+
+            if (transactionId == null || transactionId.equals("")) {
+                if (Settings.DEBUG_INFO) {
+                    System.out.println("Failed to open channel. " + senderAddress + " --> " + receiverAddress);
+                }
+
+                return null;
+            }
+
+            return waitingForReceipt(transactionId, gasPrice, resigner, httpAgent);
+        });
+        if (receipt == null) {
+            return null;
+        }
+        if (receipt.isFailed()) {
+            if (Settings.DEBUG_INFO) {
+                System.out.println("The open transaction was reverted. " + senderAddress + " --> "
+                        + receiverAddress);
+            }
+            return null;
         }
 
-        if (transactionId == null || transactionId.equals("")) {
+        return getOpenedChannel(senderAddress, receiverAddress, receipt, httpAgent);
+    }
+
+    /**
+     * Approves Payment Channels Contract to spend the deposit and opens the Payment Channel without waiting for
+     * the approve to be mined. Both transactions must be signed with consecutive nonces, the node holds the
+     * open until the approve is mined and runs them in order, so only the receipt of the open is waited for.
+     * If the approve fails, the open is reverted and null is returned. When the open gets stuck, the approve is
+     * replaced along with it while it is still pending.
+     *
+     * @param senderAddress                 The sender address in the Ethereum Network.
+     * @param receiverAddress               The receiver address in the Ethereum Network.
+     * @param deposit                       The initial deposit in the channel.
+     * @param signedApproveTrans            The approve transaction, signed by Sender.
+     * @param signedOpenChannelTrans        The Open Channel transaction, signed by Sender with the next nonce.
+     * @param gasPrice                      The gas price the transactions were signed with, or null.
+     * @param approveResigner               Signs the approve again with a higher gas price, or null.
+     * @param openResigner                  Signs the open again with a higher gas price, or null.
+     * @param httpAgent                     The Http wrapper.
+     * @return                              The PaymentChannel object, or null on failure.
+     * @throws IOException                  Thrown if fails to get http response from a remote mode.
+     * @throws IllegalArgumentException     Thrown if supplied invalid parameter.
+     */
+    public static EtherUtility.PaymentChannel approveAndOpenChannel(String senderAddress, String receiverAddress,
+                                                                    BigInteger deposit, String signedApproveTrans,
+                                                                    String signedOpenChannelTrans,
+                                                                    BigInteger gasPrice, Resigner approveResigner,
+                                                                    Resigner openResigner, Http httpAgent)
+            throws IOException, IllegalArgumentException {
+
+        if (!validateBalance(deposit)) {
             if (Settings.DEBUG_INFO) {
-                System.out.println("Failed to open channel. " + senderAddress + " --> " + receiverAddress);
+                System.out.println("Invalid Balance provided: " + deposit);
+            }
+
+            throw new IllegalArgumentException("Invalid balance provided.");
+        }
+
+        //A retry of the same open waits for the first one, its approve would be refused as already imported.
+        TransactionReceipt receipt = submissions.submitOnce(signedOpenChannelTrans, () -> {
+            String approveId = submitApprove(senderAddress, deposit, signedApproveTrans, httpAgent);
+            if (approveId == null) {
+                return null;
             }
 
+            System.out.println("Submitting Open-Channel Transaction...");
+
+            String transactionId;
+            try {
+                transactionId = (String) httpAgent.getHttpResponse(
+                        getEtherRequest("eth_sendRawTransaction", signedOpenChannelTrans));
+            } catch (IOException e) {
+                if (Settings.DEBUG_INFO) {
+                    System.out.println("Fail to execute HTTP request.");
+                }
+                throw e;
+            }
+
+            if (transactionId == null || transactionId.equals("")) {
+                if (Settings.DEBUG_INFO) {
+                    System.out.println("Failed to open channel. " + senderAddress + " --> " + receiverAddress
+                            + ", the approve " + approveId + " is left to be mined.");
+                }
+                return null;
+            }
+
+            //The ids of the approve and its replacements.
+            List<String> approveIds = new ArrayList<>();
+            approveIds.add(approveId);
+            Resigner resigner = null;
+            if (openResigner != null) {
+                resigner = newGasPrice -> {
+                    //The open can't be mined before the approve, replacing only the open wouldn't unstick it.
+                    if (approveResigner != null && getReceipt(approveIds, httpAgent) == null) {
+                        replaceApprove(approveIds, newGasPrice, approveResigner, httpAgent);
+                    }
+                    return openResigner.resign(newGasPrice);
+                };
+            }
+
+            TransactionReceipt openReceipt = waitingForReceipt(transactionId, gasPrice, resigner, httpAgent);
+            if (openReceipt != null && openReceipt.isFailed()) {
+                TransactionReceipt approveReceipt = getReceipt(approveIds, httpAgent);
+                if (approveReceipt == null || approveReceipt.isFailed()) {
+                    if (Settings.DEBUG_INFO) {
+                        System.out.println("The approve transaction failed, the open was reverted. "
+                                + senderAddress + " --> " + receiverAddress);
+                    }
+                    gasEstimates.invalidate(GasEstimateCache.key(ContractFunctions.APPROVE));
+                } else if (Settings.DEBUG_INFO) {
+                    System.out.println("The open transaction was reverted. " + senderAddress + " --> "
+                            + receiverAddress);
+                }
+            }
+            return openReceipt;
+        });
+        if (receipt == null || receipt.isFailed()) {
             return null;
         }
 
-        String blockNumberHex = waitingForTransaction(transactionId, httpAgent);
+        return getOpenedChannel(senderAddress, receiverAddress, receipt, httpAgent);
+    }
+
+    /**
+     * Builds the opened channel from the ChannelCreated event of the open receipt. The channel is only queried
+     * from the Channel contract if the receipt doesn't have the event.
+     *
+     * @param senderAddress     The sender address in the Ethereum Network.
+     * @param receiverAddress   The receiver address in the Ethereum Network.
+     * @param receipt           The receipt of the open transaction.
+     * @param httpAgent         The Http wrapper.
+     * @return                  The PaymentChannel object, or null if the channel wasn't created.
+     * @throws IOException      Thrown if fails to get http response from a remote mode.
+     */
+    private static EtherUtility.PaymentChannel getOpenedChannel(String senderAddress, String receiverAddress,
+                                                                TransactionReceipt receipt, Http httpAgent)
+            throws IOException {
         if (Settings.DEBUG_INFO) {
             System.out.println(senderAddress + " --> " + receiverAddress + " channel has been opened in block "
-                    + new BigInteger(blockNumberHex.substring(2), 16).toString(10));
+                    + receipt.blockNumber);
+        }
+
+        TransactionReceipt.Event created = receipt.find(TransactionReceipt.CHANNEL_CREATED);
+        if (created == null || receipt.blockNumber < 0
+                || !receiverAddress.equalsIgnoreCase(created.getAddress("_receiver"))) {
+            //Also how a reverted open looks on nodes without the status, the contract knows.
+            if (Settings.DEBUG_INFO) {
+                System.out.println("No ChannelCreated event in " + receipt.transactionHash
+                        + ", querying the channel.");
+            }
+            return getChannelInfo(senderAddress, receiverAddress, httpAgent);
         }
 
-        return getChannelInfo(senderAddress, receiverAddress, httpAgent);
+        //The contract keys a channel by the block it was opened in.
+        return new EtherUtility.PaymentChannel(senderAddress, receiverAddress, created.getUint("_deposit"),
+                (int) receipt.blockNumber, BigInteger.ZERO, "");
     }
 
     public static boolean closeChannel(String senderAddress, String receiverAddress,
@@ -456,32 +907,39 @@ public final class EtherClient {
 
 
 
-        String request = getEtherRequest("eth_sendRawTransaction", signedCloseToSuperTrans);
+        TransactionReceipt receipt = submissions.submitOnce(signedCloseToSuperTrans, () -> {
+            System.out.println("Submitting close channel transaction...");
 
-        System.out.println("Submitting close channel transaction...");
+            String transactionId;
+            try {
+                transactionId = (String) httpAgent.getHttpResponse(
+                        getEtherRequest("eth_sendRawTransaction", signedCloseToSuperTrans));
+            } catch (IOException e) {
+                if (Settings.DEBUG_INFO) {
+                    System.out.println("Fail to execute HTTP request.");
+                }
+                throw e;
+            }
 
-        String transactionId;
-        try {
-            transactionId = (String) httpAgent.getHttpResponse(request);
-        } catch (IOException e) {
-            if (Settings.DEBUG_INFO) {
-                System.out.println("Fail to execute HTTP request.");
+            if (transactionId == null || transactionId.equals("")) {
+                if (Settings.DEBUG_INFO) {
+                    System.out.println("Failed to close channel. " + senderAddress + " --> " + receiverAddress);
+                }
+
+                return null;
             }
-            throw e;
-        }
 
-        if (transactionId == null || transactionId.equals("")) {
+            return waitingForReceipt(transactionId, httpAgent);
+        });
+        if (receipt == null || receipt.isFailed()) {
             if (Settings.DEBUG_INFO) {
-                System.out.println("Failed to close channel. " + senderAddress + " --> " + receiverAddress);
+                System.out.println("The close transaction failed. " + senderAddress + " --> " + receiverAddress);
             }
-
             return false;
         }
-
-        String blockNumberHex = waitingForTransaction(transactionId, httpAgent);
         if (Settings.DEBUG_INFO) {
             System.out.println(senderAddress + " --> " + receiverAddress + " channel has been closed in block "
-                    + new BigInteger(blockNumberHex.substring(2), 16).toString(10));
+                    + receipt.blockNumber);
         }
 
         return true;
@@ -500,6 +958,24 @@ public final class EtherClient {
      */
     public static boolean cooperativeCloseReceiver(MeshId sigMeshId, String senderAddress, BigInteger balance,
                                                    byte[] balanceSig, byte[] closingSig, Http httpAgent) {
+        return cooperativeCloseReceiver(sigMeshId, senderAddress, balance, balanceSig, closingSig, null, httpAgent);
+    }
+
+    /**
+     * Closes a payment channel by receiver, signing the transaction with a nonce handed out by the nonce manager.
+     *
+     * @param sigMeshId         The Receiver's MeshId.
+     * @param senderAddress     The Sender's Ether address.
+     * @param balance           The balance of the receiver.
+     * @param balanceSig        The balance signature, signed by the sender.
+     * @param closingSig        The closing signature, signed by the receiver..
+     * @param nonces            The nonce manager of the receiver, or null to query the nonce from the Ether node.
+     * @param httpAgent         The http agent to send the request to the Ether node.
+     * @return                  True on success, otherwise returns False.
+     */
+    public static boolean cooperativeCloseReceiver(MeshId sigMeshId, String senderAddress, BigInteger balance,
+                                                   byte[] balanceSig, byte[] closingSig, NonceManager nonces,
+                                                   Http httpAgent) {
 
         byte[] balance_Msg_Hash_Sig_r = Arrays.copyOfRange(balanceSig, 0, 32);
         byte[] balance_Msg_Hash_Sig_s = Arrays.copyOfRange(balanceSig, 32, 64);
@@ -513,75 +989,16 @@ public final class EtherClient {
                     + " , receiver balance = " + balance);
         }
 
-        CallTransaction.Function func = Settings.CHANNEL_CONTRACT.getByName("cooperativeCloseReceiver");
+        CallTransaction.Function func = ContractFunctions.COOPERATIVE_CLOSE_RECEIVER;
         byte[] funcBytes = func.encode(senderAddress, balance,
             balance_Msg_Hash_Sig_r, balance_Msg_Hash_Sig_s, new BigInteger(balance_Msg_Hash_Sig_v),
             closing_Msg_Hash_Sig_r, closing_Msg_Hash_Sig_s, new BigInteger(closing_Msg_Hash_Sig_v));
 
-        String funcBytesStr = "0x" + new String(Hex.encodeHex(funcBytes));
-        String request = getEtherRequest("eth_estimateGas", sigMeshId.toString(),
-                Settings.CHANNEL_CONTRACT_ADDRESS, "0x0", funcBytesStr);
-
-        if (Settings.DEBUG_INFO) {
-            System.out.println("The request string of queryEstimateGas is " + request);
-        }
-
-        String estimateGasRes;
-        try {
-            estimateGasRes = (String) httpAgent.getHttpResponse(request);
-        } catch (IOException e) {
-            System.out.println("Invoking function with given arguments is not allowed.");
-            return false;
-        }
-
-        if(estimateGasRes == null) {
-            if (Settings.DEBUG_INFO) {
-                System.out.println("Failed to get response from the Ether node.");
-            }
-            return false;
-        }
-
-        if (Settings.DEBUG_INFO) {
-            System.out.println("The estimatedGas of cooperative channel closing is " + estimateGasRes + ".");
-        }
-
-        //Try to get nonce of the receiver
-        BigInteger recvNonce = EtherClient.getNonce(sigMeshId.toString(), httpAgent);
-        if (recvNonce == null) {
-            if (Settings.DEBUG_INFO) {
-                System.out.println("Failed to get nonce for address: " + sigMeshId.toString());
-            }
+        if (!submitChannelCall(sigMeshId, GasEstimateCache.key(func, balance), funcBytes,
+                TransactionReceipt.CHANNEL_SETTLED, nonces, httpAgent)) {
             return false;
         }
 
-        Transaction trans = new Transaction(ConversionUtility.bigIntegerToBytes(recvNonce), // nonce
-                ConversionUtility.bigIntegerToBytes(Settings.GAS_PRICE), // gas price
-                ConversionUtility.bigIntegerToBytes(new BigInteger(estimateGasRes.substring(2), 16)), // gas limit
-                ByteUtil.hexStringToBytes(Settings.CHANNEL_CONTRACT_ADDRESS), // to id
-                ConversionUtility.bigIntegerToBytes(new BigInteger("0", 10)), // value
-                funcBytes,
-                Settings.CHAIN_ID);// chainid
-
-        sigMeshId.sign(trans);
-
-        String signedTrans = "0x" + new String(Hex.encodeHex(trans.getEncoded()));
-        request = getEtherRequest("eth_sendRawTransaction", signedTrans);
-
-        String transId;
-        try {
-            transId = (String) httpAgent.getHttpResponse(request);
-        } catch (IOException e) {
-            System.out.println("Fail to execute HTTP request.");
-            return false;
-        }
-
-        if (!"".equals(transId)) {
-            if (Settings.DEBUG_INFO) {
-                System.out.println("Waiting for Kovan to mine transactions ... ");
-            }
-            waitingForTransaction(transId, httpAgent);
-        }
-
         if(Settings.DEBUG_INFO) {
             System.out.println("Channel has been closed: " + senderAddress + " --> " + sigMeshId);
         }
@@ -603,6 +1020,24 @@ public final class EtherClient {
      */
     public static boolean cooperativeCloseSender(MeshId sigMeshId, String recvAddress, BigInteger balance,
                                                  byte[] balanceSig, byte[] closingSig, Http httpAgent) {
+        return cooperativeCloseSender(sigMeshId, recvAddress, balance, balanceSig, closingSig, null, httpAgent);
+    }
+
+    /**
+     * Closes a payment channel by sender, signing the transaction with a nonce handed out by the nonce manager.
+     *
+     * @param sigMeshId         The Sender's MeshId.
+     * @param recvAddress       The Receiver's Ether address.
+     * @param balance           The balance of the receiver.
+     * @param balanceSig        The balance signature, signed by the sender.
+     * @param closingSig        The closing signature, signed by the receiver..
+     * @param nonces            The nonce manager of the sender, or null to query the nonce from the Ether node.
+     * @param httpAgent         The http agent to send the request to the Ether node.
+     * @return                  True on success, otherwise returns False.
+     */
+    public static boolean cooperativeCloseSender(MeshId sigMeshId, String recvAddress, BigInteger balance,
+                                                 byte[] balanceSig, byte[] closingSig, NonceManager nonces,
+                                                 Http httpAgent) {
 
         byte[] balance_Msg_Hash_Sig_r = Arrays.copyOfRange(balanceSig, 0, 32);
         byte[] balance_Msg_Hash_Sig_s = Arrays.copyOfRange(balanceSig, 32, 64);
@@ -616,13 +1051,210 @@ public final class EtherClient {
                     + ", receiver balance = " + balance);
         }
 
-        CallTransaction.Function func = Settings.CHANNEL_CONTRACT.getByName("cooperativeCloseSender");
+        CallTransaction.Function func = ContractFunctions.COOPERATIVE_CLOSE_SENDER;
         byte[] funcBytes = func.encode(recvAddress, balance,
                 balance_Msg_Hash_Sig_r, balance_Msg_Hash_Sig_s, new BigInteger(balance_Msg_Hash_Sig_v),
                 closing_Msg_Hash_Sig_r, closing_Msg_Hash_Sig_s, new BigInteger(closing_Msg_Hash_Sig_v));
 
-        String funcBytesStr = "0x" + new String(Hex.encodeHex(funcBytes));
-        String request = getEtherRequest("eth_estimateGas", sigMeshId.toString(),
+        if (!submitChannelCall(sigMeshId, GasEstimateCache.key(func, balance), funcBytes,
+                TransactionReceipt.CHANNEL_SETTLED, nonces, httpAgent)) {
+            return false;
+        }
+
+        if(Settings.DEBUG_INFO) {
+            System.out.println("Channel has been closed: " + sigMeshId + " --> " + recvAddress);
+        }
+
+        return true;
+    }
+
+
+    /**
+     * Adds to the deposits of several channels of the same sender. The topUpERC20 calls are signed with
+     * consecutive nonces and submitted back to back, then their receipts are waited for. The sender must have
+     * approved the Channel contract to transfer the added deposits.
+     *
+     * @param sigMeshId         The sender of the channels, signing the transactions.
+     * @param addedDeposits     The deposit to add by receiver address.
+     * @param firstNonce        The first of the consecutive nonces reserved for the calls, one per receiver.
+     * @param nonces            The nonce manager of the sender, the nonces are released or reset with it.
+     * @param httpAgent         The Http wrapper.
+     * @return                  The deposit added by receiver, for the channels which were topped up.
+     */
+    public static Map<String, BigInteger> topUpChannels(MeshId sigMeshId, Map<String, BigInteger> addedDeposits,
+                                                        BigInteger firstNonce, NonceManager nonces,
+                                                        Http httpAgent) {
+        Map<String, BigInteger> toppedUp = new HashMap<>();
+        if (addedDeposits.isEmpty()) {
+            nonces.reset(firstNonce);
+            return toppedUp;
+        }
+
+        CallTransaction.Function func = ContractFunctions.TOP_UP_ERC20;
+        List<String> receivers = new ArrayList<>(addedDeposits.keySet());
+        List<byte[]> calls = new ArrayList<>();
+        for (String receiver : receivers) {
+            calls.add(func.encode(receiver, addedDeposits.get(receiver)));
+        }
+
+        String estimateKey = GasEstimateCache.key(func);
+        BigInteger estimatedGas = gasEstimates.get(estimateKey);
+        if (estimatedGas == null) {
+            estimatedGas = estimateChannelCallGas(estimateKey, sigMeshId.toString(), calls.get(0), httpAgent);
+            if (estimatedGas == null) {
+                nonces.reset(firstNonce);
+                return toppedUp;
+            }
+        }
+        BigInteger gasLimit = GasEstimateCache.withSafetyMargin(estimatedGas);
+
+        BigInteger gasPrice = GasPriceOracle.getInstance().getGasPrice(GasPriceOracle.Tier.STANDARD);
+        List<String> transactionIds = new ArrayList<>();
+        boolean gap = false;
+        for (int i = 0; i < calls.size(); i++) {
+            String signedTrans = signChannelCall(sigMeshId, firstNonce.add(BigInteger.valueOf(i)), gasPrice,
+                    gasLimit, calls.get(i));
+            String transactionId;
+            try {
+                transactionId = (String) httpAgent.getHttpResponse(
+                        getEtherRequest("eth_sendRawTransaction", signedTrans));
+            } catch (IOException e) {
+                transactionId = null;
+            }
+            if (transactionId == null || transactionId.equals("")) {
+                //The later nonces can't be mined past the gap, they aren't submitted.
+                if (Settings.DEBUG_INFO) {
+                    System.out.println("Failed to submit the top-up of " + sigMeshId + " --> " + receivers.get(i));
+                }
+                gap = true;
+                break;
+            }
+            transactionIds.add(transactionId);
+        }
+        if (gap) {
+            //The submitted top-ups wait behind the unused nonces until they are filled.
+            nonces.reset(firstNonce, transactionIds.size());
+        } else {
+            nonces.release(firstNonce);
+        }
+
+        System.out.println("Submitted " + transactionIds.size() + " channel top-ups.");
+
+        for (int i = 0; i < transactionIds.size(); i++) {
+            BigInteger nonce = firstNonce.add(BigInteger.valueOf(i));
+            byte[] funcBytes = calls.get(i);
+            TransactionReceipt receipt = waitingForReceipt(transactionIds.get(i), gasPrice,
+                    newGasPrice -> signChannelCall(sigMeshId, nonce, newGasPrice, gasLimit, funcBytes), httpAgent);
+            if (receipt == null) {
+                continue;
+            }
+            if (!receipt.isSuccessful(TransactionReceipt.CHANNEL_TOPPED_UP) || receipt.isOutOfGas(gasLimit)) {
+                gasEstimates.invalidate(estimateKey);
+                continue;
+            }
+            TransactionReceipt.Event event = receipt.find(TransactionReceipt.CHANNEL_TOPPED_UP);
+            BigInteger added = event == null ? null : event.getUint("_added_deposit");
+            toppedUp.put(receivers.get(i), added != null ? added : addedDeposits.get(receivers.get(i)));
+        }
+
+        return toppedUp;
+    }
+
+
+    /**
+     * Signs a call to the Channel contract by the given MeshId, submits it and waits for it to get mined.
+     * The gas limit is taken from the gas estimate cache, a call with a cached estimate is dry-run with
+     * eth_call first. If the transaction runs out of gas with a cached estimate, the gas is estimated again
+     * and the call is submitted once more.
+     *
+     * @param sigMeshId     The MeshId signing the transaction.
+     * @param estimateKey   The gas estimate cache key of the call.
+     * @param funcBytes     The encoded function call.
+     * @param expectedEvent The event the call emits, tells a success on nodes without the receipt status.
+     * @param nonces        The nonce manager of the signer, or null to query the nonce from the Ether node.
+     * @param httpAgent     The Http wrapper.
+     * @return              True if the transaction was mined successfully, otherwise returns False.
+     */
+    private static boolean submitChannelCall(MeshId sigMeshId, String estimateKey, byte[] funcBytes,
+                                             String expectedEvent, NonceManager nonces, Http httpAgent) {
+        BigInteger estimatedGas = gasEstimates.get(estimateKey);
+        boolean cachedEstimate = estimatedGas != null;
+        if (!cachedEstimate) {
+            estimatedGas = estimateChannelCallGas(estimateKey, sigMeshId.toString(), funcBytes, httpAgent);
+            if (estimatedGas == null) {
+                return false;
+            }
+        } else if (!dryRunChannelCall(sigMeshId.toString(), funcBytes, httpAgent)) {
+            return false;
+        }
+
+        BigInteger gasLimit = GasEstimateCache.withSafetyMargin(estimatedGas);
+        TransactionReceipt receipt = signAndSubmitChannelCall(sigMeshId, funcBytes, gasLimit, nonces, httpAgent);
+        if (receipt != null && cachedEstimate && receipt.isOutOfGas(gasLimit)) {
+            if (Settings.DEBUG_INFO) {
+                System.out.println("Transaction ran out of gas with the cached estimate, estimating again.");
+            }
+
+            gasEstimates.invalidate(estimateKey);
+            estimatedGas = estimateChannelCallGas(estimateKey, sigMeshId.toString(), funcBytes, httpAgent);
+            if (estimatedGas == null) {
+                return false;
+            }
+
+            gasLimit = GasEstimateCache.withSafetyMargin(estimatedGas);
+            receipt = signAndSubmitChannelCall(sigMeshId, funcBytes, gasLimit, nonces, httpAgent);
+        }
+
+        return receipt != null && receipt.isSuccessful(expectedEvent);
+    }
+
+    /**
+     * Executes a call to the Channel contract with eth_call without submitting it. With a cached estimate
+     * the eth_estimateGas pre-flight is skipped, this dry-run keeps a call that would revert, e.g. a close
+     * of a channel that is already settled, from being mined and paying for the gas.
+     *
+     * @param fromAddress   The address calling the contract.
+     * @param funcBytes     The encoded function call.
+     * @param httpAgent     The Http wrapper.
+     * @return              True if the call executes, False if it reverts or the Ether node gave no response.
+     */
+    private static boolean dryRunChannelCall(String fromAddress, byte[] funcBytes, Http httpAgent) {
+        String request = getEtherRequest("eth_call", fromAddress, Settings.CHANNEL_CONTRACT_ADDRESS,
+                "0x0", HexCodec.prefixed(funcBytes));
+
+        Object response;
+        try {
+            response = httpAgent.getHttpResponse(request);
+        } catch (IOException e) {
+            if (Settings.DEBUG_INFO) {
+                System.out.println("The call would revert, not submitting it: " + e.getMessage());
+            }
+            return false;
+        }
+
+        if (response == null) {
+            if (Settings.DEBUG_INFO) {
+                System.out.println("Failed to get response from the Ether node.");
+            }
+            return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * Estimates the gas of a call to the Channel contract with the Ether node and caches the estimate.
+     *
+     * @param estimateKey   The gas estimate cache key.
+     * @param fromAddress   The address calling the contract.
+     * @param funcBytes     The encoded function call.
+     * @param httpAgent     The Http wrapper.
+     * @return              The estimated gas, or null on failure.
+     */
+    private static BigInteger estimateChannelCallGas(String estimateKey, String fromAddress, byte[] funcBytes,
+                                                     Http httpAgent) {
+        String funcBytesStr = HexCodec.prefixed(funcBytes);
+        String request = getEtherRequest("eth_estimateGas", fromAddress,
                 Settings.CHANNEL_CONTRACT_ADDRESS, "0x0", funcBytesStr);
 
         if (Settings.DEBUG_INFO) {
@@ -634,111 +1266,331 @@ public final class EtherClient {
             estimateGasRes = (String) httpAgent.getHttpResponse(request);
         } catch (IOException e) {
             System.out.println("Invoking function with given arguments is not allowed.");
-            return false;
+            return null;
         }
 
         if(estimateGasRes == null) {
             if (Settings.DEBUG_INFO) {
                 System.out.println("Failed to get response from the Ether node.");
             }
-            return false;
+            return null;
         }
 
         if (Settings.DEBUG_INFO) {
-            System.out.println("The estimatedGas of cooperative channel closing is " + estimateGasRes + ".");
+            System.out.println("The estimatedGas of " + estimateKey + " is " + estimateGasRes + ".");
         }
 
-        //Try to get nonce of the sender
-        BigInteger senderNonce = EtherClient.getNonce(sigMeshId.toString(), httpAgent);
-        if (senderNonce == null) {
+        BigInteger estimatedGas = HexCodec.quantity(estimateGasRes);
+        gasEstimates.put(estimateKey, estimatedGas);
+        return estimatedGas;
+    }
+
+    /**
+     * Signs a call to the Channel contract, submits it and waits for it to get mined.
+     *
+     * @param sigMeshId     The MeshId signing the transaction.
+     * @param funcBytes     The encoded function call.
+     * @param gasLimit      The gas limit.
+     * @param nonces        The nonce manager of the signer, or null to query the nonce from the Ether node.
+     * @param httpAgent     The Http wrapper.
+     * @return              The decoded transaction receipt, or null on failure.
+     */
+    private static TransactionReceipt signAndSubmitChannelCall(MeshId sigMeshId, byte[] funcBytes, BigInteger gasLimit,
+                                                       NonceManager nonces, Http httpAgent) {
+        //Try to get nonce of the signer
+        BigInteger nonce = nonces == null
+                ? EtherClient.getNonce(sigMeshId.toString(), httpAgent) : nonces.acquire();
+        if (nonce == null) {
             if (Settings.DEBUG_INFO) {
                 System.out.println("Failed to get nonce for address: " + sigMeshId.toString());
             }
-            return false;
+            return null;
         }
 
-        Transaction trans = new Transaction(ConversionUtility.bigIntegerToBytes(senderNonce), // nonce
-                ConversionUtility.bigIntegerToBytes(Settings.GAS_PRICE), // gas price
-                ConversionUtility.bigIntegerToBytes(new BigInteger(estimateGasRes.substring(2), 16)), // gas limit
-                ByteUtil.hexStringToBytes(Settings.CHANNEL_CONTRACT_ADDRESS), // to id
-                ConversionUtility.bigIntegerToBytes(new BigInteger("0", 10)), // value
-                funcBytes,
-                Settings.CHAIN_ID);// chainid
-
-        sigMeshId.sign(trans);
-
-        String signedTrans = "0x" + new String(Hex.encodeHex(trans.getEncoded()));
-        request = getEtherRequest("eth_sendRawTransaction", signedTrans);
+        BigInteger gasPrice = GasPriceOracle.getInstance().getGasPrice(GasPriceOracle.Tier.STANDARD);
+        String signedTrans = signChannelCall(sigMeshId, nonce, gasPrice, gasLimit, funcBytes);
+        String request = getEtherRequest("eth_sendRawTransaction", signedTrans);
 
         String transId;
         try {
             transId = (String) httpAgent.getHttpResponse(request);
         } catch (IOException e) {
             System.out.println("Fail to execute HTTP request.");
-            return false;
+            if (nonces != null) {
+                nonces.reset(nonce);
+            }
+            return null;
         }
 
-        if (!"".equals(transId)) {
+        if (transId == null || transId.equals("")) {
             if (Settings.DEBUG_INFO) {
-                System.out.println("Waiting for Kovan to mine transactions ... ");
+                System.out.println("Fail to submit the transaction.");
+            }
+            if (nonces != null) {
+                nonces.reset(nonce);
             }
-            waitingForTransaction(transId, httpAgent);
+            return null;
+        }
+        if (nonces != null) {
+            nonces.release(nonce);
         }
 
-        if(Settings.DEBUG_INFO) {
-            System.out.println("Channel has been closed: " + sigMeshId + " --> " + recvAddress);
+        if (Settings.DEBUG_INFO) {
+            System.out.println("Waiting for Kovan to mine transactions ... ");
         }
+        return waitingForReceipt(transId, gasPrice,
+                newGasPrice -> signChannelCall(sigMeshId, nonce, newGasPrice, gasLimit, funcBytes), httpAgent);
+    }
+
+    /**
+     * Spends a nonce whose transaction didn't reach the Ether node, with a zero value transfer of the signer to
+     * itself. The transactions with the next nonces can't be mined until it is.
+     *
+     * @param sigMeshId     The MeshId signing the transaction.
+     * @param nonce         The unused nonce.
+     * @param httpAgent     The Http wrapper.
+     * @return              True if the Ether node accepted the transfer, otherwise returns False.
+     */
+    static boolean fillNonce(MeshId sigMeshId, BigInteger nonce, Http httpAgent) {
+        BigInteger gasPrice = GasPriceOracle.getInstance().getGasPrice(GasPriceOracle.Tier.FAST);
+        Transaction trans = new Transaction(ConversionUtility.bigIntegerToBytes(nonce), // nonce
+                ConversionUtility.bigIntegerToBytes(gasPrice), // gas price
+                ConversionUtility.bigIntegerToBytes(TRANSFER_GAS), // gas limit
+                ByteUtil.hexStringToBytes(sigMeshId.toString()), // to id
+                ConversionUtility.bigIntegerToBytes(BigInteger.ZERO), // value
+                new byte[0],
+                Settings.CHAIN_ID);// chainid
+        sigMeshId.sign(trans);
 
+        String transactionId;
+        try {
+            transactionId = (String) httpAgent.getHttpResponse(
+                    getEtherRequest("eth_sendRawTransaction", HexCodec.prefixed(trans.getEncoded())));
+        } catch (IOException e) {
+            transactionId = null;
+        }
+        if (transactionId == null || transactionId.equals("")) {
+            System.out.println("Failed to fill the nonce " + nonce + " of " + sigMeshId + ".");
+            return false;
+        }
+
+        System.out.println("Filled the nonce " + nonce + " of " + sigMeshId + " with Transaction " + transactionId);
         return true;
     }
 
+    /**
+     * Signs a call to the Channel contract.
+     *
+     * @param sigMeshId     The MeshId signing the transaction.
+     * @param nonce         The nonce.
+     * @param gasPrice      The gas price.
+     * @param gasLimit      The gas limit.
+     * @param funcBytes     The encoded function call.
+     * @return              The signed raw transaction.
+     */
+    private static String signChannelCall(MeshId sigMeshId, BigInteger nonce, BigInteger gasPrice,
+                                          BigInteger gasLimit, byte[] funcBytes) {
+        Transaction trans = new Transaction(ConversionUtility.bigIntegerToBytes(nonce), // nonce
+                ConversionUtility.bigIntegerToBytes(gasPrice), // gas price
+                ConversionUtility.bigIntegerToBytes(gasLimit), // gas limit
+                ByteUtil.hexStringToBytes(Settings.CHANNEL_CONTRACT_ADDRESS), // to id
+                ConversionUtility.bigIntegerToBytes(new BigInteger("0", 10)), // value
+                funcBytes,
+                Settings.CHAIN_ID);// chainid
+
+        sigMeshId.sign(trans);
+
+        return HexCodec.prefixed(trans.getEncoded());
+    }
+
 
     /**
      * Waiting for the transaction to get mined
      *
      * @param transacitonId     The transaction id.
      * @param httpAgent         The Http wrapper
-     * @return                  The block number in which the transaction was mined.
+     * @return                  The decoded transaction receipt, or null if failed to query it.
+     */
+    private static TransactionReceipt waitingForReceipt(String transacitonId, Http httpAgent) {
+        return waitingForReceipt(transacitonId, null, null, httpAgent);
+    }
+
+    /**
+     * Waiting for the transaction to get mined. If a resigner is given, the transaction is replaced by one with
+     * a higher gas price each time it stays pending for {@link Settings#STUCK_TRANSACTION_TIMEOUT} milliseconds.
+     * Whichever of the submitted transactions gets mined first is returned. The wait gives up after
+     * {@link Settings#RECEIPT_TIMEOUT} milliseconds, whether or not the transaction can still be replaced.
+     *
+     * @param transacitonId     The transaction id.
+     * @param gasPrice          The gas price the transaction was signed with, or null.
+     * @param resigner          Signs the transaction again with a higher gas price, or null.
+     * @param httpAgent         The Http wrapper
+     * @return                  The decoded transaction receipt, or null if failed to query it or timed out.
      */
-    private static String waitingForTransaction(String transacitonId, Http httpAgent) {
+    private static TransactionReceipt waitingForReceipt(String transacitonId, BigInteger gasPrice,
+                                                        Resigner resigner, Http httpAgent) {
         if (Settings.DEBUG_INFO) {
             System.out.println("Waiting for Transaction ID: " + transacitonId);
         }
 
         System.out.println("Waiting for Transaction " + transacitonId + " to be mined...");
 
-        boolean loop = true;
-        String blockNumber = "";
-        Object tempObj;
-        String request = getEtherRequest("eth_getTransactionReceipt", transacitonId);
+        List<String> transactionIds = new ArrayList<>();
+        transactionIds.add(transacitonId);
+        Config config = Settings.current();
+        long replaceAt = System.currentTimeMillis() + config.stuckTransactionTimeout;
+        long deadline = System.currentTimeMillis() + config.receiptTimeout;
+        PendingTransactions.getInstance().add(transacitonId, gasPrice);
 
-        while (loop) {
+        try {
+            while (true) {
+                for (String transactionId : transactionIds) {
+                    String request = getEtherRequest("eth_getTransactionReceipt", transactionId);
+                    Object tempObj;
+                    try {
+                        tempObj = httpAgent.getHttpResponse(request);
+                    } catch (IOException e) {
+                        if (Settings.DEBUG_INFO) {
+                            System.out.println("Fail to execute HTTP request.");
+                        }
+                        return null;
+                    }
+
+                    if (tempObj != null) {
+                        return TransactionReceipt.parse((JSONObject) tempObj);
+                    }
+                }
 
-            try {
-                tempObj = httpAgent.getHttpResponse(request);
-            } catch (IOException e) {
-                if (Settings.DEBUG_INFO) {
-                    System.out.println("Fail to execute HTTP request.");
+                if (resigner != null && gasPrice != null && System.currentTimeMillis() >= replaceAt) {
+                    int submitted = transactionIds.size();
+                    gasPrice = speedUpTransaction(transactionIds, gasPrice, resigner, httpAgent);
+                    if (transactionIds.size() > submitted) {
+                        PendingTransactions.getInstance().replaced(transacitonId,
+                                transactionIds.get(transactionIds.size() - 1), gasPrice);
+                    }
+                    replaceAt = System.currentTimeMillis() + Settings.current().stuckTransactionTimeout;
+                }
+
+                if (System.currentTimeMillis() >= deadline) {
+                    //The transaction may still be mined later, but nothing waits behind it any longer.
+                    System.out.println("Timed out waiting for Transaction " + transacitonId + " after "
+                            + config.receiptTimeout + " ms.");
+                    Metrics.getInstance().error("receipt_timeout");
+                    return null;
                 }
-                return "";
-            }
 
-            if (tempObj == null) {
-                //do nothing
                 try {
-                    Thread.sleep(Settings.TRANS_CHECK_INTERAVAL);
+                    Thread.sleep(Settings.current().transCheckInterval);
                 } catch (InterruptedException e) {
+                    //Interrupted on shutdown, give up waiting.
+                    Thread.currentThread().interrupt();
+                    return null;
+                }
+            }
+        } finally {
+            PendingTransactions.getInstance().remove(transacitonId);
+        }
+    }
+
+    /**
+     * Replaces a stuck transaction by the same transaction signed with a higher gas price. The new price is
+     * bumped by at least {@link Settings#GAS_PRICE_BUMP_PERCENT} percent, so the node accepts the replacement.
+     *
+     * @param transactionIds    The ids of the transactions submitted so far, the replacement is added to it.
+     * @param gasPrice          The gas price of the last submitted transaction.
+     * @param resigner          Signs the transaction again with a higher gas price.
+     * @param httpAgent         The Http wrapper.
+     * @return                  The gas price of the last submitted transaction.
+     */
+    private static BigInteger speedUpTransaction(List<String> transactionIds, BigInteger gasPrice,
+                                                 Resigner resigner, Http httpAgent) {
+        Config config = Settings.current();
+        BigInteger newGasPrice = gasPrice.multiply(BigInteger.valueOf(100 + config.gasPriceBumpPercent))
+                .divide(BigInteger.valueOf(100)).add(BigInteger.ONE)
+                .max(GasPriceOracle.getInstance().getGasPrice(GasPriceOracle.Tier.FAST));
+        if (newGasPrice.compareTo(config.maxGasPrice) > 0) {
+            if (Settings.DEBUG_INFO) {
+                System.out.println("Transaction " + transactionIds.get(0)
+                        + " is stuck, but the gas price already reached the maximum.");
+            }
+            return gasPrice;
+        }
+
+        String signedTrans = resigner.resign(newGasPrice);
+        if (signedTrans == null) {
+            return gasPrice;
+        }
 
+        String transactionId;
+        try {
+            transactionId = (String) httpAgent.getHttpResponse(getEtherRequest("eth_sendRawTransaction", signedTrans));
+        } catch (IOException e) {
+            if (Settings.DEBUG_INFO) {
+                System.out.println("Failed to submit the replacement transaction: " + e.getMessage());
+            }
+            return gasPrice;
+        }
+
+        if (transactionId == null || transactionId.equals("")) {
+            return gasPrice;
+        }
+
+        System.out.println("Transaction " + transactionIds.get(0) + " is stuck, replaced by "
+                + transactionId + " with gas price " + newGasPrice);
+        transactionIds.add(transactionId);
+        return newGasPrice;
+    }
+
+    /**
+     * Gets the receipt of whichever of the submitted transactions was mined.
+     *
+     * @param transactionIds    The ids of a transaction and its replacements.
+     * @param httpAgent         The Http wrapper.
+     * @return                  The decoded receipt, or null if none is mined yet or failed to query it.
+     */
+    private static TransactionReceipt getReceipt(List<String> transactionIds, Http httpAgent) {
+        for (String transactionId : transactionIds) {
+            try {
+                Object receipt = httpAgent.getHttpResponse(getEtherRequest("eth_getTransactionReceipt",
+                        transactionId));
+                if (receipt != null) {
+                    return TransactionReceipt.parse((JSONObject) receipt);
                 }
-            } else {
-                loop = false;
-                JSONObject jsonObject = (JSONObject) tempObj;
-                //The jsonObject can be further parsed to get more information.
-                blockNumber = (String) jsonObject.get("blockNumber");
+            } catch (IOException e) {
+                return null;
             }
         }
+        return null;
+    }
+
+    /**
+     * Replaces a pending approve, so the open queued behind it can be mined.
+     *
+     * @param approveIds    The ids of the approve and its replacements, the new one is added to it.
+     * @param gasPrice      The gas price of the replacement.
+     * @param resigner      Signs the approve again.
+     * @param httpAgent     The Http wrapper.
+     */
+    private static void replaceApprove(List<String> approveIds, BigInteger gasPrice, Resigner resigner,
+                                       Http httpAgent) {
+        String signedTrans = resigner.resign(gasPrice);
+        if (signedTrans == null) {
+            return;
+        }
 
-        return blockNumber;
+        try {
+            String transactionId = (String) httpAgent.getHttpResponse(
+                    getEtherRequest("eth_sendRawTransaction", signedTrans));
+            if (transactionId != null && !transactionId.equals("")) {
+                System.out.println("Approve " + approveIds.get(0) + " is stuck, replaced by " + transactionId
+                        + " with gas price " + gasPrice);
+                approveIds.add(transactionId);
+            }
+        } catch (IOException e) {
+            if (Settings.DEBUG_INFO) {
+                System.out.println("Failed to submit the replacement approve: " + e.getMessage());
+            }
+        }
     }
 
     /**
@@ -748,7 +1600,7 @@ public final class EtherClient {
      * @return          True if balance is valid, otherwise returns False.
      */
     private static boolean validateBalance(BigInteger balance) {
-        return (balance.compareTo(Settings.MAX_DEPOSIT) <= 0);
+        return (balance.compareTo(Settings.current().maxDeposit) <= 0);
     }
 
     /**
@@ -759,8 +1611,22 @@ public final class EtherClient {
      * @param data      the Encoded data.
      * @return          The constructed String.
      */
-    private static String getEtherRequest(String method, String fromAddress, String toAddress,
+    static String getEtherRequest(String method, String fromAddress, String toAddress,
                                           String value, String data) {
+        return getEtherRequest(method, fromAddress, toAddress, value, data, "latest");
+    }
+
+    /**
+     * Constructs the request to the Ether network, executed against the state at a given block.
+     *
+     * @param method    Method name to be execute by the Ether network.
+     * @param toAddress the To address.
+     * @param data      the Encoded data.
+     * @param block     the block number in hex, or a block tag like "latest".
+     * @return          The constructed String.
+     */
+    static String getEtherRequest(String method, String fromAddress, String toAddress,
+                                          String value, String data, String block) {
         return "{\"method\":\""
                 + method
                 + "\",\"params\":["
@@ -769,13 +1635,48 @@ public final class EtherClient {
                 + ((toAddress == null || toAddress == "") ? "" : "\"to\":\"" + toAddress + "\",")
                 + ((value == null || value == "") ? "" : "\"value\":\"" + value + "\",")
                 + ((data == null || data == "") ? "" : "\"data\":\"" + data + "\"")
-                + "}," + "\"latest\"" + "],"
+                + "}," + "\"" + block + "\"" + "],"
                 + "\"id\":"
                 + Settings.CHAIN_ID
                 + ",\"jsonrpc\":\"2.0\"}";
     }
 
 
+    /**
+     * Constructs the request for a storage word, for a batch of requests.
+     *
+     * @param address   The contract address.
+     * @param slot      The storage slot in hex.
+     * @param id        The id of the request, its index in the batch.
+     * @return          The constructed String.
+     */
+    static String getStorageRequest(String address, String slot, int id) {
+        return "{\"method\":\"eth_getStorageAt\",\"params\":[\""
+                + address
+                + "\",\""
+                + slot
+                + "\",\"latest\"],\"id\":"
+                + id
+                + ",\"jsonrpc\":\"2.0\"}";
+    }
+
+
+    /**
+     * Constructs the Ether request without parameters.
+     *
+     * @param method        The method name.
+     * @return              The constructed Ether request.
+     */
+    static String getEtherRequest(String method) {
+
+        return "{\"method\":\""
+                + method
+                + "\",\"params\":[],\"id\":"
+                + Settings.CHAIN_ID
+                + ",\"jsonrpc\":\"2.0\"}";
+    }
+
+
     /**
      * Constructs the Ether request.
      *
@@ -783,7 +1684,7 @@ public final class EtherClient {
      * @param transaction   The Ether transaction.
      * @return              The constructed Ether request.
      */
-    private static String getEtherRequest(String method, String transaction) {
+    static String getEtherRequest(String method, String transaction) {
 
         return "{\"method\":\""
                 + method
@@ -0,0 +1,106 @@
+package ether;
+
+import org.ethereum.core.CallTransaction;
+
+import java.math.BigInteger;
+import java.util.concurrent.ConcurrentHashMap;
+
+
+/**
+ * Caches gas estimates per contract function and argument shape. The gas a function consumes is nearly
+ * constant for arguments of the same shape, so the estimate RPC only needs to run when an entry is missing,
+ * expired or has proven to be too low.
+ */
+public final class GasEstimateCache {
+
+    private final ConcurrentHashMap<String, Estimate> estimates = new ConcurrentHashMap<>();
+
+    /**
+     * Builds the cache key for a function. All arguments of the functions we call are fixed-size ABI types,
+     * so the function selector identifies the argument shape as well.
+     *
+     * @param func  The contract function.
+     * @return      The cache key.
+     */
+    public static String key(CallTransaction.Function func) {
+        return func.name + ":" + HexCodec.encode(func.encodeSignature());
+    }
+
+    /**
+     * Builds the cache key for a cooperative close. Settling a zero balance skips the token transfer to the
+     * receiver and needs far less gas than settling a non-zero one, so the two get separate estimates.
+     *
+     * @param func      The cooperative close function.
+     * @param balance   The balance of the receiver the channel is settled with.
+     * @return          The cache key.
+     */
+    public static String key(CallTransaction.Function func, BigInteger balance) {
+        return key(func) + (balance.signum() == 0 ? ":zero" : ":nonzero");
+    }
+
+    /**
+     * Adds the safety margin to an estimate, capped at the global gas limit.
+     *
+     * @param estimate  The estimated gas.
+     * @return          The gas limit to sign the transaction with.
+     */
+    public static BigInteger withSafetyMargin(BigInteger estimate) {
+        Config config = Settings.current();
+        BigInteger gasLimit = estimate.multiply(BigInteger.valueOf(100 + config.gasEstimateMarginPercent))
+                .divide(BigInteger.valueOf(100));
+        return gasLimit.min(config.gasLimit);
+    }
+
+    /**
+     * Gets the cached estimate.
+     *
+     * @param key   The cache key.
+     * @return      The estimated gas, or null if it's unknown or expired.
+     */
+    public BigInteger get(String key) {
+        Estimate estimate = estimates.get(key);
+        if (estimate == null) {
+            Metrics.getInstance().cacheLookup("gas_estimate", false);
+            return null;
+        }
+
+        if (System.currentTimeMillis() - estimate.timestamp > Settings.current().gasEstimateTtl) {
+            estimates.remove(key, estimate);
+            Metrics.getInstance().cacheLookup("gas_estimate", false);
+            return null;
+        }
+
+        Metrics.getInstance().cacheLookup("gas_estimate", true);
+        return estimate.gas;
+    }
+
+    /**
+     * Stores a live estimate.
+     *
+     * @param key   The cache key.
+     * @param gas   The estimated gas.
+     */
+    public void put(String key, BigInteger gas) {
+        estimates.put(key, new Estimate(gas, System.currentTimeMillis()));
+    }
+
+    /**
+     * Drops the estimate, e.g. after a transaction signed with it ran out of gas.
+     *
+     * @param key   The cache key.
+     */
+    public void invalidate(String key) {
+        estimates.remove(key);
+    }
+
+
+    private static final class Estimate {
+        final BigInteger gas;
+        final long timestamp;
+
+        Estimate(BigInteger gas, long timestamp) {
+            this.gas = gas;
+            this.timestamp = timestamp;
+        }
+    }
+}
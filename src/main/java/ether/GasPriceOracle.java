@@ -0,0 +1,156 @@
+package ether;
+
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+
+import java.math.BigInteger;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Samples the gas prices paid in recent blocks in the background and exposes a cached price per inclusion tier.
+ * Falls back to the configured gas price until the first sample is taken, or if sampling fails.
+ */
+public final class GasPriceOracle {
+
+    /**
+     * Target inclusion tiers, each one maps to a percentile of the gas prices paid in recent blocks.
+     */
+    public enum Tier {
+        SLOW(10), STANDARD(50), FAST(90);
+
+        private final int percentile;
+
+        Tier(int percentile) {
+            this.percentile = percentile;
+        }
+    }
+
+    private static final GasPriceOracle instance = new GasPriceOracle();
+
+    private final ArrayDeque<List<BigInteger>> recentBlocks = new ArrayDeque<>();
+    private String lastBlockNumber = null;
+    private volatile BigInteger[] prices = null;
+    private ScheduledExecutorService sampler = null;
+    private Http httpAgent;
+
+    public static GasPriceOracle getInstance() {
+        return instance;
+    }
+
+    private GasPriceOracle() {
+    }
+
+    /**
+     * Starts sampling the Ether node every {@link Config#gasOracleInterval} milliseconds, the interval of the
+     * current configuration is read before every sample.
+     *
+     * @param httpAgent The Http wrapper.
+     */
+    public synchronized void start(Http httpAgent) {
+        if (sampler != null) {
+            return;
+        }
+
+        this.httpAgent = httpAgent;
+        sampler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "gas-price-oracle");
+            thread.setDaemon(true);
+            return thread;
+        });
+        sampler.schedule(this::sampleAndReschedule, 0, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops sampling, the last sampled prices stay available.
+     */
+    public synchronized void stop() {
+        if (sampler != null) {
+            sampler.shutdownNow();
+            sampler = null;
+        }
+    }
+
+    /**
+     * Gets the gas price for the tier.
+     *
+     * @param tier  The target inclusion tier.
+     * @return      The sampled gas price, or the configured gas price if there is no sample yet.
+     */
+    public BigInteger getGasPrice(Tier tier) {
+        BigInteger[] sampled = prices;
+        return sampled == null ? Settings.current().gasPrice : sampled[tier.ordinal()];
+    }
+
+    private void sampleAndReschedule() {
+        sample();
+        synchronized (this) {
+            if (sampler != null) {
+                sampler.schedule(this::sampleAndReschedule, Settings.current().gasOracleInterval,
+                        TimeUnit.MILLISECONDS);
+            }
+        }
+    }
+
+    /**
+     * Collects the gas prices of the latest block and recomputes the tiers over the recent blocks window.
+     */
+    private void sample() {
+        Config config = Settings.current();
+        try {
+            BigInteger nodeGasPrice = EtherClient.getGasPrice(httpAgent);
+            JSONObject block = EtherClient.getBlockByNumber("latest", true, httpAgent);
+            if (block != null && !block.get("number").equals(lastBlockNumber)) {
+                List<BigInteger> blockPrices = new ArrayList<>();
+                for (Object transaction : (JSONArray) block.get("transactions")) {
+                    String gasPrice = (String) ((JSONObject) transaction).get("gasPrice");
+                    if (gasPrice != null) {
+                        blockPrices.add(HexCodec.quantity(gasPrice));
+                    }
+                }
+
+                recentBlocks.addLast(blockPrices);
+                while (recentBlocks.size() > config.gasOracleBlocks) {
+                    recentBlocks.removeFirst();
+                }
+                lastBlockNumber = (String) block.get("number");
+            }
+
+            List<BigInteger> window = new ArrayList<>();
+            for (List<BigInteger> blockPrices : recentBlocks) {
+                window.addAll(blockPrices);
+            }
+            Collections.sort(window);
+
+            BigInteger[] sampled = new BigInteger[Tier.values().length];
+            for (Tier tier : Tier.values()) {
+                BigInteger price = window.isEmpty()
+                        ? nodeGasPrice
+                        : window.get((window.size() - 1) * tier.percentile / 100);
+                if (price == null) {
+                    price = config.gasPrice;
+                }
+                sampled[tier.ordinal()] = price.min(config.maxGasPrice);
+            }
+            prices = sampled;
+
+            if (Settings.DEBUG_INFO) {
+                System.out.println("Gas prices: slow = " + sampled[Tier.SLOW.ordinal()]
+                        + ", standard = " + sampled[Tier.STANDARD.ordinal()]
+                        + ", fast = " + sampled[Tier.FAST.ordinal()]);
+            }
+        } catch (RuntimeException e) {
+            //Keep the previous sample, the scheduler would stop on an uncaught exception.
+            if (Settings.DEBUG_INFO) {
+                System.out.println("Failed to sample gas prices, " + e.getClass().getCanonicalName()
+                        + ": " + e.getMessage());
+            }
+        }
+    }
+}
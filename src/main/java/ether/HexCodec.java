@@ -0,0 +1,181 @@
+package ether;
+
+import java.math.BigInteger;
+
+
+/**
+ * Hex conversions of the JSON-RPC and ABI hot paths. Digits are looked up in tables and written to or read from
+ * the caller's buffers at an offset, so an ABI word or a quantity is converted in place, without the substring
+ * and the intermediate strings of the generic conversions.
+ */
+public final class HexCodec {
+
+    private static final char[] DIGITS = "0123456789abcdef".toCharArray();
+    //The value of each hex digit by character, -1 for the other characters.
+    private static final byte[] VALUES = new byte[128];
+
+    //Quantities with up to this many digits fit in a long.
+    private static final int LONG_DIGITS = 15;
+
+    static {
+        java.util.Arrays.fill(VALUES, (byte) -1);
+        for (int i = 0; i < 10; i++) {
+            VALUES['0' + i] = (byte) i;
+        }
+        for (int i = 0; i < 6; i++) {
+            VALUES['a' + i] = (byte) (10 + i);
+            VALUES['A' + i] = (byte) (10 + i);
+        }
+    }
+
+    //private C'tor to prevent initialization
+    private HexCodec() {
+    }
+
+    /**
+     * @param bytes The bytes.
+     * @return      The bytes in lowercase hex, without the 0x prefix.
+     */
+    public static String encode(byte[] bytes) {
+        return encode(bytes, 0, bytes.length);
+    }
+
+    /**
+     * @param bytes     The bytes.
+     * @param offset    The first byte to encode.
+     * @param length    The number of bytes to encode.
+     * @return          The bytes in lowercase hex, without the 0x prefix.
+     */
+    public static String encode(byte[] bytes, int offset, int length) {
+        char[] out = new char[length * 2];
+        encode(bytes, offset, length, out, 0);
+        return new String(out);
+    }
+
+    /**
+     * @param bytes The bytes.
+     * @return      The bytes in lowercase hex, with the 0x prefix.
+     */
+    public static String prefixed(byte[] bytes) {
+        char[] out = new char[2 + bytes.length * 2];
+        out[0] = '0';
+        out[1] = 'x';
+        encode(bytes, 0, bytes.length, out, 2);
+        return new String(out);
+    }
+
+    /**
+     * Writes bytes in lowercase hex into a buffer.
+     *
+     * @param bytes     The bytes.
+     * @param offset    The first byte to encode.
+     * @param length    The number of bytes to encode.
+     * @param out       The buffer, must have room for 2 * length characters.
+     * @param outOffset Where to write the first digit.
+     */
+    public static void encode(byte[] bytes, int offset, int length, char[] out, int outOffset) {
+        for (int i = 0; i < length; i++) {
+            int value = bytes[offset + i] & 0xff;
+            out[outOffset++] = DIGITS[value >>> 4];
+            out[outOffset++] = DIGITS[value & 0x0f];
+        }
+    }
+
+    /**
+     * @param hex   The hex string, with or without the 0x prefix.
+     * @return      The bytes.
+     * @throws NumberFormatException    Thrown if the string isn't hex or has an odd number of digits.
+     */
+    public static byte[] decode(CharSequence hex) throws NumberFormatException {
+        int start = digitsStart(hex);
+        int digits = hex.length() - start;
+        if (digits % 2 != 0) {
+            throw new NumberFormatException("Odd number of hex digits: " + hex);
+        }
+        byte[] out = new byte[digits / 2];
+        decode(hex, start, digits, out, 0);
+        return out;
+    }
+
+    /**
+     * Reads an even number of hex digits into a buffer.
+     *
+     * @param hex       The hex string.
+     * @param offset    The first digit to decode.
+     * @param digits    The number of digits to decode.
+     * @param out       The buffer, must have room for digits / 2 bytes.
+     * @param outOffset Where to write the first byte.
+     * @throws NumberFormatException    Thrown if a character isn't a hex digit.
+     */
+    public static void decode(CharSequence hex, int offset, int digits, byte[] out, int outOffset)
+            throws NumberFormatException {
+        for (int i = 0; i < digits; i += 2) {
+            out[outOffset++] = (byte) (digit(hex, offset + i) << 4 | digit(hex, offset + i + 1));
+        }
+    }
+
+    /**
+     * Parses a JSON-RPC quantity, the short ones without going through a string of digits.
+     *
+     * @param hex   The quantity, with or without the 0x prefix.
+     * @return      The number.
+     * @throws NumberFormatException    Thrown if the string isn't hex or is longer than 256 bits.
+     */
+    public static BigInteger quantity(CharSequence hex) throws NumberFormatException {
+        int start = digitsStart(hex);
+        int digits = hex.length() - start;
+        if (digits <= LONG_DIGITS) {
+            return BigInteger.valueOf(parseLong(hex, start, digits));
+        }
+        return new UInt256().setHex(hex, start, digits).toBigInteger();
+    }
+
+    /**
+     * Parses a JSON-RPC quantity that fits in a long, like a block number.
+     *
+     * @param hex   The quantity, with or without the 0x prefix.
+     * @return      The number.
+     * @throws NumberFormatException    Thrown if the string isn't hex or is too long.
+     */
+    public static long longQuantity(CharSequence hex) throws NumberFormatException {
+        int start = digitsStart(hex);
+        int digits = hex.length() - start;
+        if (digits > LONG_DIGITS) {
+            throw new NumberFormatException("Quantity too long: " + hex);
+        }
+        return parseLong(hex, start, digits);
+    }
+
+    /**
+     * @param hex       The hex string.
+     * @param index     The index of a character.
+     * @return          The value of the hex digit.
+     * @throws NumberFormatException    Thrown if the character isn't a hex digit.
+     */
+    static int digit(CharSequence hex, int index) throws NumberFormatException {
+        char c = hex.charAt(index);
+        int value = c < VALUES.length ? VALUES[c] : -1;
+        if (value < 0) {
+            throw new NumberFormatException("Not a hex digit: '" + c + "' in " + hex);
+        }
+        return value;
+    }
+
+    /**
+     * @return  The index of the first digit, after the 0x prefix if there is one.
+     */
+    static int digitsStart(CharSequence hex) {
+        return hex.length() >= 2 && hex.charAt(0) == '0' && (hex.charAt(1) == 'x' || hex.charAt(1) == 'X') ? 2 : 0;
+    }
+
+    private static long parseLong(CharSequence hex, int offset, int digits) throws NumberFormatException {
+        if (digits == 0) {
+            throw new NumberFormatException("Empty quantity: " + hex);
+        }
+        long value = 0;
+        for (int i = 0; i < digits; i++) {
+            value = value << 4 | digit(hex, offset + i);
+        }
+        return value;
+    }
+}
@@ -1,24 +1,32 @@
 package ether;
+import org.json.simple.JSONArray;
 import org.json.simple.JSONObject;
 import org.json.simple.parser.JSONParser;
 import org.json.simple.parser.ParseException;
 import java.io.IOException;
 import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import org.apache.http.client.ClientProtocolException;
-import org.apache.http.client.methods.CloseableHttpResponse;
 import org.apache.http.client.methods.HttpPost;
 import org.apache.http.entity.StringEntity;
 import org.apache.http.impl.client.BasicResponseHandler;
 import org.apache.http.impl.client.CloseableHttpClient;
 import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
 
 
 /**
- * The Http wrapper
+ * The Http wrapper. Requests share a pool of keep-alive connections, up to
+ * {@link Settings#RPC_MAX_CONNECTIONS} at a time, and block without holding a monitor, so they can be made
+ * from any number of threads, virtual threads included.
  */
 public class Http {
-    private String rpcAddress;
+    private volatile String rpcAddress;
     private boolean debugInfo;
+    private final PoolingHttpClientConnectionManager connectionManager;
+    private final CloseableHttpClient httpClient;
 
     /**
      * @param _rpcAddress the rpc URL
@@ -27,6 +35,24 @@ public class Http {
     public Http(String _rpcAddress, boolean _debug) {
         rpcAddress = _rpcAddress;
         debugInfo = _debug;
+
+        connectionManager = new PoolingHttpClientConnectionManager();
+        connectionManager.setMaxTotal(Settings.RPC_MAX_CONNECTIONS);
+        connectionManager.setDefaultMaxPerRoute(Settings.RPC_MAX_CONNECTIONS);
+        httpClient = HttpClientBuilder.create().setConnectionManager(connectionManager).build();
+    }
+
+    /**
+     * Points the following requests to a new RPC URL and resizes the connection pool, requests in flight
+     * complete on their connection.
+     *
+     * @param _rpcAddress       the rpc URL
+     * @param maxConnections    the size of the connection pool
+     */
+    public void reconfigure(String _rpcAddress, int maxConnections) {
+        rpcAddress = _rpcAddress;
+        connectionManager.setMaxTotal(maxConnections);
+        connectionManager.setDefaultMaxPerRoute(maxConnections);
     }
 
     /**
@@ -37,33 +63,67 @@ public class Http {
      * @throws IOException
      */
     public Object getHttpResponse(String requestString) throws IOException {
-        JSONParser parser = new JSONParser();
-        JSONObject jobj;
-        Object executionResult = null;
-        String temp = "";
+        long start = System.nanoTime();
         try {
-            CloseableHttpClient httpClient = HttpClientBuilder.create().build();
+            return execute(requestString);
+        } catch (IOException e) {
+            Metrics.getInstance().error("rpc");
+            throw e;
+        } finally {
+            Metrics.getInstance().latency(Metrics.RPC_LATENCY, "method", rpcMethod(requestString))
+                    .recordSince(start);
+        }
+    }
 
-            HttpPost request = new HttpPost(rpcAddress);
-            request.addHeader("content-type", "application/json");
-            request.setEntity(new StringEntity(requestString));
+    /**
+     * Sends several RPC requests to the running peer in one JSON-RPC batch, a single round trip. The results
+     * are matched to the requests by id, so the id of each request must be its index in the list.
+     *
+     * @param requestStrings the HTTP request strings
+     * @return the results in the order of the requests, null for a request without result
+     * @throws IOException
+     */
+    public List<Object> getBatchHttpResponse(List<String> requestStrings) throws IOException {
+        if (requestStrings.isEmpty()) {
+            return new ArrayList<>();
+        }
 
-            CloseableHttpResponse response = httpClient.execute(request);
-            response.close();
-            httpClient.close();
+        long start = System.nanoTime();
+        String method = rpcMethod(requestStrings.get(0));
+        try {
+            return executeBatch(requestStrings);
+        } catch (IOException e) {
+            Metrics.getInstance().error("rpc");
+            throw e;
+        } finally {
+            Metrics.getInstance().latency(Metrics.RPC_LATENCY, "method", method + "_batch").recordSince(start);
+        }
+    }
 
-            temp = new BasicResponseHandler().handleResponse(response);
-            jobj = (JSONObject) parser.parse(temp);
-            if (debugInfo) {
-                System.out.println("result = " + jobj.toJSONString());
-            }
-            for (Object key : jobj.keySet()) {
-                //TODO: Parse error message
-                if (((String) key).equalsIgnoreCase("result")) {
-                    executionResult = jobj.get(key);
-                }
-            }
+    /**
+     * Extracts the JSON-RPC method name from the request string.
+     *
+     * @param requestString the HTTP request string
+     * @return the method name, or "unknown" if it can't be found
+     */
+    private static String rpcMethod(String requestString) {
+        int start = requestString.indexOf("\"method\":\"");
+        if (start < 0) {
+            return "unknown";
+        }
+        start += "\"method\":\"".length();
+        int end = requestString.indexOf('"', start);
+        return end < 0 ? "unknown" : requestString.substring(start, end);
+    }
+
+    private Object execute(String requestString) throws IOException {
+        Object executionResult = null;
+        String temp = "";
+        try {
+            temp = post(requestString);
+            executionResult = parseResult(temp);
         } catch (UnsupportedEncodingException | ClientProtocolException | ParseException | NumberFormatException e) {
+            Metrics.getInstance().error("rpc");
             if (Settings.DEBUG_INFO) {
                 System.out.println(e.getClass().getCanonicalName() + ": " + e.getMessage());
             }
@@ -74,4 +134,63 @@ public class Http {
         }
         return executionResult;
     }
+
+    private List<Object> executeBatch(List<String> requestStrings) throws IOException {
+        List<Object> results = new ArrayList<>(Collections.nCopies(requestStrings.size(), null));
+        String temp = post("[" + String.join(",", requestStrings) + "]");
+        Object responses;
+        try {
+            responses = new JSONParser().parse(temp);
+        } catch (ParseException e) {
+            throw new IOException("Failed to parse the batch response: " + temp, e);
+        }
+        if (!(responses instanceof JSONArray)) {
+            //An error for the whole batch.
+            throw new IOException(temp);
+        }
+
+        for (Object entry : (JSONArray) responses) {
+            JSONObject response = (JSONObject) entry;
+            Object id = response.get("id");
+            if (id instanceof Number) {
+                int index = ((Number) id).intValue();
+                if (index >= 0 && index < results.size()) {
+                    results.set(index, response.get("result"));
+                }
+            }
+        }
+        return results;
+    }
+
+    private String post(String body) throws IOException {
+        HttpPost request = new HttpPost(rpcAddress);
+        request.addHeader("content-type", "application/json");
+        request.setEntity(new StringEntity(body));
+
+        //The handler consumes the response, which returns the connection to the pool.
+        String response = httpClient.execute(request, new BasicResponseHandler());
+        if (debugInfo) {
+            System.out.println("result = " + response);
+        }
+        return response;
+    }
+
+    /**
+     * Extracts the result from a JSON-RPC response.
+     *
+     * @param responseString the HTTP response body
+     * @return the result, or null if the response has no result
+     * @throws ParseException if the response isn't a JSON object
+     */
+    static Object parseResult(String responseString) throws ParseException {
+        JSONObject jobj = (JSONObject) new JSONParser().parse(responseString);
+        Object executionResult = null;
+        for (Object key : jobj.keySet()) {
+            //TODO: Parse error message
+            if (((String) key).equalsIgnoreCase("result")) {
+                executionResult = jobj.get(key);
+            }
+        }
+        return executionResult;
+    }
 }
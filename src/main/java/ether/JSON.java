@@ -38,6 +38,7 @@ public final class JSON {
      * @return            The byte array.
      */
     public static byte[] getErrorResponse(String resMethod, String message) {
+        Metrics.getInstance().error(resMethod);
         JSONObject response = new JSONObject();
         response.put("status", "error");
         response.put("resMethod", resMethod);
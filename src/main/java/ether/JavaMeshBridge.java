@@ -0,0 +1,96 @@
+package ether;
+
+import static io.left.rightmesh.mesh.MeshManager.TRANSACTION_RECEIVED;
+
+import io.left.rightmesh.id.MeshId;
+import io.left.rightmesh.mesh.JavaMeshManager;
+import io.left.rightmesh.mesh.MeshManager;
+import io.left.rightmesh.util.RightMeshException;
+import org.apache.commons.lang3.tuple.ImmutablePair;
+
+import java.math.BigInteger;
+import java.util.function.Consumer;
+
+
+/**
+ * {@link MeshBridge} on top of the RightMesh Java library.
+ */
+final class JavaMeshBridge implements MeshBridge {
+
+    private final JavaMeshManager meshManager;
+
+    /**
+     * @param mm    The Mesh manager, must be a {@link JavaMeshManager}.
+     */
+    JavaMeshBridge(MeshManager mm) {
+        meshManager = (JavaMeshManager) mm;
+    }
+
+    @Override
+    public MeshId getUuid() {
+        return meshManager.getUuid();
+    }
+
+    @Override
+    public void onTransaction(Consumer<MeshManager.RightMeshEvent> handler) {
+        meshManager.on(TRANSACTION_RECEIVED, handler::accept);
+    }
+
+    @Override
+    public void sendDataReliable(MeshId destination, int port, byte[] data) {
+        meshManager.sendDataReliable(destination, port, data);
+    }
+
+    @Override
+    public ImmutablePair<byte[], BigInteger> calculateNewBalanceProofToReceiver(BigInteger balance,
+                                                                                byte[] receiverId) {
+        return meshManager.getTransactionManager().calculateNewBalanceProofToReceiver(balance, receiverId);
+    }
+
+    @Override
+    public ImmutablePair<byte[], BigInteger> calculateNewClosingHashFromSender(BigInteger balance, byte[] senderId) {
+        return meshManager.getTransactionManager().calculateNewClosingHashFromSender(balance, senderId);
+    }
+
+    @Override
+    public ImmutablePair<ImmutablePair<byte[], BigInteger>, ImmutablePair<byte[], BigInteger>>
+            getMostRecentBillToReceiver(byte[] receiverId) throws RightMeshException {
+        return meshManager.getTransactionManager().getMostRecentBillToReceiver(receiverId);
+    }
+
+    @Override
+    public ImmutablePair<ImmutablePair<byte[], BigInteger>, ImmutablePair<byte[], BigInteger>>
+            getMostRecentBillFromSender(byte[] senderId) throws RightMeshException {
+        return meshManager.getTransactionManager().getMostRecentBillFromSender(senderId);
+    }
+
+    @Override
+    public void putNewBalanceProofToReceiver(byte[] receiverId, ImmutablePair<byte[], BigInteger> pair) {
+        meshManager.getTransactionManager().putNewBalanceProofToReceiver(receiverId, pair);
+    }
+
+    @Override
+    public void putNewClosingHashToReceiver(byte[] receiverId, ImmutablePair<byte[], BigInteger> pair) {
+        meshManager.getTransactionManager().putNewClosingHashToReceiver(receiverId, pair);
+    }
+
+    @Override
+    public void putNewBalanceProofFromSender(byte[] senderId, ImmutablePair<byte[], BigInteger> pair) {
+        meshManager.getTransactionManager().putNewBalanceProofFromSender(senderId, pair);
+    }
+
+    @Override
+    public void putNewClosingHashFromSender(byte[] senderId, ImmutablePair<byte[], BigInteger> pair) {
+        meshManager.getTransactionManager().putNewClosingHashFromSender(senderId, pair);
+    }
+
+    @Override
+    public void removeMostRecentBillToReceiver(MeshId receiverId) {
+        meshManager.getTransactionManager().removeMostRecentBillToReceiver(receiverId);
+    }
+
+    @Override
+    public void removeMostRecentBillFromSender(MeshId senderId) {
+        meshManager.getTransactionManager().removeMostRecentBillFromSender(senderId);
+    }
+}
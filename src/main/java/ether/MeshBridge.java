@@ -0,0 +1,61 @@
+package ether;
+
+import io.left.rightmesh.id.MeshId;
+import io.left.rightmesh.mesh.MeshManager;
+import io.left.rightmesh.util.RightMeshException;
+import org.apache.commons.lang3.tuple.ImmutablePair;
+
+import java.math.BigInteger;
+import java.util.function.Consumer;
+
+
+/**
+ * The part of the RightMesh library the Transactions Manager depends on: the own identity, the Mesh transport
+ * and the bills kept by the library's transaction manager. Implemented by {@link JavaMeshBridge} on top of
+ * the library, and by an in-memory stand-in in the load test.
+ */
+interface MeshBridge {
+
+    /**
+     * @return  The MeshId of this SuperPeer.
+     */
+    MeshId getUuid();
+
+    /**
+     * Registers the handler of the Mesh transactions received from Clients.
+     *
+     * @param handler   The handler.
+     */
+    void onTransaction(Consumer<MeshManager.RightMeshEvent> handler);
+
+    /**
+     * Sends data to a peer.
+     *
+     * @param destination   The peer.
+     * @param port          The Mesh port.
+     * @param data          The data.
+     */
+    void sendDataReliable(MeshId destination, int port, byte[] data);
+
+    ImmutablePair<byte[], BigInteger> calculateNewBalanceProofToReceiver(BigInteger balance, byte[] receiverId);
+
+    ImmutablePair<byte[], BigInteger> calculateNewClosingHashFromSender(BigInteger balance, byte[] senderId);
+
+    ImmutablePair<ImmutablePair<byte[], BigInteger>, ImmutablePair<byte[], BigInteger>>
+            getMostRecentBillToReceiver(byte[] receiverId) throws RightMeshException;
+
+    ImmutablePair<ImmutablePair<byte[], BigInteger>, ImmutablePair<byte[], BigInteger>>
+            getMostRecentBillFromSender(byte[] senderId) throws RightMeshException;
+
+    void putNewBalanceProofToReceiver(byte[] receiverId, ImmutablePair<byte[], BigInteger> pair);
+
+    void putNewClosingHashToReceiver(byte[] receiverId, ImmutablePair<byte[], BigInteger> pair);
+
+    void putNewBalanceProofFromSender(byte[] senderId, ImmutablePair<byte[], BigInteger> pair);
+
+    void putNewClosingHashFromSender(byte[] senderId, ImmutablePair<byte[], BigInteger> pair);
+
+    void removeMostRecentBillToReceiver(MeshId receiverId);
+
+    void removeMostRecentBillFromSender(MeshId senderId);
+}
@@ -0,0 +1,273 @@
+package ether;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+
+/**
+ * Registry of the SuperPeer metrics: latency histograms, counters and gauges, each with a single label.
+ * Exposed in the Prometheus text format through {@link #scrape()} and over JMX as {@link MetricsMXBean}.
+ */
+public final class Metrics implements MetricsMXBean {
+
+    public static final String HANDLER_LATENCY = "superpeer_handler_latency_seconds";
+    public static final String RPC_LATENCY = "superpeer_rpc_latency_seconds";
+    public static final String QUEUE_WAIT = "superpeer_queue_wait_seconds";
+    public static final String ERRORS = "superpeer_errors_total";
+    public static final String CACHE_HITS = "superpeer_cache_hits_total";
+    public static final String CACHE_MISSES = "superpeer_cache_misses_total";
+
+    private static final double[] QUANTILES = {0.5, 0.9, 0.99, 0.999};
+    private static final String OBJECT_NAME = "ether:type=Metrics";
+
+    private static final Metrics instance = new Metrics();
+
+    private final ConcurrentMap<String, Family<LatencyHistogram>> histograms = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Family<LongAdder>> counters = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Family<LongSupplier>> gauges = new ConcurrentHashMap<>();
+    private final Map<String, String> helps = new ConcurrentHashMap<>();
+
+    public static Metrics getInstance() {
+        return instance;
+    }
+
+    private Metrics() {
+        help(HANDLER_LATENCY, "Latency of the Mesh transaction handlers.");
+        help(RPC_LATENCY, "Latency of the JSON-RPC calls to the Ether node.");
+        help(QUEUE_WAIT, "Time Mesh transactions wait in the transactions queue.");
+        help(ERRORS, "Errors by type.");
+        help(CACHE_HITS, "Cache hits by cache.");
+        help(CACHE_MISSES, "Cache misses by cache.");
+    }
+
+    /**
+     * Gets or creates a latency histogram.
+     *
+     * @param name      The metric name.
+     * @param label     The label name.
+     * @param value     The label value.
+     * @return          The histogram.
+     */
+    public LatencyHistogram latency(String name, String label, String value) {
+        return family(histograms, name, label).get(value, LatencyHistogram::new);
+    }
+
+    /**
+     * Gets or creates a counter.
+     *
+     * @param name      The metric name.
+     * @param label     The label name.
+     * @param value     The label value.
+     * @return          The counter.
+     */
+    public LongAdder counter(String name, String label, String value) {
+        return family(counters, name, label).get(value, LongAdder::new);
+    }
+
+    /**
+     * Registers a gauge, the supplier is read on every scrape.
+     *
+     * @param name      The metric name.
+     * @param help      The metric description.
+     * @param supplier  Supplies the current value.
+     */
+    public void gauge(String name, String help, LongSupplier supplier) {
+        help(name, help);
+        family(gauges, name, null).series.put("", supplier);
+    }
+
+    /**
+     * Shortcut to count an error.
+     *
+     * @param type  The error type.
+     */
+    public void error(String type) {
+        counter(ERRORS, "type", type).increment();
+    }
+
+    /**
+     * Shortcut to count a cache lookup.
+     *
+     * @param cache The cache name.
+     * @param hit   True on a hit, False on a miss.
+     */
+    public void cacheLookup(String cache, boolean hit) {
+        counter(hit ? CACHE_HITS : CACHE_MISSES, "cache", cache).increment();
+    }
+
+    /**
+     * Registers the JMX MBean on the platform MBean server.
+     */
+    public synchronized void registerMBean() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName objectName = new ObjectName(OBJECT_NAME);
+            if (!server.isRegistered(objectName)) {
+                server.registerMBean(this, objectName);
+            }
+        } catch (JMException e) {
+            if (Settings.DEBUG_INFO) {
+                System.out.println("Failed to register the metrics MBean: " + e);
+            }
+        }
+    }
+
+    /**
+     * Renders all metrics in the Prometheus text exposition format.
+     *
+     * @return  The metrics text.
+     */
+    public String scrape() {
+        StringBuilder out = new StringBuilder();
+
+        for (Family<LatencyHistogram> family : new TreeMap<>(histograms).values()) {
+            header(out, family, "summary");
+            for (Map.Entry<String, LatencyHistogram> series : new TreeMap<>(family.series).entrySet()) {
+                LatencyHistogram histogram = series.getValue();
+                for (double quantile : QUANTILES) {
+                    out.append(family.name).append('{').append(family.label).append("=\"")
+                            .append(escape(series.getKey())).append("\",quantile=\"").append(quantile).append("\"} ")
+                            .append(seconds(histogram.getValueAtQuantile(quantile))).append('\n');
+                }
+                out.append(family.name).append("_sum").append(labels(family, series.getKey())).append(' ')
+                        .append(seconds(histogram.getSum())).append('\n');
+                out.append(family.name).append("_count").append(labels(family, series.getKey())).append(' ')
+                        .append(histogram.getCount()).append('\n');
+            }
+        }
+
+        for (Family<LongAdder> family : new TreeMap<>(counters).values()) {
+            header(out, family, "counter");
+            for (Map.Entry<String, LongAdder> series : new TreeMap<>(family.series).entrySet()) {
+                out.append(family.name).append(labels(family, series.getKey())).append(' ')
+                        .append(series.getValue().sum()).append('\n');
+            }
+        }
+
+        for (Family<LongSupplier> family : new TreeMap<>(gauges).values()) {
+            header(out, family, "gauge");
+            for (LongSupplier supplier : family.series.values()) {
+                out.append(family.name).append(' ').append(supplier.getAsLong()).append('\n');
+            }
+        }
+
+        return out.toString();
+    }
+
+    @Override
+    public Map<String, Long> getCounters() {
+        Map<String, Long> values = new TreeMap<>();
+        for (Family<LongAdder> family : counters.values()) {
+            for (Map.Entry<String, LongAdder> series : family.series.entrySet()) {
+                values.put(family.name + labels(family, series.getKey()), series.getValue().sum());
+            }
+        }
+        for (Family<LongSupplier> family : gauges.values()) {
+            for (LongSupplier supplier : family.series.values()) {
+                values.put(family.name, supplier.getAsLong());
+            }
+        }
+        return values;
+    }
+
+    @Override
+    public Map<String, Long> getLatencyCounts() {
+        Map<String, Long> values = new TreeMap<>();
+        for (Family<LatencyHistogram> family : histograms.values()) {
+            for (Map.Entry<String, LatencyHistogram> series : family.series.entrySet()) {
+                values.put(family.name + labels(family, series.getKey()), series.getValue().getCount());
+            }
+        }
+        return values;
+    }
+
+    @Override
+    public Map<String, Double> getLatencyP50Millis() {
+        return latencyMillis(0.5);
+    }
+
+    @Override
+    public Map<String, Double> getLatencyP99Millis() {
+        return latencyMillis(0.99);
+    }
+
+    @Override
+    public Map<String, Double> getLatencyMaxMillis() {
+        return latencyMillis(1.0);
+    }
+
+
+    private Map<String, Double> latencyMillis(double quantile) {
+        Map<String, Double> values = new TreeMap<>();
+        for (Family<LatencyHistogram> family : histograms.values()) {
+            for (Map.Entry<String, LatencyHistogram> series : family.series.entrySet()) {
+                long nanos = quantile >= 1.0
+                        ? series.getValue().getMax()
+                        : series.getValue().getValueAtQuantile(quantile);
+                values.put(family.name + labels(family, series.getKey()), nanos / 1e6);
+            }
+        }
+        return values;
+    }
+
+    private void help(String name, String help) {
+        helps.put(name, help);
+    }
+
+    private void header(StringBuilder out, Family<?> family, String type) {
+        String help = helps.get(family.name);
+        if (help != null) {
+            out.append("# HELP ").append(family.name).append(' ').append(help).append('\n');
+        }
+        out.append("# TYPE ").append(family.name).append(' ').append(type).append('\n');
+    }
+
+    private static <T> Family<T> family(ConcurrentMap<String, Family<T>> families, String name, String label) {
+        Family<T> family = families.get(name);
+        if (family == null) {
+            family = families.computeIfAbsent(name, key -> new Family<>(name, label));
+        }
+        return family;
+    }
+
+    private static String labels(Family<?> family, String value) {
+        return family.label == null ? "" : "{" + family.label + "=\"" + escape(value) + "\"}";
+    }
+
+    private static String escape(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+
+    private static String seconds(long nanos) {
+        return Double.toString(nanos / 1e9);
+    }
+
+
+    private static final class Family<T> {
+        final String name;
+        final String label;
+        final ConcurrentMap<String, T> series = new ConcurrentHashMap<>();
+
+        Family(String name, String label) {
+            this.name = name;
+            this.label = label;
+        }
+
+        T get(String value, Supplier<T> factory) {
+            T metric = series.get(value);
+            if (metric == null) {
+                metric = series.computeIfAbsent(value, key -> factory.get());
+            }
+            return metric;
+        }
+    }
+}
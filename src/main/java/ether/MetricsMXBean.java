@@ -0,0 +1,36 @@
+package ether;
+
+import java.util.Map;
+
+
+/**
+ * JMX view of the SuperPeer metrics. Keys are the metric names with their label, e.g.
+ * {@code superpeer_handler_latency_seconds{method="getAll"}}.
+ */
+public interface MetricsMXBean {
+
+    /**
+     * @return  The counters.
+     */
+    Map<String, Long> getCounters();
+
+    /**
+     * @return  The number of recorded latencies per histogram.
+     */
+    Map<String, Long> getLatencyCounts();
+
+    /**
+     * @return  The median latency per histogram, in milliseconds.
+     */
+    Map<String, Double> getLatencyP50Millis();
+
+    /**
+     * @return  The 99th percentile latency per histogram, in milliseconds.
+     */
+    Map<String, Double> getLatencyP99Millis();
+
+    /**
+     * @return  The highest latency per histogram, in milliseconds.
+     */
+    Map<String, Double> getLatencyMaxMillis();
+}
@@ -0,0 +1,166 @@
+package ether;
+
+import io.left.rightmesh.id.MeshId;
+
+import java.math.BigInteger;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+
+
+/**
+ * Hands out consecutive nonces for an account whose transactions are signed locally, so several transactions
+ * can be signed and submitted in parallel without querying the Ether node for every one of them.
+ * <p>
+ * Every reservation is tracked until its transactions reached the Ether node, or didn't. A reservation that
+ * didn't make it leaves a gap, and the transactions with the next nonces can't be mined until it is filled, so
+ * each missing nonce is spent right away by a zero value transfer of the account to itself. If the node doesn't
+ * take the filler either, the counter has to be re-synced with the node. The other reservations still in flight
+ * hold nonces the node doesn't know about yet, so the counter is only dropped once none is left: the node then
+ * counts every transaction that made it, and the next nonce it hands out fills the gap.
+ */
+public final class NonceManager {
+
+    private final MeshId owner;
+    private final String address;
+    private final Http httpAgent;
+    //A lock rather than a monitor, the seeding RPC would pin a virtual thread.
+    private final ReentrantLock lock = new ReentrantLock();
+    private BigInteger nextNonce = null;
+    //The number of nonces of each reservation whose transactions aren't submitted yet, by its first nonce.
+    private final Map<BigInteger, Integer> inFlight = new HashMap<>();
+    //Set when a reservation didn't make it, the counter is dropped once nothing is in flight.
+    private boolean stale = false;
+
+    /**
+     * @param owner     The account the nonces belong to, it signs the fillers of the gaps.
+     * @param httpAgent The Http wrapper.
+     */
+    public NonceManager(MeshId owner, Http httpAgent) {
+        this.owner = owner;
+        this.address = owner.toString();
+        this.httpAgent = httpAgent;
+    }
+
+    /**
+     * Reserves the next nonce. The first call (and the first call after a re-sync) seeds the counter from the
+     * Ether node, which already accounts for the pending transactions of the account. Every reservation must be
+     * ended with {@link #release(BigInteger)} or {@link #reset(BigInteger)}.
+     *
+     * @return  The reserved nonce, or null if the nonce couldn't be queried from the Ether node.
+     */
+    public BigInteger acquire() {
+        return acquire(1);
+    }
+
+    /**
+     * Reserves a run of consecutive nonces, for transactions the node must run back to back.
+     *
+     * @param count The number of nonces to reserve.
+     * @return      The first of the reserved nonces, or null if the nonce couldn't be queried from the Ether node.
+     */
+    public BigInteger acquire(int count) {
+        lock.lock();
+        try {
+            if (nextNonce == null) {
+                nextNonce = EtherClient.getNonce(address, httpAgent);
+                if (nextNonce == null) {
+                    if (Settings.DEBUG_INFO) {
+                        System.out.println("Failed to seed the nonce manager for: " + address);
+                    }
+                    return null;
+                }
+            }
+
+            BigInteger nonce = nextNonce;
+            nextNonce = nextNonce.add(BigInteger.valueOf(count));
+            inFlight.put(nonce, count);
+            return nonce;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Seeds the counter from the Ether node ahead of the first {@link #acquire()}, without reserving a nonce.
+     *
+     * @return  True if the counter is seeded.
+     */
+    public boolean prime() {
+        lock.lock();
+        try {
+            if (nextNonce == null) {
+                nextNonce = EtherClient.getNonce(address, httpAgent);
+            }
+            return nextNonce != null;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Ends a reservation whose transactions reached the Ether node.
+     *
+     * @param nonce The reserved nonce, as returned by {@link #acquire(int)}. Ignored if null or already ended.
+     */
+    public void release(BigInteger nonce) {
+        end(nonce, false);
+    }
+
+    /**
+     * Ends a reservation none of whose transactions reached the Ether node, see {@link #reset(BigInteger, int)}.
+     *
+     * @param nonce The reserved nonce, as returned by {@link #acquire(int)}. Ignored if null or already ended.
+     */
+    public void reset(BigInteger nonce) {
+        reset(nonce, 0);
+    }
+
+    /**
+     * Ends a reservation whose transactions didn't all reach the Ether node. The nonces left unused are filled
+     * with transfers to self. If a filler doesn't make it either, the counter is re-synced with the node once no
+     * other reservation is in flight, until then the next nonces keep being handed out.
+     *
+     * @param nonce     The reserved nonce, as returned by {@link #acquire(int)}. Ignored if null or already ended.
+     * @param submitted The number of transactions of the reservation which reached the node, in nonce order.
+     */
+    public void reset(BigInteger nonce, int submitted) {
+        Integer count;
+        lock.lock();
+        try {
+            count = nonce == null ? null : inFlight.get(nonce);
+        } finally {
+            lock.unlock();
+        }
+        if (count == null) {
+            return;
+        }
+
+        //Only the holder of the reservation ends it, the fillers are sent without the lock.
+        boolean filled = true;
+        for (int i = submitted; i < count && filled; i++) {
+            filled = EtherClient.fillNonce(owner, nonce.add(BigInteger.valueOf(i)), httpAgent);
+        }
+        end(nonce, !filled);
+    }
+
+
+    private void end(BigInteger nonce, boolean failed) {
+        lock.lock();
+        try {
+            if (nonce == null || inFlight.remove(nonce) == null) {
+                return;
+            }
+            stale |= failed;
+            if (stale && inFlight.isEmpty()) {
+                if (Settings.DEBUG_INFO) {
+                    System.out.println("Re-syncing the nonce of " + address + " with the Ether node.");
+                }
+                nextNonce = null;
+                stale = false;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package ether;
+
+import java.lang.reflect.Method;
+import java.util.ArrayDeque;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+
+/**
+ * Runs the transactions of different peers concurrently, and the transactions of the same peer one at a time,
+ * in arrival order. Each peer with work in progress has a lane: the first task starts a thread which runs the
+ * lane until it is empty, then the lane is dropped.
+ * <p>
+ * On a JDK with virtual threads every lane runs on its own virtual thread, so the blocking handlers scale to
+ * thousands of peers. On older JDKs lanes run on a cached pool of platform threads.
+ */
+public final class PeerExecutor {
+
+    private final ExecutorService executor;
+    private final boolean virtual;
+    private final ConcurrentHashMap<String, ArrayDeque<Runnable>> lanes = new ConcurrentHashMap<>();
+    private final AtomicInteger pending = new AtomicInteger();
+
+    public PeerExecutor() {
+        ExecutorService virtualExecutor = newVirtualThreadPerTaskExecutor();
+        virtual = virtualExecutor != null;
+        if (virtual) {
+            executor = virtualExecutor;
+        } else {
+            AtomicInteger threadCount = new AtomicInteger();
+            executor = Executors.newCachedThreadPool(runnable -> {
+                Thread thread = new Thread(runnable, "peer-handler-" + threadCount.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    /**
+     * @return  True if lanes run on virtual threads.
+     */
+    public boolean isVirtual() {
+        return virtual;
+    }
+
+    /**
+     * @return  The number of tasks submitted and not finished yet.
+     */
+    public int getPending() {
+        return pending.get();
+    }
+
+    /**
+     * Runs a task after the tasks already submitted for the same peer.
+     *
+     * @param peer  The peer.
+     * @param task  The task.
+     * @throws RejectedExecutionException   Thrown if the executor is shut down.
+     */
+    public void execute(String peer, Runnable task) {
+        pending.incrementAndGet();
+        boolean[] idle = {false};
+        lanes.compute(peer, (key, lane) -> {
+            if (lane == null) {
+                idle[0] = true;
+                return new ArrayDeque<>();
+            }
+            lane.add(task);
+            return lane;
+        });
+
+        if (idle[0]) {
+            try {
+                executor.execute(() -> runLane(peer, task));
+            } catch (RejectedExecutionException e) {
+                lanes.remove(peer);
+                pending.decrementAndGet();
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Stops taking tasks and waits for the submitted ones, the ones still running after the timeout are
+     * interrupted.
+     *
+     * @param timeoutMillis     The time to wait for the submitted tasks.
+     * @return                  True if all tasks finished in time.
+     */
+    public boolean shutdown(long timeoutMillis) {
+        executor.shutdown();
+        try {
+            if (executor.awaitTermination(timeoutMillis, TimeUnit.MILLISECONDS)) {
+                return true;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        executor.shutdownNow();
+        return false;
+    }
+
+
+    /**
+     * Runs the tasks of a lane until it is empty. The lane is only touched inside compute, which serializes it
+     * with {@link #execute(String, Runnable)}.
+     */
+    private void runLane(String peer, Runnable first) {
+        Runnable task = first;
+        while (task != null) {
+            try {
+                task.run();
+            } catch (RuntimeException e) {
+                System.out.println("Transaction handler of " + peer + " failed: " + e);
+            } finally {
+                pending.decrementAndGet();
+            }
+
+            Runnable[] next = {null};
+            lanes.computeIfPresent(peer, (key, lane) -> {
+                next[0] = lane.poll();
+                return next[0] == null ? null : lane;
+            });
+            task = next[0];
+        }
+    }
+
+    /**
+     * @return  Executors.newVirtualThreadPerTaskExecutor() if the JDK has virtual threads, otherwise null.
+     */
+    private static ExecutorService newVirtualThreadPerTaskExecutor() {
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package ether;
+
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+
+import java.math.BigInteger;
+import java.util.concurrent.ConcurrentHashMap;
+
+
+/**
+ * Tracks the transactions the SuperPeer is waiting on to be mined, for monitoring.
+ */
+public final class PendingTransactions {
+
+    private static final PendingTransactions instance = new PendingTransactions();
+
+    private final ConcurrentHashMap<String, Entry> pending = new ConcurrentHashMap<>();
+
+    public static PendingTransactions getInstance() {
+        return instance;
+    }
+
+    private PendingTransactions() {
+    }
+
+    /**
+     * Starts tracking a submitted transaction.
+     *
+     * @param transactionId The transaction id.
+     * @param gasPrice      The gas price the transaction was signed with, or null if unknown.
+     */
+    public void add(String transactionId, BigInteger gasPrice) {
+        pending.put(transactionId, new Entry(transactionId, gasPrice, System.currentTimeMillis()));
+    }
+
+    /**
+     * Records that a transaction was replaced by one with a higher gas price.
+     *
+     * @param transactionId The id of the originally submitted transaction.
+     * @param replacementId The id of the replacement.
+     * @param gasPrice      The gas price of the replacement.
+     */
+    public void replaced(String transactionId, String replacementId, BigInteger gasPrice) {
+        Entry entry = pending.get(transactionId);
+        if (entry != null) {
+            entry.latestId = replacementId;
+            entry.gasPrice = gasPrice;
+            entry.replacements++;
+        }
+    }
+
+    /**
+     * Stops tracking a transaction, once mined or given up on.
+     *
+     * @param transactionId The id of the originally submitted transaction.
+     */
+    public void remove(String transactionId) {
+        pending.remove(transactionId);
+    }
+
+    /**
+     * @return  The number of transactions waiting to be mined.
+     */
+    public int size() {
+        return pending.size();
+    }
+
+    /**
+     * @return  The pending transactions, oldest first.
+     */
+    public JSONArray toJSON() {
+        JSONArray transactions = new JSONArray();
+        long now = System.currentTimeMillis();
+        pending.values().stream()
+                .sorted((a, b) -> Long.compare(a.submittedAt, b.submittedAt))
+                .forEach(entry -> {
+                    JSONObject transaction = new JSONObject();
+                    transaction.put("id", entry.id);
+                    transaction.put("latestId", entry.latestId);
+                    transaction.put("gasPrice", entry.gasPrice == null ? null : entry.gasPrice.toString());
+                    transaction.put("replacements", entry.replacements);
+                    transaction.put("pendingMillis", now - entry.submittedAt);
+                    transactions.add(transaction);
+                });
+        return transactions;
+    }
+
+
+    private static final class Entry {
+        final String id;
+        final long submittedAt;
+        volatile String latestId;
+        volatile BigInteger gasPrice;
+        volatile int replacements = 0;
+
+        Entry(String id, BigInteger gasPrice, long submittedAt) {
+            this.id = id;
+            this.latestId = id;
+            this.gasPrice = gasPrice;
+            this.submittedAt = submittedAt;
+        }
+    }
+}
@@ -0,0 +1,236 @@
+package ether;
+
+import io.left.rightmesh.id.MeshId;
+import org.ethereum.core.CallTransaction;
+import org.ethereum.core.Transaction;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+
+/**
+ * Checks the raw transactions signed by Clients before they are submitted to the Ether node. The transaction is
+ * RLP-decoded and its signer, chain id, nonce, recipient contract, function and arguments are compared with
+ * what the request is for, so a bad transaction is rejected right away rather than after an RPC round trip or
+ * a mining wait. Only what can be decided locally is checked, the Ether node still has the last word.
+ */
+public final class RawTransactionValidator {
+
+    //The gas every transaction pays before running any code.
+    private static final BigInteger INTRINSIC_GAS = BigInteger.valueOf(21000);
+    private static final int SELECTOR_LENGTH = 4;
+    private static final int WORD_LENGTH = 32;
+
+    private static final byte[] APPROVE = ContractFunctions.APPROVE.encodeSignature();
+    private static final byte[] CREATE_CHANNEL_ERC20 = ContractFunctions.CREATE_CHANNEL_ERC20.encodeSignature();
+    private static final byte[] COOPERATIVE_CLOSE_RECEIVER =
+            ContractFunctions.COOPERATIVE_CLOSE_RECEIVER.encodeSignature();
+    private static final byte[] COOPERATIVE_CLOSE_SENDER =
+            ContractFunctions.COOPERATIVE_CLOSE_SENDER.encodeSignature();
+
+    //The next nonce of each Client, as last reported to it.
+    private final ConcurrentHashMap<String, BigInteger> nextNonces = new ConcurrentHashMap<>();
+
+    /**
+     * Remembers the next nonce of a Client, called whenever it is queried from the Ether node.
+     *
+     * @param client    The Client.
+     * @param nonce     Its next nonce.
+     */
+    public void recordNonce(MeshId client, BigInteger nonce) {
+        if (nonce != null) {
+            nextNonces.put(key(client), nonce);
+        }
+    }
+
+    /**
+     * Checks the approve and createChannelERC20 transactions of a Client opening a channel to the SuperPeer.
+     *
+     * @param sender            The Client, sender of the channel.
+     * @param receiver          The SuperPeer, receiver of the channel.
+     * @param signedApprove     The signed approve transaction.
+     * @param signedOpen        The signed createChannelERC20 transaction.
+     * @return                  The reason the transactions would fail, or null if they look valid.
+     */
+    public String checkOpen(MeshId sender, MeshId receiver, String signedApprove, String signedOpen) {
+        Decoded approve = decode(signedApprove);
+        Decoded open = decode(signedOpen);
+        if (approve == null || open == null) {
+            return reject("malformed", "Malformed signed transaction.");
+        }
+
+        String error = checkCommon(approve, sender, Settings.TOKEN_CONTRACT_ADDRESS, APPROVE, 2);
+        if (error == null) {
+            error = checkCommon(open, sender, Settings.CHANNEL_CONTRACT_ADDRESS, CREATE_CHANNEL_ERC20, 2);
+        }
+        if (error != null) {
+            return error;
+        }
+
+        if (!approve.getAddress(0).equalsIgnoreCase(strip(Settings.CHANNEL_CONTRACT_ADDRESS))) {
+            return reject("argument", "The approve isn't for the channel contract.");
+        }
+        if (!open.getAddress(0).equalsIgnoreCase(strip(receiver.toString()))) {
+            return reject("argument", "The channel isn't to the SuperPeer.");
+        }
+        BigInteger deposit = open.getUint(1);
+        if (deposit.signum() <= 0 || deposit.compareTo(Settings.current().maxDeposit) > 0) {
+            return reject("argument", "The deposit is out of range.");
+        }
+        if (approve.getUint(1).compareTo(deposit) < 0) {
+            return reject("argument", "The approved amount doesn't cover the deposit.");
+        }
+
+        //The open spends the approve, it must come right after it.
+        if (!open.nonce.equals(approve.nonce.add(BigInteger.ONE))) {
+            return reject("nonce", "The open doesn't follow the approve.");
+        }
+        return checkNonce(sender, approve.nonce);
+    }
+
+    /**
+     * Checks the cooperative close transaction of a Client closing a channel with the SuperPeer, in either
+     * direction.
+     *
+     * @param client        The Client, signer of the transaction.
+     * @param superPeer     The SuperPeer, the other party of the channel.
+     * @param signedClose   The signed cooperativeCloseSender or cooperativeCloseReceiver transaction.
+     * @return              The reason the transaction would fail, or null if it looks valid.
+     */
+    public String checkClose(MeshId client, MeshId superPeer, String signedClose) {
+        Decoded close = decode(signedClose);
+        if (close == null) {
+            return reject("malformed", "Malformed signed transaction.");
+        }
+
+        CallTransaction.Function func = close.hasSelector(COOPERATIVE_CLOSE_RECEIVER)
+                ? ContractFunctions.COOPERATIVE_CLOSE_RECEIVER : ContractFunctions.COOPERATIVE_CLOSE_SENDER;
+        String error = checkCommon(close, client, Settings.CHANNEL_CONTRACT_ADDRESS, func.encodeSignature(), 8);
+        if (error != null) {
+            return error;
+        }
+
+        //The other party of the channel comes first, whichever side closes it.
+        if (!close.getAddress(0).equalsIgnoreCase(strip(superPeer.toString()))) {
+            return reject("argument", "The channel isn't with the SuperPeer.");
+        }
+        return checkNonce(client, close.nonce);
+    }
+
+
+    /**
+     * Checks what all the transactions have in common: the signer, the chain, the contract, the function and
+     * the gas limit.
+     */
+    private String checkCommon(Decoded transaction, MeshId signer, String contract, byte[] selector, int words) {
+        if (transaction.sender == null || !transaction.sender.equalsIgnoreCase(strip(signer.toString()))) {
+            return reject("signer", "The transaction isn't signed by the Client.");
+        }
+        if (transaction.chainId == null || transaction.chainId != Settings.CHAIN_ID) {
+            return reject("chain_id", "The transaction is for another chain.");
+        }
+        if (transaction.to == null || !transaction.to.equalsIgnoreCase(strip(contract))) {
+            return reject("to", "The transaction is sent to the wrong contract.");
+        }
+        if (!transaction.hasSelector(selector) || transaction.data.length < SELECTOR_LENGTH + words * WORD_LENGTH) {
+            return reject("function", "The transaction calls the wrong function.");
+        }
+
+        //Only the intrinsic gas is a sure floor, what the call costs depends on the state it runs against.
+        if (transaction.gasLimit.compareTo(INTRINSIC_GAS) < 0) {
+            return reject("gas", "The gas limit is too low.");
+        }
+        return null;
+    }
+
+    /**
+     * A nonce below the one last queried for the Client has been used already. The cached nonce is dropped on a
+     * mismatch, it may be out of date if a pending transaction of the Client was dropped by the node.
+     */
+    private String checkNonce(MeshId client, BigInteger nonce) {
+        String key = key(client);
+        BigInteger next = nextNonces.get(key);
+        if (next != null && nonce.compareTo(next) < 0) {
+            nextNonces.remove(key, next);
+            return reject("nonce", "The nonce has been used already.");
+        }
+        return null;
+    }
+
+    private static String reject(String reason, String message) {
+        Metrics.getInstance().counter("superpeer_rejected_transactions_total", "reason", reason).increment();
+        if (Settings.DEBUG_INFO) {
+            System.out.println("Rejected a signed transaction: " + message);
+        }
+        return message;
+    }
+
+    private static Decoded decode(String signed) {
+        if (signed == null) {
+            return null;
+        }
+        try {
+            return new Decoded(new Transaction(HexCodec.decode(signed)));
+        } catch (RuntimeException e) {
+            //The RLP is parsed lazily, a malformed transaction throws from the getters.
+            return null;
+        }
+    }
+
+    private static String strip(String hex) {
+        return hex.startsWith("0x") ? hex.substring(2) : hex;
+    }
+
+    private static String key(MeshId client) {
+        return client.toString().toLowerCase();
+    }
+
+
+    /**
+     * The fields of a decoded transaction.
+     */
+    private static final class Decoded {
+        final String sender;
+        final Integer chainId;
+        final String to;
+        final BigInteger nonce;
+        final BigInteger gasLimit;
+        final byte[] data;
+
+        Decoded(Transaction transaction) {
+            byte[] senderBytes = transaction.getSender();
+            byte[] toBytes = transaction.getReceiveAddress();
+            byte[] dataBytes = transaction.getData();
+            sender = senderBytes == null ? null : HexCodec.encode(senderBytes);
+            chainId = transaction.getChainId();
+            to = toBytes == null ? null : HexCodec.encode(toBytes);
+            nonce = new BigInteger(1, transaction.getNonce());
+            gasLimit = new BigInteger(1, transaction.getGasLimit());
+            data = dataBytes == null ? new byte[0] : dataBytes;
+        }
+
+        boolean hasSelector(byte[] selector) {
+            return data.length >= SELECTOR_LENGTH
+                    && Arrays.equals(Arrays.copyOfRange(data, 0, SELECTOR_LENGTH), selector);
+        }
+
+        /**
+         * @param index The index of an address argument.
+         * @return      The address, without the 0x prefix.
+         */
+        String getAddress(int index) {
+            int end = SELECTOR_LENGTH + (index + 1) * WORD_LENGTH;
+            return HexCodec.encode(data, end - 20, 20);
+        }
+
+        /**
+         * @param index The index of an uint argument.
+         * @return      The number.
+         */
+        BigInteger getUint(int index) {
+            int start = SELECTOR_LENGTH + index * WORD_LENGTH;
+            return new BigInteger(1, Arrays.copyOfRange(data, start, start + WORD_LENGTH));
+        }
+    }
+}
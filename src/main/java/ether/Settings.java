@@ -10,13 +10,23 @@ import org.json.simple.parser.ParseException;
 import java.io.FileNotFoundException;
 import java.io.FileReader;
 import java.io.IOException;
+import java.io.Reader;
 import java.math.BigInteger;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
 
 /**
  * Ethereum Global Settings
  * TODO: Except RPC_ADDRESS, need to be moved to jason abi file in the library
+ * <p>
+ * The constants hold the values loaded at startup. The tunables among them (gas, polling, deposits, the RPC
+ * address and pool) are also published as a {@link Config} snapshot by {@link #current()}, which
+ * {@link ConfigWatcher} replaces when the configuration file changes.
  */
 public class Settings {
+    public final static String CONFIG_PATH;
     public final static String RPC_ADDRESS;
     public final static boolean DEBUG_INFO;
 
@@ -37,6 +47,44 @@ public class Settings {
     public final static long TRANS_CHECK_INTERAVAL;
     public final static int LENGTH_OF_ID_IN_BYTES;
     public final static int CHAIN_ID;
+    public final static int CLOSE_WINDOW;
+    public final static int GAS_ESTIMATE_MARGIN_PERCENT;
+    public final static long GAS_ESTIMATE_TTL;
+    public final static long GAS_ORACLE_INTERVAL;
+    public final static int GAS_ORACLE_BLOCKS;
+    public final static BigInteger MAX_GAS_PRICE;
+    public final static long STUCK_TRANSACTION_TIMEOUT;
+    public final static long RECEIPT_TIMEOUT;
+    public final static int GAS_PRICE_BUMP_PERCENT;
+    public final static int BILL_STORE_CAPACITY;
+    public final static int SIGNATURE_CACHE_SIZE;
+    public final static String ADMIN_ADDRESS;
+    public final static int ADMIN_PORT;
+    public final static int ADMIN_THREADS;
+    public final static long SHUTDOWN_DRAIN_TIMEOUT;
+    public final static String TRACE_FILE;
+    public final static String EXECUTION_MODE;
+    public final static int RPC_MAX_CONNECTIONS;
+    public final static int WARMUP_ITERATIONS;
+    public final static long LIBRARY_READY_TIMEOUT;
+    public final static boolean CONFIG_RELOAD;
+    public final static boolean TOKEN_INDEX;
+    public final static int TOKEN_INDEX_CONFIRMATIONS;
+    public final static long TOKEN_INDEX_INTERVAL;
+    public final static long SUBSCRIPTION_POLL_INTERVAL;
+    public final static int MAX_SUBSCRIBERS;
+    public final static int STANDING_ALLOWANCE;
+    public final static int ALLOWANCE_TOP_UP_PERCENT;
+    public final static boolean PIPELINED_OPEN;
+    public final static boolean CHANNEL_TOP_UP;
+    public final static int TOP_UP_THRESHOLD_PERCENT;
+    public final static long TOP_UP_INTERVAL;
+    public final static int TOP_UP_BATCH_SIZE;
+    public final static int SUBMISSION_REGISTRY_SIZE;
+    public final static int FINALITY_BLOCKS;
+    public final static boolean CHANNEL_STORAGE_READS;
+    public final static int CHANNELS_SLOT;
+    public final static int STORAGE_BATCH_SIZE;
 
 
     static {
@@ -60,11 +108,51 @@ public class Settings {
         long transCheckInterval = 1000;
         int lengthOfIdInBytes = 20;
         int chainId = 20;
+        int closeWindow = 16;
+        int gasEstimateMarginPercent = 20;
+        long gasEstimateTtl = 600000;
+        long gasOracleInterval = 15000;
+        int gasOracleBlocks = 10;
+        BigInteger maxGasPrice = new BigInteger("50000000000", 10);
+        long stuckTransactionTimeout = 120000;
+        long receiptTimeout = 900000;
+        int gasPriceBumpPercent = 13;
+        int billStoreCapacity = 1024;
+        int signatureCacheSize = 4096;
+        String adminAddress = "127.0.0.1";
+        int adminPort = 9102;
+        int adminThreads = 2;
+        long shutdownDrainTimeout = 30000;
+        String traceFile = "";
+        String executionMode = "queue";
+        int rpcMaxConnections = 64;
+        int warmupIterations = 2000;
+        long libraryReadyTimeout = 10000;
+        boolean configReload = true;
+        boolean tokenIndex = true;
+        int tokenIndexConfirmations = 6;
+        long tokenIndexInterval = 4000;
+        long subscriptionPollInterval = 1000;
+        int maxSubscribers = 10000;
+        int standingAllowance = 1000;
+        int allowanceTopUpPercent = 25;
+        boolean pipelinedOpen = true;
+        boolean channelTopUp = true;
+        int topUpThresholdPercent = 20;
+        long topUpInterval = 5000;
+        int topUpBatchSize = 16;
+        int submissionRegistrySize = 1024;
+        int finalityBlocks = 12;
+        boolean channelStorageReads = true;
+        int channelsSlot = 1;
+        int storageBatchSize = 100;
 
 
+        //The load test points the SuperPeer at its own configuration with -Dsuperpeer.config=<file>.
+        String configPath = System.getProperty("superpeer.config", "rm-ethereum.conf");
         JSONParser parser = new JSONParser();
-        try {
-            Object obj = parser.parse(new FileReader("rm-ethereum.conf"));
+        try (Reader reader = new FileReader(configPath)) {
+            Object obj = parser.parse(reader);
             JSONObject jsonObject = (JSONObject) obj;
 
             appendingZerosForETH = ((String) jsonObject.get("appendingZerosForETH"));
@@ -104,17 +192,17 @@ public class Settings {
                         break;
                     case "channelABI":
                         channelABI = ((String) jsonObject.get(key));
+                        channelContract = new CallTransaction.Contract(channelABI);
                         if (debugInfo) {
-                            System.out.println("channelABI = " + channelABI);
+                            System.out.println("channelABI = " + channelContract.functions.length + " functions");
                         }
-                        channelContract = new CallTransaction.Contract(channelABI);
                         break;
                     case "tokenABI":
                         tokenABI = ((String) jsonObject.get(key));
+                        tokenContract = new CallTransaction.Contract(tokenABI);
                         if (debugInfo) {
-                            System.out.println("tokenABI = " + tokenABI);
+                            System.out.println("tokenABI = " + tokenContract.functions.length + " functions");
                         }
-                        tokenContract = new CallTransaction.Contract(tokenABI);
                         break;
                     case "maxDepositBits":
                         maxDeposit = ConversionUtility.decimalToBigInteger((String) jsonObject.get(key), appendingZerosForTKN);
@@ -147,6 +235,237 @@ public class Settings {
                         }
                         break;
 
+                    case "closeWindow":
+                        closeWindow = Integer.parseInt(jsonObject.get(key).toString());
+                        if (debugInfo) {
+                            System.out.println("CLOSE_WINDOW =" + closeWindow);
+                        }
+                        break;
+
+                    case "gasEstimateMarginPercent":
+                        gasEstimateMarginPercent = Integer.parseInt(jsonObject.get(key).toString());
+                        if (debugInfo) {
+                            System.out.println("GAS_ESTIMATE_MARGIN_PERCENT =" + gasEstimateMarginPercent);
+                        }
+                        break;
+                    case "gasEstimateTtl":
+                        gasEstimateTtl = Long.parseLong(jsonObject.get(key).toString());
+                        if (debugInfo) {
+                            System.out.println("GAS_ESTIMATE_TTL =" + gasEstimateTtl);
+                        }
+                        break;
+
+                    case "gasOracleInterval":
+                        gasOracleInterval = Long.parseLong(jsonObject.get(key).toString());
+                        if (debugInfo) {
+                            System.out.println("GAS_ORACLE_INTERVAL =" + gasOracleInterval);
+                        }
+                        break;
+                    case "gasOracleBlocks":
+                        gasOracleBlocks = Integer.parseInt(jsonObject.get(key).toString());
+                        if (debugInfo) {
+                            System.out.println("GAS_ORACLE_BLOCKS =" + gasOracleBlocks);
+                        }
+                        break;
+                    case "maxGasPrice":
+                        maxGasPrice = new BigInteger(jsonObject.get(key).toString(), 10);
+                        if (debugInfo) {
+                            System.out.println("MAX_GAS_PRICE =" + maxGasPrice);
+                        }
+                        break;
+                    case "stuckTransactionTimeout":
+                        stuckTransactionTimeout = Long.parseLong(jsonObject.get(key).toString());
+                        if (debugInfo) {
+                            System.out.println("STUCK_TRANSACTION_TIMEOUT =" + stuckTransactionTimeout);
+                        }
+                        break;
+                    case "receiptTimeout":
+                        receiptTimeout = Long.parseLong(jsonObject.get(key).toString());
+                        if (debugInfo) {
+                            System.out.println("RECEIPT_TIMEOUT =" + receiptTimeout);
+                        }
+                        break;
+                    case "gasPriceBumpPercent":
+                        gasPriceBumpPercent = Integer.parseInt(jsonObject.get(key).toString());
+                        if (debugInfo) {
+                            System.out.println("GAS_PRICE_BUMP_PERCENT =" + gasPriceBumpPercent);
+                        }
+                        break;
+                    case "billStoreCapacity":
+                        billStoreCapacity = Integer.parseInt(jsonObject.get(key).toString());
+                        if (debugInfo) {
+                            System.out.println("BILL_STORE_CAPACITY =" + billStoreCapacity);
+                        }
+                        break;
+                    case "signatureCacheSize":
+                        signatureCacheSize = Integer.parseInt(jsonObject.get(key).toString());
+                        if (debugInfo) {
+                            System.out.println("SIGNATURE_CACHE_SIZE =" + signatureCacheSize);
+                        }
+                        break;
+                    case "adminAddress":
+                        adminAddress = ((String) jsonObject.get(key));
+                        if (debugInfo) {
+                            System.out.println("ADMIN_ADDRESS =" + adminAddress);
+                        }
+                        break;
+                    case "adminPort":
+                        adminPort = Integer.parseInt(jsonObject.get(key).toString());
+                        if (debugInfo) {
+                            System.out.println("ADMIN_PORT =" + adminPort);
+                        }
+                        break;
+                    case "adminThreads":
+                        adminThreads = Integer.parseInt(jsonObject.get(key).toString());
+                        if (debugInfo) {
+                            System.out.println("ADMIN_THREADS =" + adminThreads);
+                        }
+                        break;
+                    case "shutdownDrainTimeout":
+                        shutdownDrainTimeout = Long.parseLong(jsonObject.get(key).toString());
+                        if (debugInfo) {
+                            System.out.println("SHUTDOWN_DRAIN_TIMEOUT =" + shutdownDrainTimeout);
+                        }
+                        break;
+                    case "traceFile":
+                        traceFile = ((String) jsonObject.get(key));
+                        if (debugInfo) {
+                            System.out.println("TRACE_FILE =" + traceFile);
+                        }
+                        break;
+                    case "executionMode":
+                        executionMode = ((String) jsonObject.get(key));
+                        if (debugInfo) {
+                            System.out.println("EXECUTION_MODE =" + executionMode);
+                        }
+                        break;
+                    case "rpcMaxConnections":
+                        rpcMaxConnections = Integer.parseInt(jsonObject.get(key).toString());
+                        if (debugInfo) {
+                            System.out.println("RPC_MAX_CONNECTIONS =" + rpcMaxConnections);
+                        }
+                        break;
+                    case "warmupIterations":
+                        warmupIterations = Integer.parseInt(jsonObject.get(key).toString());
+                        if (debugInfo) {
+                            System.out.println("WARMUP_ITERATIONS =" + warmupIterations);
+                        }
+                        break;
+                    case "libraryReadyTimeout":
+                        libraryReadyTimeout = Long.parseLong(jsonObject.get(key).toString());
+                        if (debugInfo) {
+                            System.out.println("LIBRARY_READY_TIMEOUT =" + libraryReadyTimeout);
+                        }
+                        break;
+                    case "configReload":
+                        configReload = jsonObject.get(key).toString().equals("true");
+                        if (debugInfo) {
+                            System.out.println("CONFIG_RELOAD =" + configReload);
+                        }
+                        break;
+                    case "tokenIndex":
+                        tokenIndex = jsonObject.get(key).toString().equals("true");
+                        if (debugInfo) {
+                            System.out.println("TOKEN_INDEX =" + tokenIndex);
+                        }
+                        break;
+                    case "tokenIndexConfirmations":
+                        tokenIndexConfirmations = Integer.parseInt(jsonObject.get(key).toString());
+                        if (debugInfo) {
+                            System.out.println("TOKEN_INDEX_CONFIRMATIONS =" + tokenIndexConfirmations);
+                        }
+                        break;
+                    case "tokenIndexInterval":
+                        tokenIndexInterval = Long.parseLong(jsonObject.get(key).toString());
+                        if (debugInfo) {
+                            System.out.println("TOKEN_INDEX_INTERVAL =" + tokenIndexInterval);
+                        }
+                        break;
+                    case "subscriptionPollInterval":
+                        subscriptionPollInterval = Long.parseLong(jsonObject.get(key).toString());
+                        if (debugInfo) {
+                            System.out.println("SUBSCRIPTION_POLL_INTERVAL =" + subscriptionPollInterval);
+                        }
+                        break;
+                    case "maxSubscribers":
+                        maxSubscribers = Integer.parseInt(jsonObject.get(key).toString());
+                        if (debugInfo) {
+                            System.out.println("MAX_SUBSCRIBERS =" + maxSubscribers);
+                        }
+                        break;
+                    case "standingAllowance":
+                        standingAllowance = Integer.parseInt(jsonObject.get(key).toString());
+                        if (debugInfo) {
+                            System.out.println("STANDING_ALLOWANCE =" + standingAllowance);
+                        }
+                        break;
+                    case "allowanceTopUpPercent":
+                        allowanceTopUpPercent = Integer.parseInt(jsonObject.get(key).toString());
+                        if (debugInfo) {
+                            System.out.println("ALLOWANCE_TOP_UP_PERCENT =" + allowanceTopUpPercent);
+                        }
+                        break;
+                    case "pipelinedOpen":
+                        pipelinedOpen = jsonObject.get(key).toString().equals("true");
+                        if (debugInfo) {
+                            System.out.println("PIPELINED_OPEN =" + pipelinedOpen);
+                        }
+                        break;
+                    case "channelTopUp":
+                        channelTopUp = jsonObject.get(key).toString().equals("true");
+                        if (debugInfo) {
+                            System.out.println("CHANNEL_TOP_UP =" + channelTopUp);
+                        }
+                        break;
+                    case "topUpThresholdPercent":
+                        topUpThresholdPercent = Integer.parseInt(jsonObject.get(key).toString());
+                        if (debugInfo) {
+                            System.out.println("TOP_UP_THRESHOLD_PERCENT =" + topUpThresholdPercent);
+                        }
+                        break;
+                    case "topUpInterval":
+                        topUpInterval = Long.parseLong(jsonObject.get(key).toString());
+                        if (debugInfo) {
+                            System.out.println("TOP_UP_INTERVAL =" + topUpInterval);
+                        }
+                        break;
+                    case "topUpBatchSize":
+                        topUpBatchSize = Integer.parseInt(jsonObject.get(key).toString());
+                        if (debugInfo) {
+                            System.out.println("TOP_UP_BATCH_SIZE =" + topUpBatchSize);
+                        }
+                        break;
+                    case "submissionRegistrySize":
+                        submissionRegistrySize = Integer.parseInt(jsonObject.get(key).toString());
+                        if (debugInfo) {
+                            System.out.println("SUBMISSION_REGISTRY_SIZE =" + submissionRegistrySize);
+                        }
+                        break;
+                    case "finalityBlocks":
+                        finalityBlocks = Integer.parseInt(jsonObject.get(key).toString());
+                        if (debugInfo) {
+                            System.out.println("FINALITY_BLOCKS =" + finalityBlocks);
+                        }
+                        break;
+                    case "channelStorageReads":
+                        channelStorageReads = jsonObject.get(key).toString().equals("true");
+                        if (debugInfo) {
+                            System.out.println("CHANNEL_STORAGE_READS =" + channelStorageReads);
+                        }
+                        break;
+                    case "channelsSlot":
+                        channelsSlot = Integer.parseInt(jsonObject.get(key).toString());
+                        if (debugInfo) {
+                            System.out.println("CHANNELS_SLOT =" + channelsSlot);
+                        }
+                        break;
+                    case "storageBatchSize":
+                        storageBatchSize = Integer.parseInt(jsonObject.get(key).toString());
+                        if (debugInfo) {
+                            System.out.println("STORAGE_BATCH_SIZE =" + storageBatchSize);
+                        }
+                        break;
+
                     case "appendingZerosForETH":
                     case "appendingZerosForTKN":
                         //already parsed
@@ -158,7 +477,7 @@ public class Settings {
             }
 
         } catch (FileNotFoundException e) {
-
+            System.out.println("Configuration file " + configPath + " not found, running on defaults.");
         } catch (ParseException e) {
             System.out.println("Couldn't parse contents in m-ethereum.conf as a JSON object." + e);
         } catch (IOException e) {
@@ -166,6 +485,7 @@ public class Settings {
         }
 
 
+        CONFIG_PATH = configPath;
         RPC_ADDRESS = rpcAddress;
         DEBUG_INFO = debugInfo;
 
@@ -186,5 +506,107 @@ public class Settings {
         TRANS_CHECK_INTERAVAL = transCheckInterval;
         LENGTH_OF_ID_IN_BYTES = lengthOfIdInBytes;
         CHAIN_ID = chainId;
+        CLOSE_WINDOW = closeWindow;
+        GAS_ESTIMATE_MARGIN_PERCENT = gasEstimateMarginPercent;
+        GAS_ESTIMATE_TTL = gasEstimateTtl;
+        GAS_ORACLE_INTERVAL = gasOracleInterval;
+        GAS_ORACLE_BLOCKS = gasOracleBlocks;
+        MAX_GAS_PRICE = maxGasPrice;
+        STUCK_TRANSACTION_TIMEOUT = stuckTransactionTimeout;
+        RECEIPT_TIMEOUT = receiptTimeout;
+        GAS_PRICE_BUMP_PERCENT = gasPriceBumpPercent;
+        BILL_STORE_CAPACITY = billStoreCapacity;
+        SIGNATURE_CACHE_SIZE = signatureCacheSize;
+        ADMIN_ADDRESS = adminAddress;
+        ADMIN_PORT = adminPort;
+        ADMIN_THREADS = adminThreads;
+        SHUTDOWN_DRAIN_TIMEOUT = shutdownDrainTimeout;
+        TRACE_FILE = traceFile;
+        EXECUTION_MODE = executionMode;
+        RPC_MAX_CONNECTIONS = rpcMaxConnections;
+        WARMUP_ITERATIONS = warmupIterations;
+        LIBRARY_READY_TIMEOUT = libraryReadyTimeout;
+        CONFIG_RELOAD = configReload;
+        TOKEN_INDEX = tokenIndex;
+        TOKEN_INDEX_CONFIRMATIONS = tokenIndexConfirmations;
+        TOKEN_INDEX_INTERVAL = tokenIndexInterval;
+        SUBSCRIPTION_POLL_INTERVAL = subscriptionPollInterval;
+        MAX_SUBSCRIBERS = maxSubscribers;
+        STANDING_ALLOWANCE = standingAllowance;
+        ALLOWANCE_TOP_UP_PERCENT = allowanceTopUpPercent;
+        PIPELINED_OPEN = pipelinedOpen;
+        CHANNEL_TOP_UP = channelTopUp;
+        TOP_UP_THRESHOLD_PERCENT = topUpThresholdPercent;
+        TOP_UP_INTERVAL = topUpInterval;
+        TOP_UP_BATCH_SIZE = topUpBatchSize;
+        SUBMISSION_REGISTRY_SIZE = submissionRegistrySize;
+        FINALITY_BLOCKS = finalityBlocks;
+        CHANNEL_STORAGE_READS = channelStorageReads;
+        CHANNELS_SLOT = channelsSlot;
+        STORAGE_BATCH_SIZE = storageBatchSize;
+    }
+
+    private static final AtomicReference<Config> current = new AtomicReference<>(bootConfig());
+    private static final List<Consumer<Config>> reloadListeners = new CopyOnWriteArrayList<>();
+
+    private static Config bootConfig() {
+        Config config = Config.boot();
+        try {
+            config.validate();
+        } catch (IllegalArgumentException e) {
+            System.out.println("Invalid configuration in " + CONFIG_PATH + ": " + e.getMessage());
+        }
+        return config;
+    }
+
+    /**
+     * Gets the current snapshot of the tunable settings, a lock-free read.
+     *
+     * @return  The current snapshot.
+     */
+    public static Config current() {
+        return current.get();
+    }
+
+    /**
+     * Registers a listener called with every new snapshot, on the thread which reloaded it.
+     *
+     * @param listener  The listener.
+     */
+    public static void onReload(Consumer<Config> listener) {
+        reloadListeners.add(listener);
+    }
+
+    /**
+     * Reads the configuration file again and publishes it as the next snapshot if it is valid, otherwise the
+     * current snapshot stays in place.
+     *
+     * @return  True if a new snapshot was published.
+     */
+    public static synchronized boolean reload() {
+        Config previous = current.get();
+        Config next;
+        try (Reader reader = new FileReader(CONFIG_PATH)) {
+            next = Config.parse((JSONObject) new JSONParser().parse(reader), previous);
+        } catch (IOException | ParseException | IllegalArgumentException | ClassCastException e) {
+            Metrics.getInstance().error("config_reload");
+            System.out.println("Configuration not reloaded, keeping version " + previous.version + ": " + e);
+            return false;
+        }
+
+        List<String> changes = next.changesSince(previous);
+        if (changes.isEmpty()) {
+            return false;
+        }
+        current.set(next);
+        System.out.println("Configuration version " + next.version + ": " + String.join(", ", changes));
+        for (Consumer<Config> listener : reloadListeners) {
+            try {
+                listener.accept(next);
+            } catch (RuntimeException e) {
+                System.out.println("Failed to apply configuration version " + next.version + ": " + e);
+            }
+        }
+        return true;
     }
 }
@@ -0,0 +1,215 @@
+package ether;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import org.ethereum.crypto.ECKey;
+import org.ethereum.crypto.HashUtil;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.security.SignatureException;
+import java.util.Arrays;
+
+
+/**
+ * Verifies the balance proof and closing hash signatures sent by Clients before the bills are accepted.
+ * The expected message hash is computed locally, the signer is recovered with secp256k1 ecrecover and compared
+ * with the Client's address. Recently recovered (hash, signature) pairs are cached.
+ * <p>
+ * The message hash is the keccak of the other party's address, the uint192 balance and the Channel contract
+ * address, tightly packed. Each kind of hash is checked against the one the Channel contract computes until
+ * they agree once; if they don't, the hashes of that kind are taken from the contract from then on.
+ */
+public final class SignatureVerifier {
+
+    private static final int SIGNATURE_LENGTH = 65;
+    private static final int ADDRESS_LENGTH = 20;
+    private static final int BALANCE_LENGTH = 24;
+
+    private final Http httpAgent;
+    private final Cache<String, String> signers;
+    private final HashLayout balanceHashes = new HashLayout("balance proof");
+    private final HashLayout closingHashes = new HashLayout("closing hash");
+
+    /**
+     * @param httpAgent The Http wrapper.
+     */
+    public SignatureVerifier(Http httpAgent) {
+        this.httpAgent = httpAgent;
+        signers = CacheBuilder.newBuilder().maximumSize(Settings.SIGNATURE_CACHE_SIZE).build();
+    }
+
+    /**
+     * Verifies a balance proof signed by the sender of a channel.
+     *
+     * @param senderAddress     The sender address, the expected signer.
+     * @param receiverAddress   The receiver address.
+     * @param balance           The balance.
+     * @param signature         The 65 bytes signature.
+     * @return                  True if the sender signed the balance, otherwise returns False.
+     */
+    public boolean verifyBalanceProof(String senderAddress, String receiverAddress, BigInteger balance,
+                                      byte[] signature) {
+        byte[] hash = messageHash(balanceHashes, senderAddress, receiverAddress, balance);
+        return hash != null && isSignedBy(hash, signature, senderAddress);
+    }
+
+    /**
+     * Verifies a closing hash signed by the receiver of a channel.
+     *
+     * @param receiverAddress   The receiver address, the expected signer.
+     * @param senderAddress     The sender address.
+     * @param balance           The balance.
+     * @param signature         The 65 bytes signature.
+     * @return                  True if the receiver signed the balance, otherwise returns False.
+     */
+    public boolean verifyClosingHash(String receiverAddress, String senderAddress, BigInteger balance,
+                                     byte[] signature) {
+        byte[] hash = messageHash(closingHashes, receiverAddress, senderAddress, balance);
+        return hash != null && isSignedBy(hash, signature, receiverAddress);
+    }
+
+
+    /**
+     * Computes the message hash locally, comparing it with the contract's until the layout is confirmed.
+     *
+     * @param layout        The kind of hash.
+     * @param signerAddress The expected signer.
+     * @param otherAddress  The other party of the channel.
+     * @param balance       The balance.
+     * @return              The 32 bytes hash, or null if it can't be computed.
+     */
+    private byte[] messageHash(HashLayout layout, String signerAddress, String otherAddress, BigInteger balance) {
+        if (layout.broken) {
+            return contractHash(layout, signerAddress, otherAddress, balance);
+        }
+
+        byte[] local = localHash(otherAddress, balance);
+        if (local == null || layout.confirmed) {
+            return local;
+        }
+
+        byte[] remote = contractHash(layout, signerAddress, otherAddress, balance);
+        if (remote == null || Arrays.equals(local, remote)) {
+            layout.confirmed = remote != null;
+            return local;
+        }
+
+        System.out.println("The Channel contract hashes " + layout.name
+                + " messages differently, taking the hashes from the contract instead.");
+        Metrics.getInstance().error("message_hash_layout");
+        layout.broken = true;
+        return remote;
+    }
+
+    /**
+     * @return  The keccak of the address, the balance and the Channel contract address, or null if an
+     *          address or the balance doesn't fit.
+     */
+    private static byte[] localHash(String otherAddress, BigInteger balance) {
+        byte[] other;
+        byte[] contract;
+        try {
+            other = HexCodec.decode(otherAddress);
+            contract = HexCodec.decode(Settings.CHANNEL_CONTRACT_ADDRESS);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+        if (other.length != ADDRESS_LENGTH || contract.length != ADDRESS_LENGTH
+                || !BillStore.fitsBalance(balance)) {
+            return null;
+        }
+
+        byte[] message = new byte[ADDRESS_LENGTH + BALANCE_LENGTH + ADDRESS_LENGTH];
+        System.arraycopy(other, 0, message, 0, ADDRESS_LENGTH);
+        byte[] value = balance.toByteArray();
+        int length = Math.min(value.length, BALANCE_LENGTH);
+        System.arraycopy(value, value.length - length, message, ADDRESS_LENGTH + BALANCE_LENGTH - length, length);
+        System.arraycopy(contract, 0, message, ADDRESS_LENGTH + BALANCE_LENGTH, ADDRESS_LENGTH);
+        return HashUtil.sha3(message);
+    }
+
+    /**
+     * @return  The hash computed by the Channel contract, or null if the Ether node returned none.
+     */
+    private byte[] contractHash(HashLayout layout, String signerAddress, String otherAddress, BigInteger balance) {
+        try {
+            return layout == balanceHashes
+                    ? EtherClient.getBalanceHash(signerAddress, otherAddress, balance, httpAgent)
+                    : EtherClient.getClosingHash(signerAddress, otherAddress, balance, httpAgent);
+        } catch (IOException e) {
+            if (Settings.DEBUG_INFO) {
+                System.out.println("Failed to get the " + layout.name + " hash from the Channel contract.");
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Recovers the signer of the hash and compares it with the expected address.
+     */
+    private boolean isSignedBy(byte[] hash, byte[] signature, String expectedAddress) {
+        if (signature == null || signature.length != SIGNATURE_LENGTH) {
+            return false;
+        }
+
+        String key = HexCodec.encode(hash) + HexCodec.encode(signature);
+        String signer = signers.getIfPresent(key);
+        Metrics.getInstance().cacheLookup("signature", signer != null);
+        if (signer == null) {
+            signer = recoverSigner(hash, signature);
+            if (signer == null) {
+                return false;
+            }
+            signers.put(key, signer);
+        }
+
+        String expected = expectedAddress.startsWith("0x") ? expectedAddress.substring(2) : expectedAddress;
+        boolean valid = signer.equalsIgnoreCase(expected);
+        if (!valid) {
+            Metrics.getInstance().error("bad_signature");
+            if (Settings.DEBUG_INFO) {
+                System.out.println("Signature recovers to 0x" + signer + ", expected " + expectedAddress);
+            }
+        }
+        return valid;
+    }
+
+    /**
+     * @return  The signer address without the 0x prefix, or null if the signature is malformed.
+     */
+    private static String recoverSigner(byte[] hash, byte[] signature) {
+        byte v = signature[64];
+        if (v < 27) {
+            v += 27;
+        }
+
+        ECKey.ECDSASignature sig = ECKey.ECDSASignature.fromComponents(
+                Arrays.copyOfRange(signature, 0, 32), Arrays.copyOfRange(signature, 32, 64), v);
+        if (!sig.validateComponents()) {
+            return null;
+        }
+
+        try {
+            return HexCodec.encode(ECKey.signatureToAddress(hash, sig));
+        } catch (SignatureException | RuntimeException e) {
+            return null;
+        }
+    }
+
+
+    /**
+     * What is known about how the Channel contract hashes one kind of message.
+     */
+    private static final class HashLayout {
+        final String name;
+        //Set once a local hash matched the contract's.
+        volatile boolean confirmed = false;
+        //Set if the contract hashed differently.
+        volatile boolean broken = false;
+
+        HashLayout(String name) {
+            this.name = name;
+        }
+    }
+}
@@ -0,0 +1,158 @@
+package ether;
+
+import org.ethereum.crypto.HashUtil;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+
+
+/**
+ * Makes the submission of a signed raw transaction idempotent. Clients retry their requests with the same signed
+ * transactions, which the Ether node refuses as already imported, and each retry would wait for the receipt
+ * again. Submissions are keyed by the transaction hash, the Keccak hash of the raw transaction: the first one
+ * sends the transaction and waits for its receipt, a duplicate attaches to it while it is in flight and gets its
+ * receipt once it is done.
+ * <p>
+ * A submission that failed or whose transaction wasn't mined is dropped when it ends, so it can be retried.
+ * A mined one is kept until {@link Settings#FINALITY_BLOCKS} blocks were mined after it, as told by the newer
+ * receipts, and at most {@link Settings#SUBMISSION_REGISTRY_SIZE} submissions are kept.
+ */
+public final class SubmissionRegistry {
+
+    /**
+     * Sends a transaction and waits for its receipt.
+     */
+    public interface Submission {
+        /**
+         * @return              The receipt, or null if the transaction wasn't submitted or mined.
+         * @throws IOException  Thrown if fails to get http response from a remote mode.
+         */
+        TransactionReceipt submit() throws IOException;
+    }
+
+    private final ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<>();
+    //The highest block of the receipts seen so far, instead of asking the Ether node.
+    private volatile long latestBlock = -1;
+
+    public SubmissionRegistry() {
+        Metrics.getInstance().gauge("superpeer_tracked_submissions", "Raw transactions kept for deduplication.",
+                entries::size);
+    }
+
+    /**
+     * Runs the submission of a signed transaction, unless the same transaction was already submitted.
+     *
+     * @param signedTransaction The signed raw transaction, the key of the submission.
+     * @param submission        Sends the transaction and waits for its receipt.
+     * @return                  The receipt, or null if the transaction wasn't submitted or mined.
+     * @throws IOException      Thrown if fails to get http response from a remote mode.
+     */
+    public TransactionReceipt submitOnce(String signedTransaction, Submission submission) throws IOException {
+        String hash = hash(signedTransaction);
+        if (hash == null) {
+            //Not a transaction the node would take, let it say so.
+            return submission.submit();
+        }
+
+        Entry entry = new Entry();
+        Entry existing = entries.putIfAbsent(hash, entry);
+        if (existing != null) {
+            Metrics.getInstance().counter("superpeer_submissions_total", "result", "attached").increment();
+            if (Settings.DEBUG_INFO) {
+                System.out.println("Transaction 0x" + hash + " was already submitted, waiting for its result.");
+            }
+            return existing.await();
+        }
+        Metrics.getInstance().counter("superpeer_submissions_total", "result", "submitted").increment();
+        evict();
+
+        TransactionReceipt receipt = null;
+        try {
+            receipt = submission.submit();
+            entry.result.complete(receipt);
+            return receipt;
+        } catch (IOException | RuntimeException e) {
+            entry.result.completeExceptionally(e);
+            throw e;
+        } finally {
+            if (receipt == null || receipt.blockNumber < 0) {
+                entries.remove(hash, entry);
+            } else {
+                entry.blockNumber = receipt.blockNumber;
+                if (receipt.blockNumber > latestBlock) {
+                    latestBlock = receipt.blockNumber;
+                }
+            }
+        }
+    }
+
+
+    /**
+     * Drops the final submissions, and the oldest mined one if there are too many.
+     */
+    private void evict() {
+        long finalBlock = latestBlock - Settings.FINALITY_BLOCKS;
+        Entry oldest = null;
+        String oldestHash = null;
+        for (Iterator<Map.Entry<String, Entry>> iterator = entries.entrySet().iterator(); iterator.hasNext(); ) {
+            Map.Entry<String, Entry> next = iterator.next();
+            long blockNumber = next.getValue().blockNumber;
+            if (blockNumber < 0) {
+                continue;
+            }
+            if (blockNumber <= finalBlock) {
+                iterator.remove();
+            } else if (oldest == null || blockNumber < oldest.blockNumber) {
+                oldest = next.getValue();
+                oldestHash = next.getKey();
+            }
+        }
+
+        //The submissions in flight are never dropped, they are bounded by the waiting requests.
+        if (oldest != null && entries.size() > Settings.SUBMISSION_REGISTRY_SIZE) {
+            entries.remove(oldestHash, oldest);
+        }
+    }
+
+    /**
+     * @return  The transaction hash without the 0x prefix, or null if the transaction isn't hex.
+     */
+    private static String hash(String signedTransaction) {
+        try {
+            return HexCodec.encode(HashUtil.sha3(HexCodec.decode(signedTransaction)));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+
+    /**
+     * A submission, in flight until its result is completed.
+     */
+    private static final class Entry {
+        final CompletableFuture<TransactionReceipt> result = new CompletableFuture<>();
+        //The block the transaction was mined in, -1 while in flight.
+        volatile long blockNumber = -1;
+
+        TransactionReceipt await() throws IOException {
+            try {
+                return result.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return null;
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof IOException) {
+                    throw (IOException) e.getCause();
+                }
+                if (e.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) e.getCause();
+                }
+                throw new IOException("The submission of the transaction failed.", e.getCause());
+            }
+        }
+    }
+}
@@ -0,0 +1,245 @@
+package ether;
+
+import io.left.rightmesh.id.MeshId;
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+
+/**
+ * Pushes the channel status and balances to subscribed Clients when they change, so they don't have to poll
+ * with GetAll. Every new block is scanned for the subscribers it touches: the senders and recipients of its
+ * transactions and the parties of its token Transfer and Minted logs. Those, plus the subscribers whose
+ * channels changed locally since the previous block, get at most one MESSAGE_TO_CLIENT per block, and only if
+ * it differs from the last one pushed to them.
+ */
+public final class SubscriptionManager {
+
+    public static final String METHOD_SUBSCRIBE = "subscribe";
+    public static final String METHOD_UNSUBSCRIBE = "unsubscribe";
+
+    //After a longer gap every subscriber is refreshed instead of scanning each missed block.
+    private static final long MAX_BLOCKS_PER_POLL = 16;
+
+    private final Http httpAgent;
+    private final Function<MeshId, byte[]> statusReader;
+    private final BiConsumer<MeshId, byte[]> sender;
+    private final ConcurrentHashMap<String, Subscriber> subscribers = new ConcurrentHashMap<>();
+    private final Set<String> dirty = ConcurrentHashMap.newKeySet();
+    private ScheduledExecutorService poller = null;
+    //Only touched by the poller thread.
+    private long lastBlock = -1;
+
+    /**
+     * @param httpAgent     The Http wrapper.
+     * @param statusReader  Builds the MESSAGE_TO_CLIENT of a peer, returns null if it can't be built now.
+     * @param sender        Sends a message to a peer.
+     */
+    public SubscriptionManager(Http httpAgent, Function<MeshId, byte[]> statusReader,
+                               BiConsumer<MeshId, byte[]> sender) {
+        this.httpAgent = httpAgent;
+        this.statusReader = statusReader;
+        this.sender = sender;
+        Metrics.getInstance().gauge("superpeer_subscribers", "Clients subscribed to pushed updates.",
+                subscribers::size);
+    }
+
+    /**
+     * Starts following the chain every {@link Settings#SUBSCRIPTION_POLL_INTERVAL} milliseconds.
+     */
+    public synchronized void start() {
+        if (poller != null) {
+            return;
+        }
+
+        poller = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "subscription-pusher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        poller.scheduleWithFixedDelay(this::poll, 0, Settings.SUBSCRIPTION_POLL_INTERVAL, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops pushing and drops the subscriptions, Clients subscribe again after a restart.
+     */
+    public synchronized void stop() {
+        if (poller != null) {
+            poller.shutdownNow();
+            poller = null;
+        }
+        subscribers.clear();
+        dirty.clear();
+    }
+
+    /**
+     * Subscribes a peer, it is sent its current status right away.
+     *
+     * @param peer  The peer.
+     * @return      False if the subscribers limit is reached.
+     */
+    public boolean subscribe(MeshId peer) {
+        String key = key(peer);
+        if (!subscribers.containsKey(key) && subscribers.size() >= Settings.MAX_SUBSCRIBERS) {
+            return false;
+        }
+
+        Subscriber subscriber = subscribers.computeIfAbsent(key, k -> new Subscriber(peer));
+        //Resend the status even if unchanged, the Client may have lost it.
+        subscriber.lastPushed = null;
+        push(key, subscriber);
+        return true;
+    }
+
+    /**
+     * @param peer  The peer to unsubscribe.
+     */
+    public void unsubscribe(MeshId peer) {
+        subscribers.remove(key(peer));
+    }
+
+    /**
+     * Schedules a push to the peer with the next block, called when its channels change.
+     *
+     * @param peer  The peer.
+     */
+    public void markDirty(MeshId peer) {
+        String key = key(peer);
+        if (subscribers.containsKey(key)) {
+            dirty.add(key);
+        }
+    }
+
+
+    private void poll() {
+        if (subscribers.isEmpty()) {
+            lastBlock = -1;
+            return;
+        }
+
+        try {
+            long latest = EtherClient.getBlockNumber(httpAgent);
+            if (latest <= lastBlock || latest < 0) {
+                return;
+            }
+            if (lastBlock < 0) {
+                //Subscribers got their status when they subscribed.
+                lastBlock = latest;
+                return;
+            }
+
+            Set<String> touched = new HashSet<>();
+            if (latest - lastBlock > MAX_BLOCKS_PER_POLL) {
+                touched.addAll(subscribers.keySet());
+            } else if (!collectTouched(lastBlock + 1, latest, touched)) {
+                //Retried with the next poll.
+                return;
+            }
+            lastBlock = latest;
+
+            for (Iterator<String> iterator = dirty.iterator(); iterator.hasNext(); ) {
+                touched.add(iterator.next());
+                iterator.remove();
+            }
+            for (String key : touched) {
+                Subscriber subscriber = subscribers.get(key);
+                if (subscriber != null) {
+                    push(key, subscriber);
+                }
+            }
+        } catch (RuntimeException e) {
+            //Keep going, the scheduler would stop on an uncaught exception.
+            if (Settings.DEBUG_INFO) {
+                System.out.println("Failed to push updates, " + e.getClass().getCanonicalName()
+                        + ": " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Collects the subscribers touched by a range of blocks.
+     *
+     * @return  False if a block or the logs couldn't be fetched.
+     */
+    private boolean collectTouched(long fromBlock, long toBlock, Set<String> touched) {
+        for (long number = fromBlock; number <= toBlock; number++) {
+            JSONObject block = EtherClient.getBlockByNumber("0x" + Long.toHexString(number), true, httpAgent);
+            if (block == null) {
+                return false;
+            }
+            for (Object entry : (JSONArray) block.get("transactions")) {
+                JSONObject transaction = (JSONObject) entry;
+                addIfSubscribed((String) transaction.get("from"), touched);
+                addIfSubscribed((String) transaction.get("to"), touched);
+            }
+        }
+
+        JSONArray logs = EtherClient.getLogs(fromBlock, toBlock, Settings.TOKEN_CONTRACT_ADDRESS,
+                Arrays.asList(TokenBalanceIndex.TRANSFER_TOPIC, TokenBalanceIndex.MINTED_TOPIC), httpAgent);
+        if (logs == null) {
+            return false;
+        }
+        for (Object entry : logs) {
+            JSONArray topics = (JSONArray) ((JSONObject) entry).get("topics");
+            //The indexed addresses, the Minted amount in the last topic is ignored as it doesn't match.
+            for (int i = 1; i < topics.size(); i++) {
+                String topic = (String) topics.get(i);
+                addIfSubscribed("0x" + topic.substring(topic.length() - 40), touched);
+            }
+        }
+        return true;
+    }
+
+    private void addIfSubscribed(String address, Set<String> touched) {
+        if (address != null) {
+            String key = address.toLowerCase();
+            if (subscribers.containsKey(key)) {
+                touched.add(key);
+            }
+        }
+    }
+
+    private void push(String key, Subscriber subscriber) {
+        byte[] status = statusReader.apply(subscriber.peer);
+        if (status == null) {
+            //Try again with the next block.
+            dirty.add(key);
+            return;
+        }
+        if (Arrays.equals(status, subscriber.lastPushed)) {
+            Metrics.getInstance().counter("superpeer_pushes_total", "result", "unchanged").increment();
+            return;
+        }
+
+        sender.accept(subscriber.peer, status);
+        subscriber.lastPushed = status;
+        Metrics.getInstance().counter("superpeer_pushes_total", "result", "sent").increment();
+    }
+
+    private static String key(MeshId peer) {
+        return peer.toString().toLowerCase();
+    }
+
+
+    /**
+     * A subscribed peer and the last message pushed to it.
+     */
+    private static final class Subscriber {
+        final MeshId peer;
+        volatile byte[] lastPushed = null;
+
+        Subscriber(MeshId peer) {
+            this.peer = peer;
+        }
+    }
+}
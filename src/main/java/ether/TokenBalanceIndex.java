@@ -0,0 +1,310 @@
+package ether;
+
+import org.ethereum.crypto.HashUtil;
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+
+/**
+ * Local index of the token balances of the addresses the SuperPeer has seen, so the handlers don't query
+ * balanceOf for every Client message. An address is seeded with balanceOf at the indexed block on its first
+ * lookup, then kept up to date from the Transfer and Minted logs of the token contract, applied once they are
+ * {@link Settings#TOKEN_INDEX_CONFIRMATIONS} blocks deep.
+ * <p>
+ * Every poll first checks that the indexed block is still on the chain. After a reorg deeper than the
+ * confirmations, the applied log batches are rolled back one by one until the index is on the chain again,
+ * addresses seeded on the dropped blocks are forgotten and seeded again. Lookups fall back to the Ether node
+ * until the index has caught up.
+ */
+public final class TokenBalanceIndex {
+
+    static final String TRANSFER_TOPIC = topic("Transfer(address,address,uint256)");
+    static final String MINTED_TOPIC = topic("Minted(address,uint256)");
+
+    //Bounds the eth_getLogs range after a pause, the index catches up over several polls.
+    private static final long MAX_BLOCKS_PER_POLL = 1000;
+    //Applied batches kept for rollback, a reorg deeper than this resets the index.
+    private static final int MAX_JOURNAL = 64;
+
+    private static final TokenBalanceIndex instance = new TokenBalanceIndex();
+
+    private final ConcurrentHashMap<String, BigInteger> balances = new ConcurrentHashMap<>();
+    //Guards the updates of the balances, the head and the journal, reads are lock-free.
+    private final ReentrantLock lock = new ReentrantLock();
+    private final ArrayDeque<Batch> journal = new ArrayDeque<>();
+    private volatile Head head = null;
+    private ScheduledExecutorService poller = null;
+    private Http httpAgent;
+
+    public static TokenBalanceIndex getInstance() {
+        return instance;
+    }
+
+    private TokenBalanceIndex() {
+        Metrics.getInstance().gauge("superpeer_token_index_addresses", "Addresses in the token balance index.",
+                balances::size);
+    }
+
+    /**
+     * Starts following the token contract every {@link Settings#TOKEN_INDEX_INTERVAL} milliseconds.
+     *
+     * @param httpAgent The Http wrapper.
+     */
+    public synchronized void start(Http httpAgent) {
+        if (poller != null) {
+            return;
+        }
+
+        this.httpAgent = httpAgent;
+        poller = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "token-balance-index");
+            thread.setDaemon(true);
+            return thread;
+        });
+        poller.scheduleWithFixedDelay(this::poll, 0, Settings.TOKEN_INDEX_INTERVAL, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops following the token contract and drops the index, lookups go to the Ether node.
+     */
+    public synchronized void stop() {
+        if (poller != null) {
+            poller.shutdownNow();
+            poller = null;
+        }
+        lock.lock();
+        try {
+            reset();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Gets the token balance of an address, from the index if it is there, otherwise from the Ether node.
+     * Indexed balances are as of the last confirmed block.
+     *
+     * @param address                   The address in the Ethereum Network.
+     * @param httpAgent                 The Http wrapper, used when the address isn't indexed.
+     * @return                          The token balance, or null if the Ether node didn't return it.
+     * @throws IOException              Thrown if fails to get http response from a remote mode.
+     * @throws NumberFormatException    Thrown if fails to parse the balance.
+     */
+    public BigInteger getBalance(String address, Http httpAgent) throws IOException, NumberFormatException {
+        String key = address.toLowerCase();
+        BigInteger balance = balances.get(key);
+        Metrics.getInstance().cacheLookup("token_balance", balance != null);
+        if (balance != null) {
+            return balance;
+        }
+
+        Head seedHead = head;
+        if (seedHead == null) {
+            return EtherClient.getTokenBalance(address, httpAgent);
+        }
+
+        balance = EtherClient.getTokenBalance(address, "0x" + Long.toHexString(seedHead.number), httpAgent);
+        if (balance != null) {
+            lock.lock();
+            try {
+                //Logs applied while querying would be missing from the seed, only index it if none were.
+                if (head == seedHead && balances.putIfAbsent(key, balance) == null && !journal.isEmpty()) {
+                    journal.peekLast().seeded.add(key);
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+        return balance;
+    }
+
+
+    /**
+     * Checks the indexed block is still on the chain, then applies the logs of the newly confirmed blocks.
+     */
+    private void poll() {
+        try {
+            Head current = head;
+            if (current != null) {
+                String hash = blockHash(current.number);
+                if (hash == null) {
+                    return;
+                }
+                if (!hash.equals(current.hash)) {
+                    rollback(current);
+                    return;
+                }
+            }
+
+            long latest = EtherClient.getBlockNumber(httpAgent);
+            if (latest < 0) {
+                return;
+            }
+            long confirmed = latest - Settings.TOKEN_INDEX_CONFIRMATIONS;
+            if (current == null) {
+                String hash = blockHash(confirmed);
+                if (hash != null) {
+                    head = new Head(confirmed, hash);
+                    System.out.println("Token balance index follows the token contract from block " + confirmed);
+                }
+                return;
+            }
+
+            long to = Math.min(confirmed, current.number + MAX_BLOCKS_PER_POLL);
+            if (to <= current.number) {
+                return;
+            }
+            JSONArray logs = EtherClient.getLogs(current.number + 1, to, Settings.TOKEN_CONTRACT_ADDRESS,
+                    Arrays.asList(TRANSFER_TOPIC, MINTED_TOPIC), httpAgent);
+            String toHash = blockHash(to);
+            if (logs == null || toHash == null) {
+                return;
+            }
+            apply(current, new Head(to, toHash), logs);
+        } catch (RuntimeException e) {
+            //Keep the index as it is, the scheduler would stop on an uncaught exception.
+            if (Settings.DEBUG_INFO) {
+                System.out.println("Failed to update the token balance index, " + e.getClass().getCanonicalName()
+                        + ": " + e.getMessage());
+            }
+        }
+    }
+
+    private void apply(Head from, Head to, JSONArray logs) {
+        Map<String, BigInteger> deltas = new HashMap<>();
+        for (Object entry : logs) {
+            JSONObject log = (JSONObject) entry;
+            JSONArray topics = (JSONArray) log.get("topics");
+            String signature = (String) topics.get(0);
+            if (TRANSFER_TOPIC.equals(signature)) {
+                BigInteger value = HexCodec.quantity((String) log.get("data"));
+                deltas.merge(address((String) topics.get(1)), value.negate(), BigInteger::add);
+                deltas.merge(address((String) topics.get(2)), value, BigInteger::add);
+            } else if (MINTED_TOPIC.equals(signature)) {
+                BigInteger value = HexCodec.quantity((String) topics.get(2));
+                deltas.merge(address((String) topics.get(1)), value, BigInteger::add);
+            }
+        }
+
+        lock.lock();
+        try {
+            if (head != from) {
+                return;
+            }
+            //Only the indexed addresses are tracked, the others are seeded when first seen.
+            Batch batch = new Batch(from);
+            for (Map.Entry<String, BigInteger> delta : deltas.entrySet()) {
+                BigInteger updated = balances.computeIfPresent(delta.getKey(),
+                        (key, balance) -> balance.add(delta.getValue()));
+                if (updated != null) {
+                    batch.deltas.put(delta.getKey(), delta.getValue());
+                }
+            }
+            journal.addLast(batch);
+            while (journal.size() > MAX_JOURNAL) {
+                journal.removeFirst();
+            }
+            head = to;
+        } finally {
+            lock.unlock();
+        }
+
+        if (Settings.DEBUG_INFO && !logs.isEmpty()) {
+            System.out.println("Token balance index applied " + logs.size() + " logs up to block " + to.number);
+        }
+    }
+
+    /**
+     * Undoes the last applied batch, the next poll checks the block before it.
+     */
+    private void rollback(Head current) {
+        lock.lock();
+        try {
+            if (head != current) {
+                return;
+            }
+            Metrics.getInstance().error("token_index_reorg");
+            Batch batch = journal.pollLast();
+            if (batch == null) {
+                System.out.println("Reorg deeper than the token balance index journal, rebuilding the index.");
+                reset();
+                return;
+            }
+
+            for (Map.Entry<String, BigInteger> delta : batch.deltas.entrySet()) {
+                balances.computeIfPresent(delta.getKey(), (key, balance) -> balance.subtract(delta.getValue()));
+            }
+            for (String key : batch.seeded) {
+                balances.remove(key);
+            }
+            head = batch.from;
+            System.out.println("Reorg detected, token balance index rolled back to block " + batch.from.number);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void reset() {
+        balances.clear();
+        journal.clear();
+        head = null;
+    }
+
+    private String blockHash(long number) {
+        JSONObject block = EtherClient.getBlockByNumber("0x" + Long.toHexString(number), false, httpAgent);
+        return block == null ? null : (String) block.get("hash");
+    }
+
+    /**
+     * @return  The address in an indexed topic, lowercase.
+     */
+    private static String address(String topic) {
+        return "0x" + topic.substring(topic.length() - 40).toLowerCase();
+    }
+
+    private static String topic(String eventSignature) {
+        return HexCodec.prefixed(HashUtil.sha3(eventSignature.getBytes(StandardCharsets.US_ASCII)));
+    }
+
+
+    /**
+     * A block the index is at, the hash detects it was dropped by a reorg.
+     */
+    private static final class Head {
+        final long number;
+        final String hash;
+
+        Head(long number, String hash) {
+            this.number = number;
+            this.hash = hash;
+        }
+    }
+
+    /**
+     * The changes of a poll, kept to roll it back.
+     */
+    private static final class Batch {
+        final Head from;
+        final Map<String, BigInteger> deltas = new HashMap<>();
+        final Set<String> seeded = new HashSet<>();
+
+        Batch(Head from) {
+            this.from = from;
+        }
+    }
+}
@@ -0,0 +1,233 @@
+package ether;
+
+import io.left.rightmesh.mesh.MeshManager;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.locks.ReentrantLock;
+
+
+/**
+ * Records the Mesh transactions received from Clients into a compact trace file, for replaying production
+ * traffic against the Transactions Manager. Enabled by setting {@link Settings#TRACE_FILE}.
+ * <p>
+ * The file starts with a header of the magic "SPTR", a version byte and the wall clock time of the first
+ * record in milliseconds. Each record is the time since the previous record in microseconds, the peer id and
+ * the transaction payload, each length and the time as unsigned LEB128 varints.
+ */
+public final class TraceRecorder implements Closeable {
+
+    static final int MAGIC = 0x53505452;
+    static final int VERSION = 1;
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final String path;
+    private final DataOutputStream out;
+    //A lock rather than a monitor, flushing to disk would pin a virtual thread.
+    private final ReentrantLock lock = new ReentrantLock();
+    private long lastRecordNanos = 0;
+    private long records = 0;
+    private boolean failed = false;
+
+    /**
+     * Creates the trace file, an existing file is overwritten.
+     *
+     * @param path          The trace file.
+     * @throws IOException  Thrown if the file can't be created.
+     */
+    public TraceRecorder(String path) throws IOException {
+        this.path = path;
+        out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(path), BUFFER_SIZE));
+    }
+
+    /**
+     * Appends a transaction to the trace. A write error stops the recording, the transaction processing
+     * is never affected.
+     *
+     * @param event     The Mesh transaction event.
+     */
+    public void record(MeshManager.MeshTransactionEvent event) {
+        lock.lock();
+        try {
+            if (failed) {
+                return;
+            }
+            write(event);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void write(MeshManager.MeshTransactionEvent event) {
+        long now = System.nanoTime();
+        try {
+            if (records == 0) {
+                out.writeInt(MAGIC);
+                out.writeByte(VERSION);
+                out.writeLong(System.currentTimeMillis());
+                lastRecordNanos = now;
+            }
+            writeVarLong(out, (now - lastRecordNanos) / 1000);
+            writeBytes(out, event.peerUuid.getRawMeshId());
+            writeBytes(out, event.transaction.data);
+            lastRecordNanos = now;
+            records++;
+        } catch (IOException e) {
+            failed = true;
+            Metrics.getInstance().error("trace");
+            System.out.println("Failed to write the trace " + path + ", recording stopped: " + e.getMessage());
+        }
+    }
+
+    /**
+     * @return  The number of transactions recorded.
+     */
+    public long getRecords() {
+        lock.lock();
+        try {
+            return records;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Flushes and closes the trace file.
+     */
+    @Override
+    public void close() {
+        lock.lock();
+        try {
+            //Transactions received while closing are dropped.
+            failed = true;
+            out.close();
+        } catch (IOException e) {
+            System.out.println("Failed to close the trace " + path + ": " + e.getMessage());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+
+    /**
+     * A recorded transaction.
+     */
+    public static final class Record {
+        /** The time since the first record, in microseconds. */
+        public final long offsetMicros;
+        public final byte[] peerId;
+        public final byte[] data;
+
+        Record(long offsetMicros, byte[] peerId, byte[] data) {
+            this.offsetMicros = offsetMicros;
+            this.peerId = peerId;
+            this.data = data;
+        }
+    }
+
+    /**
+     * Reads a trace file back, record by record.
+     */
+    public static final class Reader implements Closeable {
+        private final DataInputStream in;
+        private final long startedAt;
+        private long offsetMicros = 0;
+
+        /**
+         * @param path          The trace file.
+         * @throws IOException  Thrown if the file can't be read or isn't a trace.
+         */
+        public Reader(String path) throws IOException {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(path), BUFFER_SIZE));
+            try {
+                if (in.readInt() != MAGIC) {
+                    throw new IOException(path + " is not a trace file.");
+                }
+                int version = in.readUnsignedByte();
+                if (version != VERSION) {
+                    throw new IOException("Unsupported trace version " + version + ".");
+                }
+                startedAt = in.readLong();
+            } catch (IOException e) {
+                in.close();
+                throw e;
+            }
+        }
+
+        /**
+         * @return  The wall clock time of the first record in milliseconds.
+         */
+        public long getStartedAt() {
+            return startedAt;
+        }
+
+        /**
+         * @return                  The next record, or null at the end of the trace.
+         * @throws IOException      Thrown if the trace can't be read or is truncated.
+         */
+        public Record next() throws IOException {
+            long delta;
+            try {
+                delta = readVarLong(in);
+            } catch (EOFException e) {
+                return null;
+            }
+            offsetMicros += delta;
+            return new Record(offsetMicros, readBytes(in), readBytes(in));
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+
+
+    private static void writeBytes(DataOutputStream out, byte[] bytes) throws IOException {
+        writeVarLong(out, bytes.length);
+        out.write(bytes);
+    }
+
+    private static byte[] readBytes(DataInputStream in) throws IOException {
+        long length = readVarLong(in);
+        if (length > Integer.MAX_VALUE) {
+            throw new IOException("Corrupted trace, record of " + length + " bytes.");
+        }
+        byte[] bytes = new byte[(int) length];
+        in.readFully(bytes);
+        return bytes;
+    }
+
+    private static void writeVarLong(OutputStream out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    private static long readVarLong(InputStream in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = in.read();
+            if (b < 0) {
+                throw new EOFException();
+            }
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Corrupted trace, varint too long.");
+    }
+}
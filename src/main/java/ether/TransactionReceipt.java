@@ -0,0 +1,235 @@
+package ether;
+
+import org.ethereum.core.CallTransaction;
+import org.ethereum.crypto.HashUtil;
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+
+/**
+ * A mined transaction as told by its receipt: the status, the gas used and the Channel contract events it
+ * emitted, decoded with the event definitions of {@link Settings#CHANNEL_CONTRACT}. Lets the callers learn the
+ * outcome of a transaction without querying the contract again.
+ */
+public final class TransactionReceipt {
+
+    public static final String CHANNEL_CREATED = "ChannelCreated";
+    public static final String CHANNEL_TOPPED_UP = "ChannelToppedUp";
+    public static final String CHANNEL_SETTLED = "ChannelSettled";
+
+    //The Channel contract events by topic, built once from the ABI.
+    private static final Map<String, CallTransaction.Function> EVENTS = channelEvents();
+
+    public final String transactionHash;
+    /** -1 if the node didn't report it. */
+    public final long blockNumber;
+    /** False if reverted, null if the node didn't apply Byzantium and doesn't report it. */
+    public final Boolean status;
+    public final BigInteger gasUsed;
+    public final List<Event> events;
+
+    private TransactionReceipt(String transactionHash, long blockNumber, Boolean status, BigInteger gasUsed,
+                               List<Event> events) {
+        this.transactionHash = transactionHash;
+        this.blockNumber = blockNumber;
+        this.status = status;
+        this.gasUsed = gasUsed;
+        this.events = events;
+    }
+
+    /**
+     * Decodes a receipt returned by eth_getTransactionReceipt. Logs of other contracts and unknown events are
+     * skipped.
+     *
+     * @param receipt   The receipt.
+     * @return          The decoded receipt.
+     */
+    public static TransactionReceipt parse(JSONObject receipt) {
+        String statusHex = (String) receipt.get("status");
+        String gasUsedHex = (String) receipt.get("gasUsed");
+        List<Event> events = new ArrayList<>();
+        JSONArray logs = (JSONArray) receipt.get("logs");
+        if (logs != null) {
+            for (Object entry : logs) {
+                Event event = decode((JSONObject) entry);
+                if (event != null) {
+                    events.add(event);
+                }
+            }
+        }
+
+        return new TransactionReceipt((String) receipt.get("transactionHash"),
+                receipt.get("blockNumber") == null ? -1 : HexCodec.quantity((String) receipt.get("blockNumber")).longValue(),
+                statusHex == null ? null : !HexCodec.quantity(statusHex).equals(BigInteger.ZERO),
+                gasUsedHex == null ? null : HexCodec.quantity(gasUsedHex),
+                Collections.unmodifiableList(events));
+    }
+
+    /**
+     * @return  True if the transaction was reverted, as reported by the status.
+     */
+    public boolean isFailed() {
+        return Boolean.FALSE.equals(status);
+    }
+
+    /**
+     * Checks the transaction went through, on nodes without the status by the event it must have emitted.
+     *
+     * @param expectedEvent The event a successful transaction emits, or null.
+     * @return              True if the transaction succeeded.
+     */
+    public boolean isSuccessful(String expectedEvent) {
+        if (status != null || expectedEvent == null || !hasChannelEvents()) {
+            return !isFailed();
+        }
+        return find(expectedEvent) != null;
+    }
+
+    /**
+     * @param gasLimit  The gas limit the transaction was signed with.
+     * @return          True if the transaction consumed all the gas it was given.
+     */
+    public boolean isOutOfGas(BigInteger gasLimit) {
+        return gasUsed != null && gasUsed.compareTo(gasLimit) >= 0;
+    }
+
+    /**
+     * @param name  The event name.
+     * @return      The first emitted event with this name, or null.
+     */
+    public Event find(String name) {
+        for (Event event : events) {
+            if (event.name.equals(name)) {
+                return event;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @param event The event definition.
+     * @return      The topic of the event, the hash of its signature.
+     */
+    static String topic(CallTransaction.Function event) {
+        return HexCodec.prefixed(HashUtil.sha3(event.formatSignature().getBytes(StandardCharsets.US_ASCII)));
+    }
+
+
+    /**
+     * @return  False if the ABI has none of the Channel contract events, so none can be expected.
+     */
+    private static boolean hasChannelEvents() {
+        return !EVENTS.isEmpty();
+    }
+
+    private static Event decode(JSONObject log) {
+        String address = (String) log.get("address");
+        JSONArray topics = (JSONArray) log.get("topics");
+        if (topics == null || topics.isEmpty()
+                || (address != null && !address.equalsIgnoreCase(Settings.CHANNEL_CONTRACT_ADDRESS))) {
+            return null;
+        }
+        CallTransaction.Function definition = EVENTS.get(((String) topics.get(0)).toLowerCase());
+        if (definition == null) {
+            return null;
+        }
+
+        //Indexed arguments come in the topics, the others one word each in the data, read where they are.
+        String data = log.get("data") == null ? "" : (String) log.get("data");
+        int dataStart = HexCodec.digitsStart(data);
+        Map<String, Object> arguments = new HashMap<>();
+        UInt256 value = new UInt256();
+        int topic = 1;
+        int word = 0;
+        for (CallTransaction.Param param : definition.inputs) {
+            String source;
+            int start;
+            int end;
+            if (Boolean.TRUE.equals(param.indexed)) {
+                if (topic >= topics.size()) {
+                    return null;
+                }
+                source = (String) topics.get(topic++);
+                start = HexCodec.digitsStart(source);
+                end = source.length();
+            } else {
+                start = dataStart + word * UInt256.HEX_DIGITS;
+                end = start + UInt256.HEX_DIGITS;
+                if (data.length() < end) {
+                    return null;
+                }
+                source = data;
+                word++;
+            }
+            arguments.put(param.name, param.type.getCanonicalName().equals("address")
+                    ? address(source, end) : value.setHex(source, start, end - start).toBigInteger());
+        }
+        return new Event(definition.name, arguments);
+    }
+
+    private static Map<String, CallTransaction.Function> channelEvents() {
+        Map<String, CallTransaction.Function> events = new HashMap<>();
+        if (Settings.CHANNEL_CONTRACT == null) {
+            return events;
+        }
+        for (CallTransaction.Function function : Settings.CHANNEL_CONTRACT.functions) {
+            if (function.type == CallTransaction.FunctionType.event) {
+                events.put(topic(function), function);
+            }
+        }
+        return events;
+    }
+
+    /**
+     * @return  The address in the 40 digits before end, lowercase with the 0x prefix.
+     */
+    private static String address(String hex, int end) {
+        char[] address = new char[42];
+        address[0] = '0';
+        address[1] = 'x';
+        for (int i = 0; i < 40; i++) {
+            address[2 + i] = Character.toLowerCase(hex.charAt(end - 40 + i));
+        }
+        return new String(address);
+    }
+
+
+    /**
+     * A decoded Channel contract event.
+     */
+    public static final class Event {
+        public final String name;
+        private final Map<String, Object> arguments;
+
+        Event(String name, Map<String, Object> arguments) {
+            this.name = name;
+            this.arguments = arguments;
+        }
+
+        /**
+         * @param argument  The argument name in the ABI, like "_receiver".
+         * @return          The address, lowercase, or null if there is no such argument.
+         */
+        public String getAddress(String argument) {
+            Object value = arguments.get(argument);
+            return value instanceof String ? (String) value : null;
+        }
+
+        /**
+         * @param argument  The argument name in the ABI, like "_deposit".
+         * @return          The number, or null if there is no such argument.
+         */
+        public BigInteger getUint(String argument) {
+            Object value = arguments.get(argument);
+            return value instanceof BigInteger ? (BigInteger) value : null;
+        }
+    }
+}
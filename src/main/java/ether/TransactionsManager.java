@@ -1,9 +1,6 @@
 package ether;
 
-import static io.left.rightmesh.mesh.MeshManager.TRANSACTION_RECEIVED;
-
 import io.left.rightmesh.id.MeshId;
-import io.left.rightmesh.mesh.JavaMeshManager;
 import io.left.rightmesh.mesh.MeshManager;
 import io.left.rightmesh.proto.MeshTransaction;
 import io.left.rightmesh.util.EtherUtility;
@@ -13,12 +10,21 @@ import io.left.rightmesh.util.RightMeshException;
 import org.apache.commons.codec.DecoderException;
 import org.apache.commons.codec.binary.Hex;
 import org.apache.commons.lang3.tuple.ImmutablePair;
+import org.json.simple.JSONArray;
 import org.json.simple.JSONObject;
 import org.json.simple.parser.JSONParser;
 import org.json.simple.parser.ParseException;
 
 import java.io.IOException;
 import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
 import java.util.concurrent.*;
 
 
@@ -27,12 +33,27 @@ import java.util.concurrent.*;
  */
 public final class TransactionsManager {
 
-    private JavaMeshManager meshManager;
-    private BlockingQueue<MeshManager.MeshTransactionEvent> transactionsQueue = new LinkedBlockingQueue<>();
+    private MeshBridge mesh;
+    private BlockingQueue<QueuedTransaction> transactionsQueue = new LinkedBlockingQueue<>();
     private Thread queueThread = null;
+    private QueuedTransaction stopMarker = null;
     private volatile boolean isRunning = false;
     private Http httpAgent;
     private MeshId ownMeshId;
+    private NonceManager ownNonces;
+    private BillStore outBills = new BillStore(Settings.BILL_STORE_CAPACITY);
+    private BillStore inBills = new BillStore(Settings.BILL_STORE_CAPACITY);
+    private BalanceRegister closingHashesToReceiver = new BalanceRegister();
+    private SignatureVerifier signatureVerifier;
+    private final RawTransactionValidator transactionValidator = new RawTransactionValidator();
+    private volatile TraceRecorder traceRecorder = null;
+    private volatile PeerExecutor peerExecutor = null;
+    private ConfigWatcher configWatcher = null;
+    private final SubscriptionManager subscriptions;
+    //Null when out-channels are opened with their own approve.
+    private final AllowanceManager allowances;
+    //Null when out-channels aren't topped up.
+    private final ChannelTopUpScheduler topUps;
 
 
     private static volatile TransactionsManager instance = null;
@@ -50,10 +71,33 @@ public final class TransactionsManager {
     }
 
     private TransactionsManager(MeshManager mm) {
-        httpAgent = new Http(Settings.RPC_ADDRESS, Settings.DEBUG_INFO);
-        meshManager = (JavaMeshManager) mm;
-        ownMeshId = mm.getUuid();
-        mm.on(TRANSACTION_RECEIVED, this::handleTransactionPacket);
+        this(new JavaMeshBridge(mm), new Http(Settings.current().rpcAddress, Settings.DEBUG_INFO));
+        Settings.onReload(config -> httpAgent.reconfigure(config.rpcAddress, config.rpcMaxConnections));
+    }
+
+    /**
+     * Creates a Transactions Manager on top of any Mesh bridge, used by the load test.
+     *
+     * @param mesh      The Mesh bridge.
+     * @param httpAgent The Http wrapper.
+     */
+    TransactionsManager(MeshBridge mesh, Http httpAgent) {
+        this.httpAgent = httpAgent;
+        this.mesh = mesh;
+        ownMeshId = mesh.getUuid();
+        ownNonces = new NonceManager(ownMeshId, httpAgent);
+        signatureVerifier = new SignatureVerifier(httpAgent);
+        subscriptions = new SubscriptionManager(httpAgent, this::getPushedChannelStatus, this::sendTransaction);
+        allowances = Settings.STANDING_ALLOWANCE > 0 ? new AllowanceManager(ownMeshId, httpAgent, ownNonces) : null;
+        //A top-up approve would overwrite the allowance of the opens in flight, top-ups need a standing allowance.
+        topUps = Settings.CHANNEL_TOP_UP && allowances != null ? new ChannelTopUpScheduler(ownMeshId, httpAgent,
+                ownNonces, allowances, this::getOutChannelBalance, subscriptions::markDirty) : null;
+        if (Settings.CHANNEL_TOP_UP && allowances == null) {
+            System.out.println("Channel top-ups are off, they need a standing allowance.");
+        }
+        Metrics.getInstance().gauge("superpeer_queue_depth", "Mesh transactions waiting in the transactions queue.",
+                this::getQueueDepth);
+        mesh.onTransaction(this::handleTransactionPacket);
     }
 
 
@@ -62,12 +106,36 @@ public final class TransactionsManager {
      *
      * @param rmEvent   The RightMesh event.
      */
-    private void handleTransactionPacket(MeshManager.RightMeshEvent rmEvent) {
+    void handleTransactionPacket(MeshManager.RightMeshEvent rmEvent) {
         if (Settings.DEBUG_INFO) {
             System.out.println("Transaction received.");
         }
 
         MeshManager.MeshTransactionEvent event = (MeshManager.MeshTransactionEvent) rmEvent;
+        if (!isRunning) {
+            //Stopping, the queue is being drained and no new work is taken.
+            Metrics.getInstance().error("rejected_stopping");
+            return;
+        }
+
+        TraceRecorder recorder = traceRecorder;
+        if (recorder != null) {
+            recorder.record(event);
+        }
+
+        PeerExecutor executor = peerExecutor;
+        if (executor != null) {
+            long enqueuedAt = System.nanoTime();
+            try {
+                executor.execute(event.peerUuid.toString(), () -> {
+                    Metrics.getInstance().latency(Metrics.QUEUE_WAIT, "queue", "peer").recordSince(enqueuedAt);
+                    processTransaction(event);
+                });
+            } catch (RejectedExecutionException e) {
+                Metrics.getInstance().error("rejected_stopping");
+            }
+            return;
+        }
         insertTransaction(event);
     }
 
@@ -81,36 +149,119 @@ public final class TransactionsManager {
     }
 
 
+    /**
+     * Warms the handlers, the connection to the Ether node and the nonce of the SuperPeer up, must be called
+     * before {@link #start()} so the first Clients are served at full speed.
+     */
+    public void warmUp() {
+        new Warmup(httpAgent, ownMeshId.toString(), ownNonces).run();
+    }
+
+
     /**
      * Starts the Transactions Manager
      */
     public synchronized void start() {
         if (!isRunning) {
-            queueThread = new Thread(this::processTransactionsQueue);
-            queueThread.start();
+            Metrics.getInstance().registerMBean();
+            GasPriceOracle.getInstance().start(httpAgent);
+            if (Settings.TOKEN_INDEX) {
+                TokenBalanceIndex.getInstance().start(httpAgent);
+            }
+            subscriptions.start();
+            if (allowances != null) {
+                allowances.start();
+            }
+            if (topUps != null) {
+                topUps.start();
+            }
+            if (!Settings.TRACE_FILE.isEmpty()) {
+                try {
+                    traceRecorder = new TraceRecorder(Settings.TRACE_FILE);
+                    System.out.println("Recording Mesh transactions to " + Settings.TRACE_FILE);
+                } catch (IOException e) {
+                    System.out.println("Failed to create the trace " + Settings.TRACE_FILE + ": " + e.getMessage());
+                }
+            }
+            if (Settings.CONFIG_RELOAD) {
+                configWatcher = new ConfigWatcher(Settings.CONFIG_PATH);
+                try {
+                    configWatcher.start();
+                } catch (IOException e) {
+                    System.out.println("Failed to watch " + Settings.CONFIG_PATH + ": " + e.getMessage());
+                    configWatcher = null;
+                }
+            }
+            if (Settings.EXECUTION_MODE.equals("perPeer")) {
+                //Each peer is served in order on its own thread, the handlers block freely.
+                peerExecutor = new PeerExecutor();
+                System.out.println("Processing transactions per peer on "
+                        + (peerExecutor.isVirtual() ? "virtual" : "platform") + " threads.");
+            } else {
+                queueThread = new Thread(this::processTransactionsQueue);
+                queueThread.start();
+            }
             isRunning = true;
         }
     }
 
 
     /**
-     * Stops the Transactions Manager and cleans resources.
+     * Stops the Transactions Manager and cleans resources. New transactions are rejected right away, the ones
+     * already queued are processed until {@link Settings#SHUTDOWN_DRAIN_TIMEOUT} milliseconds have passed.
+     * Whatever is still in flight after the deadline is interrupted and dropped.
      */
     public synchronized void stop() {
         isRunning = false;
+
+        if (peerExecutor != null) {
+            System.out.println("Draining " + peerExecutor.getPending() + " transactions in progress...");
+            if (!peerExecutor.shutdown(Settings.SHUTDOWN_DRAIN_TIMEOUT)) {
+                System.out.println("Drain deadline passed, dropping " + peerExecutor.getPending() + " transactions.");
+            }
+            peerExecutor = null;
+        }
         insertStopMessage();
 
         if (queueThread != null && queueThread.isAlive()) {
+            System.out.println("Draining " + transactionsQueue.size() + " queued transactions...");
             try {
-                queueThread.join();
+                queueThread.join(Settings.SHUTDOWN_DRAIN_TIMEOUT);
+                if (queueThread.isAlive()) {
+                    System.out.println("Drain deadline passed, dropping "
+                            + Math.max(0, transactionsQueue.size() - 1) + " queued transactions.");
+                    queueThread.interrupt();
+                    queueThread.join(Settings.current().transCheckInterval);
+                }
             } catch (InterruptedException e) {
                 if (Settings.DEBUG_INFO) {
                     System.out.println("InterruptedException: " + e);
                 }
+                Thread.currentThread().interrupt();
             }
         }
 
+        queueThread = null;
         transactionsQueue.clear();
+        GasPriceOracle.getInstance().stop();
+        TokenBalanceIndex.getInstance().stop();
+        subscriptions.stop();
+        if (allowances != null) {
+            allowances.stop();
+        }
+        if (topUps != null) {
+            topUps.stop();
+        }
+        if (configWatcher != null) {
+            configWatcher.stop();
+            configWatcher = null;
+        }
+
+        if (traceRecorder != null) {
+            System.out.println("Recorded " + traceRecorder.getRecords() + " Mesh transactions.");
+            traceRecorder.close();
+            traceRecorder = null;
+        }
     }
 
     /**
@@ -121,7 +272,8 @@ public final class TransactionsManager {
         stopMessage.put("method", "stop");
         MeshTransaction dummyStopTransaction = new MeshTransaction(stopMessage.toJSONString().getBytes());
         MeshManager.MeshTransactionEvent event = new MeshManager.MeshTransactionEvent(dummyStopTransaction, ownMeshId);
-        insertTransaction(event);
+        stopMarker = new QueuedTransaction(event, System.nanoTime());
+        transactionsQueue.offer(stopMarker);
     }
 
     /**
@@ -130,7 +282,8 @@ public final class TransactionsManager {
      * @param event     The Mesh transaction evet.
      */
     private void insertTransaction(MeshManager.MeshTransactionEvent event) {
-        if (!transactionsQueue.offer(event)) {
+        if (!transactionsQueue.offer(new QueuedTransaction(event, System.nanoTime()))) {
+            Metrics.getInstance().error("queue_full");
             if (Settings.DEBUG_INFO) {
                 System.out.println("Failed to add transaction to the queue. Probably the queue is full.");
                 System.out.println("Num of elements in the queue: " + transactionsQueue.size());
@@ -142,36 +295,50 @@ public final class TransactionsManager {
      * Processes Transactions queue in a separate managed Thread.
      */
     private void processTransactionsQueue() {
-        while (isRunning) {
-            MeshManager.MeshTransactionEvent event;
+        while (true) {
+            QueuedTransaction queued;
             try {
-                event = transactionsQueue.take();
+                queued = transactionsQueue.take();
             } catch (InterruptedException e) {
                 if (Settings.DEBUG_INFO) {
                     System.out.println("InterruptedException: " + e);
                 }
+                if (!isRunning) {
+                    return;
+                }
                 continue;
             }
 
-            processTransaction(event);
+            //The stop marker is queued behind everything accepted before stop, so the queue is drained by now.
+            if (queued == stopMarker) {
+                return;
+            }
+
+            Metrics.getInstance().latency(Metrics.QUEUE_WAIT, "queue", "transactions").recordSince(queued.enqueuedAt);
+            try {
+                processTransaction(queued.event);
+            } catch (RuntimeException e) {
+                //A malformed request must not take the queue down with it.
+                System.out.println("Transaction handler failed: " + e);
+            }
         }
     }
 
 
     /**
-     * Process the Mesh network trnasctions from Clients-Remote Peers.
+     * Process the Mesh network trnasctions from Clients-Remote Peers. Package-private for the dispatch benchmark.
      *
      * @param event     The Mesh transaction event.
      */
-    private void processTransaction(MeshManager.MeshTransactionEvent event) {
+    void processTransaction(MeshManager.MeshTransactionEvent event) {
         MeshTransaction transaction = event.transaction;
         byte[] transactionData = transaction.data;
 
         JSONObject jsonObject;
-        JSONParser parser = new JSONParser();
         try {
-            jsonObject = (JSONObject) parser.parse(new String(transactionData));
+            jsonObject = parseTransaction(transactionData);
         } catch (ParseException e) {
+            Metrics.getInstance().error("parse");
             if (Settings.DEBUG_INFO) {
                 System.out.println("Failed to parse transaction, ParseException: " + e);
             }
@@ -179,32 +346,67 @@ public final class TransactionsManager {
         }
 
         String method = (String) jsonObject.get("method");
+        if (method == null) {
+            Metrics.getInstance().error("no_method");
+            return;
+        }
+
+        long start = System.nanoTime();
         switch (method) {
             case "stop":
                 //Dummy packet - Do nothing
                 break;
             case EtherUtility.METHOD_GET_ALL:
                 processGetAllRequest(event.peerUuid);
+                //May have opened the Out-Channel.
+                subscriptions.markDirty(event.peerUuid);
                 break;
 
             case EtherUtility.METHOD_OPEN_CLIENT_TO_SUPER_PEER:
                 processOpenInChannelRequest(event.peerUuid, jsonObject);
+                subscriptions.markDirty(event.peerUuid);
                 break;
             case EtherUtility.METHOD_ACTIVE_UPDATE:
                 processActiveUpdateReq(event.peerUuid,jsonObject);
                 break;
             case EtherUtility.METHOD_CLOSE_CLIENT_TO_SUPERPEER:
                 processCloseClientToSuperpeerReq(event.peerUuid,jsonObject);
+                subscriptions.markDirty(event.peerUuid);
                 break;
             case EtherUtility.METHOD_CLOSE_SUPERPEER_TO_CLIENT:
                 processCloseSuperpeerToClientReq(event.peerUuid,jsonObject);
+                subscriptions.markDirty(event.peerUuid);
+                break;
+            case SubscriptionManager.METHOD_SUBSCRIBE:
+                if (!subscriptions.subscribe(event.peerUuid)) {
+                    sendTransaction(event.peerUuid,
+                            JSON.getErrorResponse(SubscriptionManager.METHOD_SUBSCRIBE, "Too many subscribers."));
+                }
+                break;
+            case SubscriptionManager.METHOD_UNSUBSCRIBE:
+                subscriptions.unsubscribe(event.peerUuid);
+                sendTransaction(event.peerUuid, JSON.getOkResponse(SubscriptionManager.METHOD_UNSUBSCRIBE));
                 break;
             default:
+                Metrics.getInstance().error("unknown_method");
                 if (Settings.DEBUG_INFO) {
                     System.out.println("default case in processTransaction method.");
                 }
-                break;
+                return;
         }
+        Metrics.getInstance().latency(Metrics.HANDLER_LATENCY, "method", method).recordSince(start);
+    }
+
+
+    /**
+     * Parses the payload of a Mesh transaction.
+     *
+     * @param transactionData   The transaction payload.
+     * @return                  The transaction as JSON object.
+     * @throws ParseException   Thrown if the payload isn't valid JSON.
+     */
+    static JSONObject parseTransaction(byte[] transactionData) throws ParseException {
+        return (JSONObject) new JSONParser().parse(new String(transactionData));
     }
 
 
@@ -218,8 +420,11 @@ public final class TransactionsManager {
         System.out.println("GetAll received from " + sourceId);
         System.out.println("Checking if Out-Channel " + ownMeshId + "-->" + sourceId + " exists.");
 
-        //Check if SuperPeer-->Client exists in the Ether Network.
-        EtherUtility.PaymentChannel outChannel = getChannelFromEtherNetwork(ownMeshId, sourceId);
+        //Check if SuperPeer-->Client and Client-->SuperPeer exist in the Ether Network, in one request.
+        List<EtherUtility.PaymentChannel> channels = getChannelsFromEtherNetwork(Arrays.asList(
+                new ImmutablePair<>(ownMeshId.toString(), sourceId.toString()),
+                new ImmutablePair<>(sourceId.toString(), ownMeshId.toString())));
+        EtherUtility.PaymentChannel outChannel = channels.get(0);
         if(outChannel == null) {
 
             System.out.println("Out-Channel doesn't exist, trying to open " + ownMeshId + "-->" + sourceId);
@@ -240,31 +445,29 @@ public final class TransactionsManager {
                 return;
             }
             //For a new channel created, we set the balance to be 0 and create the BPS signature.
-            ImmutablePair<byte[], BigInteger> balanceProofPair = meshManager.getTransactionManager()
+            ImmutablePair<byte[], BigInteger> balanceProofPair = mesh
                     .calculateNewBalanceProofToReceiver(BigInteger.ZERO,sourceId.getRawMeshId());
-            meshManager.getTransactionManager().removeMostRecentBillToReceiver(sourceId);
-            meshManager.getTransactionManager().putNewBalanceProofToReceiver(sourceId.getRawMeshId(),balanceProofPair);
+            removeBillToReceiver(sourceId);
+            putNewBalanceProofToReceiver(sourceId, balanceProofPair);
             outChannel.setSignaturePair(balanceProofPair);
             System.out.println("Out-Channel OPENED: " + ownMeshId + "-->" + sourceId);
         }
         else {
             //For now, we have not yet implemented DB to save channel balance. Try to look from memory.
-            ImmutablePair<byte[], BigInteger> balanceProofPair = null;
-            try{
-                ImmutablePair<ImmutablePair<byte[],BigInteger>,ImmutablePair<byte[],BigInteger>>
-                        bill = meshManager.getTransactionManager().getMostRecentBillToReceiver(sourceId.getRawMeshId());
-                balanceProofPair=bill.getLeft();
-            }catch (RightMeshException e){
-                //do nothing
-            }
+            ImmutablePair<ImmutablePair<byte[],BigInteger>,ImmutablePair<byte[],BigInteger>>
+                    bill = getBillToReceiver(sourceId);
+            ImmutablePair<byte[], BigInteger> balanceProofPair = bill == null ? null : bill.getLeft();
             if(balanceProofPair==null){
-                balanceProofPair=meshManager.getTransactionManager()
+                balanceProofPair=mesh
                         .calculateNewBalanceProofToReceiver(BigInteger.ZERO,sourceId.getRawMeshId());
-                meshManager.getTransactionManager().putNewBalanceProofToReceiver(sourceId.getRawMeshId(),balanceProofPair);
+                putNewBalanceProofToReceiver(sourceId, balanceProofPair);
             }
             outChannel.setSignaturePair(balanceProofPair);
             System.out.println("Out-Channel already exist " + ownMeshId + "-->" + sourceId);
         }
+        if (topUps != null) {
+            topUps.track(sourceId, outChannel.initDeposit);
+        }
 
 
         if (Settings.DEBUG_INFO) {
@@ -273,8 +476,7 @@ public final class TransactionsManager {
 
         System.out.println("Checking In-Channel: " + sourceId + "-->" + ownMeshId);
 
-        //Check if Client-->SuperPeer channel exists in the Ether Network.
-        EtherUtility.PaymentChannel inChannel = getChannelFromEtherNetwork(sourceId, ownMeshId);
+        EtherUtility.PaymentChannel inChannel = channels.get(1);
 
         if (Settings.DEBUG_INFO) {
             System.out.println("Client-->SuperPeer: " + inChannel == null ? "null" : inChannel);
@@ -284,18 +486,13 @@ public final class TransactionsManager {
             System.out.println("In-Channel doesn't exist");
         }
         else {
-            ImmutablePair<byte[], BigInteger> closingHashPair = null;
-            try{
-                ImmutablePair<ImmutablePair<byte[],BigInteger>,ImmutablePair<byte[],BigInteger>>
-                        bill = meshManager.getTransactionManager().getMostRecentBillFromSender(sourceId.getRawMeshId());
-                closingHashPair=bill.getRight();
-            }catch (RightMeshException e){
-                //do nothing
-            }
+            ImmutablePair<ImmutablePair<byte[],BigInteger>,ImmutablePair<byte[],BigInteger>>
+                    bill = getBillFromSender(sourceId);
+            ImmutablePair<byte[], BigInteger> closingHashPair = bill == null ? null : bill.getRight();
             if(closingHashPair==null){
-                closingHashPair=meshManager.getTransactionManager()
+                closingHashPair=mesh
                         .calculateNewClosingHashFromSender(BigInteger.ZERO,sourceId.getRawMeshId());
-                meshManager.getTransactionManager().putNewClosingHashFromSender(sourceId.getRawMeshId(),closingHashPair);
+                putNewClosingHashFromSender(sourceId, closingHashPair);
             }
             inChannel.setSignaturePair(closingHashPair);
             System.out.println("In-Channel already exist.");
@@ -318,7 +515,7 @@ public final class TransactionsManager {
         //Get client Token balance
         String clientTokenBalance;
         try {
-            clientTokenBalance = EtherClient.getTokenBalance(sourceId.toString(), httpAgent).toString();
+            clientTokenBalance = TokenBalanceIndex.getInstance().getBalance(sourceId.toString(), httpAgent).toString();
         } catch (IOException | NumberFormatException e) {
             if (Settings.DEBUG_INFO) {
                 System.out.println("Failed to get Token balance for: " + sourceId);
@@ -328,7 +525,7 @@ public final class TransactionsManager {
             return;
         }
 
-        BigInteger clientNonce = EtherClient.getNonce(sourceId.toString(), httpAgent);
+        BigInteger clientNonce = getClientNonce(sourceId);
         if (clientNonce == null) {
             if (Settings.DEBUG_INFO) {
                 System.out.println("Failed to get nonce for: " + sourceId);
@@ -362,38 +559,47 @@ public final class TransactionsManager {
         Object closingHashBalance = jsonObject.get("closingHashBalance");
         Object closingHashSignature = jsonObject.get("closingHashSignature");
 
-        ImmutablePair<byte[], BigInteger> closingHashPairAtSender=null;
-        try{
-            closingHashPairAtSender
-                    =meshManager.getTransactionManager().getMostRecentBillToReceiver(sourceId.getRawMeshId()).getRight();
-            if(closingHashBalance!=null&&closingHashSignature!=null){
-                BigInteger chb=new BigInteger((String)closingHashBalance);
+        ImmutablePair<ImmutablePair<byte[],BigInteger>,ImmutablePair<byte[],BigInteger>>
+                billToReceiver=getBillToReceiver(sourceId);
+        if(billToReceiver!=null){
+            if(closingHashBalance instanceof String&&closingHashSignature instanceof String){
+                BigInteger chb=null;
+                try{
+                    chb=new BigInteger((String)closingHashBalance);
+                }catch(NumberFormatException e){
+                    //do nothing;
+                }
                 if (Settings.DEBUG_INFO){
                     System.out.println("The balance in active update from "+sourceId+" is "+chb);
                 }
+                //The channel contract holds uint192 balances, anything else can't be a closing hash of ours.
+                if(chb!=null&&!BillStore.fitsBalance(chb)){
+                    if (Settings.DEBUG_INFO){
+                        System.out.println("Rejected the out of range balance in active update from "+sourceId);
+                    }
+                    chb=null;
+                }
                 byte[] chs=null;
                 try{
                     chs=Hex.decodeHex(((String)closingHashSignature).toCharArray());
                 }catch(DecoderException e){
                     //do nothing;
                 }
-                if(chb!=null&&chs!=null&&(chb.compareTo(closingHashPairAtSender.right)>0)){
-                    meshManager.getTransactionManager().putNewClosingHashToReceiver(
-                            sourceId.getRawMeshId(),new ImmutablePair(chs,chb));
+                if(chb!=null&&chs!=null&&signatureVerifier.verifyClosingHash(
+                        sourceId.toString(), ownMeshId.toString(), chb, chs)){
+                    //Accept-if-higher, a stale ActiveUpdate must never overwrite a newer closing hash.
+                    closingHashesToReceiver.offer(sourceId.toString(), new ImmutablePair<>(chs, chb),
+                            () -> outBills.getProof(sourceId.getRawMeshId(), BillStore.Proof.CLOSING_HASH),
+                            accepted -> putNewClosingHashToReceiver(sourceId, accepted));
                 }
             }
-        }catch (RightMeshException e){
-            //System.out.println("Cannot find a outgoing channel from superpeer to "+sourceId);
         }
 
 
-        ImmutablePair<byte[], BigInteger> closingHashPairAtReceiver=null;
-        try{
-            closingHashPairAtReceiver
-                    =meshManager.getTransactionManager().getMostRecentBillFromSender(sourceId.getRawMeshId()).getRight();
-        }catch (RightMeshException e){
-            //do nothing
-        }
+        ImmutablePair<ImmutablePair<byte[],BigInteger>,ImmutablePair<byte[],BigInteger>>
+                billFromSender=getBillFromSender(sourceId);
+        ImmutablePair<byte[], BigInteger> closingHashPairAtReceiver
+                =billFromSender==null?null:billFromSender.getRight();
 
 
         String clientEtherBalance;
@@ -411,7 +617,7 @@ public final class TransactionsManager {
         //Get client Token balance
         String clientTokenBalance;
         try {
-            clientTokenBalance = EtherClient.getTokenBalance(sourceId.toString(), httpAgent).toString();
+            clientTokenBalance = TokenBalanceIndex.getInstance().getBalance(sourceId.toString(), httpAgent).toString();
         } catch (IOException | NumberFormatException e) {
             if (Settings.DEBUG_INFO) {
                 System.out.println("Failed to get Token balance for: " + sourceId);
@@ -421,7 +627,7 @@ public final class TransactionsManager {
             return;
         }
 
-        BigInteger clientNonce = EtherClient.getNonce(sourceId.toString(), httpAgent);
+        BigInteger clientNonce = getClientNonce(sourceId);
         if (clientNonce == null) {
             if (Settings.DEBUG_INFO) {
                 System.out.println("Failed to get nonce for: " + sourceId);
@@ -475,6 +681,15 @@ public final class TransactionsManager {
             return;
         }
 
+        //Reject transactions bound to fail before anything is sent to the Ether node.
+        String invalid = transactionValidator.checkOpen(sourceId, ownMeshId, signedApproveTransaction.toString(),
+                signedOpenChannelTransaction.toString());
+        if (invalid != null) {
+            byte[] data = JSON.getErrorResponse(EtherUtility.RES_OPEN_CLIENT_TO_SUPER_PEER, invalid);
+            sendTransaction(sourceId, data);
+            return;
+        }
+
         Object signature = jsonObject.get("zeroBalanceProofSignature");
         if (signature == null) {
             if (Settings.DEBUG_INFO) {
@@ -492,6 +707,18 @@ public final class TransactionsManager {
             System.out.println("Signature in process open channel cannot be decoded.");
         }
 
+        //Verify the zero balance proof locally, before any gas is spent on the channel.
+        if (zeroBalanceProofSignature == null || !signatureVerifier.verifyBalanceProof(
+                sourceId.toString(), ownMeshId.toString(), BigInteger.ZERO, zeroBalanceProofSignature)) {
+            if (Settings.DEBUG_INFO) {
+                System.out.println("Invalid zeroBalanceProofSignature from: " + sourceId);
+            }
+            byte[] data = JSON.getErrorResponse(EtherUtility.RES_OPEN_CLIENT_TO_SUPER_PEER,
+                    "Invalid zeroBalanceProofSignature.");
+            sendTransaction(sourceId, data);
+            return;
+        }
+
 
         //Check if already exists in the Ether network.
         EtherUtility.PaymentChannel inChannel = getChannelFromEtherNetwork(sourceId, ownMeshId);
@@ -525,11 +752,11 @@ public final class TransactionsManager {
         }
 
         //For a new channel created, we set the balance to be 0 and create the CHS signature.
-        ImmutablePair<byte[], BigInteger> closingHashPair =meshManager.getTransactionManager()
+        ImmutablePair<byte[], BigInteger> closingHashPair =mesh
                 .calculateNewClosingHashFromSender(BigInteger.ZERO,sourceId.getRawMeshId());
-        meshManager.getTransactionManager().removeMostRecentBillFromSender(sourceId);
-        meshManager.getTransactionManager().putNewClosingHashFromSender(sourceId.getRawMeshId(),closingHashPair);
-        meshManager.getTransactionManager().putNewBalanceProofFromSender(sourceId.getRawMeshId(),new ImmutablePair<>(zeroBalanceProofSignature,BigInteger.ZERO));
+        removeBillFromSender(sourceId);
+        putNewClosingHashFromSender(sourceId, closingHashPair);
+        putNewBalanceProofFromSender(sourceId, new ImmutablePair<>(zeroBalanceProofSignature,BigInteger.ZERO));
         inChannel.setSignaturePair(closingHashPair);
 
         System.out.println("In-Channel Opened: " + sourceId + "-->" + ownMeshId);
@@ -552,7 +779,7 @@ public final class TransactionsManager {
         //Get client Token balance
         String clientTokenBalance;
         try {
-            clientTokenBalance = EtherClient.getTokenBalance(sourceId.toString(), httpAgent).toString();
+            clientTokenBalance = TokenBalanceIndex.getInstance().getBalance(sourceId.toString(), httpAgent).toString();
         } catch (IOException | NumberFormatException e) {
             if (Settings.DEBUG_INFO) {
                 System.out.println("Failed to get Token balance for: " + sourceId);
@@ -563,7 +790,7 @@ public final class TransactionsManager {
             return;
         }
 
-        BigInteger clientNonce = EtherClient.getNonce(sourceId.toString(), httpAgent);
+        BigInteger clientNonce = getClientNonce(sourceId);
         if (clientNonce == null) {
             if (Settings.DEBUG_INFO) {
                 System.out.println("Failed to get nonce for: " + sourceId);
@@ -599,6 +826,14 @@ public final class TransactionsManager {
             return;
         }
 
+        String invalid = transactionValidator.checkClose(sourceId, ownMeshId,
+                signedCloseClientToSuperTransaction.toString());
+        if (invalid != null) {
+            byte[] data = JSON.getErrorResponse(EtherUtility.RES_CLOSE_CHANNEL_TO_SUPER_PEER, invalid);
+            sendTransaction(sourceId, data);
+            return;
+        }
+
         System.out.println("Checking if In-Channel " + sourceId + "-->" + ownMeshId + " exists.");
 
         //Check if already exists in the Ether network.
@@ -631,7 +866,7 @@ public final class TransactionsManager {
             return;
         }
 
-        meshManager.getTransactionManager().removeMostRecentBillFromSender(sourceId);
+        removeBillFromSender(sourceId);
 
         String clientEtherBalance;
         try {
@@ -649,7 +884,7 @@ public final class TransactionsManager {
         //Get client Token balance
         String clientTokenBalance;
         try {
-            clientTokenBalance = EtherClient.getTokenBalance(sourceId.toString(), httpAgent).toString();
+            clientTokenBalance = TokenBalanceIndex.getInstance().getBalance(sourceId.toString(), httpAgent).toString();
         } catch (IOException | NumberFormatException e) {
             if (Settings.DEBUG_INFO) {
                 System.out.println("Failed to get Token balance for: " + sourceId);
@@ -660,7 +895,7 @@ public final class TransactionsManager {
             return;
         }
 
-        BigInteger clientNonce = EtherClient.getNonce(sourceId.toString(), httpAgent);
+        BigInteger clientNonce = getClientNonce(sourceId);
         if (clientNonce == null) {
             if (Settings.DEBUG_INFO) {
                 System.out.println("Failed to get nonce for: " + sourceId);
@@ -696,6 +931,14 @@ public final class TransactionsManager {
             return;
         }
 
+        String invalid = transactionValidator.checkClose(sourceId, ownMeshId,
+                signedCloseSuperToClientTransaction.toString());
+        if (invalid != null) {
+            byte[] data = JSON.getErrorResponse(EtherUtility.RES_CLOSE_CHANNEL_FROM_SUPER_PEER, invalid);
+            sendTransaction(sourceId, data);
+            return;
+        }
+
         System.out.println("Checking if Out-Channel " + ownMeshId + "-->" + sourceId + " exists.");
 
         //Check if already exists in the Ether network.
@@ -728,7 +971,7 @@ public final class TransactionsManager {
             return;
         }
 
-        meshManager.getTransactionManager().removeMostRecentBillToReceiver(sourceId);
+        removeBillToReceiver(sourceId);
 
         String clientEtherBalance;
         try {
@@ -746,7 +989,7 @@ public final class TransactionsManager {
         //Get client Token balance
         String clientTokenBalance;
         try {
-            clientTokenBalance = EtherClient.getTokenBalance(sourceId.toString(), httpAgent).toString();
+            clientTokenBalance = TokenBalanceIndex.getInstance().getBalance(sourceId.toString(), httpAgent).toString();
         } catch (IOException | NumberFormatException e) {
             if (Settings.DEBUG_INFO) {
                 System.out.println("Failed to get Token balance for: " + sourceId);
@@ -757,7 +1000,7 @@ public final class TransactionsManager {
             return;
         }
 
-        BigInteger clientNonce = EtherClient.getNonce(sourceId.toString(), httpAgent);
+        BigInteger clientNonce = getClientNonce(sourceId);
         if (clientNonce == null) {
             if (Settings.DEBUG_INFO) {
                 System.out.println("Failed to get nonce for: " + sourceId);
@@ -779,6 +1022,18 @@ public final class TransactionsManager {
         System.out.println("Response sent.");
     }
 
+    /**
+     * Gets the nonce of a Client, remembered to check the transactions it signs next.
+     *
+     * @param client    The Client.
+     * @return          The nonce, or null if it couldn't be queried.
+     */
+    private BigInteger getClientNonce(MeshId client) {
+        BigInteger nonce = EtherClient.getNonce(client.toString(), httpAgent);
+        transactionValidator.recordNonce(client, nonce);
+        return nonce;
+    }
+
     /**
      * Tries to get the payment channel from Ether network.
      * @param senderID The sender address.
@@ -801,6 +1056,24 @@ public final class TransactionsManager {
         return channel;
     }
 
+    /**
+     * Tries to get many payment channels from Ether network, in as few requests as possible.
+     * @param channels The sender and receiver addresses of the channels.
+     * @return The Payment channels in the same order, null for the ones that don't exist or couldn't be read.
+     */
+    private List<EtherUtility.PaymentChannel> getChannelsFromEtherNetwork(
+            List<ImmutablePair<String, String>> channels) {
+        try {
+            return ChannelStorageReader.read(channels, httpAgent);
+        } catch (IOException e) {
+            if (Settings.DEBUG_INFO) {
+                System.out.println("Failed to read " + channels.size() + " channels. "
+                        + e.getClass().getCanonicalName() + ": " + e.getMessage());
+            }
+            return new ArrayList<>(Collections.nCopies(channels.size(), null));
+        }
+    }
+
     /**
      * Tries to open payment channel in the Ether network.
      * @param sender The channel's sender.
@@ -813,88 +1086,221 @@ public final class TransactionsManager {
         String recvAddress = receiver.toString();
 
         EtherUtility.PaymentChannel channel;
+        //One snapshot for the whole open, the deposit must match between approve and open.
+        Config config = Settings.current();
+        BigInteger gasPrice = GasPriceOracle.getInstance().getGasPrice(GasPriceOracle.Tier.STANDARD);
 
-        //Try to get nonce of the sender
-        BigInteger senderNonce = EtherClient.getNonce(senderAddress, httpAgent);
-        if (senderNonce == null) {
-            if (Settings.DEBUG_INFO) {
-                System.out.println("Failed to get nonce for address: " + senderAddress);
+        if (allowances == null && Settings.PIPELINED_OPEN) {
+            return approveAndOpenChannel(sender, receiver, config, gasPrice);
+        }
+
+        //Reserve the nonce of the open, the SuperPeer signs its own transactions with locally managed nonces.
+        BigInteger senderNonce;
+        if (allowances != null) {
+            //The deposit comes out of the standing allowance, the open is the only transaction.
+            senderNonce = allowances.reserve(config.initDeposit);
+            if (senderNonce == null) {
+                if (Settings.DEBUG_INFO) {
+                    System.out.println("No allowance left to open " + senderAddress + "-->" + recvAddress);
+                }
+                return null;
+            }
+        } else {
+            if (!approveDeposit(sender, config, gasPrice)) {
+                return null;
+            }
+            senderNonce = ownNonces.acquire();
+            if (senderNonce == null) {
+                return null;
             }
-            return null;
         }
 
-        //Approve Channel contract to transfer tokens to the newly created payment channel.
-        String signedApproveTransaction = EtherUtility.getSignedApproveTrans(sender, Settings.INIT_DEPOSIT,
-                senderNonce, Settings.TOKEN_ABI, Settings.GAS_PRICE, Settings.GAS_LIMIT,
-                Settings.CHANNEL_CONTRACT_ADDRESS, Settings.TOKEN_CONTRACT_ADDRESS, Settings.CHAIN_ID);
+        if (Settings.DEBUG_INFO) {
+            System.out.println("Trying to open " + senderAddress + "-->" + recvAddress + " channel.");
+        }
 
-        if (signedApproveTransaction == null) {
+        //Create and sign open sender-->receiver channel transaction
+        BigInteger openNonce = senderNonce;
+        EtherClient.Resigner openResigner = newGasPrice -> EtherUtility.getSignedOpenChannelTrans(sender,
+                recvAddress, config.initDeposit, openNonce, Settings.CHANNEL_ABI, newGasPrice, config.gasLimit,
+                Settings.CHANNEL_CONTRACT_ADDRESS, Settings.CHAIN_ID);
+        String signedOpenChannelTrans = openResigner.resign(gasPrice);
+
+        if (signedOpenChannelTrans == null || signedOpenChannelTrans == "") {
             if (Settings.DEBUG_INFO) {
-                System.out.println("Failed to construct approve transaction.");
+                System.out.println("Failed to get signedOpenChannelTrans for: " + senderAddress + "-->" + recvAddress);
             }
+            resetOwnAccount(openNonce);
             return null;
         }
 
-        boolean res;
+        //Send the signed open payment channel transaction to the Ether network.
         try {
-            res = EtherClient.approve(senderAddress, Settings.INIT_DEPOSIT, signedApproveTransaction, httpAgent);
-        } catch (IOException e) {
+            channel = EtherClient.openChannel(senderAddress, recvAddress, config.initDeposit,
+                    signedOpenChannelTrans, gasPrice, openResigner, httpAgent);
+        } catch (IOException | IllegalArgumentException e) {
             if (Settings.DEBUG_INFO) {
-                System.out.println("Failed to submit approve transaction. IOException: " + e.getMessage());
+                System.out.println("Failed to open channel " + senderAddress + "-->" + recvAddress + ", "
+                        + e.getClass().getCanonicalName() + ": " + e.getMessage());
             }
+            resetOwnAccount(openNonce);
             return null;
         }
 
-        if (!res) {
+        //Failed to open the payment channel in the Ether network, has no more ideas
+        if (channel == null) {
             if (Settings.DEBUG_INFO) {
-                System.out.println("Failed to submit approve transaction.");
+                System.out.println("Failed to open channel: " + senderAddress + "-->" + recvAddress);
             }
+            resetOwnAccount(openNonce);
             return null;
         }
 
-        if (Settings.DEBUG_INFO) {
-            System.out.println("Trying to open " + senderAddress + "-->" + recvAddress + " channel.");
-        }
+        ownNonces.release(openNonce);
+        return channel;
+    }
 
+    /**
+     * Signs the approve and the open of an out-channel with consecutive nonces and submits them back to back,
+     * used when no standing allowance is kept.
+     *
+     * @param sender    The SuperPeer.
+     * @param receiver  The channel's receiver.
+     * @param config    The settings snapshot of the open.
+     * @param gasPrice  The gas price to sign with.
+     * @return          The opened channel, or null on failure.
+     */
+    private EtherUtility.PaymentChannel approveAndOpenChannel(MeshId sender, MeshId receiver, Config config,
+                                                              BigInteger gasPrice) {
+        String senderAddress = sender.toString();
+        String recvAddress = receiver.toString();
 
-        //Increment by 1, as approve transaction executed
-        senderNonce = senderNonce.add(BigInteger.ONE);
+        BigInteger approveNonce = ownNonces.acquire(2);
+        if (approveNonce == null) {
+            if (Settings.DEBUG_INFO) {
+                System.out.println("Failed to get nonce for address: " + senderAddress);
+            }
+            return null;
+        }
+        BigInteger openNonce = approveNonce.add(BigInteger.ONE);
 
-        //Create and sign open sender-->receiver channel transaction
-        String signedOpenChannelTrans = EtherUtility.getSignedOpenChannelTrans(sender, recvAddress,
-                Settings.INIT_DEPOSIT, senderNonce, Settings.CHANNEL_ABI, Settings.GAS_PRICE, Settings.GAS_LIMIT,
+        EtherClient.Resigner approveResigner = newGasPrice -> EtherUtility.getSignedApproveTrans(sender,
+                config.initDeposit, approveNonce, Settings.TOKEN_ABI, newGasPrice, config.gasLimit,
+                Settings.CHANNEL_CONTRACT_ADDRESS, Settings.TOKEN_CONTRACT_ADDRESS, Settings.CHAIN_ID);
+        EtherClient.Resigner openResigner = newGasPrice -> EtherUtility.getSignedOpenChannelTrans(sender,
+                recvAddress, config.initDeposit, openNonce, Settings.CHANNEL_ABI, newGasPrice, config.gasLimit,
                 Settings.CHANNEL_CONTRACT_ADDRESS, Settings.CHAIN_ID);
+        String signedApproveTrans = approveResigner.resign(gasPrice);
+        String signedOpenChannelTrans = openResigner.resign(gasPrice);
 
-        if (signedOpenChannelTrans == null || signedOpenChannelTrans == "") {
+        if (signedApproveTrans == null || signedOpenChannelTrans == null) {
             if (Settings.DEBUG_INFO) {
-                System.out.println("Failed to get signedOpenChannelTrans for: " + senderAddress + "-->" + recvAddress);
+                System.out.println("Failed to sign the approve and open transactions for: "
+                        + senderAddress + "-->" + recvAddress);
             }
+            ownNonces.reset(approveNonce);
             return null;
         }
 
-        //Send the signed open payment channel transaction to the Ether network.
+        if (Settings.DEBUG_INFO) {
+            System.out.println("Trying to open " + senderAddress + "-->" + recvAddress + " channel.");
+        }
+
+        EtherUtility.PaymentChannel channel;
         try {
-            channel = EtherClient.openChannel(senderAddress, recvAddress, Settings.INIT_DEPOSIT,
-                    signedOpenChannelTrans, httpAgent);
+            channel = EtherClient.approveAndOpenChannel(senderAddress, recvAddress, config.initDeposit,
+                    signedApproveTrans, signedOpenChannelTrans, gasPrice, approveResigner, openResigner, httpAgent);
         } catch (IOException | IllegalArgumentException e) {
             if (Settings.DEBUG_INFO) {
                 System.out.println("Failed to open channel " + senderAddress + "-->" + recvAddress + ", "
                         + e.getClass().getCanonicalName() + ": " + e.getMessage());
             }
+            ownNonces.reset(approveNonce);
             return null;
         }
 
-        //Failed to open the payment channel in the Ether network, has no more ideas
         if (channel == null) {
             if (Settings.DEBUG_INFO) {
                 System.out.println("Failed to open channel: " + senderAddress + "-->" + recvAddress);
             }
+            //Re-syncs the nonces with the node's count, whichever of the two transactions made it.
+            ownNonces.reset(approveNonce);
             return null;
         }
 
+        ownNonces.release(approveNonce);
         return channel;
     }
 
+    /**
+     * Approves the channel contract to transfer the initial deposit of an out-channel, used when no standing
+     * allowance is kept.
+     *
+     * @param sender    The SuperPeer.
+     * @param config    The settings snapshot of the open.
+     * @param gasPrice  The gas price to sign with.
+     * @return          True once the approve is mined.
+     */
+    private boolean approveDeposit(MeshId sender, Config config, BigInteger gasPrice) {
+        String senderAddress = sender.toString();
+
+        BigInteger approveNonce = ownNonces.acquire();
+        if (approveNonce == null) {
+            if (Settings.DEBUG_INFO) {
+                System.out.println("Failed to get nonce for address: " + senderAddress);
+            }
+            return false;
+        }
+
+        //Approve Channel contract to transfer tokens to the newly created payment channel.
+        EtherClient.Resigner approveResigner = newGasPrice -> EtherUtility.getSignedApproveTrans(sender,
+                config.initDeposit, approveNonce, Settings.TOKEN_ABI, newGasPrice, config.gasLimit,
+                Settings.CHANNEL_CONTRACT_ADDRESS, Settings.TOKEN_CONTRACT_ADDRESS, Settings.CHAIN_ID);
+        String signedApproveTransaction = approveResigner.resign(gasPrice);
+
+        if (signedApproveTransaction == null) {
+            if (Settings.DEBUG_INFO) {
+                System.out.println("Failed to construct approve transaction.");
+            }
+            ownNonces.reset(approveNonce);
+            return false;
+        }
+
+        boolean res;
+        try {
+            res = EtherClient.approve(senderAddress, config.initDeposit, signedApproveTransaction,
+                    gasPrice, approveResigner, httpAgent);
+        } catch (IOException e) {
+            if (Settings.DEBUG_INFO) {
+                System.out.println("Failed to submit approve transaction. IOException: " + e.getMessage());
+            }
+            ownNonces.reset(approveNonce);
+            return false;
+        }
+
+        if (!res) {
+            if (Settings.DEBUG_INFO) {
+                System.out.println("Failed to submit approve transaction.");
+            }
+            ownNonces.reset(approveNonce);
+            return false;
+        }
+        ownNonces.release(approveNonce);
+        return true;
+    }
+
+    /**
+     * Drops the local nonce and allowance counts of the SuperPeer after a transaction didn't make it.
+     *
+     * @param nonce The nonce reserved for the transaction, or null if none was.
+     */
+    private void resetOwnAccount(BigInteger nonce) {
+        ownNonces.reset(nonce);
+        if (allowances != null) {
+            allowances.resync();
+        }
+    }
+
 
     private EtherUtility.PaymentChannel openChannel(MeshId sender, MeshId receiver,
                                                     String signedApproveTrans, String signedOpenChannelTrans) {
@@ -903,6 +1309,8 @@ public final class TransactionsManager {
         String recvAddress = receiver.toString();
 
         EtherUtility.PaymentChannel channel;
+        //One snapshot for the whole open, the deposit must match between approve and open.
+        Config config = Settings.current();
 
         //Try to get nonce of the sender
         BigInteger senderNonce = EtherClient.getNonce(senderAddress, httpAgent);
@@ -923,9 +1331,24 @@ public final class TransactionsManager {
             return null;
         }
 
+        if (Settings.PIPELINED_OPEN && signedOpenChannelTrans != null && !signedOpenChannelTrans.isEmpty()) {
+            //The Client signs both with consecutive nonces, they are submitted back to back.
+            try {
+                channel = EtherClient.approveAndOpenChannel(senderAddress, recvAddress, config.initDeposit,
+                        signedApproveTransaction, signedOpenChannelTrans, null, null, null, httpAgent);
+            } catch (IOException | IllegalArgumentException e) {
+                if (Settings.DEBUG_INFO) {
+                    System.out.println("Failed to open channel " + senderAddress + "-->" + recvAddress + ", "
+                            + e.getClass().getCanonicalName() + ": " + e.getMessage());
+                }
+                return null;
+            }
+            return channel;
+        }
+
         boolean res = true;
         try {
-            res = EtherClient.approve(senderAddress, Settings.INIT_DEPOSIT, signedApproveTransaction, httpAgent);
+            res = EtherClient.approve(senderAddress, config.initDeposit, signedApproveTransaction, httpAgent);
         } catch (IOException e) {
             if (Settings.DEBUG_INFO) {
                 System.out.println("Failed to submit approve transaction. IOException: " + e.getMessage());
@@ -956,7 +1379,7 @@ public final class TransactionsManager {
 
         //Send the signed open payment channel transaction to the Ether network.
         try {
-            channel = EtherClient.openChannel(senderAddress, recvAddress, Settings.INIT_DEPOSIT,
+            channel = EtherClient.openChannel(senderAddress, recvAddress, config.initDeposit,
                     signedOpenChannelTrans, httpAgent);
         } catch (IOException | IllegalArgumentException e) {
             if (Settings.DEBUG_INFO) {
@@ -978,12 +1401,176 @@ public final class TransactionsManager {
     }
 
 
+    /**
+     * @return  The number of transactions waiting in the transactions queue, or in progress in the per peer
+     *          execution mode.
+     */
+    public int getQueueDepth() {
+        PeerExecutor executor = peerExecutor;
+        return executor != null ? executor.getPending() : transactionsQueue.size();
+    }
+
+    /**
+     * Lists the channels this SuperPeer holds bills for, with the balances of the most recent proofs.
+     *
+     * @return  One object per remote peer, with its In-Channel and Out-Channel if any.
+     */
+    public JSONArray getChannels() {
+        Map<String, JSONObject> peers = new TreeMap<>();
+        describeBills(peers, outBills, "outChannel");
+        describeBills(peers, inBills, "inChannel");
+
+        JSONArray channels = new JSONArray();
+        channels.addAll(peers.values());
+        return channels;
+    }
+
+    /**
+     * Adds the channels of one direction to the per-peer descriptions.
+     *
+     * @param peers     The descriptions by peer address.
+     * @param store     The bill store of the direction.
+     * @param direction The key of the channel in the description.
+     */
+    private static void describeBills(Map<String, JSONObject> peers, BillStore store, String direction) {
+        for (byte[] address : store.addresses()) {
+            String peer = HexCodec.prefixed(address);
+            JSONObject channel = new JSONObject();
+            BigInteger balanceProof = store.getBalance(address, BillStore.Proof.BALANCE_PROOF);
+            BigInteger closingHash = store.getBalance(address, BillStore.Proof.CLOSING_HASH);
+            channel.put("balanceProof", balanceProof == null ? null : balanceProof.toString());
+            channel.put("closingHash", closingHash == null ? null : closingHash.toString());
+
+            JSONObject entry = peers.computeIfAbsent(peer, key -> {
+                JSONObject created = new JSONObject();
+                created.put("peer", key);
+                return created;
+            });
+            entry.put(direction, channel);
+        }
+    }
+
+
     /**
      * Closes In-Channel and Out-Channel of the remote peer.
      *
      * @param remotePeerAddress     The remote peer address.
      */
     public void closeChannels(String remotePeerAddress) {
+        closeChannelsOfPeer(remotePeerAddress, true, true);
+    }
+
+    /**
+     * Closes In-Channels and Out-Channels of every remote peer this SuperPeer holds a bill for.
+     */
+    public void closeAllChannels() {
+        Set<String> peers = new LinkedHashSet<>();
+        for (byte[] address : outBills.addresses()) {
+            peers.add(HexCodec.prefixed(address));
+        }
+        for (byte[] address : inBills.addresses()) {
+            peers.add(HexCodec.prefixed(address));
+        }
+        closeChannels(new ArrayList<>(peers));
+    }
+
+    /**
+     * Closes In-Channels and Out-Channels of many remote peers in parallel. Closing transactions are signed with
+     * locally managed nonces and at most {@link Config#closeWindow} peers are settled at the same time.
+     * The channels of all the peers are looked up first in batches, the ones no longer open in the Ether network
+     * are skipped. Progress is reported per peer, followed by a summary.
+     *
+     * @param remotePeerAddresses   The remote peer addresses.
+     */
+    public void closeChannels(List<String> remotePeerAddresses) {
+        int total = remotePeerAddresses.size();
+        if (total == 0) {
+            System.out.println("No channels to close.");
+            return;
+        }
+
+        int closeWindow = Settings.current().closeWindow;
+        System.out.println("Closing channels of " + total + " peers, "
+                + closeWindow + " at most in parallel...");
+
+        long startTime = System.currentTimeMillis();
+        List<ImmutablePair<String, String>> channels = new ArrayList<>(2 * total);
+        for (String address : remotePeerAddresses) {
+            channels.add(new ImmutablePair<>(address, ownMeshId.toString()));
+            channels.add(new ImmutablePair<>(ownMeshId.toString(), address));
+        }
+        List<EtherUtility.PaymentChannel> onChain;
+        try {
+            onChain = ChannelStorageReader.read(channels, httpAgent);
+        } catch (IOException e) {
+            //Unknown, every bill is tried.
+            onChain = null;
+        }
+
+        ExecutorService closers = Executors.newFixedThreadPool(closeWindow);
+        CompletionService<CloseReport> completion = new ExecutorCompletionService<>(closers);
+        for (int i = 0; i < total; i++) {
+            String address = remotePeerAddresses.get(i);
+            boolean inChannel = onChain == null || onChain.get(2 * i) != null;
+            boolean outChannel = onChain == null || onChain.get(2 * i + 1) != null;
+            completion.submit(() -> closeChannelsOfPeer(address, inChannel, outChannel));
+        }
+
+        int inClosed = 0;
+        int outClosed = 0;
+        int failed = 0;
+        int unsigned = 0;
+        int withoutChannels = 0;
+        for (int done = 1; done <= total; done++) {
+            CloseReport report;
+            try {
+                report = completion.take().get();
+            } catch (InterruptedException e) {
+                //Stop reporting, the closes in flight finish on their own.
+                Thread.currentThread().interrupt();
+                System.out.println("Interrupted, " + (total - done + 1) + " peers not reported.");
+                break;
+            } catch (ExecutionException e) {
+                if (Settings.DEBUG_INFO) {
+                    System.out.println("Failed to close channels, " + e.getClass().getCanonicalName()
+                            + ": " + e.getMessage());
+                }
+                failed++;
+                continue;
+            }
+
+            inClosed += report.inChannel == CloseResult.CLOSED ? 1 : 0;
+            outClosed += report.outChannel == CloseResult.CLOSED ? 1 : 0;
+            if (report.inChannel == CloseResult.FAILED || report.outChannel == CloseResult.FAILED) {
+                failed++;
+            } else if (report.inChannel.unsigned || report.outChannel.unsigned) {
+                unsigned++;
+            } else if (report.inChannel == CloseResult.NO_CHANNEL && report.outChannel == CloseResult.NO_CHANNEL) {
+                withoutChannels++;
+            }
+
+            System.out.println("[" + done + "/" + total + "] " + report.address
+                    + ": In-Channel " + report.inChannel.description
+                    + ", Out-Channel " + report.outChannel.description);
+        }
+        closers.shutdown();
+
+        System.out.println("Closing channels is done in " + (System.currentTimeMillis() - startTime) / 1000 + "s: "
+                + inClosed + " In-Channels and " + outClosed + " Out-Channels closed, "
+                + failed + " peers failed, " + unsigned + " peers lacked a signature to close cooperatively, "
+                + withoutChannels + " peers had no channels.");
+    }
+
+    /**
+     * Closes In-Channel and Out-Channel of the remote peer and sends the new balances to it.
+     *
+     * @param remotePeerAddress     The remote peer address.
+     * @param inChannelOpen         False if the In-Channel is known to be closed in the Ether network.
+     * @param outChannelOpen        False if the Out-Channel is known to be closed in the Ether network.
+     * @return                      The outcome for both channels.
+     */
+    private CloseReport closeChannelsOfPeer(String remotePeerAddress, boolean inChannelOpen,
+                                            boolean outChannelOpen) {
 
         MeshId remotePeerMeshId;
         try {
@@ -992,126 +1579,365 @@ public final class TransactionsManager {
             if (Settings.DEBUG_INFO) {
                 System.out.println("Failed to parse MeshId from address: " + remotePeerAddress);
             }
-            return;
+            return new CloseReport(remotePeerAddress, CloseResult.FAILED, CloseResult.FAILED);
         }
 
-        //Check for In-Channel
-        ImmutablePair<ImmutablePair<byte[], BigInteger>, ImmutablePair<byte[], BigInteger>> bill = null;
+        //A failure on one channel doesn't keep the other one open.
+        CloseResult inChannel;
         try {
-            bill = meshManager.getTransactionManager().getMostRecentBillFromSender(remotePeerMeshId.getRawMeshId());
-        } catch (RightMeshException e){
-            if (Settings.DEBUG_INFO) {
-                System.out.println("Failed to get the most recent bill from sender, RightMeshException: "
-                        + e.getMessage());
-            }
+            inChannel = closeInChannel(remotePeerMeshId, inChannelOpen);
+        } catch (RuntimeException e) {
+            System.out.println("Failed to close In-Channel: " + remotePeerAddress + " --> " + ownMeshId + ", "
+                    + e.getClass().getCanonicalName() + ": " + e.getMessage());
+            inChannel = CloseResult.FAILED;
+        }
+        CloseResult outChannel;
+        try {
+            outChannel = closeOutChannel(remotePeerMeshId, outChannelOpen);
+        } catch (RuntimeException e) {
+            System.out.println("Failed to close Out-Channel: " + ownMeshId + " --> " + remotePeerAddress + ", "
+                    + e.getClass().getCanonicalName() + ": " + e.getMessage());
+            outChannel = CloseResult.FAILED;
         }
+        sendChannelStatus(remotePeerMeshId);
 
-        if(bill != null) {
-            //In-Channel exist, lets try to close it.
-            System.out.println(ownMeshId + " --> " + remotePeerAddress
-                    + " bill from sender found, trying to close In-Channel...");
+        return new CloseReport(remotePeerAddress, inChannel, outChannel);
+    }
 
-            ImmutablePair<byte[], BigInteger> balanceProofSig = bill.getLeft();
-            ImmutablePair<byte[], BigInteger> closingSig = bill.getRight();
+    /**
+     * Closes the Client-->SuperPeer channel cooperatively, using the most recent bill from the remote peer.
+     *
+     * @param remotePeerMeshId  The remote peer.
+     * @param open              False if the channel is known to be closed in the Ether network.
+     * @return                  The outcome of closing the channel.
+     */
+    private CloseResult closeInChannel(MeshId remotePeerMeshId, boolean open) {
+        String remotePeerAddress = remotePeerMeshId.toString();
 
-            //validate the balance in both pairs (balanceProofSig and closingSig)
-            //In the In-Channel both balances should be the same, as the balanceProof received from the remote peer
-            //and the ClosingSig should be generated locally.
-            if(!balanceProofSig.right.equals(closingSig.right)) {
-                if (Settings.DEBUG_INFO) {
-                    System.out.println("Error closing In-Channel: balance in BalanceProofSig not equal to balance in ClosingSig."
-                            + "This, currently could happen in the Out-Channel but not in the In-Channel.");
+        //Check for In-Channel
+        ImmutablePair<ImmutablePair<byte[], BigInteger>, ImmutablePair<byte[], BigInteger>> bill =
+                getBillFromSender(remotePeerMeshId);
 
-                    System.out.println("Regenerating ClosingHashFromSender for balance: " + balanceProofSig.right);
-                }
+        if(bill == null) {
+            return CloseResult.NO_CHANNEL;
+        }
+        if (!open) {
+            //Closed by the Client already, the bill is of no use.
+            removeBillFromSender(remotePeerMeshId);
+            System.out.println("In-Channel is already closed: " + remotePeerAddress + " --> " + ownMeshId);
+            return CloseResult.NO_CHANNEL;
+        }
 
-                closingSig = meshManager.getTransactionManager()
-                        .calculateNewClosingHashFromSender(balanceProofSig.right, remotePeerMeshId.getRawMeshId());
-            }
+        //In-Channel exist, lets try to close it.
+        System.out.println(ownMeshId + " --> " + remotePeerAddress
+                + " bill from sender found, trying to close In-Channel...");
 
-            //Double check the balance, should be ok now
-            if(balanceProofSig.right.equals(closingSig.right)) {
-                if(EtherClient.cooperativeCloseReceiver(ownMeshId, remotePeerAddress, closingSig.right,
-                       balanceProofSig.left, closingSig.left, httpAgent)) {
-                    meshManager.getTransactionManager().removeMostRecentBillFromSender(remotePeerMeshId);
-                    System.out.println("In-Channel has been closed: " + remotePeerAddress + " --> " + ownMeshId);
-                } else {
-                    System.out.println("Failed to close In-Channel: " + remotePeerAddress + " --> " + ownMeshId);
-                }
-            } else {
-                if (Settings.DEBUG_INFO) {
-                    System.out.println("Fatal Error: In-Channel balance is not equal after regenerating a new ClosingSig.");
-                }
+        ImmutablePair<byte[], BigInteger> balanceProofSig = bill.getLeft();
+        ImmutablePair<byte[], BigInteger> closingSig = bill.getRight();
+
+        //Only the Client can sign the balance proof, without it the channel can't be closed cooperatively.
+        if (balanceProofSig == null) {
+            System.out.println("No balance proof from the Client, In-Channel can't be closed cooperatively: "
+                    + remotePeerAddress + " --> " + ownMeshId);
+            return CloseResult.NO_BALANCE_PROOF;
+        }
+
+        //validate the balance in both pairs (balanceProofSig and closingSig)
+        //In the In-Channel both balances should be the same, as the balanceProof received from the remote peer
+        //and the ClosingSig should be generated locally.
+        if(closingSig == null || !balanceProofSig.right.equals(closingSig.right)) {
+            if (Settings.DEBUG_INFO) {
+                System.out.println("Error closing In-Channel: balance in BalanceProofSig not equal to balance in ClosingSig."
+                        + "This, currently could happen in the Out-Channel but not in the In-Channel.");
+
+                System.out.println("Regenerating ClosingHashFromSender for balance: " + balanceProofSig.right);
             }
+
+            closingSig = mesh
+                    .calculateNewClosingHashFromSender(balanceProofSig.right, remotePeerMeshId.getRawMeshId());
         }
 
-        //Check for Out-Channel
-        bill = null;
-        try {
-            bill = meshManager.getTransactionManager().getMostRecentBillToReceiver(remotePeerMeshId.getRawMeshId());
-        } catch (RightMeshException e){
+        //Double check the balance, should be ok now
+        if(closingSig == null || !balanceProofSig.right.equals(closingSig.right)) {
             if (Settings.DEBUG_INFO) {
-                System.out.println("Failed to get the most recent bill to receiver, RightMeshException: "
-                        + e.getMessage());
+                System.out.println("Fatal Error: In-Channel balance is not equal after regenerating a new ClosingSig.");
             }
+            return CloseResult.FAILED;
         }
 
-        if(bill != null) {
-            //Out-Channel exist, lets try to close it.
-            System.out.println( ownMeshId + " --> " + remotePeerAddress
-                    + " bill to receiver found, trying to close this channel...");
+        if(EtherClient.cooperativeCloseReceiver(ownMeshId, remotePeerAddress, closingSig.right,
+               balanceProofSig.left, closingSig.left, ownNonces, httpAgent)) {
+            removeBillFromSender(remotePeerMeshId);
+            System.out.println("In-Channel has been closed: " + remotePeerAddress + " --> " + ownMeshId);
+            return CloseResult.CLOSED;
+        }
 
-            ImmutablePair<byte[], BigInteger> balanceProofSig = bill.getLeft();
-            ImmutablePair<byte[], BigInteger> closingSig = bill.getRight();
+        System.out.println("Failed to close In-Channel: " + remotePeerAddress + " --> " + ownMeshId);
+        return CloseResult.FAILED;
+    }
 
-            //validate the balance in both pairs (balanceProofSig and closingSig)
-            //This situation could happen in the Out-Channel,
-            // as we are waiting for the CloseSig to arrive from the remote peer.
-            if(!balanceProofSig.right.equals(closingSig.right)) {
-                if (Settings.DEBUG_INFO) {
-                    System.out.println("Error closing Out-Channel: "
-                            + "balance in BalanceProofSig: "+balanceProofSig.right+" not equal to balance in ClosingSig: "+closingSig.right
-                            + ". This, currently could happen in the Out-Channel.");
+    /**
+     * Closes the SuperPeer-->Client channel cooperatively, using the most recent bill to the remote peer.
+     *
+     * @param remotePeerMeshId  The remote peer.
+     * @param open              False if the channel is known to be closed in the Ether network.
+     * @return                  The outcome of closing the channel.
+     */
+    private CloseResult closeOutChannel(MeshId remotePeerMeshId, boolean open) {
+        String remotePeerAddress = remotePeerMeshId.toString();
 
-                    System.out.println("Regenerating BalanceProof for balance: " + balanceProofSig.right);
-                }
+        //Check for Out-Channel
+        ImmutablePair<ImmutablePair<byte[], BigInteger>, ImmutablePair<byte[], BigInteger>> bill =
+                getBillToReceiver(remotePeerMeshId);
+
+        if(bill == null) {
+            return CloseResult.NO_CHANNEL;
+        }
+        if (!open) {
+            removeBillToReceiver(remotePeerMeshId);
+            System.out.println("Out-Channel is already closed: " + ownMeshId + " --> " + remotePeerAddress);
+            return CloseResult.NO_CHANNEL;
+        }
 
-                balanceProofSig = meshManager.getTransactionManager()
-                        .calculateNewBalanceProofToReceiver(closingSig.right, remotePeerMeshId.getRawMeshId());
+        //Out-Channel exist, lets try to close it.
+        System.out.println( ownMeshId + " --> " + remotePeerAddress
+                + " bill to receiver found, trying to close this channel...");
+
+        ImmutablePair<byte[], BigInteger> balanceProofSig = bill.getLeft();
+        ImmutablePair<byte[], BigInteger> closingSig = bill.getRight();
+
+        //The Client signs the closing hash with its first ActiveUpdate, until then the channel can't be closed
+        //cooperatively.
+        if (closingSig == null) {
+            System.out.println("No closing hash from the Client, Out-Channel can't be closed cooperatively: "
+                    + ownMeshId + " --> " + remotePeerAddress);
+            return CloseResult.NO_CLOSING_HASH;
+        }
+
+        //validate the balance in both pairs (balanceProofSig and closingSig)
+        //This situation could happen in the Out-Channel,
+        // as we are waiting for the CloseSig to arrive from the remote peer.
+        if(balanceProofSig == null || !balanceProofSig.right.equals(closingSig.right)) {
+            if (Settings.DEBUG_INFO) {
+                System.out.println("Error closing Out-Channel: "
+                        + "balance in BalanceProofSig: "+(balanceProofSig == null ? null : balanceProofSig.right)+" not equal to balance in ClosingSig: "+closingSig.right
+                        + ". This, currently could happen in the Out-Channel.");
+
+                System.out.println("Regenerating BalanceProof for balance: " + balanceProofSig.right);
             }
 
-            //Double check the balance, should be ok now
-            if(balanceProofSig.right.equals(closingSig.right)) {
-                if(EtherClient.cooperativeCloseSender(ownMeshId, remotePeerAddress, closingSig.right,
-                        balanceProofSig.left, closingSig.left, httpAgent)) {
-                    meshManager.getTransactionManager().removeMostRecentBillToReceiver(remotePeerMeshId);
-                    System.out.println("Out-Channel has been closed: " + ownMeshId + " --> " + remotePeerAddress);
-                } else {
-                    System.out.println("Failed to close Out-Channel: " + ownMeshId
-                            + " --> " + remotePeerAddress);
-                }
-            } else {
-                if (Settings.DEBUG_INFO) {
-                    System.out.println("Fatal Error: "
-                            + "Out-Channel balance is not equal after regenerating a new BalanceProof.");
-                }
+            balanceProofSig = mesh
+                    .calculateNewBalanceProofToReceiver(closingSig.right, remotePeerMeshId.getRawMeshId());
+        }
+
+        //Double check the balance, should be ok now
+        if(balanceProofSig == null || !balanceProofSig.right.equals(closingSig.right)) {
+            if (Settings.DEBUG_INFO) {
+                System.out.println("Fatal Error: "
+                        + "Out-Channel balance is not equal after regenerating a new BalanceProof.");
             }
+            return CloseResult.FAILED;
         }
 
-        boolean hasInChannel=false;
-        boolean hasOutChannel=false;
+        if(EtherClient.cooperativeCloseSender(ownMeshId, remotePeerAddress, closingSig.right,
+                balanceProofSig.left, closingSig.left, ownNonces, httpAgent)) {
+            removeBillToReceiver(remotePeerMeshId);
+            System.out.println("Out-Channel has been closed: " + ownMeshId + " --> " + remotePeerAddress);
+            return CloseResult.CLOSED;
+        }
+
+        System.out.println("Failed to close Out-Channel: " + ownMeshId
+                + " --> " + remotePeerAddress);
+        return CloseResult.FAILED;
+    }
+
+    /**
+     * Puts the balance proof of the Out-Channel to the library and the bill store.
+     *
+     * @param receiverId    The receiver of the Out-Channel.
+     * @param pair          The signature and the balance.
+     */
+    private void putNewBalanceProofToReceiver(MeshId receiverId, ImmutablePair<byte[], BigInteger> pair) {
+        mesh.putNewBalanceProofToReceiver(receiverId.getRawMeshId(), pair);
+        outBills.put(receiverId.getRawMeshId(), BillStore.Proof.BALANCE_PROOF, pair.left, pair.right);
+    }
+
+    /**
+     * Puts the closing hash of the Out-Channel to the library and the bill store.
+     *
+     * @param receiverId    The receiver of the Out-Channel.
+     * @param pair          The signature and the balance.
+     */
+    private void putNewClosingHashToReceiver(MeshId receiverId, ImmutablePair<byte[], BigInteger> pair) {
+        mesh.putNewClosingHashToReceiver(receiverId.getRawMeshId(), pair);
+        outBills.put(receiverId.getRawMeshId(), BillStore.Proof.CLOSING_HASH, pair.left, pair.right);
+    }
+
+    /**
+     * Puts the balance proof of the In-Channel to the library and the bill store.
+     *
+     * @param senderId  The sender of the In-Channel.
+     * @param pair      The signature and the balance.
+     */
+    private void putNewBalanceProofFromSender(MeshId senderId, ImmutablePair<byte[], BigInteger> pair) {
+        mesh.putNewBalanceProofFromSender(senderId.getRawMeshId(), pair);
+        inBills.put(senderId.getRawMeshId(), BillStore.Proof.BALANCE_PROOF, pair.left, pair.right);
+    }
+
+    /**
+     * Puts the closing hash of the In-Channel to the library and the bill store.
+     *
+     * @param senderId  The sender of the In-Channel.
+     * @param pair      The signature and the balance.
+     */
+    private void putNewClosingHashFromSender(MeshId senderId, ImmutablePair<byte[], BigInteger> pair) {
+        mesh.putNewClosingHashFromSender(senderId.getRawMeshId(), pair);
+        inBills.put(senderId.getRawMeshId(), BillStore.Proof.CLOSING_HASH, pair.left, pair.right);
+    }
+
+    /**
+     * Removes the bill of the Out-Channel from the bill store and the library.
+     *
+     * @param receiverId    The receiver of the Out-Channel.
+     */
+    private void removeBillToReceiver(MeshId receiverId) {
+        //Waits for a closing hash being stored first, it would otherwise land in the emptied store.
+        closingHashesToReceiver.remove(receiverId.toString());
+        mesh.removeMostRecentBillToReceiver(receiverId);
+        outBills.remove(receiverId.getRawMeshId());
+        if (topUps != null) {
+            topUps.untrack(receiverId);
+        }
+    }
+
+    /**
+     * Removes the bill of the In-Channel from the bill store and the library.
+     *
+     * @param senderId  The sender of the In-Channel.
+     */
+    private void removeBillFromSender(MeshId senderId) {
+        mesh.removeMostRecentBillFromSender(senderId);
+        inBills.remove(senderId.getRawMeshId());
+    }
+
+    /**
+     * @param receiverId    The receiver of the Out-Channel.
+     * @return              The bill of the Out-Channel, the balance proof on the left and the closing hash on the
+     *                      right, or null if there is none.
+     */
+    private ImmutablePair<ImmutablePair<byte[], BigInteger>, ImmutablePair<byte[], BigInteger>>
+            getBillToReceiver(MeshId receiverId) {
+        return getBill(outBills, receiverId, true);
+    }
+
+    /**
+     * @param senderId  The sender of the In-Channel.
+     * @return          The bill of the In-Channel, the balance proof on the left and the closing hash on the
+     *                  right, or null if there is none.
+     */
+    private ImmutablePair<ImmutablePair<byte[], BigInteger>, ImmutablePair<byte[], BigInteger>>
+            getBillFromSender(MeshId senderId) {
+        return getBill(inBills, senderId, false);
+    }
+
+    /**
+     * Gets a bill from the bill store. The store only lives in memory, a bill it doesn't have may still be held
+     * by the library from before a restart, it is copied to the store on first use.
+     *
+     * @param store     The bill store of the channel direction.
+     * @param peerId    The remote peer.
+     * @param outgoing  True for the Out-Channel, False for the In-Channel.
+     * @return          The bill, or null if there is none.
+     */
+    private ImmutablePair<ImmutablePair<byte[], BigInteger>, ImmutablePair<byte[], BigInteger>>
+            getBill(BillStore store, MeshId peerId, boolean outgoing) {
+        byte[] address = peerId.getRawMeshId();
+        ImmutablePair<byte[], BigInteger> balanceProof = store.getProof(address, BillStore.Proof.BALANCE_PROOF);
+        ImmutablePair<byte[], BigInteger> closingHash = store.getProof(address, BillStore.Proof.CLOSING_HASH);
+        if (balanceProof != null || closingHash != null) {
+            return new ImmutablePair<>(balanceProof, closingHash);
+        }
+
+        ImmutablePair<ImmutablePair<byte[], BigInteger>, ImmutablePair<byte[], BigInteger>> bill;
         try {
-            meshManager.getTransactionManager().getMostRecentBillToReceiver(remotePeerMeshId.getRawMeshId());
-            hasOutChannel=true;
-        } catch (RightMeshException e){
-            //do nothing
+            bill = outgoing ? mesh.getMostRecentBillToReceiver(address) : mesh.getMostRecentBillFromSender(address);
+        } catch (RightMeshException e) {
+            return null;
+        }
+        if (bill == null || (bill.left == null && bill.right == null)) {
+            return null;
         }
+        mirrorBill(store, peerId, bill);
+        return bill;
+    }
+
+    /**
+     * Copies a bill found in the library to the bill store.
+     *
+     * @param store     The bill store of the channel direction.
+     * @param peerId    The remote peer.
+     * @param bill      The bill, the balance proof on the left and the closing hash on the right.
+     */
+    private void mirrorBill(BillStore store, MeshId peerId,
+                            ImmutablePair<ImmutablePair<byte[], BigInteger>, ImmutablePair<byte[], BigInteger>> bill) {
+        if (bill.left != null) {
+            store.put(peerId.getRawMeshId(), BillStore.Proof.BALANCE_PROOF, bill.left.left, bill.left.right);
+        }
+        if (bill.right != null) {
+            store.put(peerId.getRawMeshId(), BillStore.Proof.CLOSING_HASH, bill.right.left, bill.right.right);
+        }
+    }
+
+    /**
+     * @param receiverId    The receiver of the Out-Channel.
+     * @return              The balance paid to the receiver so far, or null if there is no bill.
+     */
+    private BigInteger getOutChannelBalance(MeshId receiverId) {
+        ImmutablePair<ImmutablePair<byte[], BigInteger>, ImmutablePair<byte[], BigInteger>> bill =
+                getBillToReceiver(receiverId);
+        return bill == null || bill.left == null ? null : bill.left.right;
+    }
+
+    /**
+     * Sends the channel status and the balances to the remote peer.
+     *
+     * @param remotePeerMeshId  The remote peer.
+     */
+    private void sendChannelStatus(MeshId remotePeerMeshId) {
+        byte[] data;
         try {
-            meshManager.getTransactionManager().getMostRecentBillFromSender(remotePeerMeshId.getRawMeshId());
-            hasInChannel=true;
-        } catch (RightMeshException e){
-            //do nothing
+            data = getChannelStatus(remotePeerMeshId, false);
+        } catch (IOException e) {
+            data = JSON.getErrorResponse(EtherUtility.RES_GET_ALL, e.getMessage());
         }
+        sendTransaction(remotePeerMeshId, data);
+    }
+
+    /**
+     * Gets the channel status for a push to a subscribed peer, with its latest token balance.
+     *
+     * @param remotePeerMeshId  The remote peer.
+     * @return                  The MESSAGE_TO_CLIENT, or null if it couldn't be built.
+     */
+    private byte[] getPushedChannelStatus(MeshId remotePeerMeshId) {
+        try {
+            return getChannelStatus(remotePeerMeshId, true);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Builds the channel status and the balances of the remote peer.
+     *
+     * @param remotePeerMeshId  The remote peer.
+     * @param latest            True to get the token balance at the latest block rather than from the index.
+     * @return                  The MESSAGE_TO_CLIENT.
+     * @throws IOException      Thrown if a balance or the nonce can't be read, with the message for the peer.
+     */
+    private byte[] getChannelStatus(MeshId remotePeerMeshId, boolean latest) throws IOException {
+        boolean hasInChannel=getBillFromSender(remotePeerMeshId)!=null;
+        boolean hasOutChannel=getBillToReceiver(remotePeerMeshId)!=null;
         String clientEtherBalance;
         try {
             clientEtherBalance = EtherClient.getEtherBalance(remotePeerMeshId.toString(), httpAgent).toString();
@@ -1119,37 +1945,81 @@ public final class TransactionsManager {
             if (Settings.DEBUG_INFO) {
                 System.out.println("Failed to get Ether balance for: " + remotePeerMeshId);
             }
-            byte[] data = JSON.getErrorResponse(EtherUtility.RES_GET_ALL, "Failed to get Ether balance.");
-            sendTransaction(remotePeerMeshId, data);
-            return;
+            throw new IOException("Failed to get Ether balance.", e);
         }
 
         //Get client Token balance
         String clientTokenBalance;
         try {
-            clientTokenBalance = EtherClient.getTokenBalance(remotePeerMeshId.toString(), httpAgent).toString();
+            clientTokenBalance = (latest
+                    ? EtherClient.getTokenBalance(remotePeerMeshId.toString(), httpAgent)
+                    : TokenBalanceIndex.getInstance().getBalance(remotePeerMeshId.toString(), httpAgent))
+                    .toString();
         } catch (IOException | NumberFormatException e) {
             if (Settings.DEBUG_INFO) {
                 System.out.println("Failed to get Token balance for: " + remotePeerMeshId);
             }
-            byte[] data = JSON.getErrorResponse(EtherUtility.RES_GET_ALL, "Failed to get Token balance.");
-            sendTransaction(remotePeerMeshId, data);
-            return;
+            throw new IOException("Failed to get Token balance.", e);
         }
 
-        BigInteger clientNonce = EtherClient.getNonce(remotePeerMeshId.toString(), httpAgent);
+        BigInteger clientNonce = getClientNonce(remotePeerMeshId);
         if (clientNonce == null) {
             if (Settings.DEBUG_INFO) {
                 System.out.println("Failed to get nonce for: " + remotePeerMeshId);
             }
-            byte[] data = JSON.getErrorResponse(EtherUtility.RES_GET_ALL, "Failed to get nonce.");
-            sendTransaction(remotePeerMeshId, data);
-            return;
+            throw new IOException("Failed to get nonce.");
         }
         String channelStatusCode=new String(hasOutChannel?"1":"0")+new String(hasInChannel?"1":"0");
-        byte[] data=JSON.getMessageToClient(channelStatusCode,clientEtherBalance,clientTokenBalance,clientNonce);
-        sendTransaction(remotePeerMeshId,data);
+        return JSON.getMessageToClient(channelStatusCode,clientEtherBalance,clientTokenBalance,clientNonce);
+    }
+
+
+    /**
+     * The outcome of closing a single channel.
+     */
+    private enum CloseResult {
+        CLOSED("closed", false),
+        FAILED("failed", false),
+        NO_CHANNEL("none", false),
+        NO_BALANCE_PROOF("no balance proof from the Client, can't be closed cooperatively", true),
+        NO_CLOSING_HASH("no closing hash from the Client, can't be closed cooperatively", true);
+
+        final String description;
+        //Set if the channel lacks a signature of the Client.
+        final boolean unsigned;
 
+        CloseResult(String description, boolean unsigned) {
+            this.description = description;
+            this.unsigned = unsigned;
+        }
+    }
+
+    /**
+     * The outcome of closing both channels of a remote peer.
+     */
+    private static final class CloseReport {
+        final String address;
+        final CloseResult inChannel;
+        final CloseResult outChannel;
+
+        CloseReport(String address, CloseResult inChannel, CloseResult outChannel) {
+            this.address = address;
+            this.inChannel = inChannel;
+            this.outChannel = outChannel;
+        }
+    }
+
+    /**
+     * A Mesh transaction event with the time it was put in the transactions queue.
+     */
+    private static final class QueuedTransaction {
+        final MeshManager.MeshTransactionEvent event;
+        final long enqueuedAt;
+
+        QueuedTransaction(MeshManager.MeshTransactionEvent event, long enqueuedAt) {
+            this.event = event;
+            this.enqueuedAt = enqueuedAt;
+        }
     }
 
 
@@ -1159,6 +2029,6 @@ public final class TransactionsManager {
      * @param transaction The transaction.
      */
     private void sendTransaction(MeshId destination, byte[] transaction) {
-        meshManager.sendDataReliable(destination, MeshUtility.TRANSACTION_PORT, transaction);
+        mesh.sendDataReliable(destination, MeshUtility.TRANSACTION_PORT, transaction);
     }
 }
@@ -0,0 +1,124 @@
+package ether;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+
+
+/**
+ * A mutable unsigned 256-bit integer, the width of an ABI word and of a storage slot. Deposits, balances and event
+ * arguments are read into it from hex at an offset, checked for zero or split into their fields in place, and
+ * turned into a BigInteger only when they are kept.
+ * <p>
+ * Not thread-safe, each caller fills its own.
+ */
+public final class UInt256 {
+
+    public static final int BITS = 256;
+    //The number of hex digits of a word.
+    public static final int HEX_DIGITS = 64;
+
+    private static final int LIMBS = 8;
+
+    //32-bit limbs, the least significant first.
+    private final int[] limbs = new int[LIMBS];
+
+    /**
+     * Reads up to 64 hex digits, the most significant first.
+     *
+     * @param hex       The hex string.
+     * @param offset    The first digit.
+     * @param digits    The number of digits.
+     * @return          this.
+     * @throws NumberFormatException    Thrown if a character isn't a hex digit or there are too many digits.
+     */
+    public UInt256 setHex(CharSequence hex, int offset, int digits) throws NumberFormatException {
+        if (digits > HEX_DIGITS) {
+            throw new NumberFormatException("More than 256 bits: " + hex);
+        }
+        if (digits == 0) {
+            throw new NumberFormatException("No digits: " + hex);
+        }
+        Arrays.fill(limbs, 0);
+        //Walks from the least significant digit, 8 digits to a limb.
+        for (int i = 0; i < digits; i++) {
+            int digit = HexCodec.digit(hex, offset + digits - 1 - i);
+            limbs[i >>> 3] |= digit << ((i & 7) << 2);
+        }
+        return this;
+    }
+
+    /**
+     * Reads an ABI word, 64 hex digits.
+     *
+     * @param hex       The hex string, like a call result or the data of a log.
+     * @param offset    The first digit of the word.
+     * @return          this.
+     * @throws NumberFormatException    Thrown if a character isn't a hex digit or the word is cut.
+     */
+    public UInt256 setWord(CharSequence hex, int offset) throws NumberFormatException {
+        if (offset + HEX_DIGITS > hex.length()) {
+            throw new NumberFormatException("Word at " + offset + " is past the end: " + hex);
+        }
+        return setHex(hex, offset, HEX_DIGITS);
+    }
+
+    /**
+     * Clears the bits from the given one up, keeping a narrower integer, like the uint192 deposit of a channel.
+     *
+     * @param bits  The number of low bits to keep.
+     * @return      this.
+     */
+    public UInt256 truncate(int bits) {
+        for (int i = 0; i < LIMBS; i++) {
+            int from = i * 32;
+            if (from >= bits) {
+                limbs[i] = 0;
+            } else if (bits - from < 32) {
+                limbs[i] &= (int) ((1L << (bits - from)) - 1);
+            }
+        }
+        return this;
+    }
+
+    /**
+     * @param from  The lowest bit.
+     * @param count The number of bits, at most 63.
+     * @return      The bits as a non-negative long, like the uint32 open block above the deposit of a channel.
+     */
+    public long bits(int from, int count) {
+        long value = 0;
+        for (int i = count - 1; i >= 0; i--) {
+            int bit = from + i;
+            value = value << 1 | (bit < BITS ? (limbs[bit >>> 5] >>> (bit & 31)) & 1 : 0);
+        }
+        return value;
+    }
+
+    /**
+     * @return  true if the value is zero.
+     */
+    public boolean isZero() {
+        for (int limb : limbs) {
+            if (limb != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return  The value as a BigInteger.
+     */
+    public BigInteger toBigInteger() {
+        byte[] bytes = new byte[LIMBS * 4];
+        for (int i = 0; i < LIMBS; i++) {
+            int limb = limbs[i];
+            int at = (LIMBS - 1 - i) * 4;
+            bytes[at] = (byte) (limb >>> 24);
+            bytes[at + 1] = (byte) (limb >>> 16);
+            bytes[at + 2] = (byte) (limb >>> 8);
+            bytes[at + 3] = (byte) limb;
+        }
+        return new BigInteger(1, bytes);
+    }
+}
@@ -0,0 +1,98 @@
+package ether;
+
+import io.left.rightmesh.util.EtherUtility;
+import org.apache.commons.codec.binary.Hex;
+import org.apache.commons.lang3.tuple.ImmutablePair;
+import org.ethereum.core.CallTransaction;
+import org.json.simple.parser.ParseException;
+
+import java.io.IOException;
+import java.math.BigInteger;
+
+
+/**
+ * Warms the SuperPeer up before it takes transactions, so the first Clients don't pay for class loading,
+ * interpretation and connection setup. Resolves the contract functions, opens the connection to the Ether
+ * node, primes the nonce and balances of the SuperPeer, then runs the CPU side of the request handlers
+ * {@link Settings#WARMUP_ITERATIONS} times on synthetic data. Nothing is sent to the Mesh or signed.
+ */
+final class Warmup {
+
+    private static final String SAMPLE_ADDRESS = "0x5c7d0e3f4a8b9c1d2e3f4a5b6c7d8e9f0a1b2c3d";
+    private static final String SAMPLE_BALANCE = "1500000000000000000";
+
+    private final Http httpAgent;
+    private final String ownAddress;
+    private final NonceManager ownNonces;
+
+    /**
+     * @param httpAgent     The Http wrapper.
+     * @param ownAddress    The address of the SuperPeer.
+     * @param ownNonces     The nonces of the SuperPeer.
+     */
+    Warmup(Http httpAgent, String ownAddress, NonceManager ownNonces) {
+        this.httpAgent = httpAgent;
+        this.ownAddress = ownAddress;
+        this.ownNonces = ownNonces;
+    }
+
+    /**
+     * Runs the warm-up, failures are reported and skipped.
+     */
+    void run() {
+        long start = System.nanoTime();
+
+        //Resolves every contract function the handlers use, parsing the ABIs if not done yet.
+        CallTransaction.Function channels = ContractFunctions.CHANNELS;
+
+        //The first requests open the pooled connection and fill the nonce and balance caches.
+        try {
+            BigInteger etherBalance = EtherClient.getEtherBalance(ownAddress, httpAgent);
+            BigInteger tokenBalance = EtherClient.getTokenBalance(ownAddress, httpAgent);
+            System.out.println("Superpeer balances: " + etherBalance + " wei, " + tokenBalance + " tokens.");
+        } catch (IOException | NumberFormatException e) {
+            System.out.println("Warm-up couldn't reach the Ether node: " + e.getMessage());
+        }
+        if (!ownNonces.prime()) {
+            System.out.println("Warm-up couldn't get the nonce of the Superpeer.");
+        }
+
+        byte[] signature = new byte[65];
+        for (int i = 0; i < signature.length; i++) {
+            signature[i] = (byte) (i * 31 + 7);
+        }
+        String signatureHex = HexCodec.encode(signature);
+        BigInteger balance = new BigInteger(SAMPLE_BALANCE);
+        EtherUtility.PaymentChannel channel = new EtherUtility.PaymentChannel(ownAddress, SAMPLE_ADDRESS,
+                Settings.INIT_DEPOSIT, 1, balance, signatureHex);
+        ImmutablePair<byte[], BigInteger> pair = new ImmutablePair<>(signature, balance);
+        byte[] activeUpdate = ("{\"method\":\"" + EtherUtility.METHOD_ACTIVE_UPDATE + "\",\"closingHashBalance\":\""
+                + SAMPLE_BALANCE + "\",\"closingHashSignature\":\"" + signatureHex + "\"}").getBytes();
+        String response = "{\"jsonrpc\":\"2.0\",\"result\":\"0x" + balance.toString(16) + "\",\"id\":1}";
+
+        long sink = 0;
+        for (int i = 0; i < Settings.WARMUP_ITERATIONS; i++) {
+            try {
+                sink += TransactionsManager.parseTransaction(activeUpdate).size();
+                sink += Hex.decodeHex(signatureHex.toCharArray()).length;
+                sink += HexCodec.quantity((String) Http.parseResult(response)).bitLength();
+            } catch (ParseException | org.apache.commons.codec.DecoderException e) {
+                //Synthetic data, can't happen.
+            }
+
+            byte[] funcBytes = channels.encode(EtherUtility.getChannelHash(ownAddress, SAMPLE_ADDRESS));
+            sink += EtherClient.getEtherRequest("eth_call", null, Settings.CHANNEL_CONTRACT_ADDRESS, null,
+                    HexCodec.prefixed(funcBytes)).length();
+            sink += ContractFunctions.BALANCE_OF.encode(SAMPLE_ADDRESS).length;
+            sink += ContractFunctions.GET_CLOSING_HASH.encode(ownAddress, balance).length;
+            sink += EtherClient.getEtherRequest("parity_nextNonce", SAMPLE_ADDRESS).length();
+
+            sink += JSON.sendGetAllResponse(channel, channel, SAMPLE_BALANCE, SAMPLE_BALANCE, balance).length;
+            sink += JSON.sendActiveUpdateResponse(pair, SAMPLE_BALANCE, SAMPLE_BALANCE, balance).length;
+            sink += JSON.getMessageToClient("11", SAMPLE_BALANCE, SAMPLE_BALANCE, balance).length;
+        }
+
+        System.out.println("Warm-up done in " + (System.nanoTime() - start) / 1000000 + " ms"
+                + (Settings.DEBUG_INFO ? " (" + sink + ")." : "."));
+    }
+}
@@ -0,0 +1,125 @@
+package ether;
+
+import org.apache.commons.lang3.tuple.ImmutablePair;
+import org.junit.Test;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+
+public class BalanceRegisterTest {
+
+    @Test
+    public void acceptsOnlyHigherBalances() {
+        BalanceRegister register = new BalanceRegister();
+        AtomicReference<ImmutablePair<byte[], BigInteger>> stored = new AtomicReference<>(pair(1));
+        List<BigInteger> accepted = new ArrayList<>();
+
+        assertTrue(register.offer("a", pair(5), stored::get, store(stored, accepted)));
+        assertFalse(register.offer("a", pair(5), stored::get, store(stored, accepted)));
+        assertFalse(register.offer("a", pair(3), stored::get, store(stored, accepted)));
+        assertTrue(register.offer("a", pair(8), stored::get, store(stored, accepted)));
+
+        assertEquals(BigInteger.valueOf(8), stored.get().right);
+        assertEquals(2, accepted.size());
+        assertEquals(BigInteger.valueOf(5), accepted.get(0));
+    }
+
+    @Test
+    public void acceptsAnyBalanceWithoutAStoredPair() {
+        AtomicReference<ImmutablePair<byte[], BigInteger>> stored = new AtomicReference<>();
+
+        assertTrue(new BalanceRegister().offer("a", pair(0), stored::get, stored::set));
+        assertEquals(BigInteger.ZERO, stored.get().right);
+    }
+
+    @Test
+    public void acceptsAgainAfterAFailingSink() {
+        BalanceRegister register = new BalanceRegister();
+        AtomicReference<ImmutablePair<byte[], BigInteger>> stored = new AtomicReference<>();
+        try {
+            register.offer("a", pair(5), stored::get, accepted -> {
+                throw new IllegalStateException("store failed");
+            });
+            fail();
+        } catch (IllegalStateException e) {
+            //expected
+        }
+
+        assertTrue(register.offer("a", pair(5), stored::get, stored::set));
+        assertEquals(BigInteger.valueOf(5), stored.get().right);
+    }
+
+    @Test
+    public void storesTheHighestOfConcurrentUpdates() throws InterruptedException {
+        BalanceRegister register = new BalanceRegister();
+        //Plain fields, only the register orders the reads and writes of a channel.
+        Holder[] channels = {new Holder(), new Holder()};
+        List<Thread> threads = new ArrayList<>();
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        for (int t = 0; t < 4; t++) {
+            Random random = new Random(t);
+            threads.add(new Thread(() -> {
+                try {
+                    for (int i = 0; i < 20_000; i++) {
+                        int channel = random.nextInt(channels.length);
+                        Holder holder = channels[channel];
+                        int balance = random.nextInt(1_000_000);
+                        holder.offered.accumulateAndGet(balance, Math::max);
+                        register.offer("c" + channel, pair(balance), () -> holder.value,
+                                accepted -> {
+                                    if (holder.value != null && accepted.right.compareTo(holder.value.right) <= 0) {
+                                        throw new AssertionError("Stored a lower balance.");
+                                    }
+                                    holder.value = accepted;
+                                });
+                    }
+                } catch (Throwable e) {
+                    failure.compareAndSet(null, e);
+                }
+            }));
+        }
+
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        if (failure.get() != null) {
+            throw new AssertionError(failure.get());
+        }
+        for (Holder holder : channels) {
+            assertEquals(BigInteger.valueOf(holder.offered.get()), holder.value.right);
+        }
+    }
+
+
+    private static ImmutablePair<byte[], BigInteger> pair(long balance) {
+        return new ImmutablePair<>(new byte[65], BigInteger.valueOf(balance));
+    }
+
+    private static Consumer<ImmutablePair<byte[], BigInteger>> store(
+            AtomicReference<ImmutablePair<byte[], BigInteger>> stored, List<BigInteger> accepted) {
+        return pair -> {
+            stored.set(pair);
+            accepted.add(pair.right);
+        };
+    }
+
+    private static final class Holder {
+        ImmutablePair<byte[], BigInteger> value;
+        final AtomicInteger offered = new AtomicInteger(-1);
+    }
+}
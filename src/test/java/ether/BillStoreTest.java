@@ -0,0 +1,146 @@
+package ether;
+
+import org.junit.Test;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+
+public class BillStoreTest {
+
+    private static final BigInteger MAX_BALANCE = BigInteger.ONE.shiftLeft(192).subtract(BigInteger.ONE);
+
+    @Test
+    public void storesBothProofsOfABill() {
+        BillStore store = new BillStore(16);
+        byte[] address = address(1);
+        store.put(address, BillStore.Proof.BALANCE_PROOF, signature(1), BigInteger.TEN);
+        store.put(address, BillStore.Proof.CLOSING_HASH, signature(2), MAX_BALANCE);
+
+        assertEquals(BigInteger.TEN, store.getBalance(address, BillStore.Proof.BALANCE_PROOF));
+        assertEquals(MAX_BALANCE, store.getBalance(address, BillStore.Proof.CLOSING_HASH));
+        byte[] out = new byte[BillStore.SIGNATURE_LENGTH];
+        assertTrue(store.getSignature(address, BillStore.Proof.CLOSING_HASH, out, 0));
+        assertArrayEquals(signature(2), out);
+        assertEquals(1, store.size());
+    }
+
+    @Test
+    public void removesABill() {
+        BillStore store = new BillStore(16);
+        for (int i = 0; i < 100; i++) {
+            store.put(address(i), BillStore.Proof.BALANCE_PROOF, signature(i), BigInteger.valueOf(i));
+        }
+        for (int i = 0; i < 100; i += 2) {
+            assertTrue(store.remove(address(i)));
+        }
+
+        assertEquals(50, store.size());
+        for (int i = 0; i < 100; i++) {
+            assertEquals(i % 2 != 0, store.contains(address(i), BillStore.Proof.BALANCE_PROOF));
+        }
+        assertNull(store.getBalance(address(0), BillStore.Proof.BALANCE_PROOF));
+        assertFalse(store.remove(address(0)));
+    }
+
+    @Test
+    public void rejectsBalancesOutsideUint192() {
+        assertTrue(BillStore.fitsBalance(BigInteger.ZERO));
+        assertTrue(BillStore.fitsBalance(MAX_BALANCE));
+        assertFalse(BillStore.fitsBalance(MAX_BALANCE.add(BigInteger.ONE)));
+        assertFalse(BillStore.fitsBalance(BigInteger.ONE.negate()));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void putRejectsANegativeBalance() {
+        new BillStore(16).put(address(1), BillStore.Proof.CLOSING_HASH, signature(1), BigInteger.ONE.negate());
+    }
+
+    @Test
+    public void readsDuringResizes() throws InterruptedException {
+        byte[] watched = address(-1);
+        BigInteger balance = MAX_BALANCE.shiftRight(7);
+        int rounds = 200;
+        int billsPerRound = 4_000;
+
+        //Every round fills a fresh store from the smallest capacity, so the readers run into many resizes.
+        AtomicReference<BillStore> current = new AtomicReference<>();
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        CountDownLatch done = new CountDownLatch(1);
+        List<Thread> threads = new ArrayList<>();
+        threads.add(new Thread(() -> {
+            try {
+                for (int round = 0; round < rounds; round++) {
+                    BillStore store = new BillStore(16);
+                    store.put(watched, BillStore.Proof.CLOSING_HASH, signature(7), balance);
+                    current.set(store);
+                    for (int i = 0; i < billsPerRound; i++) {
+                        store.put(address(i), BillStore.Proof.BALANCE_PROOF, signature(i), BigInteger.valueOf(i));
+                    }
+                    assertEquals(billsPerRound + 1, store.size());
+                }
+            } catch (Throwable t) {
+                failure.compareAndSet(null, t);
+            } finally {
+                done.countDown();
+            }
+        }));
+        for (int r = 0; r < 3; r++) {
+            threads.add(new Thread(() -> {
+                byte[] out = new byte[BillStore.SIGNATURE_LENGTH];
+                try {
+                    while (done.getCount() > 0) {
+                        BillStore store = current.get();
+                        if (store == null) {
+                            continue;
+                        }
+                        assertEquals(balance, store.getBalance(watched, BillStore.Proof.CLOSING_HASH));
+                        assertTrue(store.getSignature(watched, BillStore.Proof.CLOSING_HASH, out, 0));
+                        assertArrayEquals(signature(7), out);
+                        assertFalse(store.contains(watched, BillStore.Proof.BALANCE_PROOF));
+                        store.contains(address(billsPerRound - 1), BillStore.Proof.BALANCE_PROOF);
+                    }
+                } catch (Throwable t) {
+                    failure.compareAndSet(null, t);
+                }
+            }));
+        }
+
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        if (failure.get() != null) {
+            throw new AssertionError(failure.get());
+        }
+    }
+
+
+    private static byte[] address(int id) {
+        byte[] address = new byte[BillStore.ADDRESS_LENGTH];
+        Arrays.fill(address, (byte) 0x5a);
+        for (int i = 0; i < 4; i++) {
+            address[16 + i] = (byte) (id >>> (24 - 8 * i));
+        }
+        return address;
+    }
+
+    private static byte[] signature(int id) {
+        byte[] signature = new byte[BillStore.SIGNATURE_LENGTH];
+        Arrays.fill(signature, (byte) id);
+        return signature;
+    }
+}
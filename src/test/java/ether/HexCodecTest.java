@@ -0,0 +1,70 @@
+package ether;
+
+import org.junit.Test;
+
+import java.math.BigInteger;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+
+public class HexCodecTest {
+
+    @Test
+    public void parsesQuantitiesLikeBigInteger() {
+        Random random = new Random(42);
+        for (int i = 0; i < 10_000; i++) {
+            BigInteger expected = new BigInteger(random.nextInt(UInt256.BITS + 1), random);
+            String digits = expected.toString(16);
+            String hex = random.nextBoolean() ? digits : digits.toUpperCase();
+            assertEquals(expected, HexCodec.quantity("0x" + hex));
+            assertEquals(expected, HexCodec.quantity(hex));
+        }
+        assertEquals(BigInteger.ZERO, HexCodec.quantity("0x0"));
+        assertEquals(BigInteger.valueOf(Long.MAX_VALUE), HexCodec.quantity("0x7fffffffffffffff"));
+        assertEquals(BigInteger.ONE.shiftLeft(64), HexCodec.quantity("0x10000000000000000"));
+    }
+
+    @Test
+    public void rejectsBadQuantities() {
+        String tooLong = "0x1" + new String(new char[UInt256.HEX_DIGITS]).replace('\0', '0');
+        for (String hex : new String[] {"0x", "", "0xg1", "12 3", tooLong}) {
+            try {
+                HexCodec.quantity(hex);
+                fail(hex);
+            } catch (NumberFormatException e) {
+                //expected
+            }
+        }
+    }
+
+    @Test
+    public void decodesLikeBigInteger() {
+        Random random = new Random(7);
+        for (int i = 0; i < 10_000; i++) {
+            byte[] expected = new byte[random.nextInt(40)];
+            random.nextBytes(expected);
+            String digits = expected.length == 0 ? "" : new BigInteger(1, expected).toString(16);
+            StringBuilder hex = new StringBuilder();
+            for (int pad = digits.length(); pad < expected.length * 2; pad++) {
+                hex.append('0');
+            }
+            hex.append(digits);
+            assertArrayEquals(expected, HexCodec.decode("0x" + hex));
+            assertArrayEquals(expected, HexCodec.decode(hex.toString().toUpperCase()));
+            assertArrayEquals(expected, HexCodec.decode(HexCodec.encode(expected)));
+        }
+    }
+
+    @Test(expected = NumberFormatException.class)
+    public void decodeRejectsAnOddNumberOfDigits() {
+        HexCodec.decode("0xabc");
+    }
+
+    @Test(expected = NumberFormatException.class)
+    public void decodeRejectsNonHexDigits() {
+        HexCodec.decode("0x0z");
+    }
+}
@@ -0,0 +1,98 @@
+package ether;
+
+import org.junit.Test;
+
+import java.math.BigInteger;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+
+public class UInt256Test {
+
+    @Test
+    public void readsHexLikeBigInteger() {
+        Random random = new Random(42);
+        UInt256 value = new UInt256();
+        for (int i = 0; i < 10_000; i++) {
+            BigInteger expected = new BigInteger(random.nextInt(UInt256.BITS + 1), random);
+            String hex = "0x" + expected.toString(16);
+            assertEquals(expected, value.setHex(hex, 2, hex.length() - 2).toBigInteger());
+            assertEquals(expected.signum() == 0, value.isZero());
+        }
+    }
+
+    @Test
+    public void readsWordsAtAnOffset() {
+        BigInteger deposit = BigInteger.TEN.pow(20);
+        String response = "0x" + word(deposit) + word(BigInteger.valueOf(0x89a1f));
+        UInt256 value = new UInt256();
+
+        assertEquals(deposit, value.setWord(response, 2).toBigInteger());
+        assertEquals(0x89a1f, value.setWord(response, 2 + UInt256.HEX_DIGITS).bits(0, 32));
+    }
+
+    @Test(expected = NumberFormatException.class)
+    public void rejectsACutWord() {
+        new UInt256().setWord("0x" + word(BigInteger.ONE).substring(1), 2);
+    }
+
+    @Test(expected = NumberFormatException.class)
+    public void rejectsMoreThan256Bits() {
+        String hex = "1" + word(BigInteger.ZERO);
+        new UInt256().setHex(hex, 0, hex.length());
+    }
+
+    @Test
+    public void extractsBitsLikeBigInteger() {
+        Random random = new Random(7);
+        UInt256 value = new UInt256();
+        for (int i = 0; i < 10_000; i++) {
+            BigInteger number = new BigInteger(UInt256.BITS, random);
+            int from = random.nextInt(UInt256.BITS + 8);
+            int count = random.nextInt(64);
+            BigInteger mask = BigInteger.ONE.shiftLeft(count).subtract(BigInteger.ONE);
+
+            value.setWord(word(number), 0);
+            assertEquals(number.shiftRight(from).and(mask).longValue(), value.bits(from, count));
+        }
+    }
+
+    @Test
+    public void truncatesLikeBigInteger() {
+        Random random = new Random(11);
+        UInt256 value = new UInt256();
+        for (int i = 0; i < 10_000; i++) {
+            BigInteger number = new BigInteger(UInt256.BITS, random);
+            int bits = random.nextInt(UInt256.BITS + 1);
+            BigInteger mask = BigInteger.ONE.shiftLeft(bits).subtract(BigInteger.ONE);
+
+            assertEquals(number.and(mask), value.setWord(word(number), 0).truncate(bits).toBigInteger());
+        }
+    }
+
+    @Test
+    public void splitsAChannelSlot() {
+        //A packed slot: the uint32 open block above the uint192 deposit.
+        BigInteger deposit = BigInteger.ONE.shiftLeft(192).subtract(BigInteger.ONE);
+        BigInteger slot = BigInteger.valueOf(0xfffffffeL).shiftLeft(192).or(deposit);
+        UInt256 value = new UInt256().setWord(word(slot), 0);
+
+        assertFalse(value.isZero());
+        assertEquals(0xfffffffeL, value.bits(192, 32));
+        assertEquals(deposit, value.truncate(192).toBigInteger());
+        assertTrue(new UInt256().setWord(word(BigInteger.ZERO), 0).isZero());
+    }
+
+
+    private static String word(BigInteger value) {
+        String digits = value.toString(16);
+        StringBuilder word = new StringBuilder(UInt256.HEX_DIGITS);
+        for (int pad = digits.length(); pad < UInt256.HEX_DIGITS; pad++) {
+            word.append('0');
+        }
+        return word.append(digits).toString();
+    }
+}